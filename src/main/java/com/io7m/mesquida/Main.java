@@ -18,6 +18,7 @@ package com.io7m.mesquida;
 
 import com.io7m.claypot.core.CLPApplicationConfiguration;
 import com.io7m.claypot.core.Claypot;
+import com.io7m.mesquida.internal.cli.MCommandAllInOne;
 import com.io7m.mesquida.internal.cli.MCommandIRCBot;
 import com.io7m.mesquida.internal.cli.MCommandMatrixBot;
 import com.io7m.mesquida.internal.cli.MCommandServer;
@@ -68,6 +69,7 @@ public final class Main
         .addCommands(MCommandServer::new)
         .addCommands(MCommandMatrixBot::new)
         .addCommands(MCommandIRCBot::new)
+        .addCommands(MCommandAllInOne::new)
         .build();
 
     final var claypot = Claypot.create(configuration);
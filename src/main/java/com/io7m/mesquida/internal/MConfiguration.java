@@ -18,13 +18,20 @@ package com.io7m.mesquida.internal;
 
 import com.io7m.jproperties.JProperties;
 import com.io7m.jproperties.JPropertyException;
+import com.io7m.jproperties.JPropertyIncorrectType;
 import com.io7m.mesquida.internal.database.MDatabaseConfiguration;
+import com.io7m.mesquida.internal.database.MDatabasePoolConfiguration;
+import com.io7m.mesquida.internal.mq.MBrokerConfiguration;
 
 import java.io.IOException;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -32,23 +39,43 @@ import java.util.Properties;
  *
  * @param http     The HTTP server configuration
  * @param database The database configuration
+ * @param broker   The embedded message broker configuration, if an
+ *                 embedded broker should be run
  */
 
 public record MConfiguration(
   MServerConfiguration http,
-  MDatabaseConfiguration database)
+  MDatabaseConfiguration database,
+  Optional<MBrokerConfiguration> broker)
 {
   /**
    * The main configuration.
    *
    * @param http     The HTTP server configuration
    * @param database The database configuration
+   * @param broker   The embedded message broker configuration, if an
+   *                 embedded broker should be run
    */
 
   public MConfiguration
   {
     Objects.requireNonNull(http, "http");
     Objects.requireNonNull(database, "database");
+    Objects.requireNonNull(broker, "broker");
+  }
+
+  /**
+   * The main configuration, without an embedded message broker.
+   *
+   * @param inHttp     The HTTP server configuration
+   * @param inDatabase The database configuration
+   */
+
+  public MConfiguration(
+    final MServerConfiguration inHttp,
+    final MDatabaseConfiguration inDatabase)
+  {
+    this(inHttp, inDatabase, Optional.empty());
   }
 
   /**
@@ -91,6 +118,28 @@ public record MConfiguration(
       final var databaseUpgrade =
         JProperties.getBooleanWithDefault(properties, "database.upgrade", true);
 
+      final var poolDefaults =
+        MDatabasePoolConfiguration.defaults();
+      final var poolMinimum =
+        JProperties.getIntegerWithDefault(
+          properties, "database.poolMinimum", poolDefaults.minimum());
+      final var poolMaximum =
+        JProperties.getIntegerWithDefault(
+          properties, "database.poolMaximum", poolDefaults.maximum());
+      final var poolIdleTimeout =
+        JProperties.getDurationWithDefault(
+          properties, "database.poolIdleTimeout", poolDefaults.idleTimeout());
+      final var poolAcquireTimeout =
+        JProperties.getDurationWithDefault(
+          properties,
+          "database.poolAcquireTimeout",
+          poolDefaults.acquireTimeout());
+      final var poolValidationTimeout =
+        JProperties.getDurationWithDefault(
+          properties,
+          "database.poolValidationTimeout",
+          poolDefaults.validationTimeout());
+
       return new MConfiguration(
         new MServerConfiguration(
           Locale.getDefault(),
@@ -99,14 +148,225 @@ public record MConfiguration(
           publicAddr,
           publicPort,
           privateToken,
-          fs.getPath(sessionDirectory)
+          fs.getPath(sessionDirectory),
+          threadPool(properties, "server.privateThreadPool"),
+          threadPool(properties, "server.publicThreadPool"),
+          admission(properties, "server.privateAdmission"),
+          compression(properties, "server.privateCompression"),
+          compression(properties, "server.publicCompression")
         ),
         new MDatabaseConfiguration(
           fs.getPath(database),
           databaseUpgrade,
-          databaseCreate
-        )
+          databaseCreate,
+          new MDatabasePoolConfiguration(
+            poolMinimum,
+            poolMaximum,
+            poolIdleTimeout,
+            poolAcquireTimeout,
+            poolValidationTimeout
+          )
+        ),
+        broker(properties, fs)
       );
     }
   }
+
+  private static Optional<MBrokerConfiguration> broker(
+    final Properties properties,
+    final FileSystem fs)
+    throws JPropertyException
+  {
+    if (!JProperties.getBooleanWithDefault(
+      properties, "broker.embedded", false)) {
+      return Optional.empty();
+    }
+
+    return Optional.of(
+      new MBrokerConfiguration(
+        JProperties.getString(properties, "broker.user"),
+        JProperties.getString(properties, "broker.password"),
+        JProperties.getStringOptional(properties, "broker.directory")
+          .map(fs::getPath),
+        Optional.ofNullable(
+          JProperties.getURIWithDefault(properties, "broker.acceptor", null))
+      )
+    );
+  }
+
+  private static MServerThreadPoolConfiguration threadPool(
+    final Properties properties,
+    final String prefix)
+    throws JPropertyException
+  {
+    final var defaults =
+      MServerThreadPoolConfiguration.defaults();
+
+    final var kindName =
+      JProperties.getStringWithDefault(
+        properties, prefix + "Kind", defaults.kind().name());
+
+    final MServerThreadPoolKind kind;
+    try {
+      kind = MServerThreadPoolKind.valueOf(
+        kindName.toUpperCase(Locale.ROOT));
+    } catch (final IllegalArgumentException e) {
+      throw new JPropertyIncorrectType(
+        "Property %sKind must be one of PLATFORM, VIRTUAL (received %s)"
+          .formatted(prefix, kindName),
+        e
+      );
+    }
+
+    final var minimum =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + "Minimum", defaults.minimum());
+    final var maximum =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + "Maximum", defaults.maximum());
+    final var idleTimeout =
+      JProperties.getDurationWithDefault(
+        properties, prefix + "IdleTimeout", defaults.idleTimeout());
+    final var queueCapacity =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + "QueueCapacity", defaults.queueCapacity());
+
+    return new MServerThreadPoolConfiguration(
+      kind,
+      minimum,
+      maximum,
+      idleTimeout,
+      queueCapacity
+    );
+  }
+
+  private static MServerAdmissionConfiguration admission(
+    final Properties properties,
+    final String prefix)
+    throws JPropertyException
+  {
+    /*
+     * Limits are given as "<prefix>.<endpoint>.<field>". The limits for the
+     * pseudo-endpoint "default" apply to every endpoint that is not listed,
+     * and supply any field that an endpoint does not specify. The event
+     * feed is not gated; "<prefix>.eventSubscribersMaximum" limits its
+     * connections instead.
+     */
+
+    final var defaultLimit =
+      admissionLimit(
+        properties,
+        prefix + ".default",
+        MServerAdmissionLimit.defaults()
+      );
+
+    final var endpointPrefix = prefix + ".";
+    final var endpoints = new HashMap<String, MServerAdmissionLimit>();
+    for (final var name : properties.stringPropertyNames()) {
+      if (!name.startsWith(endpointPrefix)) {
+        continue;
+      }
+
+      final var rest = name.substring(endpointPrefix.length());
+      final var dot = rest.indexOf('.');
+      if (dot <= 0) {
+        continue;
+      }
+
+      final var endpoint = rest.substring(0, dot);
+      if (!"default".equals(endpoint) && !endpoints.containsKey(endpoint)) {
+        endpoints.put(
+          endpoint,
+          admissionLimit(properties, endpointPrefix + endpoint, defaultLimit)
+        );
+      }
+    }
+
+    final var eventSubscribersMaximum =
+      JProperties.getIntegerWithDefault(
+        properties,
+        prefix + ".eventSubscribersMaximum",
+        MServerAdmissionConfiguration.DEFAULT_EVENT_SUBSCRIBERS_MAXIMUM);
+
+    try {
+      return new MServerAdmissionConfiguration(
+        defaultLimit,
+        endpoints,
+        eventSubscribersMaximum
+      );
+    } catch (final IllegalArgumentException e) {
+      throw new JPropertyIncorrectType(
+        "Property %s: %s".formatted(prefix, e.getMessage()),
+        e
+      );
+    }
+  }
+
+  private static MServerCompressionConfiguration compression(
+    final Properties properties,
+    final String prefix)
+    throws JPropertyException
+  {
+    final var defaults =
+      MServerCompressionConfiguration.defaults();
+
+    final var enabled =
+      JProperties.getBooleanWithDefault(
+        properties, prefix + ".enabled", defaults.enabled());
+    final var minimumSize =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + ".minimumSize", defaults.minimumSize());
+    final var level =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + ".level", defaults.level());
+    final var mimeTypes =
+      JProperties.getStringWithDefault(
+        properties,
+        prefix + ".mimeTypes",
+        String.join(",", defaults.mimeTypes()));
+
+    try {
+      return new MServerCompressionConfiguration(
+        enabled,
+        minimumSize,
+        Arrays.stream(mimeTypes.split(","))
+          .map(String::trim)
+          .filter(type -> !type.isEmpty())
+          .toList(),
+        level
+      );
+    } catch (final IllegalArgumentException e) {
+      throw new JPropertyIncorrectType(
+        "Property %s: %s".formatted(prefix, e.getMessage()),
+        e
+      );
+    }
+  }
+
+  private static MServerAdmissionLimit admissionLimit(
+    final Properties properties,
+    final String prefix,
+    final MServerAdmissionLimit defaults)
+    throws JPropertyException
+  {
+    final var concurrency =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + ".concurrency", defaults.concurrency());
+    final var queueLength =
+      JProperties.getIntegerWithDefault(
+        properties, prefix + ".queueLength", defaults.queueLength());
+    final var queueTimeout =
+      JProperties.getDurationWithDefault(
+        properties, prefix + ".queueTimeout", defaults.queueTimeout());
+    final var retryAfter =
+      JProperties.getDurationWithDefault(
+        properties, prefix + ".retryAfter", defaults.retryAfter());
+
+    return new MServerAdmissionLimit(
+      concurrency,
+      queueLength,
+      queueTimeout,
+      retryAfter
+    );
+  }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Functions over HTTP entity tags.
+ */
+
+public final class MEntityTags
+{
+  private MEntityTags()
+  {
+
+  }
+
+  /**
+   * Construct a strong entity tag from the given parts. The parts must
+   * consist only of characters that are valid in an entity tag, and must
+   * not contain the {@code .} separator.
+   *
+   * @param parts The parts
+   *
+   * @return A quoted entity tag
+   */
+
+  public static String strong(
+    final String... parts)
+  {
+    final var text = new StringBuilder(64);
+    text.append('"');
+    for (int index = 0; index < parts.length; ++index) {
+      if (index > 0) {
+        text.append('.');
+      }
+      text.append(Objects.requireNonNull(parts[index], "part"));
+    }
+    text.append('"');
+    return text.toString();
+  }
+
+  /**
+   * Determine if the request's {@code If-None-Match} header matches the
+   * given entity tag.
+   *
+   * @param request The request
+   * @param tag     The current entity tag of the resource
+   *
+   * @return {@code true} if the client already has the current
+   * representation
+   */
+
+  public static boolean isNotModified(
+    final HttpServletRequest request,
+    final String tag)
+  {
+    Objects.requireNonNull(tag, "tag");
+
+    final var header = request.getHeader("If-None-Match");
+    if (header == null) {
+      return false;
+    }
+
+    /*
+     * If-None-Match uses the weak comparison function, so a weak tag sent
+     * back by an intermediary still matches.
+     */
+
+    for (final var candidate : header.split(",")) {
+      var trimmed = candidate.trim();
+      if ("*".equals(trimmed)) {
+        return true;
+      }
+      if (trimmed.startsWith("W/")) {
+        trimmed = trimmed.substring(2);
+      }
+      if (tag.equals(trimmed)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Send a {@code 304 Not Modified} response.
+   *
+   * @param response The response
+   * @param tag      The current entity tag of the resource
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void sendNotModified(
+    final HttpServletResponse response,
+    final String tag)
+    throws IOException
+  {
+    response.setHeader("ETag", tag);
+    response.setStatus(304);
+
+    /*
+     * The response has no body; it is committed here so that the server
+     * does not treat the request as unhandled.
+     */
+
+    response.flushBuffer();
+  }
+}
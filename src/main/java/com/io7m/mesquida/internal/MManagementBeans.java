@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.Objects;
+
+/**
+ * Functions to publish management beans to JMX.
+ */
+
+public final class MManagementBeans
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MManagementBeans.class);
+
+  private MManagementBeans()
+  {
+
+  }
+
+  /**
+   * Register a management bean with the platform MBean server. If a bean is
+   * already registered under the same name, it is replaced.
+   *
+   * @param type The bean type, used to construct the object name
+   * @param bean The bean
+   *
+   * @return A handle that unregisters the bean when closed
+   */
+
+  public static AutoCloseable register(
+    final String type,
+    final Object bean)
+  {
+    Objects.requireNonNull(type, "type");
+
+    final ObjectName name;
+    try {
+      name = new ObjectName("com.io7m.mesquida", "type", type);
+    } catch (final JMException e) {
+      throw new IllegalArgumentException(e);
+    }
+    return registerNamed(name, bean);
+  }
+
+  /**
+   * Register a management bean with the platform MBean server, for bean types
+   * that can have more than one instance. If a bean is already registered
+   * under the same name, it is replaced.
+   *
+   * @param type     The bean type, used to construct the object name
+   * @param instance The instance name, used to construct the object name
+   * @param bean     The bean
+   *
+   * @return A handle that unregisters the bean when closed
+   */
+
+  public static AutoCloseable register(
+    final String type,
+    final String instance,
+    final Object bean)
+  {
+    Objects.requireNonNull(type, "type");
+    Objects.requireNonNull(instance, "instance");
+
+    final ObjectName name;
+    try {
+      final var properties = new Hashtable<String, String>();
+      properties.put("type", type);
+      properties.put("name", ObjectName.quote(instance));
+      name = new ObjectName("com.io7m.mesquida", properties);
+    } catch (final JMException e) {
+      throw new IllegalArgumentException(e);
+    }
+    return registerNamed(name, bean);
+  }
+
+  private static AutoCloseable registerNamed(
+    final ObjectName name,
+    final Object bean)
+  {
+    Objects.requireNonNull(bean, "bean");
+
+    final var server = ManagementFactory.getPlatformMBeanServer();
+
+    try {
+      try {
+        server.registerMBean(bean, name);
+      } catch (final InstanceAlreadyExistsException e) {
+        server.unregisterMBean(name);
+        server.registerMBean(bean, name);
+      }
+    } catch (final JMException e) {
+      LOG.warn("unable to register management bean {}: ", name, e);
+      return () -> {
+
+      };
+    }
+
+    return () -> {
+      try {
+        if (server.isRegistered(name)) {
+          server.unregisterMBean(name);
+        }
+      } catch (final JMException e) {
+        LOG.warn("unable to unregister management bean {}: ", name, e);
+      }
+    };
+  }
+}
@@ -31,6 +31,32 @@ public final class MResources
 
   }
 
+  /**
+   * Read the named resource.
+   *
+   * @param name The resource name
+   *
+   * @return The resource content
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static byte[] read(
+    final String name)
+    throws IOException
+  {
+    final var fileName =
+      String.format("/com/io7m/mesquida/internal/%s", name);
+    final var url =
+      MResources.class.getResource(fileName);
+    if (url == null) {
+      throw new FileNotFoundException(fileName);
+    }
+    try (var stream = url.openStream()) {
+      return stream.readAllBytes();
+    }
+  }
+
   /**
    * Copy the named resource to the given output stream.
    *
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The admission control configuration for a server.
+ *
+ * @param defaultLimit The limits applied to endpoints that are not listed
+ *                     explicitly
+ * @param endpoints    The limits applied to specific endpoints, keyed by the
+ *                     endpoint name (such as {@code mq-put})
+ * @param eventSubscribersMaximum The maximum number of clients connected to
+ *                                the event feed at once. Event feed
+ *                                connections are long-lived, so they are
+ *                                limited separately rather than occupying
+ *                                the request slots of other endpoints.
+ */
+
+public record MServerAdmissionConfiguration(
+  MServerAdmissionLimit defaultLimit,
+  Map<String, MServerAdmissionLimit> endpoints,
+  int eventSubscribersMaximum)
+{
+  /**
+   * The default maximum number of event feed clients.
+   */
+
+  public static final int DEFAULT_EVENT_SUBSCRIBERS_MAXIMUM = 64;
+
+  /**
+   * The admission control configuration for a server.
+   *
+   * @param defaultLimit The limits applied to endpoints that are not listed
+   *                     explicitly
+   * @param endpoints    The limits applied to specific endpoints, keyed by
+   *                     the endpoint name (such as {@code mq-put})
+   * @param eventSubscribersMaximum The maximum number of clients connected
+   *                                to the event feed at once
+   */
+
+  public MServerAdmissionConfiguration
+  {
+    Objects.requireNonNull(defaultLimit, "defaultLimit");
+    endpoints = Map.copyOf(endpoints);
+
+    if (eventSubscribersMaximum < 1) {
+      throw new IllegalArgumentException(
+        "Event subscriber maximum must be positive");
+    }
+  }
+
+  /**
+   * Construct a configuration with the default event subscriber maximum.
+   *
+   * @param inDefaultLimit The limits applied to endpoints that are not listed
+   *                       explicitly
+   * @param inEndpoints    The limits applied to specific endpoints
+   */
+
+  public MServerAdmissionConfiguration(
+    final MServerAdmissionLimit inDefaultLimit,
+    final Map<String, MServerAdmissionLimit> inEndpoints)
+  {
+    this(inDefaultLimit, inEndpoints, DEFAULT_EVENT_SUBSCRIBERS_MAXIMUM);
+  }
+
+  /**
+   * @param endpoint The endpoint name
+   *
+   * @return The limits that apply to the given endpoint
+   */
+
+  public MServerAdmissionLimit limitFor(
+    final String endpoint)
+  {
+    Objects.requireNonNull(endpoint, "endpoint");
+    return this.endpoints.getOrDefault(endpoint, this.defaultLimit);
+  }
+
+  /**
+   * @return The default admission configuration
+   */
+
+  public static MServerAdmissionConfiguration defaults()
+  {
+    return new MServerAdmissionConfiguration(
+      MServerAdmissionLimit.defaults(),
+      Map.of()
+    );
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The admission limits applied to a single server endpoint.
+ *
+ * @param concurrency  The maximum number of requests that may execute at once
+ * @param queueLength  The maximum number of requests that may wait for an
+ *                     execution slot
+ * @param queueTimeout The maximum time a request may wait for an execution
+ *                     slot before being rejected
+ * @param retryAfter   The delay clients are asked to wait after a rejection
+ */
+
+public record MServerAdmissionLimit(
+  int concurrency,
+  int queueLength,
+  Duration queueTimeout,
+  Duration retryAfter)
+{
+  /**
+   * The admission limits applied to a single server endpoint.
+   *
+   * @param concurrency  The maximum number of requests that may execute at
+   *                     once
+   * @param queueLength  The maximum number of requests that may wait for an
+   *                     execution slot
+   * @param queueTimeout The maximum time a request may wait for an execution
+   *                     slot before being rejected
+   * @param retryAfter   The delay clients are asked to wait after a
+   *                     rejection
+   */
+
+  public MServerAdmissionLimit
+  {
+    Objects.requireNonNull(queueTimeout, "queueTimeout");
+    Objects.requireNonNull(retryAfter, "retryAfter");
+
+    if (concurrency < 1) {
+      throw new IllegalArgumentException(
+        "Admission concurrency must be positive");
+    }
+    if (queueLength < 0) {
+      throw new IllegalArgumentException(
+        "Admission queue length must be non-negative");
+    }
+    if (queueTimeout.isNegative()) {
+      throw new IllegalArgumentException(
+        "Admission queue timeout must be non-negative");
+    }
+    if (retryAfter.isNegative()) {
+      throw new IllegalArgumentException(
+        "Admission retry delay must be non-negative");
+    }
+  }
+
+  /**
+   * @return The default admission limits
+   */
+
+  public static MServerAdmissionLimit defaults()
+  {
+    return new MServerAdmissionLimit(
+      8,
+      16,
+      Duration.ofSeconds(1L),
+      Duration.ofSeconds(1L)
+    );
+  }
+}
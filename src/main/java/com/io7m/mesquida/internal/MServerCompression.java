@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.internal;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+
+import java.util.Objects;
+
+/**
+ * Functions to install response compression on a server.
+ */
+
+public final class MServerCompression
+{
+  private MServerCompression()
+  {
+
+  }
+
+  /**
+   * Wrap the given handler in a handler that compresses responses according
+   * to the given configuration. If compression is disabled, the handler is
+   * returned unchanged.
+   *
+   * @param configuration The compression configuration
+   * @param handler       The handler that produces responses
+   * @param excludedPaths The path specs of responses that must not be
+   *                      compressed
+   *
+   * @return A handler
+   */
+
+  public static Handler wrap(
+    final MServerCompressionConfiguration configuration,
+    final Handler handler,
+    final String... excludedPaths)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(handler, "handler");
+    Objects.requireNonNull(excludedPaths, "excludedPaths");
+
+    if (!configuration.enabled()) {
+      return handler;
+    }
+
+    final var gzip = new GzipHandler();
+    gzip.setMinGzipSize(configuration.minimumSize());
+    gzip.setIncludedMimeTypes(
+      configuration.mimeTypes().toArray(new String[0]));
+    gzip.setExcludedPaths(excludedPaths);
+    gzip.setDeflaterPool(
+      new DeflaterPool(
+        DeflaterPool.DEFAULT_CAPACITY,
+        configuration.level(),
+        true
+      )
+    );
+    gzip.setHandler(handler);
+    return gzip;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.internal;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * The response compression applied by a single server.
+ *
+ * @param enabled     {@code true} if responses should be compressed
+ * @param minimumSize The minimum size in octets of a response body that will
+ *                    be compressed
+ * @param mimeTypes   The media types of responses that may be compressed
+ * @param level       The deflate compression level, in the range
+ *                    {@code [-1, 9]}, where {@code -1} selects the default
+ */
+
+public record MServerCompressionConfiguration(
+  boolean enabled,
+  int minimumSize,
+  List<String> mimeTypes,
+  int level)
+{
+  /**
+   * The response compression applied by a single server.
+   *
+   * @param enabled     {@code true} if responses should be compressed
+   * @param minimumSize The minimum size in octets of a response body that
+   *                    will be compressed
+   * @param mimeTypes   The media types of responses that may be compressed
+   * @param level       The deflate compression level, in the range
+   *                    {@code [-1, 9]}, where {@code -1} selects the
+   *                    default
+   */
+
+  public MServerCompressionConfiguration
+  {
+    Objects.requireNonNull(mimeTypes, "mimeTypes");
+    mimeTypes = List.copyOf(mimeTypes);
+
+    if (minimumSize < 0) {
+      throw new IllegalArgumentException(
+        "Compression minimum size must be non-negative");
+    }
+    if (level < Deflater.DEFAULT_COMPRESSION
+        || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException(
+        "Compression level must be in the range [-1, 9]");
+    }
+  }
+
+  /**
+   * The default compression settings. Responses of at least 1KiB are
+   * compressed if they are pages, JSON, or scripts and stylesheets. Event
+   * streams are never included, as compressing them would hold back events
+   * until enough output had accumulated.
+   *
+   * @return The default compression settings
+   */
+
+  public static MServerCompressionConfiguration defaults()
+  {
+    return new MServerCompressionConfiguration(
+      true,
+      1024,
+      List.of(
+        "application/json",
+        "application/xhtml+xml",
+        "text/css",
+        "text/html",
+        "text/javascript",
+        "text/json"
+      ),
+      Deflater.DEFAULT_COMPRESSION
+    );
+  }
+}
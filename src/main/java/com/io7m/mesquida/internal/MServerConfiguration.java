@@ -32,6 +32,12 @@ import java.util.Objects;
  * @param publicPort         The port used for the public REST API
  * @param serverPrivateToken The token used to access the private API
  * @param sessionDirectory   The session directory for the server
+ * @param privateThreadPool  The thread pool used by the private API server
+ * @param publicThreadPool   The thread pool used by the public server
+ * @param privateAdmission   The admission control used by the private API
+ * @param privateCompression The response compression used by the private API
+ * @param publicCompression  The response compression used by the public
+ *                           server
  */
 
 public record MServerConfiguration(
@@ -41,7 +47,12 @@ public record MServerConfiguration(
   InetAddress publicAddress,
   int publicPort,
   String serverPrivateToken,
-  Path sessionDirectory)
+  Path sessionDirectory,
+  MServerThreadPoolConfiguration privateThreadPool,
+  MServerThreadPoolConfiguration publicThreadPool,
+  MServerAdmissionConfiguration privateAdmission,
+  MServerCompressionConfiguration privateCompression,
+  MServerCompressionConfiguration publicCompression)
 {
   /**
    * The web server configuration.
@@ -53,6 +64,13 @@ public record MServerConfiguration(
    * @param publicPort         The port used for the public REST API
    * @param serverPrivateToken The token used to access the private API
    * @param sessionDirectory   The session directory for the server
+   * @param privateThreadPool  The thread pool used by the private API server
+   * @param publicThreadPool   The thread pool used by the public server
+   * @param privateAdmission   The admission control used by the private API
+   * @param privateCompression The response compression used by the private
+   *                           API
+   * @param publicCompression  The response compression used by the public
+   *                           server
    */
 
   public MServerConfiguration
@@ -62,5 +80,48 @@ public record MServerConfiguration(
     Objects.requireNonNull(publicAddress, "publicAddress");
     Objects.requireNonNull(serverPrivateToken, "serverPrivateToken");
     Objects.requireNonNull(sessionDirectory, "sessionDirectory");
+    Objects.requireNonNull(privateThreadPool, "privateThreadPool");
+    Objects.requireNonNull(publicThreadPool, "publicThreadPool");
+    Objects.requireNonNull(privateAdmission, "privateAdmission");
+    Objects.requireNonNull(privateCompression, "privateCompression");
+    Objects.requireNonNull(publicCompression, "publicCompression");
+  }
+
+  /**
+   * The web server configuration, using the default thread pools,
+   * admission control, and compression.
+   *
+   * @param inLocale             The current locale
+   * @param inPrivateAddress     The address of the private REST API
+   * @param inPrivatePort        The port used for the private REST API
+   * @param inPublicAddress      The address used for the public REST API
+   * @param inPublicPort         The port used for the public REST API
+   * @param inServerPrivateToken The token used to access the private API
+   * @param inSessionDirectory   The session directory for the server
+   */
+
+  public MServerConfiguration(
+    final Locale inLocale,
+    final InetAddress inPrivateAddress,
+    final int inPrivatePort,
+    final InetAddress inPublicAddress,
+    final int inPublicPort,
+    final String inServerPrivateToken,
+    final Path inSessionDirectory)
+  {
+    this(
+      inLocale,
+      inPrivateAddress,
+      inPrivatePort,
+      inPublicAddress,
+      inPublicPort,
+      inServerPrivateToken,
+      inSessionDirectory,
+      MServerThreadPoolConfiguration.defaults(),
+      MServerThreadPoolConfiguration.defaults(),
+      MServerAdmissionConfiguration.defaults(),
+      MServerCompressionConfiguration.defaults(),
+      MServerCompressionConfiguration.defaults()
+    );
   }
 }
@@ -16,46 +16,50 @@
 
 package com.io7m.mesquida.internal;
 
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
 import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.events.MEventHub;
+import com.io7m.mesquida.internal.events.MEventSources;
+import com.io7m.mesquida.internal.events.MEventStatisticsType;
+import com.io7m.mesquida.internal.mq.MMessageBus;
 import com.io7m.mesquida.internal.mq.MMessageService;
-import com.io7m.mesquida.internal.private_api.MPrivErrorHandler;
-import com.io7m.mesquida.internal.private_api.MPrivMessageQueuePutHandler;
-import com.io7m.mesquida.internal.private_api.MPrivRootHandler;
-import com.io7m.mesquida.internal.private_api.MPrivStreamAddressPutHandler;
-import com.io7m.mesquida.internal.private_api.MPrivStreamDeleteHandler;
-import com.io7m.mesquida.internal.private_api.MPrivStreamListHandler;
-import com.io7m.mesquida.internal.private_api.MPrivStreamPutHandler;
-import com.io7m.mesquida.internal.private_api.MPrivStreamStartHandler;
-import com.io7m.mesquida.internal.private_api.MPrivStreamStopHandler;
-import com.io7m.mesquida.internal.private_api.MPrivUserListHandler;
-import com.io7m.mesquida.internal.private_api.MPrivUserPutHandler;
+import com.io7m.mesquida.internal.private_api.MPrivAdmissionHandler;
+import com.io7m.mesquida.internal.private_api.MPrivAdmissionStatisticsType;
+import com.io7m.mesquida.internal.private_api.MPrivHandlers;
+import com.io7m.mesquida.internal.public_api.MPubAssets;
 import com.io7m.mesquida.internal.public_api.MPubPages;
+import com.io7m.mesquida.internal.public_api.MPubDashboard;
+import com.io7m.mesquida.internal.public_api.MPubDashboardServlet;
+import com.io7m.mesquida.internal.public_api.MPubDashboardStatisticsType;
 import com.io7m.mesquida.internal.public_api.MPubRootHandler;
 import com.io7m.mesquida.internal.public_api.MPubServletHolder;
 import com.io7m.mesquida.internal.public_api.MPubStaticHandler;
 import com.io7m.mesquida.internal.public_api.MPubStreamEditHandler;
 import org.eclipse.jetty.jmx.MBeanContainer;
 import org.eclipse.jetty.server.Connector;
-import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
-import org.eclipse.jetty.server.handler.ContextHandler;
-import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.server.session.DefaultSessionCache;
 import org.eclipse.jetty.server.session.DefaultSessionIdManager;
 import org.eclipse.jetty.server.session.FileSessionDataStore;
 import org.eclipse.jetty.server.session.SessionHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.VirtualThreads;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.server.config.JettyWebSocketServletContainerInitializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The main server.
@@ -70,12 +74,22 @@ public final class MServerMain implements AutoCloseable
   private final MServerConfiguration configuration;
   private final Server serverPublic;
   private final MMessageService messageQueue;
+  private final MStreamCatalog catalog;
+  private final MStreamLiveRegistry liveRegistry;
+  private final MEventHub eventHub;
+  private final MPubDashboard dashboard;
+  private final MPrivAdmissionHandler privateAdmission;
 
   private MServerMain(
     final MServerConfiguration inConfiguration,
     final Server inServerPublic,
     final Server inServerPrivate,
-    final MMessageService inMessageQueue)
+    final MMessageService inMessageQueue,
+    final MStreamCatalog inCatalog,
+    final MStreamLiveRegistry inLiveRegistry,
+    final MEventHub inEventHub,
+    final MPubDashboard inDashboard,
+    final MPrivAdmissionHandler inPrivateAdmission)
   {
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
@@ -85,6 +99,16 @@ public final class MServerMain implements AutoCloseable
       Objects.requireNonNull(inServerPublic, "server");
     this.messageQueue =
       Objects.requireNonNull(inMessageQueue, "messageQueue");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "catalog");
+    this.liveRegistry =
+      Objects.requireNonNull(inLiveRegistry, "liveRegistry");
+    this.eventHub =
+      Objects.requireNonNull(inEventHub, "eventHub");
+    this.dashboard =
+      Objects.requireNonNull(inDashboard, "dashboard");
+    this.privateAdmission =
+      Objects.requireNonNull(inPrivateAdmission, "privateAdmission");
   }
 
   /**
@@ -95,152 +119,211 @@ public final class MServerMain implements AutoCloseable
    *
    * @return A server instance
    *
-   * @throws IOException On errors
+   * @throws IOException  On errors
+   * @throws SQLException On database errors
    */
 
   public static MServerMain create(
     final MServerConfiguration configuration,
     final MDatabase database)
-    throws IOException
+    throws IOException, SQLException
+  {
+    return createWith(configuration, database, Optional.empty());
+  }
+
+  /**
+   * Create a server that delivers announcements directly to the given
+   * in-process message bus.
+   *
+   * @param configuration The server configuration
+   * @param database      The database
+   * @param bus           The message bus
+   *
+   * @return A server instance
+   *
+   * @throws IOException  On errors
+   * @throws SQLException On database errors
+   */
+
+  public static MServerMain create(
+    final MServerConfiguration configuration,
+    final MDatabase database,
+    final MMessageBus bus)
+    throws IOException, SQLException
+  {
+    Objects.requireNonNull(bus, "bus");
+    return createWith(configuration, database, Optional.of(bus));
+  }
+
+  private static MServerMain createWith(
+    final MServerConfiguration configuration,
+    final MDatabase database,
+    final Optional<MMessageBus> bus)
+    throws IOException, SQLException
   {
     Objects.requireNonNull(configuration, "configuration");
     Objects.requireNonNull(database, "database");
 
     final var publicThreadPool =
-      new QueuedThreadPool(4, 1);
+      createThreadPool("public", configuration.publicThreadPool());
     final var privateThreadPool =
-      new QueuedThreadPool(4, 1);
+      createThreadPool("private", configuration.privateThreadPool());
 
     final var publicServer =
       new Server(publicThreadPool);
     final var privateServer =
       new Server(privateThreadPool);
 
+    final var catalog =
+      MStreamCatalog.create(database);
+    final var liveRegistry =
+      MStreamLiveRegistry.create(database);
     final var mq =
-      MMessageService.create(database);
+      bus.isPresent()
+        ? MMessageService.create(database, bus.get())
+        : MMessageService.create(database);
+
+    final var eventHub =
+      MEventHub.create(
+        MEventHub.DEFAULT_RETAINED,
+        MEventHub.DEFAULT_SUBSCRIBER_BUFFER
+      );
+    mq.observe(message -> MEventSources.messageDelivered(eventHub, message));
+    catalog.observe((previous, current) -> {
+      MEventSources.catalogChanged(eventHub, previous, current);
+    });
 
-    final var pages = new MPubPages(configuration.locale());
+    final var assets = MPubAssets.load();
+    final var pages = new MPubPages(configuration.locale(), assets);
     final var httpConfig = new HttpConfiguration();
     httpConfig.setSendServerVersion(false);
     httpConfig.setSendXPoweredBy(false);
 
     createPublicConnectors(configuration, publicServer, httpConfig);
-    createPublicHandlers(configuration, publicServer, pages, database);
-    createPrivateHandlers(configuration, privateServer, database, mq);
+    final var dashboard =
+      MPubDashboard.create(catalog, liveRegistry);
+
+    createPublicHandlers(
+      configuration,
+      publicServer,
+      pages,
+      database,
+      catalog,
+      liveRegistry,
+      dashboard
+    );
+    final var privateAdmission =
+      MPrivHandlers.create(
+        configuration,
+        privateServer,
+        database,
+        catalog,
+        liveRegistry,
+        eventHub,
+        mq
+      );
     createPrivateConnectors(configuration, privateServer, httpConfig);
 
     return new MServerMain(
       configuration,
       publicServer,
       privateServer,
-      mq
+      mq,
+      catalog,
+      liveRegistry,
+      eventHub,
+      dashboard,
+      privateAdmission
     );
   }
 
-  private static void createPrivateHandlers(
-    final MServerConfiguration configuration,
-    final Server server,
-    final MDatabase database,
-    final MMessageService messageService)
+  private static QueuedThreadPool createThreadPool(
+    final String name,
+    final MServerThreadPoolConfiguration configuration)
   {
-    final var contextRoot =
-      new ContextHandler("/");
-    contextRoot.setHandler(
-      new MPrivRootHandler());
-
-    final var contextUserPut =
-      new ContextHandler("/user-put");
-    contextUserPut.setHandler(
-      new MPrivUserPutHandler(configuration, database));
-
-    final var contextUserList =
-      new ContextHandler("/user-list");
-    contextUserList.setHandler(
-      new MPrivUserListHandler(configuration, database));
-
-    final var contextStreamPut =
-      new ContextHandler("/stream-put");
-    contextStreamPut.setHandler(
-      new MPrivStreamPutHandler(configuration, database));
-
-    final var contextStreamList =
-      new ContextHandler("/stream-list");
-    contextStreamList.setHandler(
-      new MPrivStreamListHandler(configuration, database));
-
-    final var contextStreamAddressPut =
-      new ContextHandler("/stream-address-put");
-    contextStreamAddressPut.setHandler(
-      new MPrivStreamAddressPutHandler(configuration, database));
-
-    final var contextStreamDelete =
-      new ContextHandler("/stream-delete");
-    contextStreamDelete.setHandler(
-      new MPrivStreamDeleteHandler(configuration, database));
-
-    final var contextStreamStart =
-      new ContextHandler("/stream-start");
-    contextStreamStart.setHandler(
-      new MPrivStreamStartHandler(configuration, messageService, database));
-
-    final var contextStreamStop =
-      new ContextHandler("/stream-stop");
-    contextStreamStop.setHandler(
-      new MPrivStreamStopHandler(configuration, messageService, database));
-
-    final var contextMqPut =
-      new ContextHandler("/mq-put");
-    contextMqPut.setHandler(
-      new MPrivMessageQueuePutHandler(configuration, messageService, database));
-
-    final var contexts = new ContextHandlerCollection();
-    contexts.setHandlers(new Handler[]{
-      contextRoot,
-      contextUserPut,
-      contextUserList,
-      contextStreamPut,
-      contextStreamList,
-      contextStreamAddressPut,
-      contextStreamDelete,
-      contextStreamStart,
-      contextStreamStop,
-      contextMqPut,
-    });
-    server.setErrorHandler(new MPrivErrorHandler());
-    server.setHandler(contexts);
+    final var idleMillis =
+      Math.toIntExact(configuration.idleTimeout().toMillis());
+    final var queue =
+      new BlockingArrayQueue<Runnable>(
+        Math.min(configuration.queueCapacity(), 128),
+        128,
+        configuration.queueCapacity()
+      );
+
+    final var pool =
+      new QueuedThreadPool(
+        configuration.maximum(),
+        configuration.minimum(),
+        idleMillis,
+        queue
+      );
+
+    pool.setName("mesquida-" + name);
+
+    if (configuration.kind() == MServerThreadPoolKind.VIRTUAL) {
+      if (!VirtualThreads.areSupported()) {
+        throw new IllegalStateException(
+          "Virtual threads are not supported by this JVM");
+      }
+      pool.setVirtualThreadsExecutor(
+        VirtualThreads.getDefaultVirtualThreadsExecutor());
+    }
+
+    LOG.debug(
+      "{} thread pool: {} (minimum {}, maximum {}, queue {})",
+      name,
+      configuration.kind(),
+      Integer.valueOf(configuration.minimum()),
+      Integer.valueOf(configuration.maximum()),
+      Integer.valueOf(configuration.queueCapacity())
+    );
+    return pool;
   }
 
   private static void createPublicHandlers(
     final MServerConfiguration configuration,
     final Server server,
     final MPubPages pages,
-    final MDatabase database)
+    final MDatabase database,
+    final MStreamCatalog catalog,
+    final MStreamLiveRegistry liveRegistry,
+    final MPubDashboard dashboard)
   {
     /*
      * Set up a servlet container.
      */
 
     final var servlets = new ServletContextHandler();
+    JettyWebSocketServletContainerInitializer.configure(servlets, null);
 
     servlets.addServlet(
       new MPubServletHolder<>(
-        MPubRootHandler.class, () -> new MPubRootHandler(pages, database)),
+        MPubRootHandler.class,
+        () -> new MPubRootHandler(pages, database, catalog, liveRegistry)),
       "/"
     );
 
     servlets.addServlet(
       new MPubServletHolder<>(
-        MPubStaticHandler.class, MPubStaticHandler::new),
+        MPubStaticHandler.class,
+        () -> new MPubStaticHandler(pages.assets())),
       "/static/*"
     );
 
     servlets.addServlet(
       new MPubServletHolder<>(
         MPubStreamEditHandler.class,
-        () -> new MPubStreamEditHandler(pages, database)),
+        () -> new MPubStreamEditHandler(pages, database, catalog)),
       "/stream-edit/"
     );
 
+    servlets.addServlet(
+      new MPubServletHolder<>(
+        MPubDashboardServlet.class,
+        () -> new MPubDashboardServlet(dashboard)),
+      "/dashboard/"
+    );
+
     /*
      * Set up a session handler that allows for Servlets to have sessions
      * that can survive server restarts.
@@ -274,7 +357,19 @@ public final class MServerMain implements AutoCloseable
 
     final var statsHandler = new StatisticsHandler();
     statsHandler.setHandler(sessionHandler);
-    server.setHandler(statsHandler);
+
+    /*
+     * Compress responses in front of the statistics handler. Static assets
+     * are served precompressed, and are therefore excluded.
+     */
+
+    server.setHandler(
+      MServerCompression.wrap(
+        configuration.publicCompression(),
+        statsHandler,
+        "/static/*"
+      )
+    );
   }
 
   private static void createPrivateConnectors(
@@ -341,6 +436,51 @@ public final class MServerMain implements AutoCloseable
     });
   }
 
+  /**
+   * @return The stream catalog
+   */
+
+  public MStreamCatalog catalog()
+  {
+    return this.catalog;
+  }
+
+  /**
+   * @return The live stream registry
+   */
+
+  public MStreamLiveRegistry liveRegistry()
+  {
+    return this.liveRegistry;
+  }
+
+  /**
+   * @return The event feed statistics
+   */
+
+  public MEventStatisticsType eventFeed()
+  {
+    return this.eventHub;
+  }
+
+  /**
+   * @return The live dashboard statistics
+   */
+
+  public MPubDashboardStatisticsType dashboard()
+  {
+    return this.dashboard;
+  }
+
+  /**
+   * @return The private API admission statistics
+   */
+
+  public MPrivAdmissionStatisticsType privateAdmission()
+  {
+    return this.privateAdmission.statistics();
+  }
+
   /**
    * Start the web server(s).
    *
@@ -369,6 +509,10 @@ public final class MServerMain implements AutoCloseable
   public void close()
     throws Exception
   {
+    LOG.debug("closing event feed");
+    this.eventHub.close();
+    LOG.debug("closing dashboard");
+    this.dashboard.close();
     LOG.debug("stopping private server");
     this.serverPrivate.stop();
     LOG.debug("stopping public server");
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The thread pool configuration for a single web server.
+ *
+ * @param kind          The kind of thread pool
+ * @param minimum       The minimum number of platform threads
+ * @param maximum       The maximum number of platform threads
+ * @param idleTimeout   The time after which idle threads above the minimum
+ *                      are stopped
+ * @param queueCapacity The maximum number of jobs that may wait for a thread
+ */
+
+public record MServerThreadPoolConfiguration(
+  MServerThreadPoolKind kind,
+  int minimum,
+  int maximum,
+  Duration idleTimeout,
+  int queueCapacity)
+{
+  /**
+   * The thread pool configuration for a single web server.
+   *
+   * @param kind          The kind of thread pool
+   * @param minimum       The minimum number of platform threads
+   * @param maximum       The maximum number of platform threads
+   * @param idleTimeout   The time after which idle threads above the
+   *                      minimum are stopped
+   * @param queueCapacity The maximum number of jobs that may wait for a
+   *                      thread
+   */
+
+  public MServerThreadPoolConfiguration
+  {
+    Objects.requireNonNull(kind, "kind");
+    Objects.requireNonNull(idleTimeout, "idleTimeout");
+
+    if (minimum < 1) {
+      throw new IllegalArgumentException(
+        "Thread pool minimum size must be positive");
+    }
+    if (minimum > maximum) {
+      throw new IllegalArgumentException(
+        "Thread pool minimum size must not exceed the maximum size");
+    }
+    if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+      throw new IllegalArgumentException(
+        "Thread pool idle timeout must be positive");
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException(
+        "Thread pool queue capacity must be positive");
+    }
+  }
+
+  /**
+   * @return The default thread pool configuration
+   */
+
+  public static MServerThreadPoolConfiguration defaults()
+  {
+    return new MServerThreadPoolConfiguration(
+      MServerThreadPoolKind.PLATFORM,
+      2,
+      32,
+      Duration.ofMinutes(1L),
+      1024
+    );
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.actor;
+
+import com.io7m.mesquida.internal.MManagementBeans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.io7m.mesquida.internal.actor.MActorDirectiveKind.CONTINUE;
+import static com.io7m.mesquida.internal.actor.MActorDirectiveKind.RESTART_AFTER_BACKOFF;
+
+/**
+ * A supervised actor. The actor owns a single thread that sets up the
+ * behaviour's resources, and then blocks waiting for commands. If the
+ * behaviour fails, its resources are released and set up again after an
+ * exponential backoff delay. Closing the actor interrupts its thread.
+ *
+ * @param <C> The type of commands
+ */
+
+public final class MActor<C> implements AutoCloseable, MActorStatisticsType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MActor.class);
+
+  private static final Duration SHUTDOWN_TIMEOUT =
+    Duration.ofSeconds(5L);
+
+  private final String name;
+  private final MActorBehaviourType<C> behaviour;
+  private final MActorBackoff backoff;
+  private final ExecutorService executor;
+  private final LinkedBlockingQueue<C> commands;
+  private final AtomicBoolean done;
+  private final AtomicReference<MActorHealthKind> health;
+  private final AtomicLong commandsProcessed;
+  private final AtomicLong processingTimeTotal;
+  private final AtomicLong processingTimeMaximum;
+  private final AtomicLong restarts;
+  private final AtomicLong failures;
+  private final AtomicInteger consecutiveFailures;
+  private final AutoCloseable registration;
+
+  private MActor(
+    final String inName,
+    final MActorBehaviourType<C> inBehaviour,
+    final MActorBackoff inBackoff)
+  {
+    this.name =
+      Objects.requireNonNull(inName, "name");
+    this.behaviour =
+      Objects.requireNonNull(inBehaviour, "behaviour");
+    this.backoff =
+      Objects.requireNonNull(inBackoff, "backoff");
+
+    this.executor =
+      Executors.newSingleThreadExecutor(r -> {
+        final var thread = new Thread(r);
+        thread.setName(
+          "com.io7m.mesquida.%s[%d]".formatted(inName, thread.getId()));
+        thread.setDaemon(true);
+        return thread;
+      });
+
+    this.commands =
+      new LinkedBlockingQueue<>();
+    this.done =
+      new AtomicBoolean(false);
+    this.health =
+      new AtomicReference<>(MActorHealthKind.STARTING);
+    this.commandsProcessed =
+      new AtomicLong();
+    this.processingTimeTotal =
+      new AtomicLong();
+    this.processingTimeMaximum =
+      new AtomicLong();
+    this.restarts =
+      new AtomicLong();
+    this.failures =
+      new AtomicLong();
+    this.consecutiveFailures =
+      new AtomicInteger();
+    this.registration =
+      MManagementBeans.register("Actor", inName, this);
+  }
+
+  /**
+   * Create and start an actor.
+   *
+   * @param name      The actor name, used for thread and management bean names
+   * @param behaviour The actor behaviour
+   * @param backoff   The backoff policy
+   * @param <C>       The type of commands
+   *
+   * @return A running actor
+   */
+
+  public static <C> MActor<C> create(
+    final String name,
+    final MActorBehaviourType<C> behaviour,
+    final MActorBackoff backoff)
+  {
+    final var actor = new MActor<>(name, behaviour, backoff);
+    actor.executor.execute(actor::run);
+    return actor;
+  }
+
+  /**
+   * Create and start an actor using the default backoff policy.
+   *
+   * @param name      The actor name, used for thread and management bean names
+   * @param behaviour The actor behaviour
+   * @param <C>       The type of commands
+   *
+   * @return A running actor
+   */
+
+  public static <C> MActor<C> create(
+    final String name,
+    final MActorBehaviourType<C> behaviour)
+  {
+    return create(name, behaviour, MActorBackoff.defaults());
+  }
+
+  /**
+   * Submit a command to the actor. Commands are processed in submission
+   * order.
+   *
+   * @param command The command
+   */
+
+  public void send(
+    final C command)
+  {
+    this.commands.add(Objects.requireNonNull(command, "command"));
+  }
+
+  /**
+   * @return The current health of the actor
+   */
+
+  public MActorHealthKind health()
+  {
+    return this.health.get();
+  }
+
+  /**
+   * @return {@code true} if the actor has been closed
+   */
+
+  public boolean isClosed()
+  {
+    return this.done.get();
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.done.compareAndSet(false, true)) {
+      this.executor.shutdownNow();
+      try {
+        if (!this.executor.awaitTermination(
+          SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+          LOG.warn("{}: actor did not stop in time", this.name);
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      try {
+        this.registration.close();
+      } catch (final Exception e) {
+        LOG.error("{}: error closing statistics: ", this.name, e);
+      }
+    }
+  }
+
+  private void run()
+  {
+    while (!this.done.get()) {
+      this.health.set(MActorHealthKind.STARTING);
+
+      try {
+        this.behaviour.onStart();
+      } catch (final InterruptedException e) {
+        this.stopBehaviour();
+        break;
+      } catch (final Exception e) {
+        this.stopBehaviour();
+        if (this.done.get()) {
+          break;
+        }
+        LOG.error("{}: unable to start: ", this.name, e);
+        this.failed();
+        continue;
+      }
+
+      this.health.set(MActorHealthKind.RUNNING);
+      final var startedAt = System.nanoTime();
+      final var directive = this.processCommands();
+      this.stopBehaviour();
+
+      if (this.done.get()) {
+        break;
+      }
+
+      this.restarts.incrementAndGet();
+      if (directive == RESTART_AFTER_BACKOFF) {
+        final var ran = Duration.ofNanos(System.nanoTime() - startedAt);
+        if (ran.compareTo(this.backoff.stableAfter()) >= 0) {
+          this.consecutiveFailures.set(0);
+        }
+        this.failed();
+      } else {
+        this.consecutiveFailures.set(0);
+      }
+    }
+
+    this.health.set(MActorHealthKind.STOPPED);
+  }
+
+  private MActorDirectiveKind processCommands()
+  {
+    try {
+      var wait = this.behaviour.onIdle();
+      while (!this.done.get()) {
+        final var command = this.waitForCommand(wait);
+        if (command != null) {
+          final var directive = this.processCommand(command);
+          if (directive != CONTINUE) {
+            return directive;
+          }
+        }
+        wait = this.behaviour.onIdle();
+      }
+      return CONTINUE;
+    } catch (final InterruptedException e) {
+      return CONTINUE;
+    } catch (final Exception e) {
+      if (!this.done.get()) {
+        LOG.error("{}: failed: ", this.name, e);
+      }
+      return RESTART_AFTER_BACKOFF;
+    }
+  }
+
+  private C waitForCommand(
+    final Optional<Duration> wait)
+    throws InterruptedException
+  {
+    if (wait.isPresent()) {
+      return this.commands.poll(wait.get().toNanos(), TimeUnit.NANOSECONDS);
+    }
+    return this.commands.take();
+  }
+
+  private MActorDirectiveKind processCommand(
+    final C command)
+    throws Exception
+  {
+    final var timeThen = System.nanoTime();
+    try {
+      return this.behaviour.onCommand(command);
+    } finally {
+      final var micros =
+        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - timeThen);
+      this.commandsProcessed.incrementAndGet();
+      this.processingTimeTotal.addAndGet(micros);
+      this.processingTimeMaximum.accumulateAndGet(micros, Math::max);
+    }
+  }
+
+  private void stopBehaviour()
+  {
+    /*
+     * The thread may have been interrupted by close(); clear the flag so
+     * that resources can be released cleanly.
+     */
+
+    final var interrupted = Thread.interrupted();
+    try {
+      this.behaviour.onStop();
+    } catch (final Exception e) {
+      LOG.error("{}: error stopping: ", this.name, e);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void failed()
+  {
+    if (this.done.get()) {
+      return;
+    }
+
+    this.failures.incrementAndGet();
+    final var count =
+      this.consecutiveFailures.incrementAndGet();
+    final var delay =
+      this.backoff.delayFor(count, ThreadLocalRandom.current());
+
+    LOG.info(
+      "{}: retrying in {}ms (failure {})",
+      this.name,
+      Long.valueOf(delay.toMillis()),
+      Integer.valueOf(count)
+    );
+
+    this.health.set(MActorHealthKind.BACKING_OFF);
+    try {
+      Thread.sleep(delay.toMillis());
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public String getHealth()
+  {
+    return this.health.get().name();
+  }
+
+  @Override
+  public long getQueueDepth()
+  {
+    return this.commands.size();
+  }
+
+  @Override
+  public long getCommandsProcessed()
+  {
+    return this.commandsProcessed.get();
+  }
+
+  @Override
+  public long getProcessingTimeTotalMicros()
+  {
+    return this.processingTimeTotal.get();
+  }
+
+  @Override
+  public long getProcessingTimeMaximumMicros()
+  {
+    return this.processingTimeMaximum.get();
+  }
+
+  @Override
+  public long getRestarts()
+  {
+    return this.restarts.get();
+  }
+
+  @Override
+  public long getFailures()
+  {
+    return this.failures.get();
+  }
+
+  @Override
+  public int getConsecutiveFailures()
+  {
+    return this.consecutiveFailures.get();
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.actor;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * An exponential backoff policy with jitter. After {@code n} consecutive
+ * failures, an actor waits for a random duration between half of and all of
+ * {@code min(maximum, initial * 2^(n-1))}, so that services that failed at
+ * the same moment do not all retry at the same moment.
+ *
+ * @param initial     The delay after the first failure
+ * @param maximum     The maximum delay
+ * @param stableAfter The time an actor must run without failing before the
+ *                    delay is reset to the initial delay
+ */
+
+public record MActorBackoff(
+  Duration initial,
+  Duration maximum,
+  Duration stableAfter)
+{
+  /**
+   * An exponential backoff policy with jitter. After {@code n} consecutive
+   * failures, an actor waits for a random duration between half of and all
+   * of {@code min(maximum, initial * 2^(n-1))}, so that services that failed
+   * at the same moment do not all retry at the same moment.
+   *
+   * @param initial     The delay after the first failure
+   * @param maximum     The maximum delay
+   * @param stableAfter The time an actor must run without failing before the
+   *                    delay is reset to the initial delay
+   */
+
+  public MActorBackoff
+  {
+    Objects.requireNonNull(initial, "initial");
+    Objects.requireNonNull(maximum, "maximum");
+    Objects.requireNonNull(stableAfter, "stableAfter");
+
+    if (!initial.isPositive()) {
+      throw new IllegalArgumentException(
+        "Initial delay must be positive: " + initial);
+    }
+    if (maximum.compareTo(initial) < 0) {
+      throw new IllegalArgumentException(
+        "Maximum delay %s must be >= initial delay %s"
+          .formatted(maximum, initial));
+    }
+  }
+
+  /**
+   * @return The default backoff policy
+   */
+
+  public static MActorBackoff defaults()
+  {
+    return new MActorBackoff(
+      Duration.ofSeconds(1L),
+      Duration.ofMinutes(1L),
+      Duration.ofSeconds(30L)
+    );
+  }
+
+  /**
+   * Calculate the delay after the given number of consecutive failures.
+   *
+   * @param failures The number of consecutive failures (at least 1)
+   * @param random   A random number generator
+   *
+   * @return The delay
+   */
+
+  public Duration delayFor(
+    final int failures,
+    final RandomGenerator random)
+  {
+    Objects.requireNonNull(random, "random");
+
+    final var initialMs = this.initial.toMillis();
+    final var maximumMs = this.maximum.toMillis();
+    final var shift = Math.min(Math.max(failures - 1, 0), 30);
+
+    long ceiling = initialMs << shift;
+    if (ceiling <= 0L || ceiling > maximumMs) {
+      ceiling = maximumMs;
+    }
+
+    final var half = ceiling / 2L;
+    return Duration.ofMillis(half + random.nextLong(ceiling - half + 1L));
+  }
+}
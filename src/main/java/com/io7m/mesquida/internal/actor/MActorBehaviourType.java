@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.actor;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The behaviour of a supervised actor. All methods are called on the actor's
+ * own thread, so implementations do not need to synchronize their state.
+ *
+ * @param <C> The type of commands
+ */
+
+public interface MActorBehaviourType<C>
+{
+  /**
+   * Set up any resources the actor requires. If this method raises an
+   * exception, {@link #onStop()} is called and the actor backs off before
+   * calling this method again.
+   *
+   * @throws Exception On errors
+   */
+
+  void onStart()
+    throws Exception;
+
+  /**
+   * Process a command.
+   *
+   * @param command The command
+   *
+   * @return The directive indicating what the actor should do next
+   *
+   * @throws Exception On errors; the actor restarts after a backoff delay
+   */
+
+  MActorDirectiveKind onCommand(C command)
+    throws Exception;
+
+  /**
+   * Perform any periodic work. This is called once after the actor has
+   * started, after each command, and whenever the previously requested
+   * delay has elapsed without a command arriving.
+   *
+   * @return The maximum time to wait for a command before calling this method
+   * again, or nothing if the actor should wait indefinitely
+   *
+   * @throws Exception On errors; the actor restarts after a backoff delay
+   */
+
+  default Optional<Duration> onIdle()
+    throws Exception
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * Release any resources the actor holds. This method is called before each
+   * restart, and when the actor is closed.
+   */
+
+  void onStop();
+}
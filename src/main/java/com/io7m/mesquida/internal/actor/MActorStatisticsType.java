@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.actor;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for a supervised actor.
+ */
+
+@MXBean
+public interface MActorStatisticsType
+{
+  /**
+   * @return The current health of the actor
+   */
+
+  String getHealth();
+
+  /**
+   * @return The number of commands waiting to be processed
+   */
+
+  long getQueueDepth();
+
+  /**
+   * @return The number of commands processed
+   */
+
+  long getCommandsProcessed();
+
+  /**
+   * @return The total time spent processing commands in microseconds
+   */
+
+  long getProcessingTimeTotalMicros();
+
+  /**
+   * @return The longest time spent processing a single command in
+   * microseconds
+   */
+
+  long getProcessingTimeMaximumMicros();
+
+  /**
+   * @return The number of times the actor has restarted
+   */
+
+  long getRestarts();
+
+  /**
+   * @return The number of times the actor has failed
+   */
+
+  long getFailures();
+
+  /**
+   * @return The number of failures since the actor last ran stably
+   */
+
+  int getConsecutiveFailures();
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.catalog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * An immutable snapshot of the stream catalog.
+ */
+
+public final class MCatalogSnapshot
+{
+  private static final MCatalogSnapshot EMPTY =
+    new MCatalogSnapshot(List.of(), 0L);
+
+  private final List<MCatalogStream> streams;
+  private final long version;
+  private final Map<String, MCatalogStream> streamsByName;
+  private final Map<String, List<MCatalogStream>> streamsByOwner;
+
+  /**
+   * Construct a snapshot.
+   *
+   * @param inStreams The streams, in ascending ID order
+   * @param inVersion The catalog version
+   */
+
+  public MCatalogSnapshot(
+    final List<MCatalogStream> inStreams,
+    final long inVersion)
+  {
+    this.version = inVersion;
+    this.streams =
+      List.copyOf(Objects.requireNonNull(inStreams, "streams"));
+
+    final var byName =
+      new HashMap<String, MCatalogStream>(this.streams.size());
+    final var byOwner =
+      new HashMap<String, List<MCatalogStream>>();
+
+    for (final var stream : this.streams) {
+      byName.put(stream.name(), stream);
+      byOwner.computeIfAbsent(stream.ownerName(), k -> new ArrayList<>())
+        .add(stream);
+    }
+
+    final var byOwnerFrozen =
+      new HashMap<String, List<MCatalogStream>>(byOwner.size());
+    for (final var entry : byOwner.entrySet()) {
+      byOwnerFrozen.put(entry.getKey(), List.copyOf(entry.getValue()));
+    }
+
+    this.streamsByName = Map.copyOf(byName);
+    this.streamsByOwner = Map.copyOf(byOwnerFrozen);
+  }
+
+  /**
+   * @return The catalog version; every reload of a catalog produces a
+   * snapshot with a greater version than the last
+   */
+
+  public long version()
+  {
+    return this.version;
+  }
+
+  /**
+   * @return An empty snapshot
+   */
+
+  public static MCatalogSnapshot empty()
+  {
+    return EMPTY;
+  }
+
+  /**
+   * @return All streams, in ascending ID order
+   */
+
+  public List<MCatalogStream> streams()
+  {
+    return this.streams;
+  }
+
+  /**
+   * Find all streams with IDs strictly greater than the given ID.
+   *
+   * @param streamId The stream ID
+   *
+   * @return The streams, in ascending ID order
+   */
+
+  public List<MCatalogStream> streamsAfter(
+    final int streamId)
+  {
+    return this.streams.subList(
+      this.indexAfter(streamId),
+      this.streams.size()
+    );
+  }
+
+  /**
+   * @return The index of the first stream with an ID strictly greater than
+   * the given ID, or the number of streams if there is no such stream
+   */
+
+  private int indexAfter(
+    final long streamId)
+  {
+    int low = 0;
+    int high = this.streams.size();
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (this.streams.get(middle).id() <= streamId) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Find a stream by ID.
+   *
+   * @param streamId The stream ID
+   *
+   * @return The stream, if one exists
+   */
+
+  public Optional<MCatalogStream> streamById(
+    final int streamId)
+  {
+    final var index = this.indexAfter((long) streamId - 1L);
+    if (index < this.streams.size()) {
+      final var stream = this.streams.get(index);
+      if (stream.id() == streamId) {
+        return Optional.of(stream);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Find a stream by name.
+   *
+   * @param name The stream name
+   *
+   * @return The stream, if one exists
+   */
+
+  public Optional<MCatalogStream> streamByName(
+    final String name)
+  {
+    Objects.requireNonNull(name, "name");
+    return Optional.ofNullable(this.streamsByName.get(name));
+  }
+
+  /**
+   * Find all streams owned by the given user.
+   *
+   * @param ownerName The user name
+   *
+   * @return The streams, in ascending ID order
+   */
+
+  public List<MCatalogStream> streamsOwnedBy(
+    final String ownerName)
+  {
+    Objects.requireNonNull(ownerName, "ownerName");
+    return this.streamsByOwner.getOrDefault(ownerName, List.of());
+  }
+}
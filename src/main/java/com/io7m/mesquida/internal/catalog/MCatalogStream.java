@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.catalog;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A stream in the catalog.
+ *
+ * @param id        The stream ID
+ * @param name      The stream name
+ * @param title     The stream title
+ * @param ownerId   The ID of the user that owns the stream
+ * @param ownerName The name of the user that owns the stream
+ * @param addresses The stream addresses, in ascending ID order
+ */
+
+public record MCatalogStream(
+  int id,
+  String name,
+  String title,
+  int ownerId,
+  String ownerName,
+  List<MCatalogStreamAddress> addresses)
+{
+  /**
+   * A stream in the catalog.
+   *
+   * @param id        The stream ID
+   * @param name      The stream name
+   * @param title     The stream title
+   * @param ownerId   The ID of the user that owns the stream
+   * @param ownerName The name of the user that owns the stream
+   * @param addresses The stream addresses, in ascending ID order
+   */
+
+  public MCatalogStream
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(title, "title");
+    Objects.requireNonNull(ownerName, "ownerName");
+    addresses = List.copyOf(addresses);
+  }
+
+  /**
+   * @return The stream addresses as a map of protocols to URLs
+   */
+
+  public Map<String, URI> addressMap()
+  {
+    final var addressMap = new HashMap<String, URI>(this.addresses.size());
+    for (final var address : this.addresses) {
+      addressMap.put(address.protocol(), address.url());
+    }
+    return addressMap;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.catalog;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * A stream address in the catalog.
+ *
+ * @param id       The address ID
+ * @param protocol The address protocol
+ * @param url      The address URL
+ */
+
+public record MCatalogStreamAddress(
+  int id,
+  String protocol,
+  URI url)
+{
+  /**
+   * A stream address in the catalog.
+   *
+   * @param id       The address ID
+   * @param protocol The address protocol
+   * @param url      The address URL
+   */
+
+  public MCatalogStreamAddress
+  {
+    Objects.requireNonNull(protocol, "protocol");
+    Objects.requireNonNull(url, "url");
+  }
+}
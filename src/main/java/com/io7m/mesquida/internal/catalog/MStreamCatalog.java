@@ -0,0 +1,236 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.catalog;
+
+import com.io7m.mesquida.internal.database.MDatabase;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import static com.io7m.mesquida.internal.database.Tables.STREAMS;
+import static com.io7m.mesquida.internal.database.Tables.STREAM_ADDRESSES;
+import static com.io7m.mesquida.internal.database.Tables.USERS;
+
+/**
+ * An in-memory catalog of streams and their addresses. Readers observe an
+ * immutable snapshot and never touch the database; writers must call
+ * {@link #reload()} after committing any change to the streams or their
+ * addresses.
+ */
+
+public final class MStreamCatalog
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MStreamCatalog.class);
+
+  private final MDatabase database;
+  private final String epoch;
+  private final Object reloadLock;
+  private final CopyOnWriteArrayList<
+    BiConsumer<MCatalogSnapshot, MCatalogSnapshot>> observers;
+  private volatile MCatalogSnapshot snapshot;
+
+  private MStreamCatalog(
+    final MDatabase inDatabase)
+  {
+    this.database =
+      Objects.requireNonNull(inDatabase, "database");
+    this.epoch =
+      Long.toString(System.currentTimeMillis(), 36);
+    this.reloadLock =
+      new Object();
+    this.observers =
+      new CopyOnWriteArrayList<>();
+    this.snapshot =
+      MCatalogSnapshot.empty();
+  }
+
+  /**
+   * Create a catalog, loading the initial snapshot from the database.
+   *
+   * @param database The database
+   *
+   * @return A catalog
+   *
+   * @throws SQLException On database errors
+   */
+
+  public static MStreamCatalog create(
+    final MDatabase database)
+    throws SQLException
+  {
+    final var catalog = new MStreamCatalog(database);
+    catalog.reload();
+    return catalog;
+  }
+
+  /**
+   * @return A string unique to this catalog instance; snapshot versions
+   * are only comparable between snapshots with the same epoch
+   */
+
+  public String epoch()
+  {
+    return this.epoch;
+  }
+
+  /**
+   * @return The current catalog snapshot
+   */
+
+  public MCatalogSnapshot snapshot()
+  {
+    return this.snapshot;
+  }
+
+  /**
+   * Observe catalog changes. Observers are called with the previous and
+   * the new snapshot after every reload, in reload order, on the reloading
+   * thread.
+   *
+   * @param observer The observer
+   *
+   * @return A handle that removes the observer when closed
+   */
+
+  public AutoCloseable observe(
+    final BiConsumer<MCatalogSnapshot, MCatalogSnapshot> observer)
+  {
+    Objects.requireNonNull(observer, "observer");
+    this.observers.add(observer);
+    return () -> this.observers.remove(observer);
+  }
+
+  /**
+   * Reload the catalog from the database. Reloads are serialized so that a
+   * snapshot read later is never replaced by one read earlier. Every reload
+   * increments the catalog version, and so every handler that modifies
+   * users or streams must call this after committing.
+   *
+   * @throws SQLException On database errors
+   */
+
+  public void reload()
+    throws SQLException
+  {
+    synchronized (this.reloadLock) {
+      final var previous = this.snapshot;
+      final var current = this.load(previous.version() + 1L);
+      this.snapshot = current;
+
+      for (final var observer : this.observers) {
+        try {
+          observer.accept(previous, current);
+        } catch (final Exception e) {
+          LOG.error("catalog observer failed: ", e);
+        }
+      }
+    }
+  }
+
+  private static MCatalogStream streamOf(
+    final Record row,
+    final List<MCatalogStreamAddress> addresses)
+  {
+    return new MCatalogStream(
+      row.get(STREAMS.STREAM_ID).intValue(),
+      row.get(STREAMS.STREAM_NAME),
+      row.get(STREAMS.STREAM_TITLE),
+      row.get(STREAMS.STREAM_OWNER).intValue(),
+      row.get(USERS.USER_NAME),
+      addresses
+    );
+  }
+
+  private MCatalogSnapshot load(
+    final long version)
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      try {
+        final var context =
+          DSL.using(connection, SQLDialect.DERBY);
+
+        final var query =
+          context.select(
+              STREAMS.STREAM_ID,
+              STREAMS.STREAM_NAME,
+              STREAMS.STREAM_TITLE,
+              STREAMS.STREAM_OWNER,
+              USERS.USER_NAME,
+              STREAM_ADDRESSES.STREAM_ADDRESS_ID,
+              STREAM_ADDRESSES.STREAM_PROTOCOL,
+              STREAM_ADDRESSES.STREAM_URL)
+            .from(STREAMS)
+            .join(USERS)
+            .on(STREAMS.STREAM_OWNER.eq(USERS.USER_ID))
+            .leftJoin(STREAM_ADDRESSES)
+            .on(STREAM_ADDRESSES.STREAM_REFERENCE.eq(STREAMS.STREAM_ID))
+            .orderBy(STREAMS.STREAM_ID, STREAM_ADDRESSES.STREAM_ADDRESS_ID);
+
+        /*
+         * The rows arrive grouped by stream, so each stream can be completed
+         * as soon as a row for the next stream is seen.
+         */
+
+        final var streams = new ArrayList<MCatalogStream>();
+        try (var cursor = query.fetchLazy()) {
+          Record current = null;
+          var addresses = new ArrayList<MCatalogStreamAddress>();
+
+          for (final var row : cursor) {
+            final var streamId = row.get(STREAMS.STREAM_ID);
+            if (current != null
+                && !streamId.equals(current.get(STREAMS.STREAM_ID))) {
+              streams.add(streamOf(current, addresses));
+              addresses = new ArrayList<>();
+            }
+
+            current = row;
+            final var addressId = row.get(STREAM_ADDRESSES.STREAM_ADDRESS_ID);
+            if (addressId != null) {
+              addresses.add(new MCatalogStreamAddress(
+                addressId.intValue(),
+                row.get(STREAM_ADDRESSES.STREAM_PROTOCOL),
+                URI.create(row.get(STREAM_ADDRESSES.STREAM_URL))
+              ));
+            }
+          }
+
+          if (current != null) {
+            streams.add(streamOf(current, addresses));
+          }
+        }
+
+        LOG.debug("loaded {} streams", Integer.valueOf(streams.size()));
+        return new MCatalogSnapshot(streams, version);
+      } finally {
+        connection.rollback();
+      }
+    }
+  }
+}
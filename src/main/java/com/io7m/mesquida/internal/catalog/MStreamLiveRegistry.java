@@ -0,0 +1,380 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.catalog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.io7m.mesquida.internal.database.MDatabase;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static com.io7m.mesquida.internal.database.Tables.STREAM_LIVE;
+
+/**
+ * A registry of live streams. Queries are answered from memory; every
+ * change is written to the stream_live journal table before it becomes
+ * visible, and the registry is restored from that table when it is
+ * created.
+ */
+
+public final class MStreamLiveRegistry
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MStreamLiveRegistry.class);
+
+  private static final TypeReference<TreeMap<String, String>> ADDRESSES =
+    new TypeReference<>()
+    {
+    };
+
+  private final MDatabase database;
+  private final Clock clock;
+  private final ObjectMapper mapper;
+  private final Object writeLock;
+  private final ConcurrentHashMap<String, MStreamLiveState> live;
+  private final AtomicLong version;
+  private final CopyOnWriteArrayList<
+    BiConsumer<String, Optional<MStreamLiveState>>> observers;
+
+  private MStreamLiveRegistry(
+    final MDatabase inDatabase)
+  {
+    this.database =
+      Objects.requireNonNull(inDatabase, "database");
+    this.clock =
+      Clock.systemUTC();
+    this.mapper =
+      new ObjectMapper();
+    this.writeLock =
+      new Object();
+    this.live =
+      new ConcurrentHashMap<>();
+    this.version =
+      new AtomicLong(0L);
+    this.observers =
+      new CopyOnWriteArrayList<>();
+  }
+
+  /**
+   * Create a registry, restoring the live streams from the database.
+   *
+   * @param database The database
+   *
+   * @return A registry
+   *
+   * @throws SQLException On database errors
+   */
+
+  public static MStreamLiveRegistry create(
+    final MDatabase database)
+    throws SQLException
+  {
+    final var registry = new MStreamLiveRegistry(database);
+    registry.restore();
+    return registry;
+  }
+
+  /**
+   * @param name The stream name
+   *
+   * @return The state of the stream, if it is live
+   */
+
+  public Optional<MStreamLiveState> status(
+    final String name)
+  {
+    return Optional.ofNullable(this.live.get(name));
+  }
+
+  /**
+   * @return The number of changes made to the registry since it was
+   * created, including heartbeats
+   */
+
+  public long version()
+  {
+    return this.version.get();
+  }
+
+  /**
+   * @return The live streams, sorted by name
+   */
+
+  public List<MStreamLiveState> liveStreams()
+  {
+    return this.live.values()
+      .stream()
+      .sorted(Comparator.comparing(MStreamLiveState::name))
+      .toList();
+  }
+
+  /**
+   * Observe streams starting and ending. Observers are called with the
+   * stream name and its new state (or nothing if it has ended), in the
+   * order the changes were made, on the changing thread. Heartbeats are
+   * not reported.
+   *
+   * @param observer The observer
+   *
+   * @return A handle that removes the observer when closed
+   */
+
+  public AutoCloseable observe(
+    final BiConsumer<String, Optional<MStreamLiveState>> observer)
+  {
+    Objects.requireNonNull(observer, "observer");
+    this.observers.add(observer);
+    return () -> this.observers.remove(observer);
+  }
+
+  private void notifyObservers(
+    final String name,
+    final Optional<MStreamLiveState> state)
+  {
+    for (final var observer : this.observers) {
+      try {
+        observer.accept(name, state);
+      } catch (final Exception e) {
+        LOG.error("live stream observer failed: ", e);
+      }
+    }
+  }
+
+  /**
+   * Record that a stream has started. If the stream is already live, this
+   * is treated as a heartbeat that also replaces the announced addresses.
+   *
+   * @param name      The stream name
+   * @param addresses The announced addresses
+   *
+   * @return The state of the stream
+   *
+   * @throws SQLException On database errors
+   */
+
+  public MStreamLiveState started(
+    final String name,
+    final Map<String, URI> addresses)
+    throws SQLException
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(addresses, "addresses");
+
+    synchronized (this.writeLock) {
+      final var now = this.now();
+      final var existing = this.live.get(name);
+      final var started = existing != null ? existing.started() : now;
+      final var state =
+        new MStreamLiveState(name, started, now, new TreeMap<>(addresses));
+
+      final var addressText = this.addressesText(state);
+      try (var connection = this.database.openConnection()) {
+        final var context = DSL.using(connection, SQLDialect.DERBY);
+        final var updated =
+          context.update(STREAM_LIVE)
+            .set(STREAM_LIVE.LIVE_HEARTBEAT, toLocal(now))
+            .set(STREAM_LIVE.LIVE_ADDRESSES, addressText)
+            .where(STREAM_LIVE.LIVE_STREAM.eq(name))
+            .execute();
+
+        if (updated == 0) {
+          context.insertInto(STREAM_LIVE)
+            .set(STREAM_LIVE.LIVE_STREAM, name)
+            .set(STREAM_LIVE.LIVE_STARTED, toLocal(started))
+            .set(STREAM_LIVE.LIVE_HEARTBEAT, toLocal(now))
+            .set(STREAM_LIVE.LIVE_ADDRESSES, addressText)
+            .execute();
+        }
+        connection.commit();
+      }
+
+      this.live.put(name, state);
+      this.version.incrementAndGet();
+      this.notifyObservers(name, Optional.of(state));
+      return state;
+    }
+  }
+
+  /**
+   * Record that a live stream is still live.
+   *
+   * @param name The stream name
+   *
+   * @return The state of the stream, or nothing if the stream is not live
+   *
+   * @throws SQLException On database errors
+   */
+
+  public Optional<MStreamLiveState> heartbeat(
+    final String name)
+    throws SQLException
+  {
+    Objects.requireNonNull(name, "name");
+
+    synchronized (this.writeLock) {
+      final var existing = this.live.get(name);
+      if (existing == null) {
+        return Optional.empty();
+      }
+
+      final var now = this.now();
+      try (var connection = this.database.openConnection()) {
+        DSL.using(connection, SQLDialect.DERBY)
+          .update(STREAM_LIVE)
+          .set(STREAM_LIVE.LIVE_HEARTBEAT, toLocal(now))
+          .where(STREAM_LIVE.LIVE_STREAM.eq(name))
+          .execute();
+        connection.commit();
+      }
+
+      final var state =
+        new MStreamLiveState(
+          name,
+          existing.started(),
+          now,
+          existing.addresses()
+        );
+      this.live.put(name, state);
+      this.version.incrementAndGet();
+      return Optional.of(state);
+    }
+  }
+
+  /**
+   * Record that a stream has ended. Nothing happens if the stream is not
+   * live.
+   *
+   * @param name The stream name
+   *
+   * @throws SQLException On database errors
+   */
+
+  public void ended(
+    final String name)
+    throws SQLException
+  {
+    Objects.requireNonNull(name, "name");
+
+    synchronized (this.writeLock) {
+      if (!this.live.containsKey(name)) {
+        return;
+      }
+
+      try (var connection = this.database.openConnection()) {
+        DSL.using(connection, SQLDialect.DERBY)
+          .deleteFrom(STREAM_LIVE)
+          .where(STREAM_LIVE.LIVE_STREAM.eq(name))
+          .execute();
+        connection.commit();
+      }
+      this.live.remove(name);
+      this.version.incrementAndGet();
+      this.notifyObservers(name, Optional.empty());
+    }
+  }
+
+  private void restore()
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      try {
+        final var rows =
+          DSL.using(connection, SQLDialect.DERBY)
+            .selectFrom(STREAM_LIVE)
+            .fetch();
+
+        for (final var row : rows) {
+          final var name = row.getLiveStream();
+          try {
+            this.live.put(
+              name,
+              new MStreamLiveState(
+                name,
+                row.getLiveStarted().atOffset(ZoneOffset.UTC),
+                row.getLiveHeartbeat().atOffset(ZoneOffset.UTC),
+                this.addressesOf(row.getLiveAddresses())
+              )
+            );
+          } catch (final JsonProcessingException | IllegalArgumentException e) {
+            LOG.error("ignoring unreadable journal entry for {}: ", name, e);
+          }
+        }
+      } finally {
+        connection.rollback();
+      }
+    }
+
+    LOG.debug("restored {} live streams", Integer.valueOf(this.live.size()));
+  }
+
+  private TreeMap<String, URI> addressesOf(
+    final String text)
+    throws JsonProcessingException
+  {
+    final var results = new TreeMap<String, URI>();
+    for (final var entry : this.mapper.readValue(text, ADDRESSES).entrySet()) {
+      results.put(entry.getKey(), URI.create(entry.getValue()));
+    }
+    return results;
+  }
+
+  private String addressesText(
+    final MStreamLiveState state)
+  {
+    final var text = new TreeMap<String, String>();
+    for (final var entry : state.addresses().entrySet()) {
+      text.put(entry.getKey(), entry.getValue().toString());
+    }
+    try {
+      return this.mapper.writeValueAsString(text);
+    } catch (final JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private OffsetDateTime now()
+  {
+    return OffsetDateTime.now(this.clock).truncatedTo(ChronoUnit.MILLIS);
+  }
+
+  private static LocalDateTime toLocal(
+    final OffsetDateTime time)
+  {
+    return time.withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+  }
+}
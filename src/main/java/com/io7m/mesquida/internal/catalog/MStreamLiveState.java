@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.catalog;
+
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The state of a live stream.
+ *
+ * @param name      The stream name
+ * @param started   The time the stream started
+ * @param heartbeat The time the stream last reported that it was live
+ * @param addresses The addresses announced when the stream started, by
+ *                  protocol
+ */
+
+public record MStreamLiveState(
+  String name,
+  OffsetDateTime started,
+  OffsetDateTime heartbeat,
+  SortedMap<String, URI> addresses)
+{
+  /**
+   * The state of a live stream.
+   *
+   * @param name      The stream name
+   * @param started   The time the stream started
+   * @param heartbeat The time the stream last reported that it was live
+   * @param addresses The addresses announced when the stream started, by
+   *                  protocol
+   */
+
+  public MStreamLiveState
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(started, "started");
+    Objects.requireNonNull(heartbeat, "heartbeat");
+    addresses = Collections.unmodifiableSortedMap(new TreeMap<>(addresses));
+  }
+}
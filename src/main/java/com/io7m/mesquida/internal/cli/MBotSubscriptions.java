@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.internal.cli;
+
+import com.io7m.mesquida.internal.irc.MIRCNetworkConfiguration;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Default names for the durable subscriptions used by the bots.
+ *
+ * <p>Bots that share a subscription share its messages, so each message is
+ * relayed by exactly one of them. That is correct for replicas relaying to
+ * the same place, and wrong for bots relaying to different places. The
+ * default names are therefore derived from where a bot relays to: replicas
+ * of the same target share a subscription, and different targets do
+ * not.</p>
+ */
+
+public final class MBotSubscriptions
+{
+  private static final int HASH_CHARACTERS = 16;
+
+  private MBotSubscriptions()
+  {
+
+  }
+
+  /**
+   * @param networks The IRC networks and channels a bot relays to
+   *
+   * @return The default subscription name for an IRC bot
+   */
+
+  public static String forIRC(
+    final List<MIRCNetworkConfiguration> networks)
+  {
+    Objects.requireNonNull(networks, "networks");
+
+    final var target =
+      networks.stream()
+        .map(n -> {
+          return "%s:%d/%s".formatted(
+            n.ircHost().toLowerCase(Locale.ROOT),
+            Integer.valueOf(n.ircPort()),
+            canonicalList(
+              n.ircChannels()
+                .stream()
+                .map(c -> c.toLowerCase(Locale.ROOT))
+                .toList())
+          );
+        })
+        .sorted()
+        .collect(Collectors.joining(";"));
+
+    return "mesquida-irc-" + hashOf(target);
+  }
+
+  /**
+   * @param server The Matrix homeserver a bot relays to
+   * @param rooms  The rooms a bot relays to
+   *
+   * @return The default subscription name for a Matrix bot
+   */
+
+  public static String forMatrix(
+    final URI server,
+    final List<String> rooms)
+  {
+    Objects.requireNonNull(server, "server");
+    Objects.requireNonNull(rooms, "rooms");
+
+    return "mesquida-matrix-" + hashOf(
+      "%s/%s".formatted(server.normalize(), canonicalList(rooms))
+    );
+  }
+
+  private static String canonicalList(
+    final List<String> names)
+  {
+    return names.stream()
+      .distinct()
+      .sorted()
+      .collect(Collectors.joining(","));
+  }
+
+  private static String hashOf(
+    final String text)
+  {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of()
+        .formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)))
+        .substring(0, HASH_CHARACTERS);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
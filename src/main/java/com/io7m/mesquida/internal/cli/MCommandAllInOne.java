@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPAbstractCommand;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.jmulticlose.core.CloseableCollection;
+import com.io7m.jmulticlose.core.CloseableCollectionType;
+import com.io7m.jmulticlose.core.ClosingResourceFailedException;
+import com.io7m.mesquida.internal.MConfiguration;
+import com.io7m.mesquida.internal.MServerMain;
+import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.irc.MIRCNetworkConfiguration;
+import com.io7m.mesquida.internal.irc.MIRCService;
+import com.io7m.mesquida.internal.irc.MIRCServiceConfiguration;
+import com.io7m.mesquida.internal.matrix.MMatrixService;
+import com.io7m.mesquida.internal.matrix.MMatrixServiceConfiguration;
+import com.io7m.mesquida.internal.mq.MBroker;
+import com.io7m.mesquida.internal.mq.MMessageBus;
+import com.io7m.mesquida.internal.mq.MMessageSourceBus;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
+
+/**
+ * The "all-in-one" command.
+ */
+
+@Parameters(commandDescription = "Run the server and bots in one process.")
+public final class MCommandAllInOne extends CLPAbstractCommand
+{
+  @Parameter(
+    names = "--configuration",
+    description = "The configuration file (IRC networks listed as "
+                  + "irc.<network>.* properties enable the IRC bot)",
+    required = true)
+  private Path configurationFile;
+
+  @Parameter(
+    names = "--ircServer",
+    description = "The IRC server hostname (enables the IRC bot with a "
+                  + "single network, instead of the configuration file)",
+    required = false)
+  private String ircServer;
+
+  @Parameter(
+    names = "--ircPort",
+    description = "The IRC server port",
+    required = false)
+  private int ircPort = 6667;
+
+  @Parameter(
+    names = "--ircUser",
+    description = "The IRC server user",
+    required = false)
+  private String ircUser;
+
+  @Parameter(
+    names = "--ircChannel",
+    description = "The IRC server channel",
+    required = false)
+  private String ircChannel;
+
+  @Parameter(
+    names = "--ircTrust",
+    description = "Trust all IRC server certificates (unsafe!)",
+    required = false)
+  private boolean ircTrust;
+
+  @Parameter(
+    names = "--matrixServer",
+    description = "The matrix server base URI (enables the Matrix bot)",
+    required = false)
+  private URI matrixServerBase;
+
+  @Parameter(
+    names = "--matrixUser",
+    description = "The matrix server user",
+    required = false)
+  private String matrixUser;
+
+  @Parameter(
+    names = "--matrixPassword",
+    description = "The matrix server password",
+    required = false)
+  private String matrixPassword;
+
+  @Parameter(
+    names = "--matrixChannel",
+    description = "The matrix server channel (may be repeated)",
+    required = false)
+  private List<String> matrixChannels = new ArrayList<>();
+
+  @Parameter(
+    names = "--matrixSendsInFlight",
+    description = "The maximum number of messages being sent at once",
+    required = false)
+  private int matrixSendsInFlight =
+    MMatrixServiceConfiguration.DEFAULT_SENDS_IN_FLIGHT;
+
+  @Parameter(
+    names = "--matrixStateFile",
+    description = "The file in which the Matrix session is saved",
+    required = false)
+  private Path matrixStateFile;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The context
+   */
+
+  public MCommandAllInOne(
+    final CLPCommandContextType inContext)
+  {
+    super(inContext);
+  }
+
+  private boolean argumentsValid()
+  {
+    if (this.ircServer != null
+        && (this.ircUser == null || this.ircChannel == null)) {
+      this.logger().error("--ircServer requires --ircUser and --ircChannel");
+      return false;
+    }
+
+    if (this.matrixServerBase != null
+        && (this.matrixUser == null
+            || this.matrixPassword == null
+            || this.matrixChannels.isEmpty())) {
+      this.logger().error(
+        "--matrixServer requires --matrixUser, --matrixPassword, "
+        + "and --matrixChannel");
+      return false;
+    }
+    return true;
+  }
+
+  private MIRCNetworkConfiguration ircNetworkFromOptions()
+  {
+    return new MIRCNetworkConfiguration(
+      this.ircServer,
+      this.ircServer,
+      this.ircPort,
+      List.of(this.ircChannel.replace("\\", "")),
+      this.ircUser,
+      this.ircUser,
+      this.ircTrust
+    );
+  }
+
+  private void createBots(
+    final CloseableCollectionType<ClosingResourceFailedException> resources,
+    final MMessageSourceBus source,
+    final List<MIRCNetworkConfiguration> networks)
+  {
+    if (!networks.isEmpty()) {
+      resources.add(MIRCService.create(
+        new MIRCServiceConfiguration(source, networks)
+      ));
+    }
+
+    if (this.matrixServerBase != null) {
+      resources.add(MMatrixService.create(
+        new MMatrixServiceConfiguration(
+          source,
+          this.matrixServerBase,
+          this.matrixUser,
+          this.matrixPassword,
+          this.matrixChannels.stream()
+            .map(c -> c.replace("\\", ""))
+            .toList(),
+          this.matrixSendsInFlight,
+          Optional.ofNullable(this.matrixStateFile)
+        )
+      ));
+    }
+  }
+
+  @Override
+  protected Status executeActual()
+    throws Exception
+  {
+    if (!this.argumentsValid()) {
+      return FAILURE;
+    }
+
+    final var configuration =
+      MConfiguration.open(this.configurationFile);
+    final var configuredNetworks =
+      MIRCServiceConfiguration.openNetworksIfAny(this.configurationFile);
+
+    final List<MIRCNetworkConfiguration> networks;
+    if (this.ircServer != null) {
+      if (!configuredNetworks.isEmpty()) {
+        this.logger().error(
+          "--ircServer cannot be used when the configuration file lists "
+          + "IRC networks");
+        return FAILURE;
+      }
+      networks = List.of(this.ircNetworkFromOptions());
+    } else {
+      networks = configuredNetworks;
+    }
+
+    final var bus =
+      MMessageBus.create();
+
+    try (var resources = CloseableCollection.create()) {
+      final var brokerOpt = configuration.broker();
+      if (brokerOpt.isPresent()) {
+        resources.add(MBroker.create(brokerOpt.get()));
+      }
+
+      this.createBots(resources, new MMessageSourceBus(bus), networks);
+
+      final var database =
+        resources.add(MDatabase.open(configuration.database()));
+      final var server =
+        resources.add(
+          MServerMain.create(configuration.http(), database, bus));
+
+      server.start();
+      while (true) {
+        Thread.sleep(1_000L);
+      }
+    }
+  }
+
+  @Override
+  public String name()
+  {
+    return "all-in-one";
+  }
+}
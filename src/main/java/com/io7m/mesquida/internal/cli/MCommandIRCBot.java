@@ -20,10 +20,16 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.io7m.claypot.core.CLPAbstractCommand;
 import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.mesquida.internal.irc.MIRCNetworkConfiguration;
 import com.io7m.mesquida.internal.irc.MIRCService;
 import com.io7m.mesquida.internal.irc.MIRCServiceConfiguration;
+import com.io7m.mesquida.internal.mq.MMessageSourceJMS;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
 
 /**
  * The "irc bot" command.
@@ -56,10 +62,32 @@ public final class MCommandIRCBot extends CLPAbstractCommand
     required = true)
   private String brokerTopic;
 
+  @Parameter(
+    names = "--brokerSubscription",
+    description = "The name of the durable subscription shared by bots that "
+                  + "relay to the same place (default: derived from the "
+                  + "IRC networks and channels)",
+    required = false)
+  private String brokerSubscription;
+
+  @Parameter(
+    names = "--brokerMaximumDeliveries",
+    description = "The deliveries of a message allowed before it is discarded",
+    required = false)
+  private int brokerMaximumDeliveries =
+    MMessageSourceJMS.DEFAULT_MAXIMUM_DELIVERIES;
+
+  @Parameter(
+    names = "--configuration",
+    description = "A file listing the IRC networks and channels "
+                  + "(replaces the --irc options)",
+    required = false)
+  private Path configurationFile;
+
   @Parameter(
     names = "--ircServer",
     description = "The IRC server hostname",
-    required = true)
+    required = false)
   private String ircServer;
 
   @Parameter(
@@ -71,7 +99,7 @@ public final class MCommandIRCBot extends CLPAbstractCommand
   @Parameter(
     names = "--ircUser",
     description = "The IRC server user",
-    required = true)
+    required = false)
   private String ircUser;
 
   @Parameter(
@@ -83,7 +111,7 @@ public final class MCommandIRCBot extends CLPAbstractCommand
   @Parameter(
     names = "--ircChannel",
     description = "The IRC server channel",
-    required = true)
+    required = false)
   private String ircChannel;
 
   @Parameter(
@@ -104,21 +132,69 @@ public final class MCommandIRCBot extends CLPAbstractCommand
     super(inContext);
   }
 
+  private boolean argumentsValid()
+  {
+    if (this.configurationFile != null) {
+      if (this.ircServer != null) {
+        this.logger().error("--configuration and --ircServer are exclusive");
+        return false;
+      }
+      return true;
+    }
+
+    if (this.ircServer == null
+        || this.ircUser == null
+        || this.ircChannel == null) {
+      this.logger().error(
+        "Either --configuration, or all of --ircServer, --ircUser, "
+        + "and --ircChannel, must be specified");
+      return false;
+    }
+    return true;
+  }
+
   @Override
   protected Status executeActual()
+    throws Exception
   {
+    if (!this.argumentsValid()) {
+      return FAILURE;
+    }
+
+    final List<MIRCNetworkConfiguration> networks;
+    if (this.configurationFile != null) {
+      networks = MIRCServiceConfiguration.openNetworks(this.configurationFile);
+    } else {
+      networks = List.of(
+        new MIRCNetworkConfiguration(
+          this.ircServer,
+          this.ircServer,
+          this.ircPort,
+          List.of(this.ircChannel.replace("\\", "")),
+          this.ircUser,
+          this.ircUser,
+          this.ircTrust
+        )
+      );
+    }
+
+    final var subscription =
+      this.brokerSubscription != null
+        ? this.brokerSubscription
+        : MBotSubscriptions.forIRC(networks);
+    this.logger().info("broker subscription: {}", subscription);
+
     final var configuration =
       new MIRCServiceConfiguration(
-        this.brokerURL,
-        this.brokerUser,
-        this.brokerPassword,
-        this.brokerTopic,
-        this.ircServer,
-        this.ircPort,
-        this.ircChannel.replace("\\", ""),
-        this.ircUser,
-        this.ircUser,
-        this.ircTrust
+        new MMessageSourceJMS(
+          this.brokerURL,
+          this.brokerUser,
+          this.brokerPassword,
+          this.brokerTopic,
+          subscription,
+          this.brokerMaximumDeliveries
+        ),
+        networks
       );
 
     try (var ignored = MIRCService.create(configuration)) {
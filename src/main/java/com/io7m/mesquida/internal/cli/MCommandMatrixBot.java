@@ -22,8 +22,12 @@ import com.io7m.claypot.core.CLPAbstractCommand;
 import com.io7m.claypot.core.CLPCommandContextType;
 import com.io7m.mesquida.internal.matrix.MMatrixService;
 import com.io7m.mesquida.internal.matrix.MMatrixServiceConfiguration;
+import com.io7m.mesquida.internal.mq.MMessageSourceJMS;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * The "matrix bot" command.
@@ -56,6 +60,21 @@ public final class MCommandMatrixBot extends CLPAbstractCommand
     required = true)
   private String brokerTopic;
 
+  @Parameter(
+    names = "--brokerSubscription",
+    description = "The name of the durable subscription shared by bots that "
+                  + "relay to the same place (default: derived from the "
+                  + "Matrix server and channels)",
+    required = false)
+  private String brokerSubscription;
+
+  @Parameter(
+    names = "--brokerMaximumDeliveries",
+    description = "The deliveries of a message allowed before it is discarded",
+    required = false)
+  private int brokerMaximumDeliveries =
+    MMessageSourceJMS.DEFAULT_MAXIMUM_DELIVERIES;
+
   @Parameter(
     names = "--matrixServer",
     description = "The matrix server base URI",
@@ -76,9 +95,22 @@ public final class MCommandMatrixBot extends CLPAbstractCommand
 
   @Parameter(
     names = "--matrixChannel",
-    description = "The matrix server channel",
+    description = "The matrix server channel (may be repeated)",
     required = true)
-  private String matrixChannel;
+  private List<String> matrixChannels;
+
+  @Parameter(
+    names = "--matrixSendsInFlight",
+    description = "The maximum number of messages being sent at once",
+    required = false)
+  private int matrixSendsInFlight =
+    MMatrixServiceConfiguration.DEFAULT_SENDS_IN_FLIGHT;
+
+  @Parameter(
+    names = "--matrixStateFile",
+    description = "The file in which the Matrix session is saved",
+    required = false)
+  private Path matrixStateFile;
 
   /**
    * Construct a command.
@@ -95,16 +127,33 @@ public final class MCommandMatrixBot extends CLPAbstractCommand
   @Override
   protected Status executeActual()
   {
+    final var channels =
+      this.matrixChannels.stream()
+        .map(c -> c.replace("\\", ""))
+        .toList();
+
+    final var subscription =
+      this.brokerSubscription != null
+        ? this.brokerSubscription
+        : MBotSubscriptions.forMatrix(this.matrixServerBase, channels);
+    this.logger().info("broker subscription: {}", subscription);
+
     final var configuration =
       new MMatrixServiceConfiguration(
-        this.brokerURL,
-        this.brokerUser,
-        this.brokerPassword,
-        this.brokerTopic,
+        new MMessageSourceJMS(
+          this.brokerURL,
+          this.brokerUser,
+          this.brokerPassword,
+          this.brokerTopic,
+          subscription,
+          this.brokerMaximumDeliveries
+        ),
         this.matrixServerBase,
         this.matrixUser,
         this.matrixPassword,
-        this.matrixChannel.replace("\\", "")
+        channels,
+        this.matrixSendsInFlight,
+        Optional.ofNullable(this.matrixStateFile)
       );
 
     try (var ignored = MMatrixService.create(configuration)) {
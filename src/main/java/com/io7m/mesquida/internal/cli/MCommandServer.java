@@ -20,9 +20,11 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.io7m.claypot.core.CLPAbstractCommand;
 import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.mesquida.internal.MConfiguration;
 import com.io7m.mesquida.internal.MServerMain;
 import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.mq.MBroker;
 
 import java.nio.file.Path;
 
@@ -61,12 +63,21 @@ public final class MCommandServer extends CLPAbstractCommand
   {
     final var configuration =
       MConfiguration.open(this.configurationFile);
-    try (var database = MDatabase.open(configuration.database())) {
-      try (var server = MServerMain.create(configuration.http(), database)) {
-        server.start();
-        while (true) {
-          Thread.sleep(1_000L);
-        }
+
+    try (var resources = CloseableCollection.create()) {
+      final var brokerOpt = configuration.broker();
+      if (brokerOpt.isPresent()) {
+        resources.add(MBroker.create(brokerOpt.get()));
+      }
+
+      final var database =
+        resources.add(MDatabase.open(configuration.database()));
+      final var server =
+        resources.add(MServerMain.create(configuration.http(), database));
+
+      server.start();
+      while (true) {
+        Thread.sleep(1_000L);
       }
     }
   }
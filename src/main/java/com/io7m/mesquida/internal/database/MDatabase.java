@@ -16,6 +16,7 @@
 
 package com.io7m.mesquida.internal.database;
 
+import com.io7m.mesquida.internal.MManagementBeans;
 import com.io7m.trasco.api.TrArguments;
 import com.io7m.trasco.api.TrEventExecutingSQL;
 import com.io7m.trasco.api.TrEventType;
@@ -52,13 +53,17 @@ public final class MDatabase implements Closeable
   private static final String LANG_SCHEMA_DOES_NOT_EXIST = "42Y07";
   private static final String LANG_TABLE_NOT_FOUND = "42X05";
 
-  private final EmbeddedConnectionPoolDataSource dataSource;
+  private final MDatabasePool pool;
+  private final AutoCloseable poolRegistration;
 
   private MDatabase(
-    final EmbeddedConnectionPoolDataSource inDataSource)
+    final MDatabasePool inPool,
+    final AutoCloseable inPoolRegistration)
   {
-    this.dataSource =
-      Objects.requireNonNull(inDataSource, "dataSource");
+    this.pool =
+      Objects.requireNonNull(inPool, "pool");
+    this.poolRegistration =
+      Objects.requireNonNull(inPoolRegistration, "poolRegistration");
   }
 
   /**
@@ -105,7 +110,12 @@ public final class MDatabase implements Closeable
       connection.commit();
     }
 
-    return new MDatabase(dataSource);
+    final var pool =
+      MDatabasePool.create(dataSource, configuration.pool());
+    final var registration =
+      MManagementBeans.register("DatabasePool", pool);
+
+    return new MDatabase(pool, registration);
   }
 
   private static void showEvent(
@@ -179,23 +189,45 @@ public final class MDatabase implements Closeable
   }
 
   /**
+   * Acquire a connection from the connection pool. The connection is returned
+   * to the pool when closed.
+   *
    * @return An SQL connection
    *
-   * @throws SQLException On errors
+   * @throws SQLException On errors, or if no connection became available
+   *                      within the configured acquisition timeout
    */
 
   public Connection openConnection()
     throws SQLException
   {
-    final var connection =
-      this.dataSource.getPooledConnection().getConnection();
-    connection.setAutoCommit(false);
+    final var connection = this.pool.acquire();
+    try {
+      connection.setAutoCommit(false);
+    } catch (final SQLException e) {
+      connection.close();
+      throw e;
+    }
     return connection;
   }
 
+  /**
+   * @return The connection pool statistics
+   */
+
+  public MDatabasePoolStatisticsType poolStatistics()
+  {
+    return this.pool;
+  }
+
   @Override
   public void close()
   {
-
+    try {
+      this.poolRegistration.close();
+    } catch (final Exception e) {
+      LOG.error("error unregistering pool: ", e);
+    }
+    this.pool.close();
   }
 }
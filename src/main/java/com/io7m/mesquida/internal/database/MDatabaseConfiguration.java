@@ -26,12 +26,14 @@ import java.util.Objects;
  * @param upgrade {@code true} if the database should be automatically upgraded
  * @param create  {@code true} if the database should be created if it does not
  *                exist
+ * @param pool    The connection pool configuration
  */
 
 public record MDatabaseConfiguration(
   Path file,
   boolean upgrade,
-  boolean create)
+  boolean create,
+  MDatabasePoolConfiguration pool)
 {
   /**
    * The main database service.
@@ -41,10 +43,31 @@ public record MDatabaseConfiguration(
    *                upgraded
    * @param create  {@code true} if the database should be created if it does
    *                not exist
+   * @param pool    The connection pool configuration
    */
 
   public MDatabaseConfiguration
   {
     Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(pool, "pool");
+  }
+
+  /**
+   * The main database service, using the default connection pool
+   * configuration.
+   *
+   * @param inFile    The database file
+   * @param inUpgrade {@code true} if the database should be automatically
+   *                  upgraded
+   * @param inCreate  {@code true} if the database should be created if it
+   *                  does not exist
+   */
+
+  public MDatabaseConfiguration(
+    final Path inFile,
+    final boolean inUpgrade,
+    final boolean inCreate)
+  {
+    this(inFile, inUpgrade, inCreate, MDatabasePoolConfiguration.defaults());
   }
 }
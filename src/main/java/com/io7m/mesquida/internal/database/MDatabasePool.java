@@ -0,0 +1,386 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.PooledConnection;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of physical database connections. Logical connections
+ * handed out by the pool return their physical connection to the pool when
+ * closed.
+ */
+
+final class MDatabasePool
+  implements MDatabasePoolStatisticsType, ConnectionEventListener, AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MDatabasePool.class);
+
+  private final ConnectionPoolDataSource dataSource;
+  private final MDatabasePoolConfiguration configuration;
+  private final Semaphore permits;
+  private final LinkedBlockingDeque<IdleConnection> idle;
+  private final ConcurrentHashMap<PooledConnection, Boolean> checkedOut;
+  private final AtomicInteger physical;
+  private final AtomicInteger waiting;
+  private final LongAdder acquisitions;
+  private final LongAdder timeouts;
+  private final LongAdder acquireNanosTotal;
+  private final AtomicLong acquireNanosMax;
+  private final ScheduledExecutorService evictor;
+  private volatile boolean closed;
+
+  private MDatabasePool(
+    final ConnectionPoolDataSource inDataSource,
+    final MDatabasePoolConfiguration inConfiguration,
+    final ScheduledExecutorService inEvictor)
+  {
+    this.dataSource =
+      Objects.requireNonNull(inDataSource, "dataSource");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.evictor =
+      Objects.requireNonNull(inEvictor, "evictor");
+
+    this.permits =
+      new Semaphore(this.configuration.maximum(), true);
+    this.idle =
+      new LinkedBlockingDeque<>();
+    this.checkedOut =
+      new ConcurrentHashMap<>();
+    this.physical =
+      new AtomicInteger(0);
+    this.waiting =
+      new AtomicInteger(0);
+    this.acquisitions =
+      new LongAdder();
+    this.timeouts =
+      new LongAdder();
+    this.acquireNanosTotal =
+      new LongAdder();
+    this.acquireNanosMax =
+      new AtomicLong(0L);
+  }
+
+  /**
+   * Create a pool, opening the minimum number of connections immediately.
+   *
+   * @param dataSource    The underlying data source
+   * @param configuration The pool configuration
+   *
+   * @return A pool
+   *
+   * @throws SQLException On errors
+   */
+
+  static MDatabasePool create(
+    final ConnectionPoolDataSource dataSource,
+    final MDatabasePoolConfiguration configuration)
+    throws SQLException
+  {
+    final var evictor =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        final var thread = new Thread(r);
+        thread.setName(
+          "com.io7m.mesquida.database_pool[" + thread.getId() + "]");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+    final var pool = new MDatabasePool(dataSource, configuration, evictor);
+    for (int index = 0; index < configuration.minimum(); ++index) {
+      pool.idle.offerFirst(
+        new IdleConnection(pool.openPhysical(), System.nanoTime()));
+    }
+
+    final var period =
+      Math.max(1_000L, configuration.idleTimeout().toMillis() / 2L);
+    evictor.scheduleWithFixedDelay(
+      pool::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    return pool;
+  }
+
+  /**
+   * Acquire a connection from the pool, waiting up to the configured
+   * acquisition timeout.
+   *
+   * @return A connection
+   *
+   * @throws SQLException On errors, or if no connection became available in
+   *                      time
+   */
+
+  Connection acquire()
+    throws SQLException
+  {
+    if (this.closed) {
+      throw new SQLException("Connection pool is closed");
+    }
+
+    final var timeStart = System.nanoTime();
+    this.waitForPermit();
+
+    try {
+      final var connection = this.checkOut();
+      final var timeTaken = System.nanoTime() - timeStart;
+      this.acquisitions.increment();
+      this.acquireNanosTotal.add(timeTaken);
+      this.acquireNanosMax.accumulateAndGet(timeTaken, Math::max);
+      return connection;
+    } catch (final SQLException e) {
+      this.permits.release();
+      throw e;
+    }
+  }
+
+  private void waitForPermit()
+    throws SQLException
+  {
+    final var timeout = this.configuration.acquireTimeout();
+    this.waiting.incrementAndGet();
+    try {
+      if (!this.permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+        this.timeouts.increment();
+        throw new SQLTransientConnectionException(
+          String.format(
+            "Timed out after %s waiting for a database connection",
+            timeout)
+        );
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException(
+        "Interrupted waiting for a database connection", e);
+    } finally {
+      this.waiting.decrementAndGet();
+    }
+  }
+
+  private Connection checkOut()
+    throws SQLException
+  {
+    final var validationSeconds =
+      (int) Math.max(1L, this.configuration.validationTimeout().toSeconds());
+
+    while (true) {
+      final var existing = this.idle.pollFirst();
+      final PooledConnection pooled;
+      if (existing == null) {
+        pooled = this.openPhysical();
+      } else {
+        pooled = existing.connection();
+      }
+
+      final Connection connection;
+      try {
+        connection = pooled.getConnection();
+      } catch (final SQLException e) {
+        this.discard(pooled);
+        if (existing == null) {
+          throw e;
+        }
+        LOG.debug("discarding broken pooled connection: ", e);
+        continue;
+      }
+
+      if (existing != null) {
+        final boolean valid;
+        try {
+          valid = connection.isValid(validationSeconds);
+        } catch (final SQLException e) {
+          LOG.debug("connection validation failed: ", e);
+          this.closeLogical(connection);
+          this.discard(pooled);
+          continue;
+        }
+        if (!valid) {
+          LOG.debug("discarding invalid pooled connection");
+          this.closeLogical(connection);
+          this.discard(pooled);
+          continue;
+        }
+      }
+
+      this.checkedOut.put(pooled, Boolean.TRUE);
+      return connection;
+    }
+  }
+
+  private PooledConnection openPhysical()
+    throws SQLException
+  {
+    final var pooled = this.dataSource.getPooledConnection();
+    pooled.addConnectionEventListener(this);
+    this.physical.incrementAndGet();
+    return pooled;
+  }
+
+  private void closeLogical(
+    final Connection connection)
+  {
+    try {
+      connection.close();
+    } catch (final SQLException e) {
+      LOG.debug("error closing connection: ", e);
+    }
+  }
+
+  private void discard(
+    final PooledConnection pooled)
+  {
+    pooled.removeConnectionEventListener(this);
+    this.physical.decrementAndGet();
+    try {
+      pooled.close();
+    } catch (final SQLException e) {
+      LOG.debug("error closing pooled connection: ", e);
+    }
+  }
+
+  private void evictIdle()
+  {
+    final var timeout = this.configuration.idleTimeout().toNanos();
+    final var now = System.nanoTime();
+
+    for (final var entry : this.idle) {
+      if (this.physical.get() <= this.configuration.minimum()) {
+        return;
+      }
+      if (now - entry.idleSince() < timeout) {
+        continue;
+      }
+      if (this.idle.removeFirstOccurrence(entry)) {
+        LOG.debug("evicting idle connection");
+        this.discard(entry.connection());
+      }
+    }
+  }
+
+  @Override
+  public void connectionClosed(
+    final ConnectionEvent event)
+  {
+    final var pooled = (PooledConnection) event.getSource();
+    if (this.checkedOut.remove(pooled) == null) {
+      return;
+    }
+
+    if (this.closed) {
+      this.discard(pooled);
+    } else {
+      this.idle.offerFirst(new IdleConnection(pooled, System.nanoTime()));
+    }
+    this.permits.release();
+  }
+
+  @Override
+  public void connectionErrorOccurred(
+    final ConnectionEvent event)
+  {
+    final var pooled = (PooledConnection) event.getSource();
+    if (this.checkedOut.remove(pooled) == null) {
+      return;
+    }
+
+    LOG.debug("pooled connection failed: ", event.getSQLException());
+    this.discard(pooled);
+    this.permits.release();
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+    this.evictor.shutdown();
+
+    while (true) {
+      final var entry = this.idle.pollFirst();
+      if (entry == null) {
+        break;
+      }
+      this.discard(entry.connection());
+    }
+  }
+
+  @Override
+  public int getActiveConnections()
+  {
+    return this.checkedOut.size();
+  }
+
+  @Override
+  public int getIdleConnections()
+  {
+    return this.idle.size();
+  }
+
+  @Override
+  public int getWaitingCallers()
+  {
+    return this.waiting.get();
+  }
+
+  @Override
+  public long getAcquisitions()
+  {
+    return this.acquisitions.sum();
+  }
+
+  @Override
+  public long getAcquisitionTimeouts()
+  {
+    return this.timeouts.sum();
+  }
+
+  @Override
+  public long getAcquisitionTimeTotalMicros()
+  {
+    return TimeUnit.NANOSECONDS.toMicros(this.acquireNanosTotal.sum());
+  }
+
+  @Override
+  public long getAcquisitionTimeMaxMicros()
+  {
+    return TimeUnit.NANOSECONDS.toMicros(this.acquireNanosMax.get());
+  }
+
+  private record IdleConnection(
+    PooledConnection connection,
+    long idleSince)
+  {
+
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.database;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The database connection pool configuration.
+ *
+ * @param minimum           The minimum number of connections kept open
+ * @param maximum           The maximum number of connections that may be open
+ * @param idleTimeout       The time after which idle connections above the
+ *                          minimum are closed
+ * @param acquireTimeout    The maximum time to wait for a connection
+ * @param validationTimeout The maximum time to spend validating a connection
+ *                          before handing it out
+ */
+
+public record MDatabasePoolConfiguration(
+  int minimum,
+  int maximum,
+  Duration idleTimeout,
+  Duration acquireTimeout,
+  Duration validationTimeout)
+{
+  /**
+   * The database connection pool configuration.
+   *
+   * @param minimum           The minimum number of connections kept open
+   * @param maximum           The maximum number of connections that may be
+   *                          open
+   * @param idleTimeout       The time after which idle connections above the
+   *                          minimum are closed
+   * @param acquireTimeout    The maximum time to wait for a connection
+   * @param validationTimeout The maximum time to spend validating a
+   *                          connection before handing it out
+   */
+
+  public MDatabasePoolConfiguration
+  {
+    Objects.requireNonNull(idleTimeout, "idleTimeout");
+    Objects.requireNonNull(acquireTimeout, "acquireTimeout");
+    Objects.requireNonNull(validationTimeout, "validationTimeout");
+
+    if (minimum < 0) {
+      throw new IllegalArgumentException(
+        "Pool minimum size must be non-negative");
+    }
+    if (maximum < 1) {
+      throw new IllegalArgumentException(
+        "Pool maximum size must be positive");
+    }
+    if (minimum > maximum) {
+      throw new IllegalArgumentException(
+        "Pool minimum size must not exceed the maximum size");
+    }
+  }
+
+  /**
+   * @return The default pool configuration
+   */
+
+  public static MDatabasePoolConfiguration defaults()
+  {
+    return new MDatabasePoolConfiguration(
+      1,
+      8,
+      Duration.ofMinutes(5L),
+      Duration.ofSeconds(10L),
+      Duration.ofSeconds(5L)
+    );
+  }
+}
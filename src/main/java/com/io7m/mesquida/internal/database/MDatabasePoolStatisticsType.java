@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.database;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for the database connection pool.
+ */
+
+@MXBean
+public interface MDatabasePoolStatisticsType
+{
+  /**
+   * @return The number of connections currently handed out
+   */
+
+  int getActiveConnections();
+
+  /**
+   * @return The number of open connections waiting in the pool
+   */
+
+  int getIdleConnections();
+
+  /**
+   * @return The number of callers currently waiting for a connection
+   */
+
+  int getWaitingCallers();
+
+  /**
+   * @return The total number of connections acquired from the pool
+   */
+
+  long getAcquisitions();
+
+  /**
+   * @return The number of acquisitions that timed out
+   */
+
+  long getAcquisitionTimeouts();
+
+  /**
+   * @return The total time spent acquiring connections, in microseconds
+   */
+
+  long getAcquisitionTimeTotalMicros();
+
+  /**
+   * @return The longest time spent acquiring a connection, in microseconds
+   */
+
+  long getAcquisitionTimeMaxMicros();
+}
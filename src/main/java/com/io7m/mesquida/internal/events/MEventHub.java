@@ -0,0 +1,324 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.events;
+
+import com.io7m.mesquida.internal.MManagementBeans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * The event feed. Published events are handed to every subscriber's
+ * buffer without blocking, and the most recent events are retained so that
+ * a subscriber that reconnects can resume from the last event it saw.
+ *
+ * Event IDs are prefixed with an epoch unique to this feed instance, so an
+ * ID from before a server restart is never mistaken for a current one. A
+ * subscriber that cannot resume is sent a {@code reset} event, and should
+ * fetch the current state again before continuing.
+ */
+
+public final class MEventHub implements MEventStatisticsType, AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MEventHub.class);
+
+  /**
+   * The default number of recent events retained for resumption.
+   */
+
+  public static final int DEFAULT_RETAINED = 256;
+
+  /**
+   * The default number of events buffered for each subscriber.
+   */
+
+  public static final int DEFAULT_SUBSCRIBER_BUFFER = 64;
+
+  private final String epoch;
+  private final int retainedCapacity;
+  private final int subscriberCapacity;
+  private final ArrayDeque<Retained> retained;
+  private final List<MEventSubscription> subscribers;
+  private final AutoCloseable registration;
+  private long lastSequence;
+  private long published;
+  private long resumed;
+  private long reset;
+  private long slow;
+  private boolean closed;
+
+  private record Retained(
+    long sequence,
+    MEvent event)
+  {
+
+  }
+
+  private MEventHub(
+    final int inRetainedCapacity,
+    final int inSubscriberCapacity)
+  {
+    this.epoch =
+      Long.toString(System.currentTimeMillis(), 36);
+    this.retainedCapacity =
+      inRetainedCapacity;
+    this.subscriberCapacity =
+      inSubscriberCapacity;
+    this.retained =
+      new ArrayDeque<>(inRetainedCapacity);
+    this.subscribers =
+      new ArrayList<>();
+    this.registration =
+      MManagementBeans.register("EventFeed", this);
+  }
+
+  /**
+   * Create an event feed.
+   *
+   * @param retainedCapacity   The number of recent events retained for
+   *                           resumption
+   * @param subscriberCapacity The number of events buffered for each
+   *                           subscriber
+   *
+   * @return An event feed
+   */
+
+  public static MEventHub create(
+    final int retainedCapacity,
+    final int subscriberCapacity)
+  {
+    if (retainedCapacity < 1) {
+      throw new IllegalArgumentException(
+        "Retained event capacity must be positive");
+    }
+    if (subscriberCapacity < 1) {
+      throw new IllegalArgumentException(
+        "Subscriber buffer capacity must be positive");
+    }
+    return new MEventHub(retainedCapacity, subscriberCapacity);
+  }
+
+  /**
+   * Publish an event to all current subscribers. Subscribers whose buffers
+   * are full are disconnected.
+   *
+   * @param name The event name
+   * @param data The event data (a single line of JSON)
+   */
+
+  public synchronized void publish(
+    final String name,
+    final String data)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(data, "data");
+
+    if (this.closed) {
+      return;
+    }
+
+    ++this.lastSequence;
+    ++this.published;
+
+    final var event =
+      new MEvent(this.idOf(this.lastSequence), name, data);
+
+    this.retained.addLast(new Retained(this.lastSequence, event));
+    while (this.retained.size() > this.retainedCapacity) {
+      this.retained.removeFirst();
+    }
+
+    final var iterator = this.subscribers.iterator();
+    while (iterator.hasNext()) {
+      final var subscriber = iterator.next();
+      if (!subscriber.offer(event)) {
+        iterator.remove();
+        if (subscriber.isOverflowed()) {
+          ++this.slow;
+          LOG.warn("disconnected a subscriber that was not keeping up");
+        }
+      }
+    }
+  }
+
+  /**
+   * Subscribe to the feed. If the ID of the last event the subscriber saw
+   * is given, and the events after it are still retained, those events are
+   * delivered first. Otherwise, the subscriber receives a {@code reset}
+   * event whose ID is that of the most recent event.
+   *
+   * @param lastEventId The ID of the last event the subscriber saw, if any
+   *
+   * @return A subscription
+   */
+
+  public synchronized MEventSubscription subscribe(
+    final Optional<String> lastEventId)
+  {
+    Objects.requireNonNull(lastEventId, "lastEventId");
+
+    final var subscription =
+      new MEventSubscription(this, this.subscriberCapacity);
+
+    if (this.closed) {
+      subscription.terminate();
+      return subscription;
+    }
+
+    if (lastEventId.isPresent()) {
+      final var replay =
+        this.eventsAfter(lastEventId.get())
+          .filter(events -> events.size() <= this.subscriberCapacity);
+
+      if (replay.isPresent()) {
+        ++this.resumed;
+        for (final var event : replay.get()) {
+          subscription.offer(event);
+        }
+      } else {
+        ++this.reset;
+        subscription.offer(
+          new MEvent(this.idOf(this.lastSequence), "reset", "{}"));
+      }
+    }
+
+    this.subscribers.add(subscription);
+    return subscription;
+  }
+
+  synchronized void unsubscribe(
+    final MEventSubscription subscription)
+  {
+    this.subscribers.remove(subscription);
+  }
+
+  private String idOf(
+    final long sequence)
+  {
+    return this.epoch + "-" + sequence;
+  }
+
+  private OptionalLong sequenceOf(
+    final String id)
+  {
+    final var separator = id.lastIndexOf('-');
+    if (separator < 0 || !this.epoch.equals(id.substring(0, separator))) {
+      return OptionalLong.empty();
+    }
+
+    try {
+      return OptionalLong.of(Long.parseLong(id.substring(separator + 1)));
+    } catch (final NumberFormatException e) {
+      return OptionalLong.empty();
+    }
+  }
+
+  private Optional<List<MEvent>> eventsAfter(
+    final String id)
+  {
+    final var sequenceOpt = this.sequenceOf(id);
+    if (sequenceOpt.isEmpty()) {
+      return Optional.empty();
+    }
+
+    final var sequence = sequenceOpt.getAsLong();
+    final var oldest =
+      this.retained.isEmpty()
+        ? this.lastSequence + 1L
+        : this.retained.getFirst().sequence();
+
+    if (sequence > this.lastSequence || sequence < oldest - 1L) {
+      return Optional.empty();
+    }
+
+    final var events = new ArrayList<MEvent>();
+    for (final var entry : this.retained) {
+      if (entry.sequence() > sequence) {
+        events.add(entry.event());
+      }
+    }
+    return Optional.of(events);
+  }
+
+  @Override
+  public synchronized int getSubscribers()
+  {
+    return this.subscribers.size();
+  }
+
+  @Override
+  public synchronized long getEventsPublished()
+  {
+    return this.published;
+  }
+
+  @Override
+  public synchronized int getEventsRetained()
+  {
+    return this.retained.size();
+  }
+
+  @Override
+  public synchronized long getSubscriptionsResumed()
+  {
+    return this.resumed;
+  }
+
+  @Override
+  public synchronized long getSubscriptionsReset()
+  {
+    return this.reset;
+  }
+
+  @Override
+  public synchronized long getSlowSubscribersDisconnected()
+  {
+    return this.slow;
+  }
+
+  /**
+   * Close the feed, terminating all subscriptions.
+   */
+
+  @Override
+  public void close()
+  {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      for (final var subscriber : this.subscribers) {
+        subscriber.terminate();
+      }
+      this.subscribers.clear();
+    }
+
+    try {
+      this.registration.close();
+    } catch (final Exception e) {
+      LOG.error("error closing event feed statistics: ", e);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.io7m.mesquida.internal.catalog.MCatalogSnapshot;
+import com.io7m.mesquida.internal.catalog.MCatalogStream;
+import com.io7m.mesquida.internal.mq.MMessageFormatted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Functions that turn announcements and catalog changes into events on
+ * the event feed.
+ *
+ * Announcements are published as {@code stream-started} and
+ * {@code stream-ended} events carrying the same JSON document that is
+ * published to the message queue. Catalog changes are published as
+ * {@code stream-updated} events carrying the new state of a stream, and
+ * {@code stream-deleted} events carrying the ID and name of a removed
+ * stream.
+ */
+
+public final class MEventSources
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MEventSources.class);
+
+  private static final ObjectMapper MAPPER =
+    new ObjectMapper();
+  private static final JsonFactory JSON =
+    new JsonFactory();
+
+  private MEventSources()
+  {
+
+  }
+
+  /**
+   * Publish an announcement to the feed.
+   *
+   * @param hub     The event feed
+   * @param message The formatted announcement
+   */
+
+  public static void messageDelivered(
+    final MEventHub hub,
+    final MMessageFormatted message)
+  {
+    Objects.requireNonNull(hub, "hub");
+    Objects.requireNonNull(message, "message");
+
+    try {
+      hub.publish(
+        message.status.toLowerCase(Locale.ROOT).replace('_', '-'),
+        MAPPER.writeValueAsString(message)
+      );
+    } catch (final IOException e) {
+      LOG.error("unable to publish message event: ", e);
+    }
+  }
+
+  /**
+   * Publish the differences between two catalog snapshots to the feed.
+   *
+   * @param hub      The event feed
+   * @param previous The previous snapshot
+   * @param current  The current snapshot
+   */
+
+  public static void catalogChanged(
+    final MEventHub hub,
+    final MCatalogSnapshot previous,
+    final MCatalogSnapshot current)
+  {
+    Objects.requireNonNull(hub, "hub");
+    Objects.requireNonNull(previous, "previous");
+    Objects.requireNonNull(current, "current");
+
+    final var removed = new HashMap<Integer, MCatalogStream>();
+    for (final var stream : previous.streams()) {
+      removed.put(Integer.valueOf(stream.id()), stream);
+    }
+
+    try {
+      for (final var stream : current.streams()) {
+        final var before = removed.remove(Integer.valueOf(stream.id()));
+        if (!stream.equals(before)) {
+          hub.publish("stream-updated", streamUpdated(stream));
+        }
+      }
+      for (final var stream : removed.values()) {
+        hub.publish("stream-deleted", streamDeleted(stream));
+      }
+    } catch (final IOException e) {
+      LOG.error("unable to publish catalog event: ", e);
+    }
+  }
+
+  private static String streamUpdated(
+    final MCatalogStream stream)
+    throws IOException
+  {
+    final var writer = new StringWriter(128);
+    try (var generator = JSON.createGenerator(writer)) {
+      generator.writeStartObject();
+      writeIdentity(generator, stream);
+      generator.writeStringField("title", stream.title());
+      generator.writeStringField("owner", stream.ownerName());
+      generator.writeArrayFieldStart("addresses");
+      for (final var address : stream.addresses()) {
+        generator.writeStartObject();
+        generator.writeNumberField("id", address.id());
+        generator.writeStringField("protocol", address.protocol());
+        generator.writeStringField("url", address.url().toString());
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    return writer.toString();
+  }
+
+  private static String streamDeleted(
+    final MCatalogStream stream)
+    throws IOException
+  {
+    final var writer = new StringWriter(64);
+    try (var generator = JSON.createGenerator(writer)) {
+      generator.writeStartObject();
+      writeIdentity(generator, stream);
+      generator.writeEndObject();
+    }
+    return writer.toString();
+  }
+
+  private static void writeIdentity(
+    final JsonGenerator generator,
+    final MCatalogStream stream)
+    throws IOException
+  {
+    generator.writeNumberField("id", stream.id());
+    generator.writeStringField("name", stream.name());
+  }
+}
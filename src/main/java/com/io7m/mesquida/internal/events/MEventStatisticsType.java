@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.events;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for the event feed.
+ */
+
+@MXBean
+public interface MEventStatisticsType
+{
+  /**
+   * @return The number of currently connected subscribers
+   */
+
+  int getSubscribers();
+
+  /**
+   * @return The number of events published since the server started
+   */
+
+  long getEventsPublished();
+
+  /**
+   * @return The number of recent events retained for resumption
+   */
+
+  int getEventsRetained();
+
+  /**
+   * @return The number of subscriptions that resumed from a previous event
+   */
+
+  long getSubscriptionsResumed();
+
+  /**
+   * @return The number of subscriptions that could not resume, and were
+   * told to reset
+   */
+
+  long getSubscriptionsReset();
+
+  /**
+   * @return The number of subscribers disconnected for failing to keep up
+   */
+
+  long getSlowSubscribersDisconnected();
+}
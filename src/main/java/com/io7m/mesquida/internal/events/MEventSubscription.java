@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.events;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A subscription to the event feed. Events are buffered in a bounded
+ * buffer; a subscriber that lets the buffer fill is terminated rather than
+ * being allowed to hold up the publisher.
+ *
+ * A subscriber registers a listener that is told when events arrive or the
+ * subscription is terminated, and takes events with {@link #take()}
+ * without blocking.
+ */
+
+public final class MEventSubscription implements AutoCloseable
+{
+  private final MEventHub hub;
+  private final int capacity;
+  private final ArrayDeque<MEvent> events;
+  private boolean terminated;
+  private boolean overflowed;
+  private Runnable listener;
+
+  MEventSubscription(
+    final MEventHub inHub,
+    final int inCapacity)
+  {
+    this.hub =
+      Objects.requireNonNull(inHub, "inHub");
+    this.capacity =
+      inCapacity;
+    this.events =
+      new ArrayDeque<>(inCapacity);
+  }
+
+  /**
+   * Buffer an event for the subscriber.
+   *
+   * @param event The event
+   *
+   * @return {@code false} if the buffer was full and the subscription has
+   * been terminated
+   */
+
+  boolean offer(
+    final MEvent event)
+  {
+    final boolean accepted;
+    final Runnable notify;
+    synchronized (this) {
+      if (this.terminated) {
+        return false;
+      }
+      if (this.events.size() >= this.capacity) {
+        this.overflowed = true;
+        this.terminated = true;
+        accepted = false;
+      } else {
+        this.events.addLast(event);
+        accepted = true;
+      }
+      notify = this.listener;
+    }
+
+    if (notify != null) {
+      notify.run();
+    }
+    return accepted;
+  }
+
+  void terminate()
+  {
+    final Runnable notify;
+    synchronized (this) {
+      this.terminated = true;
+      notify = this.listener;
+    }
+
+    if (notify != null) {
+      notify.run();
+    }
+  }
+
+  /**
+   * Set a listener that is called whenever an event is buffered or the
+   * subscription is terminated. The listener is called on the publisher's
+   * thread, so it must not block. If events are already buffered, or the
+   * subscription is already terminated, the listener is called immediately.
+   *
+   * @param inListener The listener
+   */
+
+  public void setListener(
+    final Runnable inListener)
+  {
+    Objects.requireNonNull(inListener, "listener");
+
+    final boolean pending;
+    synchronized (this) {
+      this.listener = inListener;
+      pending = this.terminated || !this.events.isEmpty();
+    }
+
+    if (pending) {
+      inListener.run();
+    }
+  }
+
+  /**
+   * Take the next buffered event without waiting.
+   *
+   * @return The next event, or nothing if no event is buffered or the
+   * subscription has been terminated
+   */
+
+  public synchronized Optional<MEvent> take()
+  {
+    if (this.terminated || this.events.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(this.events.removeFirst());
+  }
+
+  /**
+   * @return {@code true} if the subscription has been terminated, either
+   * because it was closed, because the feed was closed, or because the
+   * subscriber did not keep up
+   */
+
+  public synchronized boolean isTerminated()
+  {
+    return this.terminated;
+  }
+
+  /**
+   * @return {@code true} if the subscription was terminated because the
+   * subscriber did not keep up
+   */
+
+  public synchronized boolean isOverflowed()
+  {
+    return this.overflowed;
+  }
+
+  @Override
+  public void close()
+  {
+    this.hub.unsubscribe(this);
+    this.terminate();
+  }
+}
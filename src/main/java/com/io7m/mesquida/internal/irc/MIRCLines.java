@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.irc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Functions to split text into lines that fit within the IRC protocol's
+ * line length limit.
+ */
+
+public final class MIRCLines
+{
+  /**
+   * The maximum length of an IRC protocol line in bytes, including the
+   * trailing CR LF (RFC 2812 §2.3).
+   */
+
+  public static final int PROTOCOL_LINE_BYTES = 512;
+
+  /**
+   * The number of bytes reserved for the hostname that the server adds to
+   * the prefix of every relayed message. RFC 2812 §2.3.1 limits hostnames
+   * in the protocol to 63 characters.
+   */
+
+  public static final int HOST_RESERVED_BYTES = 63;
+
+  private MIRCLines()
+  {
+
+  }
+
+  /**
+   * Determine the maximum number of bytes of message text that can be sent
+   * to the given channel in a single PRIVMSG. The server prepends
+   * {@code :nick!user@host } to every message it relays to other clients,
+   * and so the space used by that prefix is subtracted along with the
+   * command itself.
+   *
+   * @param channel The target channel
+   * @param nick    The bot's nickname
+   * @param user    The bot's user name
+   *
+   * @return The maximum text length in bytes
+   */
+
+  public static int maximumTextBytes(
+    final String channel,
+    final String nick,
+    final String user)
+  {
+    Objects.requireNonNull(channel, "channel");
+    Objects.requireNonNull(nick, "nick");
+    Objects.requireNonNull(user, "user");
+
+    final var prefix =
+      ":%s!%s@ ".formatted(nick, user).getBytes(StandardCharsets.UTF_8);
+    final var command =
+      "PRIVMSG %s :\r\n".formatted(channel).getBytes(StandardCharsets.UTF_8);
+
+    return PROTOCOL_LINE_BYTES
+           - prefix.length
+           - HOST_RESERVED_BYTES
+           - command.length;
+  }
+
+  /**
+   * Split the given text into lines, none of which exceed
+   * {@code maximumBytes} when encoded as UTF-8. Line breaks in the text
+   * always start new lines, and long lines are broken at the last space
+   * that fits where possible. Characters are never split across lines.
+   *
+   * @param text         The text
+   * @param maximumBytes The maximum length of a line in bytes
+   *
+   * @return The lines
+   */
+
+  public static List<String> split(
+    final String text,
+    final int maximumBytes)
+  {
+    Objects.requireNonNull(text, "text");
+    if (maximumBytes < 4) {
+      throw new IllegalArgumentException(
+        "Maximum line length %d must be >= 4".formatted(maximumBytes)
+      );
+    }
+
+    final var lines = new ArrayList<String>();
+    for (final var paragraph : text.replace("\0", "").split("[\r\n]+")) {
+      splitParagraph(paragraph.strip(), maximumBytes, lines);
+    }
+    return List.copyOf(lines);
+  }
+
+  private static void splitParagraph(
+    final String paragraph,
+    final int maximumBytes,
+    final List<String> lines)
+  {
+    var remaining = paragraph;
+    while (!remaining.isEmpty()) {
+      final var fit = fittingLength(remaining, maximumBytes);
+      if (fit == remaining.length()) {
+        lines.add(remaining);
+        return;
+      }
+
+      var end = remaining.lastIndexOf(' ', fit);
+      if (end <= 0) {
+        end = fit;
+      }
+
+      lines.add(remaining.substring(0, end).stripTrailing());
+      remaining = remaining.substring(end).stripLeading();
+    }
+  }
+
+  /**
+   * @return The length in chars of the longest prefix of {@code text} that
+   * fits in {@code maximumBytes} bytes of UTF-8
+   */
+
+  private static int fittingLength(
+    final String text,
+    final int maximumBytes)
+  {
+    var bytes = 0;
+    var index = 0;
+    while (index < text.length()) {
+      final var codePoint = text.codePointAt(index);
+      bytes += utf8Length(codePoint);
+      if (bytes > maximumBytes) {
+        return index;
+      }
+      index += Character.charCount(codePoint);
+    }
+    return index;
+  }
+
+  private static int utf8Length(
+    final int codePoint)
+  {
+    if (codePoint < 0x80) {
+      return 1;
+    }
+    if (codePoint < 0x800) {
+      return 2;
+    }
+    if (codePoint < 0x10000) {
+      return 3;
+    }
+    return 4;
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.irc;
+
+import com.io7m.mesquida.internal.MManagementBeans;
+import com.io7m.mesquida.internal.actor.MActor;
+import com.io7m.mesquida.internal.actor.MActorBehaviourType;
+import com.io7m.mesquida.internal.actor.MActorDirectiveKind;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.UtilSSLSocketFactory;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectAttemptFailedEvent;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A connection to a single IRC network. The network has its own bot, its
+ * own output queue, and its own actor, so a network that is unreachable or
+ * slow does not delay the others.
+ *
+ * Messages stay in the output queue when the connection is lost, and are
+ * sent once the bot has reconnected and joined the target channels again.
+ *
+ * @param <T> The type of tokens passed back when messages are delivered
+ */
+
+final class MIRCNetwork<T> extends ListenerAdapter implements AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MIRCNetwork.class);
+
+  private final MIRCNetworkConfiguration configuration;
+  private final Consumer<T> onDelivered;
+  private final ExecutorService ircExecutor;
+  private final MIRCOutputQueue<T> output;
+  private final AutoCloseable outputRegistration;
+  private final Set<String> joined;
+  private final MActor<CommandType> actor;
+  private PircBotX ircBot;
+
+  private MIRCNetwork(
+    final MIRCNetworkConfiguration inConfiguration,
+    final Consumer<T> inOnDelivered,
+    final ExecutorService inIrcExecutor)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.onDelivered =
+      Objects.requireNonNull(inOnDelivered, "onDelivered");
+    this.ircExecutor =
+      Objects.requireNonNull(inIrcExecutor, "ircExecutor");
+
+    this.output =
+      new MIRCOutputQueue<>(
+        new MIRCTokenBucket(
+          MIRCTokenBucket.DEFAULT_CAPACITY,
+          MIRCTokenBucket.DEFAULT_INTERVAL,
+          System.nanoTime()
+        ),
+        channel -> MIRCLines.maximumTextBytes(
+          channel,
+          this.configuration.ircNickName(),
+          this.configuration.ircUserName()
+        ),
+        System::nanoTime
+      );
+    this.outputRegistration =
+      MManagementBeans.register(
+        "IRCOutput", this.configuration.name(), this.output);
+    this.joined =
+      new HashSet<>();
+    this.actor =
+      MActor.create("irc-" + this.configuration.name(), new Behaviour());
+  }
+
+  /**
+   * Create a connection to a network.
+   *
+   * @param configuration The network configuration
+   * @param onDelivered   The function that receives the tokens of messages
+   *                      that have been sent to a channel; it is called once
+   *                      per channel
+   * @param <T>           The type of tokens
+   *
+   * @return A connection
+   */
+
+  static <T> MIRCNetwork<T> create(
+    final MIRCNetworkConfiguration configuration,
+    final Consumer<T> onDelivered)
+  {
+    final var ircExecutor =
+      Executors.newSingleThreadExecutor(r -> {
+        final var thread = new Thread(r);
+        thread.setName(
+          "com.io7m.mesquida.irc_bot[%s][%d]"
+            .formatted(configuration.name(), thread.getId())
+        );
+        thread.setDaemon(true);
+        return thread;
+      });
+
+    return new MIRCNetwork<>(configuration, onDelivered, ircExecutor);
+  }
+
+  /**
+   * @return The network configuration
+   */
+
+  MIRCNetworkConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  /**
+   * @return The statistics for the network's output queue
+   */
+
+  MIRCOutputStatisticsType outputStatistics()
+  {
+    return this.output;
+  }
+
+  /**
+   * Send a message to every configured channel.
+   *
+   * @param stream The stream the message concerns, if any
+   * @param text   The message text
+   * @param token  The token passed back as each channel receives the message
+   */
+
+  void send(
+    final Optional<String> stream,
+    final String text,
+    final Optional<T> token)
+  {
+    this.actor.send(new CommandSend<>(stream, text, token));
+  }
+
+  /**
+   * Discard all queued messages, including any sent with {@link #send}
+   * before this method was called.
+   */
+
+  void discardQueued()
+  {
+    this.actor.send(new CommandDiscard());
+  }
+
+  @Override
+  public void close()
+  {
+    if (!this.actor.isClosed()) {
+      this.actor.close();
+      this.ircExecutor.shutdown();
+      try {
+        this.outputRegistration.close();
+      } catch (final Exception e) {
+        LOG.error("error closing output statistics: ", e);
+      }
+    }
+  }
+
+  private MActorDirectiveKind handleCommand(
+    final CommandType command)
+  {
+    if (command instanceof CommandIRCDisconnected disconnected) {
+      /*
+       * Disconnections of bots from earlier sessions are expected when
+       * they are closed, and are ignored.
+       */
+
+      return disconnected.bot == this.ircBot
+        ? MActorDirectiveKind.RESTART_AFTER_BACKOFF
+        : MActorDirectiveKind.CONTINUE;
+    }
+
+    if (command instanceof CommandIRCJoined join) {
+      if (join.bot == this.ircBot) {
+        this.joined.add(channelKey(join.channel));
+      }
+      return MActorDirectiveKind.CONTINUE;
+    }
+
+    if (command instanceof CommandSend<?> send) {
+      this.enqueue(send);
+      return MActorDirectiveKind.CONTINUE;
+    }
+
+    if (command instanceof CommandDiscard) {
+      this.output.clear();
+    }
+    return MActorDirectiveKind.CONTINUE;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void enqueue(
+    final CommandSend<?> send)
+  {
+    final var token = (Optional<T>) send.token;
+    for (final var channel : this.configuration.ircChannels()) {
+      this.output.enqueue(channel, send.stream, send.text, token);
+    }
+  }
+
+  private static String channelKey(
+    final String channel)
+  {
+    return channel.toLowerCase(Locale.ROOT);
+  }
+
+  private boolean isReady(
+    final String channel)
+  {
+    return this.joined.contains(channelKey(channel));
+  }
+
+  /**
+   * Send as many queued lines as flood control allows.
+   *
+   * @return The time until more lines can be sent
+   */
+
+  private Optional<Duration> drainOutput()
+  {
+    if (this.ircBot == null || !this.ircBot.isConnected()) {
+      return Optional.empty();
+    }
+
+    final var bot = this.ircBot;
+    this.output.drain(
+      this::isReady,
+      (channel, line) -> bot.sendIRC().message(channel, line),
+      this.onDelivered
+    );
+    return this.output.timeUntilReady(this::isReady);
+  }
+
+  private void configureIRC()
+  {
+    final var tlsFactory = new UtilSSLSocketFactory();
+
+    if (this.configuration.ircUnsafeTrust()) {
+      tlsFactory.trustAllCertificates();
+    }
+
+    final var builder = new Configuration.Builder();
+    builder.addServer(
+      this.configuration.ircHost(),
+      this.configuration.ircPort());
+    for (final var channel : this.configuration.ircChannels()) {
+      builder.addAutoJoinChannel(channel);
+    }
+    builder.setName(this.configuration.ircNickName());
+    builder.setRealName(this.configuration.ircUserName());
+    builder.setVersion("mesquida");
+    builder.setAutoReconnect(true);
+    builder.setSocketFactory(tlsFactory);
+    builder.setLogin(this.configuration.ircUserName());
+    builder.setSocketTimeout(5_000);
+    builder.setAutoReconnectAttempts(Integer.MAX_VALUE);
+    builder.setAutoReconnectDelay(1_000);
+
+    /*
+     * Lines are paced by the output queue, and so the library's own fixed
+     * delay between lines is disabled.
+     */
+
+    builder.setMessageDelay(0L);
+    builder.addListener(this);
+
+    final var bot = new PircBotX(builder.buildConfiguration());
+    this.ircBot = bot;
+    this.ircExecutor.execute(() -> {
+      try {
+        bot.startBot();
+      } catch (final Exception e) {
+        LOG.error("[{}] irc failed: ", this.configuration.name(), e);
+      }
+    });
+  }
+
+  private void closeIRC()
+  {
+    final var bot = this.ircBot;
+    this.ircBot = null;
+    this.joined.clear();
+
+    if (bot != null) {
+      try {
+        bot.close();
+      } catch (final Exception e) {
+        LOG.error("[{}] error closing bot: ", this.configuration.name(), e);
+      }
+    }
+  }
+
+  @Override
+  public void onConnect(
+    final ConnectEvent event)
+    throws Exception
+  {
+    super.onConnect(event);
+    LOG.debug("[{}] connected", this.configuration.name());
+  }
+
+  @Override
+  public void onJoin(
+    final JoinEvent event)
+    throws Exception
+  {
+    super.onJoin(event);
+
+    final var bot = event.getBot();
+    if (bot.getUserBot().equals(event.getUser())) {
+      final var channel = event.getChannel().getName();
+      LOG.debug("[{}] joined: {}", this.configuration.name(), channel);
+      this.actor.send(new CommandIRCJoined(bot, channel));
+    }
+  }
+
+  @Override
+  public void onConnectAttemptFailed(
+    final ConnectAttemptFailedEvent event)
+    throws Exception
+  {
+    super.onConnectAttemptFailed(event);
+
+    event.getConnectExceptions().forEach(
+      (address, exception) ->
+        LOG.error(
+          "[{}] connection failed: {} - {} {}",
+          this.configuration.name(),
+          address,
+          exception.getClass().getCanonicalName(),
+          exception.getMessage())
+    );
+  }
+
+  @Override
+  public void onDisconnect(
+    final DisconnectEvent event)
+    throws Exception
+  {
+    super.onDisconnect(event);
+    this.actor.send(new CommandIRCDisconnected(event.getBot()));
+
+    final Exception ex = event.getDisconnectException();
+    if (ex != null) {
+      LOG.info(
+        "[{}] disconnected: {} - {}",
+        this.configuration.name(),
+        ex.getClass().getCanonicalName(),
+        ex.getMessage());
+    } else {
+      LOG.info(
+        "[{}] disconnected: (no exception information available)",
+        this.configuration.name());
+    }
+  }
+
+  private final class Behaviour
+    implements MActorBehaviourType<CommandType>
+  {
+    Behaviour()
+    {
+
+    }
+
+    @Override
+    public void onStart()
+    {
+      MIRCNetwork.this.configureIRC();
+    }
+
+    @Override
+    public MActorDirectiveKind onCommand(
+      final CommandType command)
+    {
+      return MIRCNetwork.this.handleCommand(command);
+    }
+
+    @Override
+    public Optional<Duration> onIdle()
+    {
+      return MIRCNetwork.this.drainOutput();
+    }
+
+    @Override
+    public void onStop()
+    {
+      MIRCNetwork.this.closeIRC();
+    }
+  }
+
+  sealed interface CommandType
+  {
+
+  }
+
+  record CommandIRCDisconnected(PircBotX bot) implements CommandType
+  {
+
+  }
+
+  record CommandIRCJoined(PircBotX bot, String channel) implements CommandType
+  {
+
+  }
+
+  record CommandSend<T>(
+    Optional<String> stream,
+    String text,
+    Optional<T> token)
+    implements CommandType
+  {
+
+  }
+
+  record CommandDiscard() implements CommandType
+  {
+
+  }
+}
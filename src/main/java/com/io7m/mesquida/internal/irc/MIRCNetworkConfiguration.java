@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.irc;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The configuration of a single IRC network.
+ *
+ * @param name           The name of the network, used in logs and statistics
+ * @param ircHost        The IRC host
+ * @param ircPort        The IRC port
+ * @param ircChannels    The IRC channels to which messages are sent
+ * @param ircUserName    The IRC user name
+ * @param ircNickName    The IRC nickname
+ * @param ircUnsafeTrust Trust all certificates (unsafe!)
+ */
+
+public record MIRCNetworkConfiguration(
+  String name,
+  String ircHost,
+  int ircPort,
+  List<String> ircChannels,
+  String ircUserName,
+  String ircNickName,
+  boolean ircUnsafeTrust)
+{
+  /**
+   * The configuration of a single IRC network.
+   *
+   * @param name           The name of the network, used in logs and
+   *                       statistics
+   * @param ircHost        The IRC host
+   * @param ircPort        The IRC port
+   * @param ircChannels    The IRC channels to which messages are sent
+   * @param ircUserName    The IRC user name
+   * @param ircNickName    The IRC nickname
+   * @param ircUnsafeTrust Trust all certificates (unsafe!)
+   */
+
+  public MIRCNetworkConfiguration
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(ircHost, "ircHost");
+    Objects.requireNonNull(ircNickName, "ircNickName");
+    Objects.requireNonNull(ircUserName, "ircUserName");
+
+    ircChannels = List.copyOf(ircChannels);
+    if (ircChannels.isEmpty()) {
+      throw new IllegalArgumentException(
+        "Network %s must have at least one channel".formatted(name)
+      );
+    }
+  }
+}
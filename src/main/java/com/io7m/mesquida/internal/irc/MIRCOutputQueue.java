@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.irc;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A queue of messages waiting to be sent to the channels of a single IRC
+ * server connection.
+ *
+ * Messages are split into lines that fit within the protocol's line length
+ * limit when they are queued, and lines are released no faster than a
+ * token bucket allows. A message that concerns a stream replaces any
+ * message for the same stream and channel that is still waiting to be
+ * sent, so a stream that starts and stops repeatedly while the queue is
+ * backed up produces a single line describing its latest state.
+ *
+ * Each message may carry a token that is passed back once every line of
+ * the message has been sent; the service uses this to acknowledge broker
+ * messages only after they have been delivered.
+ *
+ * @param <T> The type of tokens
+ */
+
+public final class MIRCOutputQueue<T> implements MIRCOutputStatisticsType
+{
+  private final MIRCTokenBucket bucket;
+  private final ToIntFunction<String> maximumLineBytes;
+  private final LongSupplier clock;
+  private final ArrayDeque<Entry<T>> entries;
+  private long linesSent;
+  private long messagesSent;
+  private long messagesCoalesced;
+
+  /**
+   * Create a queue.
+   *
+   * @param inBucket           The token bucket used for pacing
+   * @param inMaximumLineBytes A function that returns the maximum length of
+   *                           a line in bytes for a given channel
+   * @param inClock            A clock that returns the current time in
+   *                           nanoseconds
+   */
+
+  public MIRCOutputQueue(
+    final MIRCTokenBucket inBucket,
+    final ToIntFunction<String> inMaximumLineBytes,
+    final LongSupplier inClock)
+  {
+    this.bucket =
+      Objects.requireNonNull(inBucket, "bucket");
+    this.maximumLineBytes =
+      Objects.requireNonNull(inMaximumLineBytes, "maximumLineBytes");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.entries =
+      new ArrayDeque<>();
+  }
+
+  /**
+   * Queue a message.
+   *
+   * @param channel The target channel
+   * @param stream  The stream the message concerns, if any
+   * @param text    The message text
+   * @param token   The token passed back when the message has been sent
+   */
+
+  public synchronized void enqueue(
+    final String channel,
+    final Optional<String> stream,
+    final String text,
+    final Optional<T> token)
+  {
+    Objects.requireNonNull(channel, "channel");
+    Objects.requireNonNull(stream, "stream");
+    Objects.requireNonNull(text, "text");
+    Objects.requireNonNull(token, "token");
+
+    final var lines =
+      new ArrayDeque<>(
+        MIRCLines.split(text, this.maximumLineBytes.applyAsInt(channel))
+      );
+
+    if (stream.isPresent()) {
+      for (final var existing : this.entries) {
+        if (existing.isReplaceableBy(channel, stream.get())) {
+          existing.lines = lines;
+          token.ifPresent(existing.tokens::add);
+          ++this.messagesCoalesced;
+          return;
+        }
+      }
+    }
+
+    final var entry =
+      new Entry<T>(channel, stream, lines, this.clock.getAsLong());
+    token.ifPresent(entry.tokens::add);
+    this.entries.add(entry);
+  }
+
+  /**
+   * Send as many lines as the token bucket currently allows. Messages for
+   * channels that are not ready are skipped, and keep their place in the
+   * queue.
+   *
+   * @param ready     A function that indicates if a channel is ready
+   * @param sender    The function that sends a line to a channel; if the
+   *                  function raises an exception, the line remains at the
+   *                  head of its message
+   * @param completed The function that receives the tokens of messages
+   *                  that have been completely sent
+   */
+
+  public synchronized void drain(
+    final Predicate<String> ready,
+    final BiConsumer<String, String> sender,
+    final Consumer<T> completed)
+  {
+    Objects.requireNonNull(ready, "ready");
+    Objects.requireNonNull(sender, "sender");
+    Objects.requireNonNull(completed, "completed");
+
+    final var iterator = this.entries.iterator();
+    while (iterator.hasNext()) {
+      final var entry = iterator.next();
+      if (!ready.test(entry.channel)) {
+        continue;
+      }
+
+      while (!entry.lines.isEmpty()) {
+        if (!this.bucket.tryTake(this.clock.getAsLong())) {
+          return;
+        }
+
+        sender.accept(entry.channel, entry.lines.peek());
+        entry.lines.poll();
+        entry.started = true;
+        ++this.linesSent;
+      }
+
+      iterator.remove();
+      ++this.messagesSent;
+      entry.tokens.forEach(completed);
+    }
+  }
+
+  /**
+   * @param ready A function that indicates if a channel is ready
+   *
+   * @return The time until {@link #drain(Predicate, BiConsumer, Consumer)}
+   * can next send a line, or nothing if no messages are waiting for ready
+   * channels
+   */
+
+  public synchronized Optional<Duration> timeUntilReady(
+    final Predicate<String> ready)
+  {
+    Objects.requireNonNull(ready, "ready");
+
+    for (final var entry : this.entries) {
+      if (ready.test(entry.channel)) {
+        return Optional.of(
+          this.bucket.timeUntilAvailable(this.clock.getAsLong())
+        );
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Discard all queued messages. The tokens of the discarded messages are
+   * not returned.
+   */
+
+  public synchronized void clear()
+  {
+    this.entries.clear();
+  }
+
+  @Override
+  public synchronized int getQueuedMessages()
+  {
+    return this.entries.size();
+  }
+
+  @Override
+  public synchronized int getQueuedLines()
+  {
+    var count = 0;
+    for (final var entry : this.entries) {
+      count += entry.lines.size();
+    }
+    return count;
+  }
+
+  @Override
+  public synchronized long getQueueLagMillis()
+  {
+    final var oldest = this.entries.peek();
+    if (oldest == null) {
+      return 0L;
+    }
+    return Duration.ofNanos(this.clock.getAsLong() - oldest.queuedAt)
+      .toMillis();
+  }
+
+  @Override
+  public synchronized long getLinesSent()
+  {
+    return this.linesSent;
+  }
+
+  @Override
+  public synchronized long getMessagesSent()
+  {
+    return this.messagesSent;
+  }
+
+  @Override
+  public synchronized long getMessagesCoalesced()
+  {
+    return this.messagesCoalesced;
+  }
+
+  private static final class Entry<T>
+  {
+    private final String channel;
+    private final Optional<String> stream;
+    private final long queuedAt;
+    private final List<T> tokens;
+    private ArrayDeque<String> lines;
+    private boolean started;
+
+    Entry(
+      final String inChannel,
+      final Optional<String> inStream,
+      final ArrayDeque<String> inLines,
+      final long inQueuedAt)
+    {
+      this.channel = inChannel;
+      this.stream = inStream;
+      this.lines = inLines;
+      this.queuedAt = inQueuedAt;
+      this.tokens = new ArrayList<>(1);
+    }
+
+    /**
+     * A message is replaceable if it concerns the same stream and channel
+     * and none of its lines have been sent yet; replacing a partially sent
+     * message would leave a fragment of the old message in the channel.
+     */
+
+    boolean isReplaceableBy(
+      final String otherChannel,
+      final String otherStream)
+    {
+      return !this.started
+             && this.channel.equals(otherChannel)
+             && this.stream.isPresent()
+             && this.stream.get().equals(otherStream);
+    }
+  }
+}
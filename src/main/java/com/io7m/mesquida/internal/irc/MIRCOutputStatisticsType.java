@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.irc;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for the queue of lines waiting to be sent to an IRC server.
+ */
+
+@MXBean
+public interface MIRCOutputStatisticsType
+{
+  /**
+   * @return The number of messages waiting to be sent
+   */
+
+  int getQueuedMessages();
+
+  /**
+   * @return The number of lines waiting to be sent
+   */
+
+  int getQueuedLines();
+
+  /**
+   * @return The time the oldest waiting message has spent in the queue, in
+   * milliseconds
+   */
+
+  long getQueueLagMillis();
+
+  /**
+   * @return The number of lines sent
+   */
+
+  long getLinesSent();
+
+  /**
+   * @return The number of messages sent
+   */
+
+  long getMessagesSent();
+
+  /**
+   * @return The number of messages that replaced an earlier queued message
+   * for the same stream
+   */
+
+  long getMessagesCoalesced();
+}
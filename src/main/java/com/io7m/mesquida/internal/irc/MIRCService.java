@@ -23,76 +23,53 @@ import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.jmulticlose.core.ClosingResourceFailedException;
 import com.io7m.mesquida.internal.MJson;
+import com.io7m.mesquida.internal.actor.MActor;
+import com.io7m.mesquida.internal.actor.MActorBehaviourType;
+import com.io7m.mesquida.internal.actor.MActorDirectiveKind;
+import com.io7m.mesquida.internal.actor.MActorStatisticsType;
 import com.io7m.mesquida.internal.mq.MMessageFormatted;
-import org.apache.activemq.artemis.api.core.TransportConfiguration;
-import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
-import org.apache.activemq.artemis.core.remoting.impl.netty.NettyConnectorFactory;
-import org.pircbotx.Configuration;
-import org.pircbotx.PircBotX;
-import org.pircbotx.UtilSSLSocketFactory;
-import org.pircbotx.exception.IrcException;
-import org.pircbotx.hooks.ListenerAdapter;
-import org.pircbotx.hooks.events.ConnectAttemptFailedEvent;
-import org.pircbotx.hooks.events.ConnectEvent;
-import org.pircbotx.hooks.events.DisconnectEvent;
-import org.pircbotx.hooks.events.JoinEvent;
+import com.io7m.mesquida.internal.mq.MMessageJMSSubscription;
+import com.io7m.mesquida.internal.mq.MMessageSourceBus;
+import com.io7m.mesquida.internal.mq.MMessageSourceJMS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.TextMessage;
-import javax.jms.TopicSession;
-import javax.jms.TopicSubscriber;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import static org.apache.activemq.artemis.api.jms.JMSFactoryType.CF;
 
 /**
- * The IRC service.
+ * The IRC service. The service holds a single subscription to the message
+ * source, and relays each message to every channel of every configured
+ * network.
  */
 
-public final class MIRCService extends ListenerAdapter
-  implements AutoCloseable, Runnable
+public final class MIRCService implements AutoCloseable
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(MIRCService.class);
 
-  private final ExecutorService executor;
-  private final AtomicBoolean done;
-  private final LinkedBlockingQueue<CommandType> commands;
   private final MIRCServiceConfiguration configuration;
-  private final ExecutorService ircExecutor;
   private final ObjectMapper queueMessageMapper;
+  private final List<MIRCNetwork<Delivery>> networks;
+  private final MActor<CommandType> actor;
   private CloseableCollectionType<ClosingResourceFailedException> resources;
-  private TopicSubscriber subscriber;
-  private TopicSession session;
-  private PircBotX ircBot;
+  private MMessageJMSSubscription subscription;
 
   private MIRCService(
-    final MIRCServiceConfiguration inConfiguration,
-    final ExecutorService inExecutor,
-    final ExecutorService inIrcExecutor)
+    final MIRCServiceConfiguration inConfiguration)
   {
-    this.executor =
-      Objects.requireNonNull(inExecutor, "executor");
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
-    this.ircExecutor =
-      Objects.requireNonNull(inIrcExecutor, "inIrcExecutor");
 
-    this.done =
-      new AtomicBoolean(false);
-    this.commands =
-      new LinkedBlockingQueue<>();
     this.queueMessageMapper =
       MJson.createMapper(
         Set.of(
@@ -104,6 +81,19 @@ public final class MIRCService extends ListenerAdapter
 
     this.resources =
       CloseableCollection.create();
+
+    /*
+     * The networks live as long as the service, so that a problem with the
+     * message source does not cause every network to reconnect.
+     */
+
+    this.networks = new ArrayList<>();
+    for (final var network : this.configuration.networks()) {
+      this.networks.add(MIRCNetwork.create(network, this::onDelivered));
+    }
+
+    this.actor =
+      MActor.create("irc", new Behaviour());
   }
 
   /**
@@ -117,185 +107,136 @@ public final class MIRCService extends ListenerAdapter
   public static MIRCService create(
     final MIRCServiceConfiguration configuration)
   {
-    final var executor =
-      Executors.newSingleThreadExecutor(r -> {
-        final var thread = new Thread(r);
-        thread.setName("com.io7m.mesquida.irc[" + thread.getId() + "]");
-        thread.setDaemon(true);
-        return thread;
-      });
-
-    final var ircExecutor =
-      Executors.newSingleThreadExecutor(r -> {
-        final var thread = new Thread(r);
-        thread.setName("com.io7m.mesquida.irc_bot[" + thread.getId() + "]");
-        thread.setDaemon(true);
-        return thread;
-      });
-
-    final var service = new MIRCService(configuration, executor, ircExecutor);
-    executor.execute(service);
-    return service;
+    return new MIRCService(configuration);
   }
 
   @Override
   public void close()
   {
-    if (this.done.compareAndSet(false, true)) {
-      this.executor.shutdown();
+    if (!this.actor.isClosed()) {
+      this.actor.close();
+      for (final var network : this.networks) {
+        network.close();
+      }
     }
   }
 
-  @Override
-  public void run()
+  /**
+   * @return The service statistics
+   */
+
+  public MActorStatisticsType statistics()
   {
-    while (!this.done.get()) {
-      try {
-        this.configureMessageQueue();
-      } catch (final Exception e) {
-        LOG.error("unable to configure message queue: ", e);
-        this.pause();
-        continue;
-      }
+    return this.actor;
+  }
 
-      try {
-        this.configureIRC();
-      } catch (final Exception e) {
-        LOG.error("unable to configure irc: ", e);
-        this.pause();
-        continue;
+  /**
+   * @return The statistics for the output queue of each network, by network
+   * name
+   */
+
+  public Map<String, MIRCOutputStatisticsType> outputStatistics()
+  {
+    final var results =
+      new LinkedHashMap<String, MIRCOutputStatisticsType>();
+    for (final var network : this.networks) {
+      results.put(network.configuration().name(), network.outputStatistics());
+    }
+    return results;
+  }
+
+  private void onDelivered(
+    final Delivery delivery)
+  {
+    this.actor.send(new CommandDelivered(delivery));
+  }
+
+  private MActorDirectiveKind handleCommand(
+    final CommandType command)
+  {
+    try {
+      if (command instanceof CommandDelivered delivered) {
+        return this.handleDelivered(delivered.delivery);
       }
 
-      while (!this.done.get()) {
-        try {
-          final var command =
-            this.commands.poll(1L, TimeUnit.SECONDS);
-
-          if (command == null) {
-            continue;
-          }
-
-          if (command instanceof CommandIRCDisconnected) {
-            break;
-          }
-
-          if (command instanceof CommandJMSReceived message) {
-            this.handleMessage(message.message);
-            continue;
-          }
-
-        } catch (final InterruptedException e) {
-          Thread.currentThread().interrupt();
-        } catch (final JMSException e) {
-          LOG.error("jms: ", e);
-        } catch (final IOException e) {
-          LOG.error("i/o: ", e);
+      if (command instanceof CommandJMSReceived message) {
+        /*
+         * Messages received by earlier subscriptions have been returned to
+         * the broker, and will be delivered again.
+         */
+
+        if (message.subscription != this.subscription) {
+          return MActorDirectiveKind.CONTINUE;
         }
+        return this.handleMessage(message.message);
       }
-    }
 
-    try {
-      this.resources.close();
-    } catch (final ClosingResourceFailedException e) {
-      LOG.error("error closing service: ", e);
+      if (command instanceof CommandBusReceived message) {
+        this.relay(message.message, Optional.empty());
+      }
+    } catch (final JMSException e) {
+      LOG.error("jms: ", e);
+      return MActorDirectiveKind.RESTART_AFTER_BACKOFF;
+    } catch (final IOException e) {
+      LOG.error("i/o: ", e);
     }
+    return MActorDirectiveKind.CONTINUE;
   }
 
-  private void configureIRC()
-    throws IOException, IrcException
+  private MActorDirectiveKind handleDelivered(
+    final Delivery delivery)
+    throws JMSException
   {
-    final var tlsFactory = new UtilSSLSocketFactory();
+    /*
+     * Deliveries of messages from earlier subscriptions are ignored; the
+     * messages have been returned to the broker.
+     */
 
-    if (this.configuration.ircUnsafeTrust()) {
-      tlsFactory.trustAllCertificates();
+    if (delivery.subscription != this.subscription) {
+      return MActorDirectiveKind.CONTINUE;
     }
 
-    final var builder = new Configuration.Builder();
-    builder.addServer(
-      this.configuration.ircHost(),
-      this.configuration.ircPort());
-    builder.addAutoJoinChannel(this.configuration.ircChannel());
-    builder.setName(this.configuration.ircUserName());
-    builder.setRealName(this.configuration.ircUserName());
-    builder.setVersion("mesquida");
-    builder.setAutoReconnect(true);
-    builder.setSocketFactory(tlsFactory);
-    builder.setLogin(this.configuration.ircUserName());
-    builder.setSocketTimeout(5_000);
-    builder.setAutoReconnectAttempts(Integer.MAX_VALUE);
-    builder.setAutoReconnectDelay(1_000);
-    builder.addListener(this);
-
-    final var irc_configuration = builder.buildConfiguration();
-    this.ircBot = this.resources.add(new PircBotX(irc_configuration));
-
-    this.ircExecutor.execute(() -> {
-      try {
-        this.ircBot.startBot();
-      } catch (final Exception e) {
-        LOG.error("irc failed: ", e);
-      }
-    });
+    --delivery.remaining;
+    if (delivery.remaining == 0) {
+      delivery.message.acknowledge();
+    }
+    return MActorDirectiveKind.CONTINUE;
   }
 
-  @Override
-  public void onConnect(
-    final ConnectEvent event)
-    throws Exception
+  private void closeResources()
   {
-    super.onConnect(event);
-    LOG.debug("connected");
-  }
+    /*
+     * Messages queued for the networks are discarded; messages from the
+     * broker are delivered again when the subscription is opened again.
+     */
 
-  @Override
-  public void onJoin(
-    final JoinEvent event)
-    throws Exception
-  {
-    super.onJoin(event);
-    LOG.debug("joined: {}", event.getChannel().getName());
-  }
+    for (final var network : this.networks) {
+      network.discardQueued();
+    }
 
-  @Override
-  public void onConnectAttemptFailed(
-    final ConnectAttemptFailedEvent event)
-    throws Exception
-  {
-    super.onConnectAttemptFailed(event);
-
-    event.getConnectExceptions().forEach(
-      (address, exception) ->
-        LOG.error(
-          "connection failed: {} - {}",
-          address,
-          exception.getClass().getCanonicalName(),
-          exception.getMessage())
-    );
-  }
+    this.subscription = null;
 
-  @Override
-  public void onDisconnect(
-    final DisconnectEvent event)
-    throws Exception
-  {
-    super.onDisconnect(event);
-    this.commands.add(new CommandIRCDisconnected());
-
-    final Exception ex = event.getDisconnectException();
-    if (ex != null) {
-      LOG.info(
-        "disconnected: {} - {}",
-        ex.getClass().getCanonicalName(),
-        ex.getMessage());
-    } else {
-      LOG.info("disconnected: (no exception information available)");
+    try {
+      this.resources.close();
+    } catch (final ClosingResourceFailedException e) {
+      LOG.error("error closing service: ", e);
     }
+    this.resources = CloseableCollection.create();
   }
 
-  private void handleMessage(
+  private MActorDirectiveKind handleMessage(
     final Message message)
-    throws JMSException, IOException, InterruptedException
+    throws JMSException, IOException
   {
+    if (this.subscription.isDeliveryLimitExceeded(message)) {
+      LOG.error(
+        "discarding message {} after too many delivery attempts",
+        message.getJMSMessageID()
+      );
+      message.acknowledge();
+      return MActorDirectiveKind.CONTINUE;
+    }
+
     if (message instanceof TextMessage textMessage) {
       final MMessageFormatted parsed;
       try {
@@ -303,7 +244,7 @@ public final class MIRCService extends ListenerAdapter
           textMessage.getText(),
           MMessageFormatted.class
         );
-      } catch (JsonProcessingException | JMSException e) {
+      } catch (final JsonProcessingException e) {
 
         /*
          * Acknowledge the message if we can't parse it, so that we don't
@@ -315,73 +256,109 @@ public final class MIRCService extends ListenerAdapter
       }
 
       /*
-       * Don't acknowledge the message until the IRC server has accepted
-       * our version of it.
+       * Don't acknowledge the message until every line of it has been
+       * written to every channel. If the subscription fails first, it is
+       * closed and opened again after a delay, and the broker delivers the
+       * unacknowledged message again.
        */
 
-      this.ircBot.send()
-        .message(this.configuration.ircChannel(), parsed.text);
+      final var channels =
+        this.networks.stream()
+          .mapToInt(n -> n.configuration().ircChannels().size())
+          .sum();
 
-      textMessage.acknowledge();
+      this.relay(
+        parsed,
+        Optional.of(new Delivery(this.subscription, textMessage, channels))
+      );
+      return MActorDirectiveKind.CONTINUE;
     }
 
     LOG.debug("ignored unrecognized message type: {}", message);
     message.acknowledge();
+    return MActorDirectiveKind.CONTINUE;
   }
 
-  private void pause()
+  private void relay(
+    final MMessageFormatted message,
+    final Optional<Delivery> delivery)
   {
-    try {
-      Thread.sleep(1_000L);
-    } catch (final InterruptedException ex) {
-      Thread.currentThread().interrupt();
+    final var stream = Optional.ofNullable(message.stream);
+    for (final var network : this.networks) {
+      network.send(stream, message.text, delivery);
     }
   }
 
   private void configureMessageQueue()
     throws Exception
   {
-    if (this.resources != null) {
-      this.resources.close();
+    final var source = this.configuration.source();
+    if (source instanceof MMessageSourceBus bus) {
+      LOG.info("subscribe to in-process message bus");
+      this.resources.add(
+        bus.bus().subscribe(m -> this.actor.send(new CommandBusReceived(m)))
+      );
+      return;
     }
 
-    this.resources = CloseableCollection.create();
-
-    LOG.info("connect {}", this.configuration.brokerURL());
-
-    final var transportConfiguration =
-      new TransportConfiguration(NettyConnectorFactory.class.getName());
-    final var connections =
+    final var jms = (MMessageSourceJMS) source;
+    this.subscription =
       this.resources.add(
-        ActiveMQJMSClient.createConnectionFactoryWithoutHA(
-          CF,
-          transportConfiguration
-        ));
+        MMessageJMSSubscription.open(jms, (received, message) -> {
+          this.actor.send(new CommandJMSReceived(received, message));
+        })
+      );
+  }
 
-    connections.setBrokerURL(this.configuration.brokerURL().toString());
-    connections.setClientID(UUID.randomUUID().toString());
-    connections.setUser(this.configuration.brokerUser());
-    connections.setPassword(this.configuration.brokerPass());
-    connections.setReconnectAttempts(-1);
+  /**
+   * A message from the broker that is being delivered to the channels. The
+   * message is acknowledged when every channel has received it.
+   */
 
-    final var topicConnection =
-      this.resources.add(connections.createTopicConnection());
+  private static final class Delivery
+  {
+    private final MMessageJMSSubscription subscription;
+    private final Message message;
+    private int remaining;
+
+    Delivery(
+      final MMessageJMSSubscription inSubscription,
+      final Message inMessage,
+      final int inRemaining)
+    {
+      this.subscription = inSubscription;
+      this.message = inMessage;
+      this.remaining = inRemaining;
+    }
+  }
 
-    this.session =
-      this.resources.add(
-        topicConnection.createTopicSession(false, 0)
-      );
+  private final class Behaviour
+    implements MActorBehaviourType<CommandType>
+  {
+    Behaviour()
+    {
+
+    }
 
-    final var topic =
-      this.session.createTopic(this.configuration.brokerTopic());
-    this.subscriber =
-      this.resources.add(this.session.createSubscriber(topic));
+    @Override
+    public void onStart()
+      throws Exception
+    {
+      MIRCService.this.configureMessageQueue();
+    }
 
-    this.subscriber.setMessageListener(message -> {
-      this.commands.add(new CommandJMSReceived(message));
-    });
+    @Override
+    public MActorDirectiveKind onCommand(
+      final CommandType command)
+    {
+      return MIRCService.this.handleCommand(command);
+    }
 
-    topicConnection.start();
+    @Override
+    public void onStop()
+    {
+      MIRCService.this.closeResources();
+    }
   }
 
   sealed interface CommandType
@@ -389,12 +366,20 @@ public final class MIRCService extends ListenerAdapter
 
   }
 
-  record CommandIRCDisconnected() implements CommandType
+  record CommandDelivered(Delivery delivery) implements CommandType
+  {
+
+  }
+
+  record CommandJMSReceived(
+    MMessageJMSSubscription subscription,
+    Message message)
+    implements CommandType
   {
 
   }
 
-  record CommandJMSReceived(Message message) implements CommandType
+  record CommandBusReceived(MMessageFormatted message) implements CommandType
   {
 
   }
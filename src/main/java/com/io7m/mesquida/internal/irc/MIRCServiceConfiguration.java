@@ -16,60 +16,205 @@
 
 package com.io7m.mesquida.internal.irc;
 
-import java.net.URI;
+import com.io7m.jproperties.JProperties;
+import com.io7m.jproperties.JPropertyException;
+import com.io7m.jproperties.JPropertyNonexistent;
+import com.io7m.mesquida.internal.mq.MMessageSourceType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
 
 /**
  * The IRC service configuration.
  *
- * @param brokerPass     The message broker password
- * @param brokerTopic    The message broker topic
- * @param brokerURL      The message broker URL
- * @param brokerUser     The message broker user
- * @param ircChannel     The IRC channel name
- * @param ircHost        The IRC host
- * @param ircNickName    The IRC nickname
- * @param ircPort        The IRC port
- * @param ircUserName    The IRC user name
- * @param ircUnsafeTrust Trust all certificates (unsafe!)
+ * @param source   The source of messages to relay
+ * @param networks The IRC networks to which messages are relayed
  */
 
 public record MIRCServiceConfiguration(
-  URI brokerURL,
-  String brokerUser,
-  String brokerPass,
-  String brokerTopic,
-  String ircHost,
-  int ircPort,
-  String ircChannel,
-  String ircUserName,
-  String ircNickName,
-  boolean ircUnsafeTrust)
+  MMessageSourceType source,
+  List<MIRCNetworkConfiguration> networks)
 {
   /**
    * The IRC service configuration.
    *
-   * @param brokerPass     The message broker password
-   * @param brokerTopic    The message broker topic
-   * @param brokerURL      The message broker URL
-   * @param brokerUser     The message broker user
-   * @param ircChannel     The IRC channel name
-   * @param ircHost        The IRC host
-   * @param ircNickName    The IRC nickname
-   * @param ircPort        The IRC port
-   * @param ircUserName    The IRC user name
-   * @param ircUnsafeTrust Trust all certificates (unsafe!)
+   * @param source   The source of messages to relay
+   * @param networks The IRC networks to which messages are relayed
    */
 
   public MIRCServiceConfiguration
   {
-    Objects.requireNonNull(brokerPass, "brokerPass");
-    Objects.requireNonNull(brokerTopic, "brokerTopic");
-    Objects.requireNonNull(brokerURL, "brokerURL");
-    Objects.requireNonNull(brokerUser, "brokerUser");
-    Objects.requireNonNull(ircChannel, "ircChannel");
-    Objects.requireNonNull(ircHost, "ircHost");
-    Objects.requireNonNull(ircNickName, "ircNickName");
-    Objects.requireNonNull(ircUserName, "ircUserName");
+    Objects.requireNonNull(source, "source");
+
+    networks = List.copyOf(networks);
+    if (networks.isEmpty()) {
+      throw new IllegalArgumentException(
+        "At least one IRC network must be configured");
+    }
+
+    final var names = new TreeSet<String>();
+    for (final var network : networks) {
+      if (!names.add(network.name())) {
+        throw new IllegalArgumentException(
+          "Network name %s is used more than once".formatted(network.name())
+        );
+      }
+    }
+  }
+
+  /**
+   * Open the given properties file as a list of networks. Networks are
+   * given as {@code irc.<network>.<field>}, where the fields are:
+   *
+   * <ul>
+   *   <li>{@code host}: The IRC server hostname (required)</li>
+   *   <li>{@code port}: The IRC server port (default 6667)</li>
+   *   <li>{@code channels}: The channels, separated by spaces or commas
+   *   (required)</li>
+   *   <li>{@code user}: The IRC user name (required)</li>
+   *   <li>{@code nick}: The IRC nickname (default: the user name)</li>
+   *   <li>{@code unsafeTrust}: Trust all certificates (default false)</li>
+   * </ul>
+   *
+   * @param source The source of messages to relay
+   * @param file   The file
+   *
+   * @return A configuration
+   *
+   * @throws IOException        On errors
+   * @throws JPropertyException On errors
+   */
+
+  public static MIRCServiceConfiguration open(
+    final MMessageSourceType source,
+    final Path file)
+    throws IOException, JPropertyException
+  {
+    return new MIRCServiceConfiguration(source, openNetworks(file));
+  }
+
+  /**
+   * Open the given properties file as a list of networks, in the format
+   * described by {@link #open(MMessageSourceType, Path)}.
+   *
+   * @param file The file
+   *
+   * @return The networks
+   *
+   * @throws IOException        On errors
+   * @throws JPropertyException On errors
+   */
+
+  public static List<MIRCNetworkConfiguration> openNetworks(
+    final Path file)
+    throws IOException, JPropertyException
+  {
+    final var networks = openNetworksIfAny(file);
+    if (networks.isEmpty()) {
+      throw new JPropertyNonexistent(
+        "No networks are defined (expected irc.<network>.host)");
+    }
+    return networks;
+  }
+
+  /**
+   * Open the given properties file as a list of networks, in the format
+   * described by {@link #open(MMessageSourceType, Path)}. Unlike
+   * {@link #openNetworks(Path)}, a file that defines no networks is not an
+   * error, so that networks can be listed in a file that also contains
+   * other configuration.
+   *
+   * @param file The file
+   *
+   * @return The networks, which may be empty
+   *
+   * @throws IOException        On errors
+   * @throws JPropertyException On errors
+   */
+
+  public static List<MIRCNetworkConfiguration> openNetworksIfAny(
+    final Path file)
+    throws IOException, JPropertyException
+  {
+    try (var stream = Files.newInputStream(file)) {
+      final var properties = new Properties();
+      properties.load(stream);
+      return networks(properties);
+    }
+  }
+
+  private static List<MIRCNetworkConfiguration> networks(
+    final Properties properties)
+    throws JPropertyException
+  {
+    final var prefix = "irc.";
+    final var names = new TreeSet<String>();
+    for (final var name : properties.stringPropertyNames()) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+
+      final var rest = name.substring(prefix.length());
+      final var dot = rest.indexOf('.');
+      if (dot > 0) {
+        names.add(rest.substring(0, dot));
+      }
+    }
+
+    final var networks = new ArrayList<MIRCNetworkConfiguration>();
+    for (final var name : names) {
+      networks.add(network(properties, name, prefix + name + "."));
+    }
+    return networks;
+  }
+
+  private static MIRCNetworkConfiguration network(
+    final Properties properties,
+    final String name,
+    final String prefix)
+    throws JPropertyException
+  {
+    final var host =
+      JProperties.getString(properties, prefix + "host");
+    final var port =
+      JProperties.getIntegerWithDefault(properties, prefix + "port", 6667);
+    final var channels =
+      JProperties.getString(properties, prefix + "channels");
+    final var user =
+      JProperties.getString(properties, prefix + "user");
+    final var nick =
+      JProperties.getStringWithDefault(properties, prefix + "nick", user);
+    final var unsafeTrust =
+      JProperties.getBooleanWithDefault(
+        properties, prefix + "unsafeTrust", false);
+
+    final var channelList =
+      Arrays.stream(channels.split("[\\s,]+"))
+        .filter(c -> !c.isBlank())
+        .toList();
+
+    if (channelList.isEmpty()) {
+      throw new JPropertyNonexistent(
+        "Property %schannels must name at least one channel"
+          .formatted(prefix)
+      );
+    }
+
+    return new MIRCNetworkConfiguration(
+      name,
+      host,
+      port,
+      channelList,
+      user,
+      nick,
+      unsafeTrust
+    );
   }
 }
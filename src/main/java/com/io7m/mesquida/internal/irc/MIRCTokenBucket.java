@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.irc;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A token bucket used to pace lines sent to an IRC server. The bucket holds
+ * up to {@code capacity} tokens, and gains one token every
+ * {@code interval}. Sending a line consumes a token.
+ *
+ * The defaults match the flood control in common IRC servers, which allow
+ * a short burst of lines and then roughly one line every two seconds
+ * before disconnecting a client for "Excess Flood". The burst is kept one
+ * line below the usual limit of five, so that the occasional line sent by
+ * the IRC library itself (such as a PONG) never tips the bot over.
+ *
+ * This class is not thread-safe.
+ */
+
+public final class MIRCTokenBucket
+{
+  /**
+   * The default bucket capacity.
+   */
+
+  public static final int DEFAULT_CAPACITY = 4;
+
+  /**
+   * The default interval between tokens.
+   */
+
+  public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(2L);
+
+  private final int capacity;
+  private final long intervalNanos;
+  private int available;
+  private long lastRefill;
+
+  /**
+   * Create a full token bucket.
+   *
+   * @param inCapacity The maximum number of tokens
+   * @param inInterval The time taken to gain a token
+   * @param timeNow    The current time in nanoseconds
+   */
+
+  public MIRCTokenBucket(
+    final int inCapacity,
+    final Duration inInterval,
+    final long timeNow)
+  {
+    Objects.requireNonNull(inInterval, "interval");
+
+    if (inCapacity < 1) {
+      throw new IllegalArgumentException(
+        "Capacity %d must be >= 1".formatted(inCapacity)
+      );
+    }
+    if (inInterval.isNegative() || inInterval.isZero()) {
+      throw new IllegalArgumentException(
+        "Interval %s must be positive".formatted(inInterval)
+      );
+    }
+
+    this.capacity = inCapacity;
+    this.intervalNanos = inInterval.toNanos();
+    this.available = inCapacity;
+    this.lastRefill = timeNow;
+  }
+
+  /**
+   * Take a token if one is available.
+   *
+   * @param timeNow The current time in nanoseconds
+   *
+   * @return {@code true} if a token was taken
+   */
+
+  public boolean tryTake(
+    final long timeNow)
+  {
+    this.refill(timeNow);
+    if (this.available > 0) {
+      --this.available;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @param timeNow The current time in nanoseconds
+   *
+   * @return The time until a token will be available
+   */
+
+  public Duration timeUntilAvailable(
+    final long timeNow)
+  {
+    this.refill(timeNow);
+    if (this.available > 0) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos(this.intervalNanos - (timeNow - this.lastRefill));
+  }
+
+  /**
+   * @param timeNow The current time in nanoseconds
+   *
+   * @return The number of tokens available
+   */
+
+  public int available(
+    final long timeNow)
+  {
+    this.refill(timeNow);
+    return this.available;
+  }
+
+  private void refill(
+    final long timeNow)
+  {
+    if (this.available == this.capacity) {
+      this.lastRefill = timeNow;
+      return;
+    }
+
+    final var gained = (timeNow - this.lastRefill) / this.intervalNanos;
+    if (gained > 0L) {
+      this.available =
+        (int) Math.min(this.capacity, this.available + gained);
+      this.lastRefill += gained * this.intervalNanos;
+    }
+  }
+}
@@ -22,13 +22,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.io7m.mesquida.internal.matrix.MMatrixJSON.MError;
 import static com.io7m.mesquida.internal.matrix.MMatrixJSON.MLoginRequest;
@@ -47,10 +49,12 @@ public final class MMatrixClient
   private static final Logger LOG =
     LoggerFactory.getLogger(MMatrixClient.class);
 
+  private static final Duration DEFAULT_RETRY_AFTER =
+    Duration.ofSeconds(1L);
+
   private final HttpClient client;
   private final ObjectMapper objectMapper;
   private final URI serverBaseURI;
-  private volatile BigInteger transactionId;
 
   private MMatrixClient(
     final HttpClient inClient,
@@ -63,8 +67,6 @@ public final class MMatrixClient
       Objects.requireNonNull(inObjectMapper, "inObjectMapper");
     this.serverBaseURI =
       Objects.requireNonNull(inServerBaseURI, "serverBaseURI");
-    this.transactionId =
-      BigInteger.ONE;
   }
 
   private static String agent()
@@ -221,9 +223,6 @@ public final class MMatrixClient
     Objects.requireNonNull(accessToken, "accessToken");
     Objects.requireNonNull(roomId, "roomId");
 
-    this.transactionId =
-      this.transactionId.add(BigInteger.ONE);
-
     final var targetURI =
       this.serverBaseURI.resolve(
         String.format(
@@ -240,20 +239,16 @@ public final class MMatrixClient
     final var response =
       this.client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
 
-    final var statusCode = response.statusCode();
-    LOG.debug("{} status {}", targetURI, Integer.valueOf(statusCode));
-    if (statusCode >= 400) {
-      throw new IOException(
-        String.format("Server responded: %d", Integer.valueOf(statusCode)));
-    }
+    checkStatus(targetURI, response.statusCode());
   }
 
   /**
    * Send a plain text message to the server.
    *
-   * @param accessToken The access token
-   * @param roomId      The room ID
-   * @param message     The message text
+   * @param accessToken   The access token
+   * @param roomId        The room ID
+   * @param transactionId The transaction ID
+   * @param message       The message text
    *
    * @throws IOException          On I/O errors
    * @throws InterruptedException If the operation is interrupted
@@ -262,11 +257,75 @@ public final class MMatrixClient
   public void roomSendMessage(
     final String accessToken,
     final String roomId,
+    final String transactionId,
     final MMatrixMessage message)
     throws IOException, InterruptedException
+  {
+    final var httpRequest =
+      this.roomSendMessageRequest(
+        accessToken, roomId, transactionId, message);
+    final var response =
+      this.client.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+    this.checkSendResponse(roomId, response);
+  }
+
+  /**
+   * Send a plain text message to the server without waiting for the
+   * response. The returned future fails with an {@link IOException} if the
+   * server rejects the message, or specifically with an
+   * {@link MMatrixRateLimitedException} if the server is rate limiting the
+   * client, or with an {@link MMatrixRoomUnavailableException} if the bot
+   * can no longer post to the room. Sending a message again with the same
+   * transaction ID is harmless; the server returns the event it created the
+   * first time.
+   *
+   * @param accessToken   The access token
+   * @param roomId        The room ID
+   * @param transactionId The transaction ID
+   * @param message       The message text
+   *
+   * @return A future that completes when the server has accepted the message
+   */
+
+  public CompletableFuture<Void> roomSendMessageAsync(
+    final String accessToken,
+    final String roomId,
+    final String transactionId,
+    final MMatrixMessage message)
+  {
+    final HttpRequest httpRequest;
+    try {
+      httpRequest =
+        this.roomSendMessageRequest(
+          accessToken, roomId, transactionId, message);
+    } catch (final IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return this.client.sendAsync(
+        httpRequest,
+        HttpResponse.BodyHandlers.ofByteArray())
+      .thenApply(response -> {
+        try {
+          this.checkSendResponse(roomId, response);
+        } catch (final IOException e) {
+          throw new CompletionException(e);
+        }
+        return null;
+      });
+  }
+
+  private HttpRequest roomSendMessageRequest(
+    final String accessToken,
+    final String roomId,
+    final String transactionId,
+    final MMatrixMessage message)
+    throws IOException
   {
     Objects.requireNonNull(accessToken, "accessToken");
     Objects.requireNonNull(roomId, "roomId");
+    Objects.requireNonNull(transactionId, "transactionId");
     Objects.requireNonNull(message, "message");
 
     final var messageReq = new MRoomMessage();
@@ -274,35 +333,102 @@ public final class MMatrixClient
     messageReq.formattedBody = message.html();
     messageReq.msgtype = "m.text";
 
-    this.transactionId =
-      this.transactionId.add(BigInteger.ONE);
-
     final var targetURI =
       this.serverBaseURI.resolve(
         String.format(
           "/_matrix/client/r0/rooms/%s/send/m.room.message/%s",
           URLEncoder.encode(roomId, UTF_8),
-          this.transactionId
+          URLEncoder.encode(transactionId, UTF_8)
         ));
 
     final var messageData =
       this.objectMapper.writeValueAsBytes(messageReq);
 
-    final var httpRequest =
-      HttpRequest.newBuilder(targetURI)
-        .header("User-Agent", agent())
-        .header("Authorization", String.format("Bearer %s", accessToken))
-        .PUT(HttpRequest.BodyPublishers.ofByteArray(messageData))
-        .build();
-    final var response =
-      this.client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+    return HttpRequest.newBuilder(targetURI)
+      .header("User-Agent", agent())
+      .header("Authorization", String.format("Bearer %s", accessToken))
+      .PUT(HttpRequest.BodyPublishers.ofByteArray(messageData))
+      .build();
+  }
 
+  private void checkSendResponse(
+    final String roomId,
+    final HttpResponse<byte[]> response)
+    throws IOException
+  {
     final var statusCode = response.statusCode();
+    if (statusCode == 403 || statusCode == 404) {
+      LOG.debug("{} status {}", response.uri(), Integer.valueOf(statusCode));
+      throw new MMatrixRoomUnavailableException(
+        String.format(
+          "Server refused to send to room %s: %d",
+          roomId,
+          Integer.valueOf(statusCode)),
+        roomId
+      );
+    }
+    if (statusCode == 429) {
+      final var retryAfter = this.retryAfterOf(response);
+      LOG.debug(
+        "{} status {} (retry after {})",
+        response.uri(),
+        Integer.valueOf(statusCode),
+        retryAfter
+      );
+      throw new MMatrixRateLimitedException(
+        String.format("Server rate limited the request: %d", 429),
+        retryAfter
+      );
+    }
+    checkStatus(response.uri(), statusCode);
+  }
+
+  /**
+   * Determine how long the server wants us to wait. Matrix servers report
+   * this in the {@code retry_after_ms} field of an {@code M_LIMIT_EXCEEDED}
+   * error; some proxies only send a {@code Retry-After} header.
+   */
+
+  private Duration retryAfterOf(
+    final HttpResponse<byte[]> response)
+  {
+    try {
+      final var error =
+        this.objectMapper.readValue(response.body(), MError.class);
+      if (error.retryAfterMillis != null) {
+        return Duration.ofMillis(Math.max(0L, error.retryAfterMillis.longValue()));
+      }
+    } catch (final IOException e) {
+      LOG.debug("unparseable rate limit error: ", e);
+    }
+
+    final var header = response.headers().firstValue("Retry-After");
+    if (header.isPresent()) {
+      try {
+        return Duration.ofSeconds(Math.max(0L, Long.parseLong(header.get())));
+      } catch (final NumberFormatException e) {
+        LOG.debug("unparseable Retry-After header: {}", header.get());
+      }
+    }
+    return DEFAULT_RETRY_AFTER;
+  }
+
+  private static void checkStatus(
+    final URI targetURI,
+    final int statusCode)
+    throws IOException
+  {
     LOG.debug("{} status {}", targetURI, Integer.valueOf(statusCode));
-    if (statusCode >= 400) {
-      throw new IOException(
+    if (statusCode == 401) {
+      throw new MMatrixUnauthorizedException(
         String.format("Server responded: %d", Integer.valueOf(statusCode)));
     }
+    if (statusCode >= 400) {
+      throw new MMatrixStatusException(
+        String.format("Server responded: %d", Integer.valueOf(statusCode)),
+        statusCode
+      );
+    }
   }
 
   private MMatrixJSONResponseType parseResponse(
@@ -59,6 +59,8 @@ public final class MMatrixJSON
     public String errorCode;
     @JsonProperty(required = true, value = "error")
     public String errorMessage;
+    @JsonProperty(required = false, value = "retry_after_ms")
+    public Long retryAfterMillis;
 
     public MError()
     {
@@ -74,6 +76,7 @@ public final class MMatrixJSON
         "]")
         .add("errorCode='" + this.errorCode + "'")
         .add("errorMessage='" + this.errorMessage + "'")
+        .add("retryAfterMillis=" + this.retryAfterMillis)
         .toString();
     }
   }
@@ -53,6 +53,7 @@ public final class MMatrixObjectMappers
       MLoginResponse.class.getCanonicalName(),
       MRoomResolveAliasResponse.class.getCanonicalName(),
       MRoomMessage.class.getCanonicalName(),
+      "java.lang.Long",
       "java.lang.String",
       "java.net.URI",
       "java.util.List<java.lang.String>"
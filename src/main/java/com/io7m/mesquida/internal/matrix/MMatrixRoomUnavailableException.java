@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.matrix;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The server refused to send a message to a room because the bot is not
+ * allowed to post there, or the room no longer exists.
+ */
+
+public final class MMatrixRoomUnavailableException extends IOException
+{
+  private final String roomId;
+
+  /**
+   * Construct an exception.
+   *
+   * @param message  The message
+   * @param inRoomId The room
+   */
+
+  public MMatrixRoomUnavailableException(
+    final String message,
+    final String inRoomId)
+  {
+    super(Objects.requireNonNull(message, "message"));
+    this.roomId = Objects.requireNonNull(inRoomId, "roomId");
+  }
+
+  /**
+   * @return The room
+   */
+
+  public String roomId()
+  {
+    return this.roomId;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.matrix;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for messages sent to a Matrix server. Counters accumulate over
+ * the life of the service; gauges describe the current sender.
+ */
+
+final class MMatrixSendStatistics implements MMatrixSendStatisticsType
+{
+  private final AtomicLong sent;
+  private final AtomicLong failed;
+  private final AtomicLong rateLimited;
+  private final AtomicLong retried;
+  private final AtomicLong throttledTime;
+  private volatile MMatrixSender sender;
+
+  MMatrixSendStatistics()
+  {
+    this.sent = new AtomicLong();
+    this.failed = new AtomicLong();
+    this.rateLimited = new AtomicLong();
+    this.retried = new AtomicLong();
+    this.throttledTime = new AtomicLong();
+  }
+
+  void setSender(
+    final MMatrixSender inSender)
+  {
+    this.sender = inSender;
+  }
+
+  void onSent()
+  {
+    this.sent.incrementAndGet();
+  }
+
+  void onFailed()
+  {
+    this.failed.incrementAndGet();
+  }
+
+  void onRateLimited(
+    final long pauseMillis)
+  {
+    this.rateLimited.incrementAndGet();
+    this.throttledTime.addAndGet(pauseMillis);
+  }
+
+  void onRetried()
+  {
+    this.retried.incrementAndGet();
+  }
+
+  @Override
+  public long getSent()
+  {
+    return this.sent.get();
+  }
+
+  @Override
+  public long getFailed()
+  {
+    return this.failed.get();
+  }
+
+  @Override
+  public long getRateLimited()
+  {
+    return this.rateLimited.get();
+  }
+
+  @Override
+  public long getRetried()
+  {
+    return this.retried.get();
+  }
+
+  @Override
+  public long getThrottledTimeMillis()
+  {
+    return this.throttledTime.get();
+  }
+
+  @Override
+  public int getInFlight()
+  {
+    final var current = this.sender;
+    return current == null ? 0 : current.inFlight();
+  }
+
+  @Override
+  public int getQueued()
+  {
+    final var current = this.sender;
+    return current == null ? 0 : current.queued();
+  }
+
+  @Override
+  public int getThrottledRooms()
+  {
+    final var current = this.sender;
+    return current == null ? 0 : current.throttledRooms();
+  }
+
+  @Override
+  public long getPacingIntervalMaximumMillis()
+  {
+    final var current = this.sender;
+    return current == null ? 0L : current.pacingMaximumMillis();
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.matrix;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for messages sent to a Matrix server.
+ */
+
+@MXBean
+public interface MMatrixSendStatisticsType
+{
+  /**
+   * @return The number of messages accepted by the server
+   */
+
+  long getSent();
+
+  /**
+   * @return The number of messages that could not be sent
+   */
+
+  long getFailed();
+
+  /**
+   * @return The number of requests the server rejected with a rate limit
+   */
+
+  long getRateLimited();
+
+  /**
+   * @return The number of requests retried after a connection failure or a
+   * server error
+   */
+
+  long getRetried();
+
+  /**
+   * @return The total time rooms have spent paused by rate limits, in
+   * milliseconds
+   */
+
+  long getThrottledTimeMillis();
+
+  /**
+   * @return The number of requests currently in flight
+   */
+
+  int getInFlight();
+
+  /**
+   * @return The number of messages waiting to be sent
+   */
+
+  int getQueued();
+
+  /**
+   * @return The number of rooms currently paused by rate limits or pacing
+   */
+
+  int getThrottledRooms();
+
+  /**
+   * @return The largest current pacing interval across all rooms, in
+   * milliseconds
+   */
+
+  long getPacingIntervalMaximumMillis();
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.matrix;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler for asynchronous room messages. Messages to the same room are
+ * sent strictly in submission order, one at a time, so that the room sees
+ * them in order. Messages to different rooms are sent concurrently, up to a
+ * limit on the total number of requests in flight.
+ *
+ * If the server rate limits a message, the message is put back at the head
+ * of its room's queue, and the room is paused for as long as the server
+ * asked. The room is then paced: each rate limit doubles the interval
+ * between messages to the room, and each accepted message shrinks it again.
+ *
+ * Connection failures and server errors are treated the same way, so a
+ * server that is briefly unavailable delays messages rather than losing
+ * them. Only errors the server reports as permanent, such as a rejected
+ * access token or a room the bot can no longer post to, fail the room.
+ */
+
+final class MMatrixSender implements AutoCloseable
+{
+  private static final long PACING_MINIMUM_MILLIS = 100L;
+  private static final long PACING_MAXIMUM_MILLIS = 10_000L;
+
+  private final MMatrixClient client;
+  private final String accessToken;
+  private final int inFlightLimit;
+  private final MMatrixSendStatistics statistics;
+  private final Map<String, RoomQueue> rooms;
+  private int inFlight;
+  private boolean closed;
+
+  MMatrixSender(
+    final MMatrixClient inClient,
+    final String inAccessToken,
+    final int inInFlightLimit,
+    final MMatrixSendStatistics inStatistics)
+  {
+    this.client =
+      Objects.requireNonNull(inClient, "client");
+    this.accessToken =
+      Objects.requireNonNull(inAccessToken, "accessToken");
+    this.statistics =
+      Objects.requireNonNull(inStatistics, "statistics");
+
+    if (inInFlightLimit < 1) {
+      throw new IllegalArgumentException(
+        "In-flight limit must be >= 1: " + inInFlightLimit);
+    }
+
+    this.inFlightLimit = inInFlightLimit;
+    this.rooms = new LinkedHashMap<>();
+  }
+
+  /**
+   * Queue a message for a room. The transaction ID is used for every
+   * attempt to send the message, so retries are idempotent.
+   *
+   * @param roomId        The room
+   * @param transactionId The transaction ID
+   * @param message       The message
+   *
+   * @return A future that completes when the server has accepted the message
+   */
+
+  CompletableFuture<Void> send(
+    final String roomId,
+    final String transactionId,
+    final MMatrixMessage message)
+  {
+    Objects.requireNonNull(roomId, "roomId");
+    Objects.requireNonNull(transactionId, "transactionId");
+    Objects.requireNonNull(message, "message");
+
+    final var pending =
+      new Pending(message, transactionId, new CompletableFuture<>());
+    synchronized (this) {
+      if (this.closed) {
+        return CompletableFuture.failedFuture(
+          new IOException("Sender is closed"));
+      }
+      this.rooms.computeIfAbsent(roomId, k -> new RoomQueue())
+        .queue.add(pending);
+    }
+
+    this.pump();
+    return pending.future;
+  }
+
+  /**
+   * @return The number of requests currently in flight
+   */
+
+  synchronized int inFlight()
+  {
+    return this.inFlight;
+  }
+
+  /**
+   * @return The number of messages waiting to be sent
+   */
+
+  synchronized int queued()
+  {
+    return this.rooms.values()
+      .stream()
+      .mapToInt(r -> r.queue.size())
+      .sum();
+  }
+
+  /**
+   * @return The number of rooms that are waiting for a pause to end
+   */
+
+  synchronized int throttledRooms()
+  {
+    final var now = System.nanoTime();
+    return (int) this.rooms.values()
+      .stream()
+      .filter(r -> r.notBefore - now > 0L)
+      .count();
+  }
+
+  /**
+   * @return The largest pacing interval of any room
+   */
+
+  synchronized long pacingMaximumMillis()
+  {
+    return this.rooms.values()
+      .stream()
+      .mapToLong(r -> r.pacingMillis)
+      .max()
+      .orElse(0L);
+  }
+
+  private void pump()
+  {
+    while (true) {
+      final String roomId;
+      final Pending next;
+
+      synchronized (this) {
+        if (this.closed || this.inFlight >= this.inFlightLimit) {
+          return;
+        }
+
+        final var now = System.nanoTime();
+        String readyRoom = null;
+        for (final var entry : this.rooms.entrySet()) {
+          final var room = entry.getValue();
+          if (room.isReady(now)) {
+            readyRoom = entry.getKey();
+            break;
+          }
+        }
+
+        if (readyRoom == null) {
+          return;
+        }
+
+        /*
+         * Move the room to the end of the iteration order so that busy
+         * rooms can't starve quieter ones.
+         */
+
+        final var room = this.rooms.remove(readyRoom);
+        this.rooms.put(readyRoom, room);
+        room.busy = true;
+        ++this.inFlight;
+        roomId = readyRoom;
+        next = room.queue.poll();
+      }
+
+      this.client.roomSendMessageAsync(
+          this.accessToken,
+          roomId,
+          next.transactionId,
+          next.message)
+        .whenComplete((ignored, exception) -> {
+          this.finished(roomId, next, unwrap(exception));
+        });
+    }
+  }
+
+  private static Throwable unwrap(
+    final Throwable exception)
+  {
+    if (exception instanceof CompletionException
+        && exception.getCause() != null) {
+      return exception.getCause();
+    }
+    return exception;
+  }
+
+  private void finished(
+    final String roomId,
+    final Pending pending,
+    final Throwable exception)
+  {
+    final long wakeAfterMillis;
+
+    synchronized (this) {
+      --this.inFlight;
+      final var room = this.rooms.get(roomId);
+      room.busy = false;
+
+      if (exception instanceof MMatrixRateLimitedException limited) {
+        wakeAfterMillis = room.rateLimited(limited);
+        this.statistics.onRateLimited(wakeAfterMillis);
+        if (!this.closed) {
+          room.queue.addFirst(pending);
+        } else {
+          pending.future.completeExceptionally(exception);
+        }
+      } else if (isTransient(exception)) {
+        wakeAfterMillis = room.paused(0L);
+        this.statistics.onRetried();
+        if (!this.closed) {
+          room.queue.addFirst(pending);
+        } else {
+          pending.future.completeExceptionally(exception);
+        }
+      } else if (exception != null) {
+        wakeAfterMillis = 0L;
+        this.statistics.onFailed();
+
+        /*
+         * If a message can't be sent, nothing after it in the same room may
+         * be sent either, or the room would see messages out of order.
+         */
+
+        pending.future.completeExceptionally(exception);
+        this.failAll(room, exception);
+      } else {
+        wakeAfterMillis = room.accepted();
+        this.statistics.onSent();
+        pending.future.complete(null);
+      }
+    }
+
+    if (wakeAfterMillis > 0L) {
+      CompletableFuture.runAsync(
+        this::pump,
+        CompletableFuture.delayedExecutor(
+          wakeAfterMillis, TimeUnit.MILLISECONDS)
+      );
+    }
+    this.pump();
+  }
+
+  /**
+   * A failure is worth retrying if the request may not have reached the
+   * server, or the server failed for reasons of its own. Status codes below
+   * 500 mean that sending the same request again will fail the same way.
+   */
+
+  private static boolean isTransient(
+    final Throwable exception)
+  {
+    if (exception instanceof MMatrixStatusException status) {
+      return status.statusCode() >= 500;
+    }
+    return exception instanceof IOException
+      && !(exception instanceof MMatrixUnauthorizedException)
+      && !(exception instanceof MMatrixRoomUnavailableException);
+  }
+
+  private void failAll(
+    final RoomQueue room,
+    final Throwable exception)
+  {
+    while (!room.queue.isEmpty()) {
+      this.statistics.onFailed();
+      room.queue.poll().future.completeExceptionally(exception);
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+
+      final var exception = new IOException("Sender is closed");
+      for (final var room : this.rooms.values()) {
+        this.failAll(room, exception);
+      }
+    }
+  }
+
+  private record Pending(
+    MMatrixMessage message,
+    String transactionId,
+    CompletableFuture<Void> future)
+  {
+
+  }
+
+  private static final class RoomQueue
+  {
+    private final ArrayDeque<Pending> queue;
+    private boolean busy;
+    private long pacingMillis;
+    private long notBefore;
+
+    RoomQueue()
+    {
+      this.queue = new ArrayDeque<>();
+      this.notBefore = System.nanoTime();
+    }
+
+    boolean isReady(
+      final long now)
+    {
+      return !this.busy
+        && !this.queue.isEmpty()
+        && now - this.notBefore >= 0L;
+    }
+
+    long rateLimited(
+      final MMatrixRateLimitedException limited)
+    {
+      return this.paused(limited.retryAfter().toMillis());
+    }
+
+    long paused(
+      final long requestedMillis)
+    {
+      this.pacingMillis =
+        Math.min(
+          PACING_MAXIMUM_MILLIS,
+          Math.max(PACING_MINIMUM_MILLIS, this.pacingMillis * 2L)
+        );
+
+      final var pause = Math.max(requestedMillis, this.pacingMillis);
+      this.notBefore =
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause);
+      return pause;
+    }
+
+    long accepted()
+    {
+      this.pacingMillis = (this.pacingMillis * 3L) / 4L;
+      if (this.pacingMillis < PACING_MINIMUM_MILLIS / 10L) {
+        this.pacingMillis = 0L;
+      }
+
+      this.notBefore =
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.pacingMillis);
+      return this.pacingMillis;
+    }
+  }
+}
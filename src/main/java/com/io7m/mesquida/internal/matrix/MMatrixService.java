@@ -23,65 +23,58 @@ import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.jmulticlose.core.ClosingResourceFailedException;
 import com.io7m.mesquida.internal.MJson;
+import com.io7m.mesquida.internal.MManagementBeans;
+import com.io7m.mesquida.internal.actor.MActor;
+import com.io7m.mesquida.internal.actor.MActorBehaviourType;
+import com.io7m.mesquida.internal.actor.MActorDirectiveKind;
+import com.io7m.mesquida.internal.actor.MActorStatisticsType;
 import com.io7m.mesquida.internal.mq.MMessageFormatted;
-import org.apache.activemq.artemis.api.core.TransportConfiguration;
-import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
-import org.apache.activemq.artemis.core.remoting.impl.netty.NettyConnectorFactory;
+import com.io7m.mesquida.internal.mq.MMessageJMSSubscription;
+import com.io7m.mesquida.internal.mq.MMessageSourceBus;
+import com.io7m.mesquida.internal.mq.MMessageSourceJMS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.TextMessage;
-import javax.jms.TopicSession;
-import javax.jms.TopicSubscriber;
 import java.io.IOException;
 import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import static org.apache.activemq.artemis.api.jms.JMSFactoryType.CF;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The Matrix service.
  */
 
-public final class MMatrixService implements AutoCloseable, Runnable
+public final class MMatrixService implements AutoCloseable
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(MMatrixService.class);
 
-  private final ExecutorService executor;
-  private final AtomicBoolean done;
-  private final LinkedBlockingQueue<CommandType> commands;
   private final MMatrixServiceConfiguration configuration;
   private final ObjectMapper queueMessageMapper;
+  private final MActor<CommandType> actor;
+  private final MMatrixSendStatistics sendStatistics;
+  private final AutoCloseable sendStatisticsRegistration;
   private CloseableCollectionType<ClosingResourceFailedException> resources;
-  private TopicSubscriber subscriber;
-  private TopicSession session;
-  private MMatrixClient matrixClient;
-  private String matrixAccessToken;
-  private String matrixRoom;
+  private final HttpClient httpClient;
+  private final MMatrixClient matrixClient;
+  private final MMatrixSessionState state;
+  private MMessageJMSSubscription subscription;
+  private MMatrixSender sender;
+  private List<String> matrixRooms;
 
   private MMatrixService(
-    final MMatrixServiceConfiguration inConfiguration,
-    final ExecutorService inExecutor)
+    final MMatrixServiceConfiguration inConfiguration)
   {
-    this.executor =
-      Objects.requireNonNull(inExecutor, "executor");
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
 
-    this.done =
-      new AtomicBoolean(false);
-    this.commands =
-      new LinkedBlockingQueue<>();
     this.queueMessageMapper =
       MJson.createMapper(
         Set.of(
@@ -93,6 +86,27 @@ public final class MMatrixService implements AutoCloseable, Runnable
 
     this.resources =
       CloseableCollection.create();
+    this.matrixRooms =
+      List.of();
+    this.httpClient =
+      HttpClient.newHttpClient();
+    this.matrixClient =
+      MMatrixClient.create(
+        this.httpClient,
+        inConfiguration.matrixServerBase()
+      );
+    this.state =
+      MMatrixSessionState.load(
+        inConfiguration.matrixStateFile(),
+        inConfiguration.matrixServerBase(),
+        inConfiguration.matrixUser()
+      );
+    this.sendStatistics =
+      new MMatrixSendStatistics();
+    this.sendStatisticsRegistration =
+      MManagementBeans.register("MatrixSend", "matrix", this.sendStatistics);
+    this.actor =
+      MActor.create("matrix", new Behaviour());
   }
 
   /**
@@ -106,82 +120,194 @@ public final class MMatrixService implements AutoCloseable, Runnable
   public static MMatrixService create(
     final MMatrixServiceConfiguration configuration)
   {
-    final var executor =
-      Executors.newSingleThreadExecutor(r -> {
-        final var thread = new Thread(r);
-        thread.setName("com.io7m.mesquida.matrix[" + thread.getId() + "]");
-        thread.setDaemon(true);
-        return thread;
-      });
-
-    final var service = new MMatrixService(configuration, executor);
-    executor.execute(service);
-    return service;
+    return new MMatrixService(configuration);
   }
 
   @Override
   public void close()
   {
-    if (this.done.compareAndSet(false, true)) {
-      this.executor.shutdown();
+    if (!this.actor.isClosed()) {
+      this.actor.close();
+      this.httpClient.close();
+      try {
+        this.sendStatisticsRegistration.close();
+      } catch (final Exception e) {
+        LOG.error("error closing send statistics: ", e);
+      }
     }
   }
 
-  @Override
-  public void run()
+  /**
+   * @return The statistics for messages sent to the Matrix server
+   */
+
+  public MMatrixSendStatisticsType sendStatistics()
   {
-    while (!this.done.get()) {
-      try {
-        this.configureMessageQueue();
-      } catch (final Exception e) {
-        LOG.error("unable to configure message queue: ", e);
-        this.pause();
-        continue;
+    return this.sendStatistics;
+  }
+
+  /**
+   * @return The service statistics
+   */
+
+  public MActorStatisticsType statistics()
+  {
+    return this.actor;
+  }
+
+  private MActorDirectiveKind handleCommand(
+    final CommandType command)
+    throws InterruptedException
+  {
+    try {
+      if (command instanceof CommandJMSReceived message) {
+        /*
+         * Messages received by earlier subscriptions have been returned to
+         * the broker, and will be delivered again.
+         */
+
+        if (message.subscription != this.subscription) {
+          return MActorDirectiveKind.CONTINUE;
+        }
+        return this.handleMessage(message.message);
       }
 
-      try {
-        this.configureMatrix();
-      } catch (final Exception e) {
-        LOG.error("unable to configure matrix: ", e);
-        this.pause();
-        continue;
+      if (command instanceof CommandJMSRelayed relayed) {
+        return this.handleRelayed(relayed);
+      }
+
+      if (command instanceof CommandBusRelayed relayed) {
+        return this.handleBusRelayed(relayed);
+      }
+
+      if (command instanceof CommandBusReceived message) {
+        this.relay(message.message, Optional.empty())
+          .whenComplete((ignored, exception) -> {
+            this.actor.send(
+              new CommandBusRelayed(Optional.ofNullable(exception)));
+          });
       }
+    } catch (final JMSException e) {
+      LOG.error("jms: ", e);
+      return MActorDirectiveKind.RESTART_AFTER_BACKOFF;
+    } catch (final IOException e) {
+      LOG.error("i/o: ", e);
+    }
+    return MActorDirectiveKind.CONTINUE;
+  }
 
-      while (!this.done.get()) {
+  private MActorDirectiveKind handleBusRelayed(
+    final CommandBusRelayed relayed)
+  {
+    if (relayed.failure.isEmpty()) {
+      return MActorDirectiveKind.CONTINUE;
+    }
+
+    /*
+     * Messages from the bus can't be delivered again, so failures are only
+     * logged, unless the session or a room is no longer valid.
+     */
+
+    final var failure = relayed.failure.get();
+    LOG.error("unable to relay message: ", failure);
+    final var forgotSession = this.forgetSessionIfUnauthorized(failure);
+    final var forgotRoom = this.forgetRoomIfUnavailable(failure);
+    return forgotSession || forgotRoom
+      ? MActorDirectiveKind.RESTART_AFTER_BACKOFF
+      : MActorDirectiveKind.CONTINUE;
+  }
+
+  private boolean forgetRoomIfUnavailable(
+    final Throwable failure)
+  {
+    for (var cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof MMatrixRoomUnavailableException unavailable) {
+        LOG.info(
+          "room {} is unavailable; joining it again",
+          unavailable.roomId());
+        this.state.clearRoom(unavailable.roomId());
         try {
-          final var command =
-            this.commands.poll(1L, TimeUnit.SECONDS);
-
-          if (command == null) {
-            continue;
-          }
-
-          if (command instanceof CommandJMSReceived message) {
-            this.handleMessage(message.message);
-            continue;
-          }
-
-        } catch (final InterruptedException e) {
-          Thread.currentThread().interrupt();
-        } catch (final JMSException e) {
-          LOG.error("jms: ", e);
+          this.state.save();
         } catch (final IOException e) {
-          LOG.error("i/o: ", e);
+          LOG.error("unable to save session state: ", e);
         }
+        return true;
       }
     }
+    return false;
+  }
+
+  private boolean forgetSessionIfUnauthorized(
+    final Throwable failure)
+  {
+    for (var cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof MMatrixUnauthorizedException) {
+        LOG.info("access token rejected; logging in again");
+        this.state.clearSession();
+        try {
+          this.state.save();
+        } catch (final IOException e) {
+          LOG.error("unable to save session state: ", e);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private MActorDirectiveKind handleRelayed(
+    final CommandJMSRelayed relayed)
+    throws JMSException
+  {
+    if (relayed.subscription != this.subscription) {
+      return MActorDirectiveKind.CONTINUE;
+    }
+
+    /*
+     * If a message can't be delivered, the subscription is closed and
+     * opened again after a delay, and the broker delivers the unacknowledged
+     * message again.
+     */
+
+    if (relayed.failure.isPresent()) {
+      LOG.error("unable to relay message: ", relayed.failure.get());
+      this.forgetSessionIfUnauthorized(relayed.failure.get());
+      this.forgetRoomIfUnavailable(relayed.failure.get());
+      return MActorDirectiveKind.RESTART_AFTER_BACKOFF;
+    }
+
+    relayed.message.acknowledge();
+    return MActorDirectiveKind.CONTINUE;
+  }
+
+  private void closeResources()
+  {
+    this.sender = null;
+    this.sendStatistics.setSender(null);
+    this.matrixRooms = List.of();
+    this.subscription = null;
 
     try {
       this.resources.close();
     } catch (final ClosingResourceFailedException e) {
       LOG.error("error closing service: ", e);
     }
+    this.resources = CloseableCollection.create();
   }
 
-  private void handleMessage(
+  private MActorDirectiveKind handleMessage(
     final Message message)
-    throws JMSException, IOException, InterruptedException
+    throws JMSException, IOException
   {
+    if (this.subscription.isDeliveryLimitExceeded(message)) {
+      LOG.error(
+        "discarding message {} after too many delivery attempts",
+        message.getJMSMessageID()
+      );
+      message.acknowledge();
+      return MActorDirectiveKind.CONTINUE;
+    }
+
     if (message instanceof TextMessage textMessage) {
       final MMessageFormatted parsed;
       try {
@@ -189,7 +315,7 @@ public final class MMatrixService implements AutoCloseable, Runnable
           textMessage.getText(),
           MMessageFormatted.class
         );
-      } catch (JsonProcessingException | JMSException e) {
+      } catch (final JsonProcessingException e) {
 
         /*
          * Acknowledge the message if we can't parse it, so that we don't
@@ -202,40 +328,77 @@ public final class MMatrixService implements AutoCloseable, Runnable
 
       /*
        * Don't acknowledge the message until the Matrix server has accepted
-       * our version of it.
+       * our version of it in every room. The service carries on receiving
+       * messages whilst this one is being sent.
        */
 
-      this.matrixClient.roomSendMessage(
-        this.matrixAccessToken,
-        this.matrixRoom,
-        new MMatrixMessage(
-          parsed.text,
-          parsed.html
-        )
-      );
+      /*
+       * The transaction ID is derived from the message ID, so if the
+       * message is delivered again after the server accepted it, the server
+       * recognizes the retry rather than posting the message twice.
+       */
 
-      textMessage.acknowledge();
+      final var received = this.subscription;
+      this.relay(parsed, Optional.ofNullable(textMessage.getJMSMessageID()))
+        .whenComplete((ignored, exception) -> {
+          this.actor.send(new CommandJMSRelayed(
+            received,
+            textMessage,
+            Optional.ofNullable(exception)
+          ));
+        });
+      return MActorDirectiveKind.CONTINUE;
     }
 
     LOG.debug("ignored unrecognized message type: {}", message);
     message.acknowledge();
+    return MActorDirectiveKind.CONTINUE;
   }
 
   private void configureMatrix()
     throws IOException, InterruptedException
   {
-    this.matrixClient =
-      MMatrixClient.create(
-        HttpClient.newHttpClient(),
-        this.configuration.matrixServerBase()
-      );
+    /*
+     * A saved session skips logging in and resolving rooms. If the server no
+     * longer accepts the saved token, the first message sent fails, the
+     * session is forgotten, and the next attempt logs in again.
+     */
+
+    final var savedToken = this.state.accessToken();
+    final String accessToken;
+    if (savedToken.isPresent()) {
+      LOG.info("reusing saved session for {}", this.configuration.matrixUser());
+      accessToken = savedToken.get();
+    } else {
+      accessToken = this.fetchAccessToken();
+      this.state.setAccessToken(accessToken);
+    }
+
+    final var rooms = new ArrayList<String>();
+    for (final var channel : this.configuration.matrixChannels()) {
+      final var savedRoom = this.state.roomFor(channel);
+      if (savedRoom.isPresent()) {
+        rooms.add(savedRoom.get());
+        continue;
+      }
 
-    this.matrixAccessToken =
-      this.fetchAccessToken();
-    this.matrixRoom =
-      this.fetchRoom(this.matrixAccessToken);
+      final var room = this.fetchRoom(accessToken, channel);
+      this.joinRoom(accessToken, room);
+      this.state.setRoom(channel, room);
+      rooms.add(room);
+    }
 
-    this.joinRoom(this.matrixAccessToken, this.matrixRoom);
+    this.state.save();
+    this.matrixRooms = List.copyOf(rooms);
+    this.sender =
+      this.resources.add(
+        new MMatrixSender(
+          this.matrixClient,
+          accessToken,
+          this.configuration.matrixSendsInFlight(),
+          this.sendStatistics
+        ));
+    this.sendStatistics.setSender(this.sender);
   }
 
   private String fetchAccessToken()
@@ -264,13 +427,12 @@ public final class MMatrixService implements AutoCloseable, Runnable
   }
 
   private String fetchRoom(
-    final String token)
+    final String token,
+    final String channel)
     throws IOException, InterruptedException
   {
     final var roomId =
-      this.matrixClient.roomResolveAlias(
-        token,
-        this.configuration.matrixChannel());
+      this.matrixClient.roomResolveAlias(token, channel);
 
     if (roomId instanceof MMatrixJSON.MError error) {
       throw new IOException(String.format(
@@ -291,67 +453,109 @@ public final class MMatrixService implements AutoCloseable, Runnable
     this.matrixClient.roomJoin(token, room);
   }
 
-  private void pause()
+  private CompletableFuture<Void> relay(
+    final MMessageFormatted message,
+    final Optional<String> key)
+    throws IOException
   {
-    try {
-      Thread.sleep(1_000L);
-    } catch (final InterruptedException ex) {
-      Thread.currentThread().interrupt();
+    final var matrixMessage =
+      new MMatrixMessage(message.text, message.html);
+
+    final var sends = new ArrayList<CompletableFuture<Void>>();
+    for (final var room : this.matrixRooms) {
+      final String transactionId;
+      if (key.isPresent()) {
+        transactionId = MMatrixSessionState.transactionIdFor(key.get(), room);
+      } else {
+        transactionId = this.state.nextTransactionId();
+      }
+      sends.add(this.sender.send(room, transactionId, matrixMessage));
     }
+    return CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]));
   }
 
   private void configureMessageQueue()
     throws Exception
   {
-    if (this.resources != null) {
-      this.resources.close();
+    final var source = this.configuration.source();
+    if (source instanceof MMessageSourceBus bus) {
+      LOG.info("subscribe to in-process message bus");
+      this.resources.add(
+        bus.bus().subscribe(m -> this.actor.send(new CommandBusReceived(m)))
+      );
+      return;
     }
 
-    this.resources = CloseableCollection.create();
+    final var jms = (MMessageSourceJMS) source;
+    this.subscription =
+      this.resources.add(
+        MMessageJMSSubscription.open(jms, (received, message) -> {
+          this.actor.send(new CommandJMSReceived(received, message));
+        })
+      );
+  }
 
-    LOG.info("connect {}", this.configuration.brokerURL());
+  private final class Behaviour
+    implements MActorBehaviourType<CommandType>
+  {
+    Behaviour()
+    {
 
-    final var transportConfiguration =
-      new TransportConfiguration(NettyConnectorFactory.class.getName());
-    final var connections =
-      this.resources.add(
-        ActiveMQJMSClient.createConnectionFactoryWithoutHA(
-          CF,
-          transportConfiguration
-        ));
+    }
 
-    connections.setBrokerURL(this.configuration.brokerURL().toString());
-    connections.setClientID(UUID.randomUUID().toString());
-    connections.setUser(this.configuration.brokerUser());
-    connections.setPassword(this.configuration.brokerPass());
-    connections.setReconnectAttempts(-1);
+    @Override
+    public void onStart()
+      throws Exception
+    {
+      MMatrixService.this.configureMessageQueue();
+      MMatrixService.this.configureMatrix();
+    }
 
-    final var topicConnection =
-      this.resources.add(connections.createTopicConnection());
+    @Override
+    public MActorDirectiveKind onCommand(
+      final CommandType command)
+      throws InterruptedException
+    {
+      return MMatrixService.this.handleCommand(command);
+    }
 
-    this.session =
-      this.resources.add(
-        topicConnection.createTopicSession(false, 0)
-      );
+    @Override
+    public void onStop()
+    {
+      MMatrixService.this.closeResources();
+    }
+  }
 
-    final var topic =
-      this.session.createTopic(this.configuration.brokerTopic());
-    this.subscriber =
-      this.resources.add(this.session.createSubscriber(topic));
+  sealed interface CommandType
+  {
 
-    this.subscriber.setMessageListener(message -> {
-      this.commands.add(new CommandJMSReceived(message));
-    });
+  }
+
+  record CommandJMSReceived(
+    MMessageJMSSubscription subscription,
+    Message message)
+    implements CommandType
+  {
 
-    topicConnection.start();
   }
 
-  sealed interface CommandType
+  record CommandJMSRelayed(
+    MMessageJMSSubscription subscription,
+    Message message,
+    Optional<Throwable> failure)
+    implements CommandType
+  {
+
+  }
+
+  record CommandBusRelayed(
+    Optional<Throwable> failure)
+    implements CommandType
   {
 
   }
 
-  record CommandJMSReceived(Message message) implements CommandType
+  record CommandBusReceived(MMessageFormatted message) implements CommandType
   {
 
   }
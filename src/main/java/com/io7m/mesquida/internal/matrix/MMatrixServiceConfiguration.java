@@ -16,54 +16,73 @@
 
 package com.io7m.mesquida.internal.matrix;
 
+import com.io7m.mesquida.internal.mq.MMessageSourceType;
+
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The Matrix service configuration.
  *
- * @param brokerPass       The message broker password
- * @param brokerTopic      The message broker topic
- * @param brokerURL        The message broker URL
- * @param brokerUser       The message broker user
- * @param matrixChannel    The Matrix channel name
- * @param matrixServerBase The Matrix server
- * @param matrixPassword   The Matrix password
- * @param matrixUser       The Matrix username
+ * @param source              The source of messages to relay
+ * @param matrixServerBase    The Matrix server
+ * @param matrixUser          The Matrix username
+ * @param matrixPassword      The Matrix password
+ * @param matrixChannels      The Matrix channel names
+ * @param matrixSendsInFlight The maximum number of messages being sent to
+ *                            the server at any one time
+ * @param matrixStateFile     The file in which the session is saved across
+ *                            restarts, if any
  */
 
 public record MMatrixServiceConfiguration(
-  URI brokerURL,
-  String brokerUser,
-  String brokerPass,
-  String brokerTopic,
+  MMessageSourceType source,
   URI matrixServerBase,
   String matrixUser,
   String matrixPassword,
-  String matrixChannel)
+  List<String> matrixChannels,
+  int matrixSendsInFlight,
+  Optional<Path> matrixStateFile)
 {
+  /**
+   * The default maximum number of messages in flight.
+   */
+
+  public static final int DEFAULT_SENDS_IN_FLIGHT = 4;
+
   /**
    * The Matrix service configuration.
    *
-   * @param brokerPass       The message broker password
-   * @param brokerTopic      The message broker topic
-   * @param brokerURL        The message broker URL
-   * @param brokerUser       The message broker user
-   * @param matrixChannel    The Matrix channel name
-   * @param matrixServerBase The Matrix server
-   * @param matrixPassword   The Matrix password
-   * @param matrixUser       The Matrix username
+   * @param source              The source of messages to relay
+   * @param matrixServerBase    The Matrix server
+   * @param matrixUser          The Matrix username
+   * @param matrixPassword      The Matrix password
+   * @param matrixChannels      The Matrix channel names
+   * @param matrixSendsInFlight The maximum number of messages being sent to
+   *                            the server at any one time
+   * @param matrixStateFile     The file in which the session is saved across
+   *                            restarts, if any
    */
 
   public MMatrixServiceConfiguration
   {
-    Objects.requireNonNull(brokerPass, "brokerPass");
-    Objects.requireNonNull(brokerTopic, "brokerTopic");
-    Objects.requireNonNull(brokerURL, "brokerURL");
-    Objects.requireNonNull(brokerUser, "brokerUser");
-    Objects.requireNonNull(matrixChannel, "matrixChannel");
+    Objects.requireNonNull(source, "source");
+    Objects.requireNonNull(matrixServerBase, "matrixServerBase");
     Objects.requireNonNull(matrixUser, "matrixUser");
     Objects.requireNonNull(matrixPassword, "matrixPassword");
-    Objects.requireNonNull(matrixServerBase, "matrixServerBase");
+    Objects.requireNonNull(matrixStateFile, "matrixStateFile");
+    matrixChannels = List.copyOf(matrixChannels);
+
+    if (matrixChannels.isEmpty()) {
+      throw new IllegalArgumentException(
+        "At least one Matrix channel is required");
+    }
+    if (matrixSendsInFlight < 1) {
+      throw new IllegalArgumentException(
+        "Sends in flight must be >= 1: " + matrixSendsInFlight);
+    }
   }
 }
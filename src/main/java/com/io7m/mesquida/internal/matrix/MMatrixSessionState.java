@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.matrix;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The state of a Matrix session: the access token, the IDs of the rooms the
+ * bot has joined, and a transaction counter. If the state has a file, it
+ * survives restarts, so that reconnecting doesn't need to log in or resolve
+ * room aliases again, and transaction IDs are never reused for the same
+ * access token.
+ */
+
+final class MMatrixSessionState
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MMatrixSessionState.class);
+
+  /**
+   * Transaction IDs are reserved in blocks, so that the file is only written
+   * once per block. IDs left unused in a block when the bot stops are
+   * skipped.
+   */
+
+  private static final long TRANSACTION_BLOCK = 1000L;
+
+  private static final String KEY_SERVER = "server";
+  private static final String KEY_USER = "user";
+  private static final String KEY_ACCESS_TOKEN = "accessToken";
+  private static final String KEY_TRANSACTION_RESERVED = "transactionReserved";
+  private static final String KEY_ROOM_PREFIX = "room.";
+
+  private final Optional<Path> file;
+  private final Properties properties;
+  private long transactionNext;
+  private long transactionReserved;
+
+  private MMatrixSessionState(
+    final Optional<Path> inFile,
+    final Properties inProperties)
+  {
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.properties =
+      Objects.requireNonNull(inProperties, "properties");
+
+    this.transactionReserved =
+      Long.parseLong(
+        this.properties.getProperty(KEY_TRANSACTION_RESERVED, "0"));
+    this.transactionNext =
+      this.transactionReserved;
+  }
+
+  /**
+   * Load session state. If the file does not exist, cannot be read, or
+   * belongs to a different server or user, an empty state is returned.
+   *
+   * @param file   The state file, if any
+   * @param server The server
+   * @param user   The user
+   *
+   * @return The session state
+   */
+
+  static MMatrixSessionState load(
+    final Optional<Path> file,
+    final URI server,
+    final String user)
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(server, "server");
+    Objects.requireNonNull(user, "user");
+
+    final var loaded = new Properties();
+    if (file.isPresent() && Files.isRegularFile(file.get())) {
+      try (var stream = Files.newInputStream(file.get())) {
+        loaded.load(stream);
+        Long.parseLong(loaded.getProperty(KEY_TRANSACTION_RESERVED, "0"));
+      } catch (final IOException | NumberFormatException e) {
+        LOG.warn("ignoring unreadable session state {}: ", file.get(), e);
+        loaded.clear();
+      }
+    }
+
+    final var properties = new Properties();
+    properties.setProperty(KEY_SERVER, server.toString());
+    properties.setProperty(KEY_USER, user);
+
+    if (Objects.equals(loaded.getProperty(KEY_SERVER), server.toString())
+        && Objects.equals(loaded.getProperty(KEY_USER), user)) {
+      properties.putAll(loaded);
+    } else if (!loaded.isEmpty()) {
+      LOG.info("ignoring session state for a different server or user");
+      final var reserved = loaded.getProperty(KEY_TRANSACTION_RESERVED);
+      if (reserved != null) {
+        properties.setProperty(KEY_TRANSACTION_RESERVED, reserved);
+      }
+    }
+
+    return new MMatrixSessionState(file, properties);
+  }
+
+  /**
+   * @return The cached access token, if any
+   */
+
+  synchronized Optional<String> accessToken()
+  {
+    return Optional.ofNullable(this.properties.getProperty(KEY_ACCESS_TOKEN));
+  }
+
+  /**
+   * Set the access token.
+   *
+   * @param token The token
+   */
+
+  synchronized void setAccessToken(
+    final String token)
+  {
+    this.properties.setProperty(
+      KEY_ACCESS_TOKEN,
+      Objects.requireNonNull(token, "token"));
+  }
+
+  /**
+   * @param alias The room alias
+   *
+   * @return The ID of the joined room with the given alias, if known
+   */
+
+  synchronized Optional<String> roomFor(
+    final String alias)
+  {
+    return Optional.ofNullable(
+      this.properties.getProperty(KEY_ROOM_PREFIX + alias));
+  }
+
+  /**
+   * Record that the room with the given alias has been joined.
+   *
+   * @param alias  The room alias
+   * @param roomId The room ID
+   */
+
+  synchronized void setRoom(
+    final String alias,
+    final String roomId)
+  {
+    this.properties.setProperty(
+      KEY_ROOM_PREFIX + Objects.requireNonNull(alias, "alias"),
+      Objects.requireNonNull(roomId, "roomId"));
+  }
+
+  /**
+   * Forget a room that the bot can no longer post to, so that its alias is
+   * resolved and joined again.
+   *
+   * @param roomId The room ID
+   *
+   * @return {@code true} if any alias referred to the room
+   */
+
+  synchronized boolean clearRoom(
+    final String roomId)
+  {
+    Objects.requireNonNull(roomId, "roomId");
+    return this.properties.entrySet()
+      .removeIf(e -> e.getKey().toString().startsWith(KEY_ROOM_PREFIX)
+                     && Objects.equals(e.getValue(), roomId));
+  }
+
+  /**
+   * Forget the access token and rooms, because the server no longer
+   * accepts the token. The transaction counter is kept.
+   */
+
+  synchronized void clearSession()
+  {
+    this.properties.remove(KEY_ACCESS_TOKEN);
+    this.properties.keySet()
+      .removeIf(k -> k.toString().startsWith(KEY_ROOM_PREFIX));
+  }
+
+  /**
+   * @return A fresh transaction ID
+   *
+   * @throws IOException If the counter cannot be saved
+   */
+
+  synchronized String nextTransactionId()
+    throws IOException
+  {
+    if (this.transactionNext >= this.transactionReserved) {
+      this.transactionReserved = this.transactionNext + TRANSACTION_BLOCK;
+      this.properties.setProperty(
+        KEY_TRANSACTION_RESERVED,
+        Long.toString(this.transactionReserved));
+      this.save();
+    }
+
+    final var id = this.transactionNext;
+    ++this.transactionNext;
+    return "mesquida-" + id;
+  }
+
+  /**
+   * Derive a transaction ID from a key that is stable across deliveries of
+   * the same message, so that the server ignores a message it has already
+   * accepted.
+   *
+   * @param key    The message key
+   * @param roomId The room
+   *
+   * @return A transaction ID
+   */
+
+  static String transactionIdFor(
+    final String key,
+    final String roomId)
+  {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(key.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(roomId.getBytes(StandardCharsets.UTF_8));
+      return "mesquida-" + HexFormat.of().formatHex(digest.digest());
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Write the state to its file, if it has one. The file is replaced
+   * atomically, and is only readable by its owner where the file system
+   * supports it.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  synchronized void save()
+    throws IOException
+  {
+    if (this.file.isEmpty()) {
+      return;
+    }
+
+    final var target = this.file.get().toAbsolutePath();
+    final var temporary =
+      target.resolveSibling(target.getFileName() + ".tmp");
+
+    /*
+     * The file contains an access token, so restrict its permissions before
+     * anything is written to it.
+     */
+
+    Files.deleteIfExists(temporary);
+    try {
+      Files.createFile(
+        temporary,
+        PosixFilePermissions.asFileAttribute(
+          PosixFilePermissions.fromString("rw-------"))
+      );
+    } catch (final UnsupportedOperationException e) {
+      Files.createFile(temporary);
+    }
+
+    try (var stream = Files.newOutputStream(temporary, WRITE)) {
+      this.properties.store(stream, "Mesquida Matrix session");
+    }
+
+    Files.move(temporary, target, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+}
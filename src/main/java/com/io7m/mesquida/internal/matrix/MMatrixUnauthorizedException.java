@@ -14,29 +14,26 @@
  * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
 
-package com.io7m.mesquida.internal.private_api;
+package com.io7m.mesquida.internal.matrix;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.io.IOException;
+import java.util.Objects;
 
-import java.net.URI;
-
-// CHECKSTYLE:OFF
+/**
+ * The server refused a request because the access token is not valid.
+ */
 
-@JsonDeserialize
-@JsonSerialize
-final class MStreamAddress
+public final class MMatrixUnauthorizedException extends IOException
 {
-  @JsonProperty(required = true, value = "id")
-  public int id;
-  @JsonProperty(required = true, value = "protocol")
-  public String protocol;
-  @JsonProperty(required = true, value = "url")
-  public URI url;
+  /**
+   * Construct an exception.
+   *
+   * @param message The message
+   */
 
-  MStreamAddress()
+  public MMatrixUnauthorizedException(
+    final String message)
   {
-
+    super(Objects.requireNonNull(message, "message"));
   }
 }
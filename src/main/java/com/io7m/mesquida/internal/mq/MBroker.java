@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.config.impl.SecurityConfiguration;
+import org.apache.activemq.artemis.core.security.Role;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.spi.core.security.ActiveMQJAASSecurityManager;
+import org.apache.activemq.artemis.spi.core.security.jaas.InVMLoginModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An embedded message broker. Services in the same JVM can connect to the
+ * broker using the {@link #IN_VM_URL} broker URL, without a network hop.
+ */
+
+public final class MBroker implements AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MBroker.class);
+
+  /**
+   * The broker URL used to connect to the embedded broker from within the
+   * same JVM.
+   */
+
+  public static final URI IN_VM_URL =
+    URI.create("vm://0");
+
+  private static final String ROLE_NAME =
+    "mesquida";
+
+  private final EmbeddedActiveMQ broker;
+
+  private MBroker(
+    final EmbeddedActiveMQ inBroker)
+  {
+    this.broker = Objects.requireNonNull(inBroker, "broker");
+  }
+
+  /**
+   * Create and start an embedded broker.
+   *
+   * @param configuration The broker configuration
+   *
+   * @return A running broker
+   *
+   * @throws Exception On errors
+   */
+
+  public static MBroker create(
+    final MBrokerConfiguration configuration)
+    throws Exception
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var brokerConfiguration = new ConfigurationImpl();
+    brokerConfiguration.setName("mesquida");
+    brokerConfiguration.setJMXManagementEnabled(false);
+    brokerConfiguration.setSecurityEnabled(true);
+    brokerConfiguration.addAcceptorConfiguration("in-vm", IN_VM_URL.toString());
+
+    final var directoryOpt = configuration.directory();
+    if (directoryOpt.isPresent()) {
+      final var directory = directoryOpt.get().toAbsolutePath();
+      brokerConfiguration.setPersistenceEnabled(true);
+      brokerConfiguration.setBindingsDirectory(
+        directory.resolve("bindings").toString());
+      brokerConfiguration.setJournalDirectory(
+        directory.resolve("journal").toString());
+      brokerConfiguration.setPagingDirectory(
+        directory.resolve("paging").toString());
+      brokerConfiguration.setLargeMessagesDirectory(
+        directory.resolve("large-messages").toString());
+    } else {
+      brokerConfiguration.setPersistenceEnabled(false);
+    }
+
+    final var acceptorOpt = configuration.acceptor();
+    if (acceptorOpt.isPresent()) {
+      brokerConfiguration.addAcceptorConfiguration(
+        "network", acceptorOpt.get().toString());
+    }
+
+    /*
+     * A single user that may do everything except manage the broker.
+     */
+
+    final var role =
+      new Role(
+        ROLE_NAME,
+        true,
+        true,
+        true,
+        true,
+        true,
+        true,
+        false,
+        true,
+        true,
+        true
+      );
+    brokerConfiguration.putSecurityRoles("#", Set.of(role));
+
+    final var security = new SecurityConfiguration();
+    security.addUser(configuration.user(), configuration.password());
+    security.addRole(configuration.user(), ROLE_NAME);
+
+    final var broker = new EmbeddedActiveMQ();
+    broker.setConfiguration(brokerConfiguration);
+    broker.setSecurityManager(
+      new ActiveMQJAASSecurityManager(
+        InVMLoginModule.class.getName(),
+        security
+      )
+    );
+
+    LOG.info(
+      "starting embedded broker ({}{})",
+      IN_VM_URL,
+      acceptorOpt.map(uri -> ", " + uri).orElse("")
+    );
+    broker.start();
+    return new MBroker(broker);
+  }
+
+  @Override
+  public void close()
+    throws Exception
+  {
+    LOG.debug("stopping embedded broker");
+    this.broker.stop();
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The configuration for an embedded message broker.
+ *
+ * @param user      The user name that clients must use to connect
+ * @param password  The password that clients must use to connect
+ * @param directory The directory used for persistent broker data; if empty,
+ *                  the broker keeps messages in memory only
+ * @param acceptor  An optional network address (such as
+ *                  {@code tcp://0.0.0.0:61616}) on which the broker accepts
+ *                  connections from other processes, in addition to the
+ *                  in-VM connector
+ */
+
+public record MBrokerConfiguration(
+  String user,
+  String password,
+  Optional<Path> directory,
+  Optional<URI> acceptor)
+{
+  /**
+   * The configuration for an embedded message broker.
+   *
+   * @param user      The user name that clients must use to connect
+   * @param password  The password that clients must use to connect
+   * @param directory The directory used for persistent broker data; if
+   *                  empty, the broker keeps messages in memory only
+   * @param acceptor  An optional network address (such as
+   *                  {@code tcp://0.0.0.0:61616}) on which the broker
+   *                  accepts connections from other processes, in addition
+   *                  to the in-VM connector
+   */
+
+  public MBrokerConfiguration
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+    Objects.requireNonNull(directory, "directory");
+    Objects.requireNonNull(acceptor, "acceptor");
+  }
+}
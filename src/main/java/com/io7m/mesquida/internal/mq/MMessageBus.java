@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An in-process message bus. Formatted messages are handed directly to
+ * every subscriber in the same JVM, with no serialization and no broker.
+ * Subscribers receive the same message instance and must not modify it.
+ */
+
+public final class MMessageBus
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MMessageBus.class);
+
+  private final CopyOnWriteArrayList<Consumer<MMessageFormatted>> subscribers;
+
+  private MMessageBus()
+  {
+    this.subscribers = new CopyOnWriteArrayList<>();
+  }
+
+  /**
+   * @return A new message bus with no subscribers
+   */
+
+  public static MMessageBus create()
+  {
+    return new MMessageBus();
+  }
+
+  /**
+   * Subscribe to messages. The receiver is called on the publishing thread,
+   * and so should do nothing more than enqueue the message for later
+   * processing.
+   *
+   * @param receiver The receiver
+   *
+   * @return A handle that unsubscribes the receiver when closed
+   */
+
+  public AutoCloseable subscribe(
+    final Consumer<MMessageFormatted> receiver)
+  {
+    Objects.requireNonNull(receiver, "receiver");
+    this.subscribers.add(receiver);
+    return () -> this.subscribers.remove(receiver);
+  }
+
+  /**
+   * Publish a message to all current subscribers.
+   *
+   * @param message The message
+   */
+
+  public void publish(
+    final MMessageFormatted message)
+  {
+    Objects.requireNonNull(message, "message");
+
+    for (final var subscriber : this.subscribers) {
+      try {
+        subscriber.accept(message);
+      } catch (final Exception e) {
+        LOG.error("subscriber failed: ", e);
+      }
+    }
+  }
+
+  /**
+   * @return The number of current subscribers
+   */
+
+  public int subscriberCount()
+  {
+    return this.subscribers.size();
+  }
+}
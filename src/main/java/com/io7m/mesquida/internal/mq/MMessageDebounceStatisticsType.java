@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for the debouncing of stream announcements.
+ */
+
+@MXBean
+public interface MMessageDebounceStatisticsType
+{
+  /**
+   * @return The current debounce window in milliseconds; zero if debouncing
+   * is disabled
+   */
+
+  long getWindowMillis();
+
+  /**
+   * @return The number of streams with an announcement waiting for the end
+   * of its debounce window
+   */
+
+  int getPending();
+
+  /**
+   * @return The number of start and stop pairs that cancelled each other
+   * out within a debounce window
+   */
+
+  long getCancelledPairs();
+
+  /**
+   * @return The number of announcements replaced by a later announcement of
+   * the same kind for the same stream
+   */
+
+  long getSuperseded();
+
+  /**
+   * @return The number of announcements released after their debounce
+   * window
+   */
+
+  long getReleased();
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Announcements held back for a debounce window, keyed by stream name.
+ *
+ * An announcement for a stream waits until the window that began with the
+ * first announcement has elapsed. If the opposite announcement for the
+ * same stream arrives within the window, the pair cancels out and neither
+ * is released; an encoder that drops and reconnects quickly therefore
+ * produces no announcements at all. A later announcement of the same kind
+ * replaces the waiting one, so that the released announcement carries the
+ * latest title and addresses.
+ */
+
+final class MMessageDebouncer implements MMessageDebounceStatisticsType
+{
+  private final LinkedHashMap<String, Pending> pending;
+  private Duration window;
+  private long cancelledPairs;
+  private long superseded;
+  private long released;
+
+  MMessageDebouncer()
+  {
+    this.pending = new LinkedHashMap<>();
+    this.window = Duration.ZERO;
+  }
+
+  private static String streamOf(
+    final MMessageType message)
+  {
+    if (message instanceof MMessageStreamStarted started) {
+      return started.streamName();
+    }
+    return ((MMessageStreamEnded) message).streamName();
+  }
+
+  synchronized Duration window()
+  {
+    return this.window;
+  }
+
+  synchronized void setWindow(
+    final Duration inWindow)
+  {
+    this.window = Objects.requireNonNull(inWindow, "window");
+  }
+
+  /**
+   * Hold back an announcement.
+   *
+   * @param message The announcement
+   * @param timeNow The current time in nanoseconds
+   */
+
+  synchronized void submit(
+    final MMessageType message,
+    final long timeNow)
+  {
+    Objects.requireNonNull(message, "message");
+
+    final var stream = streamOf(message);
+    final var existing = this.pending.get(stream);
+    if (existing == null) {
+      this.pending.put(
+        stream,
+        new Pending(message, timeNow + this.window.toNanos())
+      );
+      return;
+    }
+
+    if (existing.message.getClass() == message.getClass()) {
+      existing.message = message;
+      ++this.superseded;
+      return;
+    }
+
+    this.pending.remove(stream);
+    ++this.cancelledPairs;
+  }
+
+  /**
+   * Remove the announcements whose windows have elapsed.
+   *
+   * @param timeNow The current time in nanoseconds
+   *
+   * @return The announcements, in the order their windows began
+   */
+
+  synchronized List<MMessageType> takeDue(
+    final long timeNow)
+  {
+    final var results = new ArrayList<MMessageType>();
+    final var iterator = this.pending.values().iterator();
+    while (iterator.hasNext()) {
+      final var entry = iterator.next();
+      if (entry.deadline - timeNow <= 0L) {
+        results.add(entry.message);
+        iterator.remove();
+      }
+    }
+    this.released += results.size();
+    return results;
+  }
+
+  /**
+   * Remove all waiting announcements, regardless of their windows.
+   *
+   * @return The announcements, in the order their windows began
+   */
+
+  synchronized List<MMessageType> takeAll()
+  {
+    final var results = new ArrayList<MMessageType>();
+    for (final var entry : this.pending.values()) {
+      results.add(entry.message);
+    }
+    this.pending.clear();
+    this.released += results.size();
+    return results;
+  }
+
+  @Override
+  public synchronized long getWindowMillis()
+  {
+    return this.window.toMillis();
+  }
+
+  @Override
+  public synchronized int getPending()
+  {
+    return this.pending.size();
+  }
+
+  @Override
+  public synchronized long getCancelledPairs()
+  {
+    return this.cancelledPairs;
+  }
+
+  @Override
+  public synchronized long getSuperseded()
+  {
+    return this.superseded;
+  }
+
+  @Override
+  public synchronized long getReleased()
+  {
+    return this.released;
+  }
+
+  private static final class Pending
+  {
+    private final long deadline;
+    private MMessageType message;
+
+    Pending(
+      final MMessageType inMessage,
+      final long inDeadline)
+    {
+      this.message = inMessage;
+      this.deadline = inDeadline;
+    }
+  }
+}
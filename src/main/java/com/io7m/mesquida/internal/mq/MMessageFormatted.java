@@ -40,6 +40,8 @@ public final class MMessageFormatted
   public String text;
   @JsonProperty(required = true, value = "html")
   public String html;
+  @JsonProperty(required = false, value = "stream")
+  public String stream;
 
   public MMessageFormatted()
   {
@@ -48,12 +48,14 @@ public final class MMessageFormatter
     final var formatted = new MMessageFormatted();
     if (message instanceof MMessageStreamStarted started) {
       formatted.status = "STREAM_STARTED";
+      formatted.stream = started.streamName();
       formatted.text = toText(started);
       formatted.html = toHTML(started);
       return formatted;
     }
     if (message instanceof MMessageStreamEnded ended) {
       formatted.status = "STREAM_ENDED";
+      formatted.stream = ended.streamName();
       formatted.text = toText(ended);
       formatted.html = toHTML(ended);
       return formatted;
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import com.io7m.jmulticlose.core.CloseableCollection;
+import com.io7m.jmulticlose.core.CloseableCollectionType;
+import com.io7m.jmulticlose.core.ClosingResourceFailedException;
+import org.apache.activemq.artemis.api.core.TransportConfiguration;
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSConstants;
+import org.apache.activemq.artemis.core.remoting.impl.netty.NettyConnectorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import static org.apache.activemq.artemis.api.jms.JMSFactoryType.CF;
+
+/**
+ * A consumer on a shared durable subscription. Messages are acknowledged
+ * individually, and only when the receiver has finished with them; closing
+ * the subscription returns any unacknowledged messages to the broker to be
+ * delivered again.
+ */
+
+public final class MMessageJMSSubscription implements AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MMessageJMSSubscription.class);
+
+  private final MMessageSourceJMS source;
+  private final CloseableCollectionType<ClosingResourceFailedException>
+    resources;
+  private Connection connection;
+  private Session session;
+
+  private MMessageJMSSubscription(
+    final MMessageSourceJMS inSource,
+    final CloseableCollectionType<ClosingResourceFailedException> inResources)
+  {
+    this.source =
+      Objects.requireNonNull(inSource, "source");
+    this.resources =
+      Objects.requireNonNull(inResources, "resources");
+  }
+
+  /**
+   * Open a subscription. Messages are passed to the given receiver, along
+   * with the subscription that received them, on a thread owned by the JMS
+   * client.
+   *
+   * @param source   The message source
+   * @param receiver The message receiver
+   *
+   * @return An open subscription
+   *
+   * @throws Exception On errors
+   */
+
+  public static MMessageJMSSubscription open(
+    final MMessageSourceJMS source,
+    final BiConsumer<MMessageJMSSubscription, Message> receiver)
+    throws Exception
+  {
+    Objects.requireNonNull(source, "source");
+    Objects.requireNonNull(receiver, "receiver");
+
+    LOG.info(
+      "connect {} (subscription {})",
+      source.brokerURL(),
+      source.subscription()
+    );
+
+    final var resources =
+      CloseableCollection.create();
+    final var subscription =
+      new MMessageJMSSubscription(source, resources);
+
+    try {
+      final var transportConfiguration =
+        new TransportConfiguration(NettyConnectorFactory.class.getName());
+      final var connections =
+        resources.add(
+          ActiveMQJMSClient.createConnectionFactoryWithoutHA(
+            CF,
+            transportConfiguration
+          ));
+
+      /*
+       * No client ID is set: shared subscriptions without a client ID are
+       * visible to every connection that names them, which is what allows
+       * several bots to share one subscription.
+       */
+
+      connections.setBrokerURL(source.brokerURL().toString());
+      connections.setUser(source.brokerUser());
+      connections.setPassword(source.brokerPass());
+      connections.setReconnectAttempts(-1);
+
+      final var connection =
+        resources.add(connections.createConnection());
+      final var session =
+        resources.add(connection.createSession(
+          false,
+          ActiveMQJMSConstants.INDIVIDUAL_ACKNOWLEDGE
+        ));
+
+      subscription.connection = connection;
+      subscription.session = session;
+
+      final var topic =
+        session.createTopic(source.brokerTopic());
+      final var consumer =
+        resources.add(
+          session.createSharedDurableConsumer(topic, source.subscription())
+        );
+
+      consumer.setMessageListener(m -> receiver.accept(subscription, m));
+      connection.start();
+    } catch (final Exception e) {
+      try {
+        resources.close();
+      } catch (final ClosingResourceFailedException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+
+    return subscription;
+  }
+
+  /**
+   * Determine if a message has been delivered more times than the source
+   * allows. Such messages have presumably failed repeatedly, and should be
+   * acknowledged and discarded.
+   *
+   * @param message The message
+   *
+   * @return {@code true} if the delivery limit is exceeded
+   *
+   * @throws JMSException On errors
+   */
+
+  public boolean isDeliveryLimitExceeded(
+    final Message message)
+    throws JMSException
+  {
+    final var deliveries =
+      message.getIntProperty("JMSXDeliveryCount");
+    return deliveries > this.source.maximumDeliveries();
+  }
+
+  @Override
+  public void close()
+    throws ClosingResourceFailedException
+  {
+    /*
+     * Explicitly recover the session so that the broker counts the
+     * unacknowledged messages as delivered; simply closing the session
+     * returns them without incrementing their delivery counts, which would
+     * allow a message that always fails to be delivered forever.
+     */
+
+    try {
+      this.connection.stop();
+      this.session.recover();
+    } catch (final JMSException e) {
+      LOG.debug("recover: ", e);
+    }
+    this.resources.close();
+  }
+}
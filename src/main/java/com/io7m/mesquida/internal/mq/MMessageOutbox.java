@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import com.io7m.mesquida.internal.database.MDatabase;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.io7m.mesquida.internal.database.Tables.MESSAGE_OUTBOX;
+
+/**
+ * A durable outbox of formatted messages, stored in the database.
+ */
+
+final class MMessageOutbox implements MMessageOutboxStatisticsType
+{
+  private final MDatabase database;
+  private final Clock clock;
+  private final AtomicLong published;
+  private final AtomicLong expired;
+  private volatile long depth;
+  private volatile LocalDateTime oldest;
+
+  MMessageOutbox(
+    final MDatabase inDatabase)
+  {
+    this.database =
+      Objects.requireNonNull(inDatabase, "inDatabase");
+    this.clock =
+      Clock.systemUTC();
+    this.published =
+      new AtomicLong(0L);
+    this.expired =
+      new AtomicLong(0L);
+  }
+
+  private LocalDateTime now()
+  {
+    return LocalDateTime.now(this.clock);
+  }
+
+  /**
+   * Durably append a message to the outbox.
+   *
+   * @param message The formatted message text
+   *
+   * @throws SQLException On database errors
+   */
+
+  void append(
+    final String message)
+    throws SQLException
+  {
+    Objects.requireNonNull(message, "message");
+
+    try (var connection = this.database.openConnection()) {
+      DSL.using(connection, SQLDialect.DERBY)
+        .insertInto(MESSAGE_OUTBOX)
+        .set(MESSAGE_OUTBOX.OUTBOX_CREATED, this.now())
+        .set(MESSAGE_OUTBOX.OUTBOX_MESSAGE, message)
+        .execute();
+      connection.commit();
+    }
+  }
+
+  /**
+   * Fetch the oldest messages in the outbox, in the order they were written.
+   *
+   * @param limit The maximum number of messages
+   *
+   * @return The messages
+   *
+   * @throws SQLException On database errors
+   */
+
+  List<Entry> peek(
+    final int limit)
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      final var entries =
+        DSL.using(connection, SQLDialect.DERBY)
+          .selectFrom(MESSAGE_OUTBOX)
+          .orderBy(MESSAGE_OUTBOX.OUTBOX_ID.asc())
+          .limit(Integer.valueOf(limit))
+          .fetch(r -> new Entry(
+            r.getOutboxId().longValue(),
+            r.getOutboxCreated(),
+            r.getOutboxMessage()
+          ));
+      connection.rollback();
+      return entries;
+    }
+  }
+
+  /**
+   * Remove all messages up to and including the given message.
+   *
+   * @param id The message ID
+   *
+   * @throws SQLException On database errors
+   */
+
+  void removeUpTo(
+    final long id)
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      final var count =
+        DSL.using(connection, SQLDialect.DERBY)
+          .deleteFrom(MESSAGE_OUTBOX)
+          .where(MESSAGE_OUTBOX.OUTBOX_ID.le(Long.valueOf(id)))
+          .execute();
+      connection.commit();
+      this.published.addAndGet(count);
+    }
+  }
+
+  /**
+   * Discard messages that are older than the given age; these would be
+   * stale by the time they reached anyone.
+   *
+   * @param maximumAge The maximum age
+   *
+   * @throws SQLException On database errors
+   */
+
+  void expire(
+    final Duration maximumAge)
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      final var count =
+        DSL.using(connection, SQLDialect.DERBY)
+          .deleteFrom(MESSAGE_OUTBOX)
+          .where(MESSAGE_OUTBOX.OUTBOX_CREATED.lt(this.now().minus(maximumAge)))
+          .execute();
+      connection.commit();
+      this.expired.addAndGet(count);
+    }
+  }
+
+  /**
+   * Recalculate the outbox depth and age statistics.
+   *
+   * @throws SQLException On database errors
+   */
+
+  void refreshStatistics()
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      final var row =
+        DSL.using(connection, SQLDialect.DERBY)
+          .select(DSL.count(), DSL.min(MESSAGE_OUTBOX.OUTBOX_CREATED))
+          .from(MESSAGE_OUTBOX)
+          .fetchOne();
+      connection.rollback();
+
+      this.depth = row.value1().longValue();
+      this.oldest = row.value2();
+    }
+  }
+
+  /**
+   * @param entry A message
+   *
+   * @return The age of the given message
+   */
+
+  Duration ageOf(
+    final Entry entry)
+  {
+    return Duration.between(entry.created(), this.now());
+  }
+
+  @Override
+  public long getDepth()
+  {
+    return this.depth;
+  }
+
+  @Override
+  public long getOldestAgeMillis()
+  {
+    final var time = this.oldest;
+    if (time == null) {
+      return 0L;
+    }
+    return Math.max(0L, Duration.between(time, this.now()).toMillis());
+  }
+
+  @Override
+  public long getPublished()
+  {
+    return this.published.get();
+  }
+
+  @Override
+  public long getExpired()
+  {
+    return this.expired.get();
+  }
+
+  /**
+   * A message in the outbox.
+   *
+   * @param id      The message ID
+   * @param created The time the message was written
+   * @param message The formatted message text
+   */
+
+  record Entry(
+    long id,
+    LocalDateTime created,
+    String message)
+  {
+    Entry
+    {
+      Objects.requireNonNull(created, "created");
+      Objects.requireNonNull(message, "message");
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for the message outbox.
+ */
+
+@MXBean
+public interface MMessageOutboxStatisticsType
+{
+  /**
+   * @return The number of messages waiting to be published
+   */
+
+  long getDepth();
+
+  /**
+   * @return The age in milliseconds of the oldest message waiting to be
+   * published, or zero if the outbox is empty
+   */
+
+  long getOldestAgeMillis();
+
+  /**
+   * @return The total number of messages published from the outbox
+   */
+
+  long getPublished();
+
+  /**
+   * @return The total number of messages discarded because they expired
+   * before they could be published
+   */
+
+  long getExpired();
+}
@@ -22,6 +22,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.jmulticlose.core.ClosingResourceFailedException;
+import com.io7m.mesquida.internal.MManagementBeans;
+import com.io7m.mesquida.internal.actor.MActor;
+import com.io7m.mesquida.internal.actor.MActorBehaviourType;
+import com.io7m.mesquida.internal.actor.MActorDirectiveKind;
+import com.io7m.mesquida.internal.actor.MActorStatisticsType;
 import com.io7m.mesquida.internal.database.MDatabase;
 import org.apache.activemq.artemis.api.core.TransportConfiguration;
 import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
@@ -38,54 +43,119 @@ import javax.jms.TopicPublisher;
 import javax.jms.TopicSession;
 import java.sql.SQLException;
 import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static com.io7m.mesquida.internal.database.Tables.MESSAGE_QUEUE;
 import static com.io7m.mesquida.internal.mq.MMessageService.CmdConfigurationChanged.CMD_CONFIGURATION_CHANGED;
+import static com.io7m.mesquida.internal.mq.MMessageService.CmdOutboxChanged.CMD_OUTBOX_CHANGED;
 import static org.apache.activemq.artemis.api.jms.JMSFactoryType.CF;
 
 /**
- * A message queue service.
+ * A message queue service. Messages are written to a durable outbox in the
+ * database, and published to the message queue in order whenever a broker
+ * connection is available. If the service is given an in-process message
+ * bus, messages are delivered directly to the bus, and the message queue is
+ * only used as a bridge when it is enabled.
+ *
+ * If a debounce window is configured, announcements are held back for the
+ * window so that a stream that stops and starts again quickly (or starts
+ * and stops again) produces no announcements. Announcements are released
+ * by a timer of their own when their windows elapse, so they reach the bus
+ * and the outbox whether or not a broker connection exists.
  */
 
-public final class MMessageService implements AutoCloseable, Runnable
+public final class MMessageService implements AutoCloseable
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(MMessageService.class);
 
-  private final ExecutorService executor;
-  private final AtomicBoolean done;
+  /**
+   * Messages are announcements of streams starting and stopping, and are
+   * useless after a couple of hours.
+   */
+
+  private static final Duration MESSAGE_EXPIRY =
+    Duration.ofHours(2L);
+
+  private static final int OUTBOX_BATCH_SIZE =
+    64;
+
+  /**
+   * New messages wake the service immediately; the interval only bounds how
+   * long expired messages and statistics can go unexamined.
+   */
+
+  private static final Duration OUTBOX_CHECK_INTERVAL =
+    Duration.ofSeconds(30L);
+
   private final MDatabase database;
-  private final LinkedBlockingQueue<CommandType> commands;
   private final ObjectMapper mapper;
+  private final MMessageOutbox outbox;
+  private final Optional<MMessageBus> bus;
+  private final MMessageBus observers;
+  private final AutoCloseable outboxRegistration;
+  private final MMessageDebouncer debouncer;
+  private final AutoCloseable debounceRegistration;
+  private final ScheduledThreadPoolExecutor releaser;
+  private final MActor<CommandType> actor;
   private CloseableCollectionType<ClosingResourceFailedException> resources;
   private TopicPublisher publisher;
   private TopicSession session;
+  private BrokerConfiguration broker;
+
+  /**
+   * Whether the message queue is enabled, as of the last time the
+   * configuration was read. This is consulted on every delivery, and so is
+   * cached rather than read from the database each time.
+   */
+
+  private volatile boolean messageQueueEnabled;
 
   private MMessageService(
     final MDatabase inDatabase,
-    final ExecutorService inExecutor)
+    final Optional<MMessageBus> inBus,
+    final boolean inMessageQueueEnabled)
   {
     this.database =
       Objects.requireNonNull(inDatabase, "database");
-    this.executor =
-      Objects.requireNonNull(inExecutor, "executor");
-    this.done =
-      new AtomicBoolean(false);
-    this.commands =
-      new LinkedBlockingQueue<>();
+    this.bus =
+      Objects.requireNonNull(inBus, "bus");
+    this.observers =
+      MMessageBus.create();
 
     this.mapper =
       new ObjectMapper();
     this.resources =
       CloseableCollection.create();
+    this.outbox =
+      new MMessageOutbox(inDatabase);
+    this.outboxRegistration =
+      MManagementBeans.register("MessageOutbox", this.outbox);
+    this.debouncer =
+      new MMessageDebouncer();
+    this.debounceRegistration =
+      MManagementBeans.register("MessageDebounce", this.debouncer);
+
+    this.releaser =
+      new ScheduledThreadPoolExecutor(1, r -> {
+        final var thread = new Thread(r);
+        thread.setName(
+          "com.io7m.mesquida.message_debounce[" + thread.getId() + "]");
+        thread.setDaemon(true);
+        return thread;
+      });
+    this.releaser.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.messageQueueEnabled =
+      inMessageQueueEnabled;
+    this.actor =
+      MActor.create("messages", new Behaviour());
   }
 
   /**
@@ -94,135 +164,374 @@ public final class MMessageService implements AutoCloseable, Runnable
    * @param database The database
    *
    * @return A message service
+   *
+   * @throws SQLException On database errors
    */
 
   public static MMessageService create(
     final MDatabase database)
+    throws SQLException
   {
-    final var executor =
-      Executors.newSingleThreadExecutor(r -> {
-        final var thread = new Thread(r);
-        thread.setName("com.io7m.mesquida.messages[" + thread.getId() + "]");
-        thread.setDaemon(true);
-        return thread;
-      });
+    return createWith(database, Optional.empty());
+  }
+
+  /**
+   * Create a message service that delivers messages to the given in-process
+   * message bus.
+   *
+   * @param database The database
+   * @param bus      The message bus
+   *
+   * @return A message service
+   *
+   * @throws SQLException On database errors
+   */
 
-    final var service = new MMessageService(database, executor);
-    executor.execute(service);
-    return service;
+  public static MMessageService create(
+    final MDatabase database,
+    final MMessageBus bus)
+    throws SQLException
+  {
+    return createWith(database, Optional.of(bus));
   }
 
-  @Override
-  public void close()
+  private static MMessageService createWith(
+    final MDatabase database,
+    final Optional<MMessageBus> bus)
+    throws SQLException
   {
-    if (this.done.compareAndSet(false, true)) {
-      this.executor.shutdown();
+    try (var connection = database.openConnection()) {
+      final var enabled =
+        DSL.using(connection, SQLDialect.DERBY)
+          .select(MESSAGE_QUEUE.MQ_ENABLED)
+          .from(MESSAGE_QUEUE)
+          .fetchOne(MESSAGE_QUEUE.MQ_ENABLED);
+      connection.rollback();
+      return new MMessageService(
+        database,
+        bus,
+        Boolean.TRUE.equals(enabled)
+      );
     }
   }
 
   @Override
-  public void run()
+  public void close()
   {
-    while (!this.done.get()) {
+    if (!this.actor.isClosed()) {
+      this.actor.close();
+
+      this.releaser.shutdown();
       try {
-        this.configureMessageQueue();
-      } catch (final Exception e) {
-        LOG.error("unable to configure message queue: ", e);
-        this.pause();
-        continue;
+        this.releaser.awaitTermination(5L, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
 
-      while (!this.done.get()) {
-        try {
-          final var command =
-            this.commands.poll(1L, TimeUnit.SECONDS);
-
-          if (command == null) {
-            continue;
-          }
-
-          if (command instanceof CmdConfigurationChanged) {
-            LOG.info("configuration changed");
-            break;
-          }
-
-          if (command instanceof CmdSendMessage sendMessage) {
-            if (this.publisher != null) {
-              final var textMessage =
-                this.session.createTextMessage(
-                  this.mapper.writeValueAsString(
-                    MMessageFormatter.toFormatted(sendMessage.message())
-                  )
-                );
-
-              /*
-               * Set a two-hour expiration date.
-               */
-
-              this.publisher.publish(
-                textMessage,
-                DeliveryMode.NON_PERSISTENT,
-                Message.DEFAULT_PRIORITY,
-                Duration.ofHours(2L).toMillis()
-              );
-            }
-          }
-
-        } catch (final InterruptedException e) {
-          Thread.currentThread().interrupt();
-        } catch (final JMSException e) {
-          LOG.error("jms: ", e);
-        } catch (final JsonProcessingException e) {
-          LOG.error("json: ", e);
-        }
+      /*
+       * Announcements still waiting for their windows are released rather
+       * than lost; if a message queue is configured, they are written to
+       * the outbox and published after the next start.
+       */
+
+      this.deliverAll(this.debouncer.takeAll());
+
+      try {
+        this.outboxRegistration.close();
+      } catch (final Exception e) {
+        LOG.error("error closing outbox statistics: ", e);
+      }
+      try {
+        this.debounceRegistration.close();
+      } catch (final Exception e) {
+        LOG.error("error closing debounce statistics: ", e);
       }
     }
+  }
+
+  /**
+   * @return The outbox statistics
+   */
+
+  public MMessageOutboxStatisticsType outboxStatistics()
+  {
+    return this.outbox;
+  }
+
+  /**
+   * @return The debounce statistics
+   */
+
+  public MMessageDebounceStatisticsType debounceStatistics()
+  {
+    return this.debouncer;
+  }
 
+  /**
+   * @return The service statistics
+   */
+
+  public MActorStatisticsType statistics()
+  {
+    return this.actor;
+  }
+
+  /**
+   * Release the announcements whose debounce windows have elapsed. This
+   * runs on the release timer, and so does not depend on the broker
+   * connection.
+   */
+
+  private void releaseDue()
+  {
+    if (this.debouncer.window().isZero()) {
+      this.deliverAll(this.debouncer.takeAll());
+    } else {
+      this.deliverAll(this.debouncer.takeDue(System.nanoTime()));
+    }
+  }
+
+  private void scheduleRelease(
+    final Duration delay)
+  {
     try {
-      this.resources.close();
-    } catch (final ClosingResourceFailedException e) {
-      LOG.error("error closing service: ", e);
+      this.releaser.schedule(
+        this::releaseDue,
+        delay.toNanos(),
+        TimeUnit.NANOSECONDS
+      );
+    } catch (final RejectedExecutionException e) {
+      /*
+       * The service is closing, and will release everything that is still
+       * waiting.
+       */
+    }
+  }
+
+  private void deliverAll(
+    final List<MMessageType> messages)
+  {
+    for (final var message : messages) {
+      try {
+        this.deliver(message);
+      } catch (final JsonProcessingException | SQLException e) {
+        LOG.error("unable to deliver message {}: ", message, e);
+      }
+    }
+  }
+
+  /**
+   * Publish whatever is in the outbox.
+   *
+   * @return The time to wait before the outbox should next be examined
+   */
+
+  private Duration processOutbox()
+    throws SQLException, JMSException
+  {
+    this.outbox.expire(MESSAGE_EXPIRY);
+    this.outbox.refreshStatistics();
+
+    final var depth = this.outbox.getDepth();
+    if (this.publisher == null || depth == 0L) {
+      return OUTBOX_CHECK_INTERVAL;
     }
+
+    /*
+     * In batching mode, a partial batch is held back until the oldest
+     * message in it has waited for the linger time.
+     */
+
+    final var batchSize = this.broker.batchSize();
+    if (batchSize > 1 && depth < batchSize) {
+      final var waited =
+        Duration.ofMillis(this.outbox.getOldestAgeMillis());
+      final var remaining =
+        this.broker.batchLinger().minus(waited);
+      if (remaining.isPositive()) {
+        return remaining;
+      }
+    }
+
+    final var limit =
+      batchSize > 1 ? batchSize : OUTBOX_BATCH_SIZE;
+
+    while (!Thread.currentThread().isInterrupted()) {
+      final var batch = this.outbox.peek(limit);
+      if (batch.isEmpty()) {
+        break;
+      }
+
+      this.publishBatch(batch);
+      LOG.debug("published {} messages", Integer.valueOf(batch.size()));
+      if (batch.size() < limit) {
+        break;
+      }
+    }
+
+    this.outbox.refreshStatistics();
+    return OUTBOX_CHECK_INTERVAL;
   }
 
-  private void pause()
+  private void publishBatch(
+    final List<MMessageOutbox.Entry> batch)
+    throws SQLException, JMSException
   {
+    final var transacted = this.session.getTransacted();
+
+    long lastPublished = -1L;
     try {
-      Thread.sleep(1_000L);
-    } catch (final InterruptedException ex) {
-      Thread.currentThread().interrupt();
+      for (final var entry : batch) {
+        this.publish(entry);
+        lastPublished = entry.id();
+      }
+      if (transacted) {
+        this.session.commit();
+      }
+    } catch (final JMSException e) {
+      /*
+       * Nothing in a transacted batch reached subscribers; the whole batch
+       * stays in the outbox and is published again after reconnecting.
+       */
+
+      if (transacted) {
+        lastPublished = -1L;
+        try {
+          this.session.rollback();
+        } catch (final JMSException ex) {
+          e.addSuppressed(ex);
+        }
+      }
+      throw e;
+    } finally {
+      if (lastPublished != -1L) {
+        this.outbox.removeUpTo(lastPublished);
+      }
     }
   }
 
+  private void publish(
+    final MMessageOutbox.Entry entry)
+    throws JMSException
+  {
+    final var textMessage =
+      this.session.createTextMessage(entry.message());
+
+    /*
+     * Messages expire two hours after they were written to the outbox,
+     * regardless of how long they waited there. Messages are persistent so
+     * that those waiting in durable subscriptions for a bot to return
+     * survive a broker restart.
+     */
+
+    final var remaining =
+      MESSAGE_EXPIRY.minus(this.outbox.ageOf(entry));
+
+    this.publisher.publish(
+      textMessage,
+      DeliveryMode.PERSISTENT,
+      Message.DEFAULT_PRIORITY,
+      Math.max(1L, remaining.toMillis())
+    );
+  }
+
+  /**
+   * Observe messages as they are delivered. Observers see every message
+   * that is delivered to the bus or written to the outbox, after any
+   * debouncing, and are called on the delivering thread.
+   *
+   * @param observer The observer
+   *
+   * @return A handle that removes the observer when closed
+   */
+
+  public AutoCloseable observe(
+    final Consumer<MMessageFormatted> observer)
+  {
+    return this.observers.subscribe(observer);
+  }
+
   /**
    * Tell the service the configuration has changed.
    */
 
   public void setConfigurationChanged()
   {
-    this.commands.add(CMD_CONFIGURATION_CHANGED);
+    this.actor.send(CMD_CONFIGURATION_CHANGED);
   }
 
   /**
-   * Send a message to the queue.
+   * Send a message. If the service has a message bus, the message is
+   * delivered to the bus immediately. If the service has no bus, or the
+   * message queue is enabled, the message is also durably written to the
+   * outbox before this method returns, and is published when a broker
+   * connection is available.
+   *
+   * If a debounce window is configured, the message is instead held in
+   * memory until the window has elapsed, and is then delivered as above
+   * by the release timer unless a message for the same stream cancelled
+   * it. Release does not wait for a broker connection.
    *
    * @param message The message
+   *
+   * @throws JsonProcessingException On formatting errors
+   * @throws SQLException            On database errors
    */
 
   public void sendMessage(
     final MMessageType message)
+    throws JsonProcessingException, SQLException
   {
-    this.commands.add(new CmdSendMessage(message));
+    final var window = this.debouncer.window();
+    if (window.isZero()) {
+      this.deliver(message);
+      return;
+    }
+
+    this.debouncer.submit(message, System.nanoTime());
+    this.scheduleRelease(window);
   }
 
-  private void configureMessageQueue()
-    throws Exception
+  private void deliver(
+    final MMessageType message)
+    throws JsonProcessingException, SQLException
   {
-    if (this.resources != null) {
+    final var formatted = MMessageFormatter.toFormatted(message);
+    this.observers.publish(formatted);
+
+    if (this.bus.isPresent()) {
+      this.bus.get().publish(formatted);
+      if (!this.messageQueueEnabled) {
+        return;
+      }
+    }
+
+    this.outbox.append(this.mapper.writeValueAsString(formatted));
+    this.actor.send(CMD_OUTBOX_CHANGED);
+  }
+
+  private void closeResources()
+  {
+    this.publisher = null;
+    this.session = null;
+    this.broker = null;
+
+    try {
       this.resources.close();
+    } catch (final ClosingResourceFailedException e) {
+      LOG.error("error closing message queue: ", e);
     }
+    this.resources = CloseableCollection.create();
+  }
+
+  private void configureMessageQueue()
+    throws Exception
+  {
+    this.debouncer.setWindow(this.loadDebounceWindow());
+    this.scheduleRelease(Duration.ZERO);
 
     final var brokerConfigurationOpt = this.loadBrokerConfiguration();
+    this.messageQueueEnabled = brokerConfigurationOpt.isPresent();
     if (brokerConfigurationOpt.isEmpty()) {
       return;
     }
@@ -230,9 +539,12 @@ public final class MMessageService implements AutoCloseable, Runnable
     final var brokerConfiguration =
       brokerConfigurationOpt.get();
 
-    this.resources = CloseableCollection.create();
-
-    LOG.info("connect {}", brokerConfiguration.brokerURL);
+    LOG.info(
+      "connect {} (batch size {}, linger {})",
+      brokerConfiguration.brokerURL,
+      Integer.valueOf(brokerConfiguration.batchSize),
+      brokerConfiguration.batchLinger
+    );
 
     final var transportConfiguration =
       new TransportConfiguration(NettyConnectorFactory.class.getName());
@@ -254,7 +566,8 @@ public final class MMessageService implements AutoCloseable, Runnable
 
     this.session =
       this.resources.add(
-        topicConnection.createTopicSession(false, 0)
+        topicConnection.createTopicSession(
+          brokerConfiguration.batchSize > 1, 0)
       );
 
     final var topic =
@@ -263,6 +576,21 @@ public final class MMessageService implements AutoCloseable, Runnable
       this.resources.add(this.session.createPublisher(topic));
 
     topicConnection.start();
+    this.broker = brokerConfiguration;
+  }
+
+  private Duration loadDebounceWindow()
+    throws SQLException
+  {
+    try (var connection = this.database.openConnection()) {
+      final var debounce =
+        DSL.using(connection, SQLDialect.DERBY)
+          .select(MESSAGE_QUEUE.MQ_DEBOUNCE)
+          .from(MESSAGE_QUEUE)
+          .fetchOne(MESSAGE_QUEUE.MQ_DEBOUNCE);
+      connection.rollback();
+      return Duration.ofMillis(debounce.longValue());
+    }
   }
 
   private Optional<BrokerConfiguration> loadBrokerConfiguration()
@@ -284,12 +612,54 @@ public final class MMessageService implements AutoCloseable, Runnable
         mqConfiguration.getMqUrl(),
         mqConfiguration.getMqUser(),
         mqConfiguration.getMqPassword(),
-        mqConfiguration.getMqTopic()
+        mqConfiguration.getMqTopic(),
+        mqConfiguration.getMqBatchSize().intValue(),
+        Duration.ofMillis(mqConfiguration.getMqBatchLinger().longValue())
       );
     }
     return Optional.of(brokerConfiguration);
   }
 
+  private final class Behaviour
+    implements MActorBehaviourType<CommandType>
+  {
+    Behaviour()
+    {
+
+    }
+
+    @Override
+    public void onStart()
+      throws Exception
+    {
+      MMessageService.this.configureMessageQueue();
+    }
+
+    @Override
+    public MActorDirectiveKind onCommand(
+      final CommandType command)
+    {
+      if (command == CMD_CONFIGURATION_CHANGED) {
+        LOG.info("configuration changed");
+        return MActorDirectiveKind.RESTART;
+      }
+      return MActorDirectiveKind.CONTINUE;
+    }
+
+    @Override
+    public Optional<Duration> onIdle()
+      throws SQLException, JMSException
+    {
+      return Optional.of(MMessageService.this.processOutbox());
+    }
+
+    @Override
+    public void onStop()
+    {
+      MMessageService.this.closeResources();
+    }
+  }
+
   enum CmdConfigurationChanged
     implements CommandType
   {
@@ -301,18 +671,19 @@ public final class MMessageService implements AutoCloseable, Runnable
 
   }
 
-  record CmdSendMessage(
-    MMessageType message)
+  enum CmdOutboxChanged
     implements CommandType
   {
-
+    CMD_OUTBOX_CHANGED
   }
 
   private record BrokerConfiguration(
     String brokerURL,
     String brokerUser,
     String brokerPass,
-    String brokerTopic
+    String brokerTopic,
+    int batchSize,
+    Duration batchLinger
   )
   {
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.mq;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * Messages are received from a topic on a JMS message broker, through a
+ * shared durable subscription. Every process that uses the same subscription
+ * name shares one queue on the broker, so each message is handled by exactly
+ * one of them, and messages published whilst all of them are stopped are
+ * kept until one of them returns.
+ *
+ * @param brokerURL         The message broker URL
+ * @param brokerUser        The message broker user
+ * @param brokerPass        The message broker password
+ * @param brokerTopic       The message broker topic
+ * @param subscription      The name of the shared durable subscription
+ * @param maximumDeliveries The number of times a message may be delivered
+ *                          before it is discarded
+ */
+
+public record MMessageSourceJMS(
+  URI brokerURL,
+  String brokerUser,
+  String brokerPass,
+  String brokerTopic,
+  String subscription,
+  int maximumDeliveries)
+  implements MMessageSourceType
+{
+  /**
+   * The default number of times a message may be delivered.
+   */
+
+  public static final int DEFAULT_MAXIMUM_DELIVERIES = 10;
+
+  /**
+   * Messages are received from a topic on a JMS message broker, through a
+   * shared durable subscription. Every process that uses the same
+   * subscription name shares one queue on the broker, so each message is
+   * handled by exactly one of them, and messages published whilst all of them
+   * are stopped are kept until one of them returns.
+   *
+   * @param brokerURL         The message broker URL
+   * @param brokerUser        The message broker user
+   * @param brokerPass        The message broker password
+   * @param brokerTopic       The message broker topic
+   * @param subscription      The name of the shared durable subscription
+   * @param maximumDeliveries The number of times a message may be delivered
+   *                          before it is discarded
+   */
+
+  public MMessageSourceJMS
+  {
+    Objects.requireNonNull(brokerURL, "brokerURL");
+    Objects.requireNonNull(brokerUser, "brokerUser");
+    Objects.requireNonNull(brokerPass, "brokerPass");
+    Objects.requireNonNull(brokerTopic, "brokerTopic");
+    Objects.requireNonNull(subscription, "subscription");
+
+    if (subscription.isBlank()) {
+      throw new IllegalArgumentException("Subscription name must be non-blank");
+    }
+    if (maximumDeliveries < 1) {
+      throw new IllegalArgumentException(
+        "Maximum deliveries must be >= 1: " + maximumDeliveries);
+    }
+  }
+}
@@ -38,6 +38,12 @@ final class MMessageQueuePut
   public String topic;
   @JsonProperty(required = true, value = "brokerEnabled")
   public boolean enabled;
+  @JsonProperty(required = false, value = "brokerBatchSize")
+  public int batchSize = 1;
+  @JsonProperty(required = false, value = "brokerBatchLingerMillis")
+  public int batchLingerMillis;
+  @JsonProperty(required = false, value = "brokerDebounceMillis")
+  public int debounceMillis;
 
   MMessageQueuePut()
   {
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.io7m.mesquida.internal.MServerAdmissionLimit;
+
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The admission gate for a single endpoint.
+ */
+
+final class MPrivAdmissionGate
+{
+  private final MServerAdmissionLimit limit;
+  private final Semaphore permits;
+  private final AtomicInteger waiting;
+  private final AtomicLong admitted;
+  private final AtomicLong rejected;
+
+  MPrivAdmissionGate(
+    final MServerAdmissionLimit inLimit)
+  {
+    this.limit =
+      Objects.requireNonNull(inLimit, "inLimit");
+    this.permits =
+      new Semaphore(inLimit.concurrency(), true);
+    this.waiting =
+      new AtomicInteger(0);
+    this.admitted =
+      new AtomicLong(0L);
+    this.rejected =
+      new AtomicLong(0L);
+  }
+
+  MServerAdmissionLimit limit()
+  {
+    return this.limit;
+  }
+
+  /**
+   * Try to take an execution slot. If no slot is free, wait for one if the
+   * queue has room, up to the queue timeout.
+   *
+   * @return {@code true} if a slot was taken, and must be released with
+   * {@link #release()}
+   *
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+
+  boolean tryEnter()
+    throws InterruptedException
+  {
+    if (this.permits.tryAcquire()) {
+      this.admitted.incrementAndGet();
+      return true;
+    }
+
+    if (this.waiting.incrementAndGet() > this.limit.queueLength()) {
+      this.waiting.decrementAndGet();
+      this.rejected.incrementAndGet();
+      return false;
+    }
+
+    try {
+      final var timeout = this.limit.queueTimeout().toNanos();
+      if (this.permits.tryAcquire(timeout, TimeUnit.NANOSECONDS)) {
+        this.admitted.incrementAndGet();
+        return true;
+      }
+      this.rejected.incrementAndGet();
+      return false;
+    } finally {
+      this.waiting.decrementAndGet();
+    }
+  }
+
+  void release()
+  {
+    this.permits.release();
+  }
+
+  int inFlight()
+  {
+    return this.limit.concurrency() - this.permits.availablePermits();
+  }
+
+  int queued()
+  {
+    return this.waiting.get();
+  }
+
+  long admitted()
+  {
+    return this.admitted.get();
+  }
+
+  long rejected()
+  {
+    return this.rejected.get();
+  }
+}
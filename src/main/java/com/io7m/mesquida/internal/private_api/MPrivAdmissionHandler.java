@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.io7m.mesquida.internal.MManagementBeans;
+import com.io7m.mesquida.internal.MServerAdmissionConfiguration;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An admission control handler. Each endpoint is given a limited number of
+ * execution slots and a limited queue; requests that cannot be admitted are
+ * rejected immediately with a {@code 503} and a {@code Retry-After} header,
+ * rather than being left to queue behind the server's threads.
+ *
+ * Endpoints that hold connections open for a long time, such as the event
+ * feed, are not gated; they would otherwise occupy slots indefinitely, and
+ * they limit their own connections instead.
+ */
+
+public final class MPrivAdmissionHandler extends HandlerWrapper
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPrivAdmissionHandler.class);
+
+  private final Map<String, MPrivAdmissionGate> gates;
+  private final Set<String> ungated;
+  private final MPrivAdmissionGate defaultGate;
+  private final Statistics statistics;
+  private AutoCloseable registration;
+
+  /**
+   * Construct a handler.
+   *
+   * @param inConfiguration The admission configuration
+   * @param inEndpoints     The names of the endpoints that are given their
+   *                        own admission gates
+   * @param inUngated       The names of the endpoints that bypass admission
+   *                        control
+   */
+
+  public MPrivAdmissionHandler(
+    final MServerAdmissionConfiguration inConfiguration,
+    final Collection<String> inEndpoints,
+    final Collection<String> inUngated)
+  {
+    Objects.requireNonNull(inConfiguration, "inConfiguration");
+    Objects.requireNonNull(inEndpoints, "inEndpoints");
+
+    this.ungated =
+      Set.copyOf(Objects.requireNonNull(inUngated, "inUngated"));
+
+    this.defaultGate =
+      new MPrivAdmissionGate(inConfiguration.defaultLimit());
+
+    final var gatesMap = new HashMap<String, MPrivAdmissionGate>();
+    for (final var endpoint : inEndpoints) {
+      if (this.ungated.contains(endpoint)) {
+        continue;
+      }
+      gatesMap.put(
+        endpoint,
+        new MPrivAdmissionGate(inConfiguration.limitFor(endpoint))
+      );
+    }
+    this.gates = Map.copyOf(gatesMap);
+    this.statistics = new Statistics();
+  }
+
+  /**
+   * @return The admission statistics
+   */
+
+  public MPrivAdmissionStatisticsType statistics()
+  {
+    return this.statistics;
+  }
+
+  private static String endpointOf(
+    final String target)
+  {
+    final var start = target.startsWith("/") ? 1 : 0;
+    final var end = target.indexOf('/', start);
+    return end < 0 ? target.substring(start) : target.substring(start, end);
+  }
+
+  private MPrivAdmissionGate gateFor(
+    final String target)
+  {
+    return this.gates.getOrDefault(endpointOf(target), this.defaultGate);
+  }
+
+  @Override
+  protected void doStart()
+    throws Exception
+  {
+    this.registration =
+      MManagementBeans.register("PrivateAdmission", this.statistics);
+    super.doStart();
+  }
+
+  @Override
+  protected void doStop()
+    throws Exception
+  {
+    try {
+      super.doStop();
+    } finally {
+      if (this.registration != null) {
+        this.registration.close();
+        this.registration = null;
+      }
+    }
+  }
+
+  @Override
+  public void handle(
+    final String target,
+    final Request baseRequest,
+    final HttpServletRequest request,
+    final HttpServletResponse response)
+    throws IOException, ServletException
+  {
+    if (this.ungated.contains(endpointOf(target))) {
+      super.handle(target, baseRequest, request, response);
+      return;
+    }
+
+    final var gate = this.gateFor(target);
+
+    final boolean entered;
+    try {
+      entered = gate.tryEnter();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      sendRejected(baseRequest, response, gate);
+      return;
+    }
+
+    if (!entered) {
+      LOG.debug("rejected request for {}", target);
+      sendRejected(baseRequest, response, gate);
+      return;
+    }
+
+    try {
+      super.handle(target, baseRequest, request, response);
+    } finally {
+      gate.release();
+    }
+  }
+
+  private static void sendRejected(
+    final Request baseRequest,
+    final HttpServletResponse response,
+    final MPrivAdmissionGate gate)
+    throws IOException
+  {
+    final var retryMillis =
+      gate.limit().retryAfter().toMillis();
+    final var retrySeconds =
+      Math.max(1L, (retryMillis + 999L) / 1000L);
+
+    baseRequest.setHandled(true);
+    response.setContentType("text/plain");
+    response.setStatus(503);
+    response.setHeader("Retry-After", Long.toString(retrySeconds));
+    try (var outputStream = response.getOutputStream()) {
+      outputStream.print(503);
+      outputStream.print(' ');
+      outputStream.println("Server is busy");
+      outputStream.flush();
+    }
+  }
+
+  private final class Statistics implements MPrivAdmissionStatisticsType
+  {
+    Statistics()
+    {
+
+    }
+
+    private Collection<MPrivAdmissionGate> allGates()
+    {
+      final var all =
+        new ArrayList<MPrivAdmissionGate>(
+          MPrivAdmissionHandler.this.gates.values());
+      all.add(MPrivAdmissionHandler.this.defaultGate);
+      return all;
+    }
+
+    @Override
+    public int getRequestsInFlight()
+    {
+      return this.allGates()
+        .stream()
+        .mapToInt(MPrivAdmissionGate::inFlight)
+        .sum();
+    }
+
+    @Override
+    public int getRequestsQueued()
+    {
+      return this.allGates()
+        .stream()
+        .mapToInt(MPrivAdmissionGate::queued)
+        .sum();
+    }
+
+    @Override
+    public long getRequestsAdmitted()
+    {
+      return this.allGates()
+        .stream()
+        .mapToLong(MPrivAdmissionGate::admitted)
+        .sum();
+    }
+
+    @Override
+    public long getRequestsRejected()
+    {
+      return this.allGates()
+        .stream()
+        .mapToLong(MPrivAdmissionGate::rejected)
+        .sum();
+    }
+
+    @Override
+    public Map<String, Long> getRequestsRejectedByEndpoint()
+    {
+      final var results = new HashMap<String, Long>();
+      for (final var entry : MPrivAdmissionHandler.this.gates.entrySet()) {
+        results.put(entry.getKey(), Long.valueOf(entry.getValue().rejected()));
+      }
+      results.put(
+        "*",
+        Long.valueOf(MPrivAdmissionHandler.this.defaultGate.rejected()));
+      return results;
+    }
+  }
+}
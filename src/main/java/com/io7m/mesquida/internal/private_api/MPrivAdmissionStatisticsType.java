@@ -16,30 +16,43 @@
 
 package com.io7m.mesquida.internal.private_api;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import javax.management.MXBean;
+import java.util.Map;
 
-import java.util.LinkedList;
-import java.util.List;
-
-// CHECKSTYLE:OFF
+/**
+ * Statistics for the private API admission control.
+ */
 
-@JsonDeserialize
-@JsonSerialize
-final class MStream
+@MXBean
+public interface MPrivAdmissionStatisticsType
 {
-  @JsonProperty(required = true, value = "id")
-  public int id;
-  @JsonProperty(required = true, value = "name")
-  public String name;
-  @JsonProperty(required = true, value = "title")
-  public String title;
-  @JsonProperty(required = true, value = "addresses")
-  public List<MStreamAddress> addresses = new LinkedList<>();
-
-  MStream()
-  {
-
-  }
+  /**
+   * @return The number of requests currently executing
+   */
+
+  int getRequestsInFlight();
+
+  /**
+   * @return The number of requests currently waiting for an execution slot
+   */
+
+  int getRequestsQueued();
+
+  /**
+   * @return The total number of requests admitted
+   */
+
+  long getRequestsAdmitted();
+
+  /**
+   * @return The total number of requests rejected
+   */
+
+  long getRequestsRejected();
+
+  /**
+   * @return The total number of requests rejected, by endpoint
+   */
+
+  Map<String, Long> getRequestsRejectedByEndpoint();
 }
@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.io7m.mesquida.internal.events.MEvent;
+import com.io7m.mesquida.internal.events.MEventSubscription;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single client's event stream. Events are written with non-blocking
+ * I/O whenever the subscription has events and the connection can accept
+ * them, so a connected client does not hold a server thread between
+ * events.
+ */
+
+final class MPrivEventStream implements WriteListener, AsyncListener
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPrivEventStream.class);
+
+  private static final byte[] KEEPALIVE =
+    ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+  private final AsyncContext context;
+  private final ServletOutputStream output;
+  private final MEventSubscription subscription;
+  private final Executor executor;
+  private final Runnable onClosed;
+  private final String remote;
+  private byte[] preamble;
+  private boolean keepalivePending;
+  private boolean unflushed;
+  private boolean completed;
+  private boolean closed;
+  private Future<?> keepalive;
+
+  MPrivEventStream(
+    final AsyncContext inContext,
+    final ServletOutputStream inOutput,
+    final MEventSubscription inSubscription,
+    final Executor inExecutor,
+    final long retryMillis,
+    final Runnable inOnClosed)
+  {
+    this.context =
+      Objects.requireNonNull(inContext, "context");
+    this.output =
+      Objects.requireNonNull(inOutput, "output");
+    this.subscription =
+      Objects.requireNonNull(inSubscription, "subscription");
+    this.executor =
+      Objects.requireNonNull(inExecutor, "executor");
+    this.onClosed =
+      Objects.requireNonNull(inOnClosed, "onClosed");
+    this.remote =
+      inContext.getRequest().getRemoteAddr();
+    this.preamble =
+      ("retry: " + retryMillis + "\n\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] encode(
+    final MEvent event)
+  {
+    final var text = new StringBuilder(64 + event.data().length());
+    text.append("id: ");
+    text.append(event.id());
+    text.append('\n');
+    text.append("event: ");
+    text.append(event.name());
+    text.append('\n');
+    text.append("data: ");
+    text.append(event.data());
+    text.append("\n\n");
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Start streaming. The context must already be registered with this
+   * stream as an async listener.
+   *
+   * @param keepalives     The executor that sends keepalive comments
+   * @param intervalMillis The interval between keepalive comments
+   */
+
+  void start(
+    final ScheduledExecutorService keepalives,
+    final long intervalMillis)
+  {
+    final Future<?> task;
+    try {
+      task = keepalives.scheduleAtFixedRate(
+        this::sendKeepalive,
+        intervalMillis,
+        intervalMillis,
+        TimeUnit.MILLISECONDS
+      );
+    } catch (final RejectedExecutionException e) {
+      this.complete();
+      return;
+    }
+
+    synchronized (this) {
+      if (this.closed) {
+        task.cancel(false);
+        return;
+      }
+      this.keepalive = task;
+      this.output.setWriteListener(this);
+    }
+    this.subscription.setListener(this::wake);
+  }
+
+  private void sendKeepalive()
+  {
+    synchronized (this) {
+      this.keepalivePending = true;
+    }
+    this.wake();
+  }
+
+  private void wake()
+  {
+    try {
+      this.executor.execute(this::drain);
+    } catch (final RejectedExecutionException e) {
+      this.complete();
+    }
+  }
+
+  private void drain()
+  {
+    try {
+      this.onWritePossible();
+    } catch (final IOException e) {
+      this.onError(e);
+    }
+  }
+
+  /**
+   * Write as much as the connection will accept without blocking. If the
+   * connection stops accepting data, the container calls this method again
+   * when it is ready.
+   */
+
+  @Override
+  public synchronized void onWritePossible()
+    throws IOException
+  {
+    while (!this.completed && this.output.isReady()) {
+      final var next = this.next();
+      if (next != null) {
+        this.output.write(next);
+        this.unflushed = true;
+        continue;
+      }
+
+      if (this.subscription.isTerminated()) {
+        if (this.subscription.isOverflowed()) {
+          LOG.info("disconnecting slow event subscriber {}", this.remote);
+        }
+        this.complete();
+        return;
+      }
+
+      if (this.unflushed) {
+        this.unflushed = false;
+        this.output.flush();
+        continue;
+      }
+      return;
+    }
+  }
+
+  private byte[] next()
+  {
+    if (this.preamble != null) {
+      final var data = this.preamble;
+      this.preamble = null;
+      return data;
+    }
+
+    final var event = this.subscription.take();
+    if (event.isPresent()) {
+      return encode(event.get());
+    }
+
+    if (this.keepalivePending) {
+      this.keepalivePending = false;
+      return KEEPALIVE;
+    }
+    return null;
+  }
+
+  @Override
+  public void onError(
+    final Throwable error)
+  {
+    LOG.debug("event subscriber went away: {}", error.getMessage());
+    this.complete();
+  }
+
+  private void complete()
+  {
+    synchronized (this) {
+      if (this.completed) {
+        return;
+      }
+      this.completed = true;
+    }
+
+    this.close();
+    try {
+      this.context.complete();
+    } catch (final IllegalStateException e) {
+      LOG.debug("event stream already completed: {}", e.getMessage());
+    }
+  }
+
+  private void close()
+  {
+    final Future<?> task;
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      this.completed = true;
+      task = this.keepalive;
+    }
+
+    if (task != null) {
+      task.cancel(false);
+    }
+    this.subscription.close();
+    this.onClosed.run();
+  }
+
+  @Override
+  public void onComplete(
+    final AsyncEvent event)
+  {
+    this.close();
+  }
+
+  @Override
+  public void onTimeout(
+    final AsyncEvent event)
+  {
+    this.complete();
+  }
+
+  @Override
+  public void onError(
+    final AsyncEvent event)
+  {
+    this.onError(event.getThrowable());
+  }
+
+  @Override
+  public void onStartAsync(
+    final AsyncEvent event)
+  {
+
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.events.MEventHub;
+import com.io7m.mesquida.internal.events.MEventSubscription;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server-sent events handler that streams the event feed to clients.
+ *
+ * <p>A client that reconnects with a {@code Last-Event-ID} header (or a
+ * {@code lastEventId} parameter) resumes after that event if it is still
+ * retained. A client that falls behind is disconnected, and can reconnect
+ * and resume in the same way.</p>
+ *
+ * <p>Streams are written asynchronously, so connected clients don't occupy
+ * server threads. The number of connected clients is limited separately
+ * from the admission control applied to other endpoints; clients beyond
+ * the limit are rejected with a {@code 503}.</p>
+ */
+
+public final class MPrivEventsHandler extends MPrivAuthenticatedHandler
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPrivEventsHandler.class);
+
+  /**
+   * Comments are sent to idle clients well within the connector's idle
+   * timeout, so that quiet connections are not closed.
+   */
+
+  private static final Duration KEEPALIVE_INTERVAL =
+    Duration.ofSeconds(15L);
+
+  private static final long RETRY_MILLIS =
+    2_000L;
+
+  private final MEventHub hub;
+  private final int subscribersMaximum;
+  private final AtomicInteger subscribers;
+  private ScheduledThreadPoolExecutor keepalives;
+
+  /**
+   * Construct a handler.
+   *
+   * @param inConfiguration The configuration
+   * @param inHub           The event feed
+   */
+
+  public MPrivEventsHandler(
+    final MServerConfiguration inConfiguration,
+    final MEventHub inHub)
+  {
+    super(inConfiguration);
+
+    this.hub =
+      Objects.requireNonNull(inHub, "inHub");
+    this.subscribersMaximum =
+      inConfiguration.privateAdmission().eventSubscribersMaximum();
+    this.subscribers =
+      new AtomicInteger();
+  }
+
+  @Override
+  protected void doStart()
+    throws Exception
+  {
+    final var executor = new ScheduledThreadPoolExecutor(1, r -> {
+      final var thread = new Thread(r);
+      thread.setName("com.io7m.mesquida.events_keepalive");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setRemoveOnCancelPolicy(true);
+    this.keepalives = executor;
+    super.doStart();
+  }
+
+  @Override
+  protected void doStop()
+    throws Exception
+  {
+    try {
+      super.doStop();
+    } finally {
+      this.keepalives.shutdownNow();
+    }
+  }
+
+  private boolean tryConnect()
+  {
+    while (true) {
+      final var current = this.subscribers.get();
+      if (current >= this.subscribersMaximum) {
+        return false;
+      }
+      if (this.subscribers.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  protected void handleAuthenticated(
+    final String target,
+    final Request baseRequest,
+    final HttpServletRequest request,
+    final HttpServletResponse response)
+    throws IOException
+  {
+    baseRequest.setHandled(true);
+
+    if (!this.tryConnect()) {
+      LOG.debug("rejected event subscriber {}", request.getRemoteAddr());
+      response.setHeader(
+        "Retry-After",
+        Long.toString(TimeUnit.MILLISECONDS.toSeconds(RETRY_MILLIS)));
+      sendError(response, 503, "Too many event subscribers");
+      return;
+    }
+
+    final var lastEventId =
+      Optional.ofNullable(request.getHeader("Last-Event-ID"))
+        .or(() -> Optional.ofNullable(request.getParameter("lastEventId")));
+
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    response.setStatus(200);
+
+    /*
+     * The subscription is created last, and closed if anything fails
+     * after it was created, so that a failed request never leaves a
+     * subscriber registered with the feed.
+     */
+
+    final MPrivEventStream stream;
+    MEventSubscription subscription = null;
+    try {
+      final var context = request.startAsync();
+      context.setTimeout(0L);
+      final var output = response.getOutputStream();
+
+      subscription = this.hub.subscribe(lastEventId);
+      stream = new MPrivEventStream(
+        context,
+        output,
+        subscription,
+        this.getServer().getThreadPool(),
+        RETRY_MILLIS,
+        this.subscribers::decrementAndGet
+      );
+      context.addListener(stream);
+    } catch (final IOException | RuntimeException e) {
+      if (subscription != null) {
+        subscription.close();
+      }
+      this.subscribers.decrementAndGet();
+      throw e;
+    }
+
+    stream.start(this.keepalives, KEEPALIVE_INTERVAL.toMillis());
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.io7m.mesquida.internal.MServerCompression;
+import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
+import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.events.MEventHub;
+import com.io7m.mesquida.internal.mq.MMessageService;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The set of private API endpoints.
+ */
+
+public final class MPrivHandlers
+{
+  private MPrivHandlers()
+  {
+
+  }
+
+  /**
+   * Create the private API handlers, and install them on the given server.
+   *
+   * @param configuration  The server configuration
+   * @param server         The private server
+   * @param database       The database
+   * @param catalog        The stream catalog
+   * @param liveRegistry   The live stream registry
+   * @param eventHub       The event feed
+   * @param messageService The message service
+   *
+   * @return The admission handler that wraps all endpoints
+   */
+
+  public static MPrivAdmissionHandler create(
+    final MServerConfiguration configuration,
+    final Server server,
+    final MDatabase database,
+    final MStreamCatalog catalog,
+    final MStreamLiveRegistry liveRegistry,
+    final MEventHub eventHub,
+    final MMessageService messageService)
+  {
+    final var contextRoot =
+      new ContextHandler("/");
+    contextRoot.setHandler(
+      new MPrivRootHandler());
+
+    final var contextUserPut =
+      new ContextHandler("/user-put");
+    contextUserPut.setHandler(
+      new MPrivUserPutHandler(configuration, database, catalog));
+
+    final var contextUserList =
+      new ContextHandler("/user-list");
+    contextUserList.setHandler(
+      new MPrivUserListHandler(configuration, database, catalog));
+
+    final var contextStreamPut =
+      new ContextHandler("/stream-put");
+    contextStreamPut.setHandler(
+      new MPrivStreamPutHandler(configuration, database, catalog));
+
+    final var contextStreamList =
+      new ContextHandler("/stream-list");
+    contextStreamList.setHandler(
+      new MPrivStreamListHandler(configuration, catalog));
+
+    final var contextStreamAddressPut =
+      new ContextHandler("/stream-address-put");
+    contextStreamAddressPut.setHandler(
+      new MPrivStreamAddressPutHandler(configuration, database, catalog));
+
+    final var contextStreamDelete =
+      new ContextHandler("/stream-delete");
+    contextStreamDelete.setHandler(
+      new MPrivStreamDeleteHandler(
+        configuration, database, catalog, liveRegistry));
+
+    final var contextStreamStart =
+      new ContextHandler("/stream-start");
+    contextStreamStart.setHandler(
+      new MPrivStreamStartHandler(
+        configuration, messageService, catalog, liveRegistry));
+
+    final var contextStreamStop =
+      new ContextHandler("/stream-stop");
+    contextStreamStop.setHandler(
+      new MPrivStreamStopHandler(
+        configuration, messageService, catalog, liveRegistry));
+
+    final var contextStreamHeartbeat =
+      new ContextHandler("/stream-heartbeat");
+    contextStreamHeartbeat.setHandler(
+      new MPrivStreamHeartbeatHandler(configuration, liveRegistry));
+
+    final var contextStreamStatus =
+      new ContextHandler("/stream-status");
+    contextStreamStatus.setHandler(
+      new MPrivStreamStatusHandler(configuration, liveRegistry));
+
+    final var contextEvents =
+      new ContextHandler("/events");
+    contextEvents.setHandler(
+      new MPrivEventsHandler(configuration, eventHub));
+
+    final var contextMqPut =
+      new ContextHandler("/mq-put");
+    contextMqPut.setHandler(
+      new MPrivMessageQueuePutHandler(configuration, messageService, database));
+
+    final var contexts = new ContextHandlerCollection();
+    final var handlers = new ContextHandler[]{
+      contextRoot,
+      contextUserPut,
+      contextUserList,
+      contextStreamPut,
+      contextStreamList,
+      contextStreamAddressPut,
+      contextStreamDelete,
+      contextStreamStart,
+      contextStreamStop,
+      contextStreamHeartbeat,
+      contextStreamStatus,
+      contextEvents,
+      contextMqPut,
+    };
+    contexts.setHandlers(handlers);
+
+    final var endpoints =
+      Arrays.stream(handlers)
+        .map(h -> h.getContextPath().substring(1))
+        .filter(p -> !p.isEmpty())
+        .toList();
+
+    /*
+     * Compression sits inside admission control, so that only admitted
+     * requests spend time compressing responses. The event feed bypasses
+     * admission control, as its connections are long-lived and it limits
+     * them itself.
+     */
+
+    final var admission =
+      new MPrivAdmissionHandler(
+        configuration.privateAdmission(),
+        endpoints,
+        List.of("events")
+      );
+    admission.setHandler(
+      MServerCompression.wrap(configuration.privateCompression(), contexts));
+
+    server.setErrorHandler(new MPrivErrorHandler());
+    server.setHandler(admission);
+    return admission;
+  }
+}
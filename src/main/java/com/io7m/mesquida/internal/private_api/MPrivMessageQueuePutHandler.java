@@ -74,6 +74,7 @@ public final class MPrivMessageQueuePutHandler extends MPrivAuthenticatedHandler
       MJson.createMapper(
         Set.of(
           boolean.class.getCanonicalName(),
+          int.class.getCanonicalName(),
           String.class.getCanonicalName(),
           URI.class.getCanonicalName(),
           MMessageQueuePut.class.getCanonicalName())
@@ -93,6 +94,22 @@ public final class MPrivMessageQueuePutHandler extends MPrivAuthenticatedHandler
       command = this.mapper.readValue(stream, MMessageQueuePut.class);
     }
 
+    if (command.batchSize < 1) {
+      MPrivAuthenticatedHandler.sendError(
+        response, 400, "Batch size must be at least 1");
+      return;
+    }
+    if (command.batchLingerMillis < 0) {
+      MPrivAuthenticatedHandler.sendError(
+        response, 400, "Batch linger time must be non-negative");
+      return;
+    }
+    if (command.debounceMillis < 0) {
+      MPrivAuthenticatedHandler.sendError(
+        response, 400, "Debounce time must be non-negative");
+      return;
+    }
+
     try (var connection = this.database.openConnection()) {
       final var context =
         DSL.using(connection, SQLDialect.DERBY);
@@ -103,6 +120,9 @@ public final class MPrivMessageQueuePutHandler extends MPrivAuthenticatedHandler
       existing.setMqUrl(command.url.toString());
       existing.setMqUser(command.user);
       existing.setMqEnabled(command.enabled);
+      existing.setMqBatchSize(Integer.valueOf(command.batchSize));
+      existing.setMqBatchLinger(Integer.valueOf(command.batchLingerMillis));
+      existing.setMqDebounce(Integer.valueOf(command.debounceMillis));
       existing.store();
 
       connection.commit();
@@ -110,6 +130,7 @@ public final class MPrivMessageQueuePutHandler extends MPrivAuthenticatedHandler
     } catch (final SQLException e) {
       LOG.error("database error: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
+      return;
     }
 
     response.setContentType("text/plain");
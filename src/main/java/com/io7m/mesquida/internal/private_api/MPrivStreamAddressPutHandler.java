@@ -19,6 +19,7 @@ package com.io7m.mesquida.internal.private_api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
 import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
 import com.io7m.mesquida.internal.database.MDatabase;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -47,6 +48,7 @@ public final class MPrivStreamAddressPutHandler extends
     LoggerFactory.getLogger(MPrivStreamAddressPutHandler.class);
 
   private final MDatabase database;
+  private final MStreamCatalog catalog;
   private final ObjectMapper mapper;
 
   /**
@@ -54,16 +56,20 @@ public final class MPrivStreamAddressPutHandler extends
    *
    * @param inConfiguration The configuration
    * @param inDatabase      The database
+   * @param inCatalog       The stream catalog
    */
 
   public MPrivStreamAddressPutHandler(
     final MServerConfiguration inConfiguration,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog)
   {
     super(inConfiguration);
 
     this.database =
       Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
 
     this.mapper =
       MJson.createMapper(
@@ -109,6 +115,7 @@ public final class MPrivStreamAddressPutHandler extends
       existing.store();
 
       connection.commit();
+      this.catalog.reload();
     } catch (final SQLException e) {
       LOG.error("database error: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
@@ -19,6 +19,8 @@ package com.io7m.mesquida.internal.private_api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
 import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
 import com.io7m.mesquida.internal.database.MDatabase;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -45,6 +47,8 @@ public final class MPrivStreamDeleteHandler extends MPrivAuthenticatedHandler
     LoggerFactory.getLogger(MPrivStreamDeleteHandler.class);
 
   private final MDatabase database;
+  private final MStreamCatalog catalog;
+  private final MStreamLiveRegistry registry;
   private final ObjectMapper mapper;
 
   /**
@@ -52,16 +56,24 @@ public final class MPrivStreamDeleteHandler extends MPrivAuthenticatedHandler
    *
    * @param inConfiguration The configuration
    * @param inDatabase      The database
+   * @param inCatalog       The stream catalog
+   * @param inRegistry      The live stream registry
    */
 
   public MPrivStreamDeleteHandler(
     final MServerConfiguration inConfiguration,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog,
+    final MStreamLiveRegistry inRegistry)
   {
     super(inConfiguration);
 
     this.database =
       Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
+    this.registry =
+      Objects.requireNonNull(inRegistry, "inRegistry");
 
     this.mapper =
       MJson.createMapper(
@@ -84,6 +96,9 @@ public final class MPrivStreamDeleteHandler extends MPrivAuthenticatedHandler
       command = this.mapper.readValue(stream, MStreamDelete.class);
     }
 
+    final var existing =
+      this.catalog.snapshot().streamById(command.id);
+
     try (var connection = this.database.openConnection()) {
       final var context =
         DSL.using(connection, SQLDialect.DERBY);
@@ -95,6 +110,11 @@ public final class MPrivStreamDeleteHandler extends MPrivAuthenticatedHandler
       query.execute();
 
       connection.commit();
+      this.catalog.reload();
+
+      if (existing.isPresent()) {
+        this.registry.ended(existing.get().name());
+      }
     } catch (final SQLException e) {
       LOG.error("database error: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
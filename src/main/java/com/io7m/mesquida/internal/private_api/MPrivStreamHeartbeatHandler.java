@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.io7m.mesquida.internal.MJson;
+import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A server stream heartbeat handler. Streaming sources call this
+ * periodically while a stream is live.
+ */
+
+public final class MPrivStreamHeartbeatHandler
+  extends MPrivAuthenticatedHandler
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPrivStreamHeartbeatHandler.class);
+
+  private final ObjectMapper mapper;
+  private final MStreamLiveRegistry registry;
+
+  /**
+   * Construct a handler.
+   *
+   * @param inConfiguration The configuration
+   * @param inRegistry      The live stream registry
+   */
+
+  public MPrivStreamHeartbeatHandler(
+    final MServerConfiguration inConfiguration,
+    final MStreamLiveRegistry inRegistry)
+  {
+    super(inConfiguration);
+
+    this.registry =
+      Objects.requireNonNull(inRegistry, "inRegistry");
+
+    this.mapper =
+      MJson.createMapper(
+        Set.of(
+          String.class.getCanonicalName(),
+          MStreamHeartbeat.class.getCanonicalName())
+      );
+  }
+
+  @Override
+  protected void handleAuthenticated(
+    final String target,
+    final Request baseRequest,
+    final HttpServletRequest request,
+    final HttpServletResponse response)
+    throws IOException
+  {
+    final MStreamHeartbeat command;
+    try (var stream = baseRequest.getInputStream()) {
+      command = this.mapper.readValue(stream, MStreamHeartbeat.class);
+    }
+
+    final boolean live;
+    try {
+      live = this.registry.heartbeat(command.name).isPresent();
+    } catch (final SQLException e) {
+      LOG.error("database error: ", e);
+      MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
+      return;
+    }
+
+    if (!live) {
+      response.setContentType("text/plain");
+      response.setStatus(404);
+      try (var outputStream = response.getOutputStream()) {
+        outputStream.println("Stream not live");
+        outputStream.flush();
+      }
+      return;
+    }
+
+    response.setContentType("text/plain");
+    response.setStatus(200);
+    try (var outputStream = response.getOutputStream()) {
+      outputStream.println("OK");
+      outputStream.flush();
+    }
+  }
+}
@@ -16,65 +16,90 @@
 
 package com.io7m.mesquida.internal.private_api;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.io7m.mesquida.internal.MJson;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.io7m.mesquida.internal.MEntityTags;
 import com.io7m.mesquida.internal.MServerConfiguration;
-import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.catalog.MCatalogStream;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.eclipse.jetty.server.Request;
-import org.jooq.SQLDialect;
-import org.jooq.impl.DSL;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URI;
-import java.sql.SQLException;
+import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-
-import static com.io7m.mesquida.internal.database.Tables.STREAM_ADDRESSES;
-import static com.io7m.mesquida.internal.database.tables.Streams.STREAMS;
 
 /**
  * A server stream list handler.
+ *
+ * <p>The optional {@code after} parameter restricts the results to streams
+ * with IDs strictly greater than the given ID, and the optional {@code limit}
+ * parameter bounds the number of streams returned. If more streams remain,
+ * the response includes a {@code next} field that can be passed as
+ * {@code after} to fetch the next page.</p>
+ *
+ * <p>Responses carry an entity tag derived from the catalog version, and
+ * a request whose {@code If-None-Match} header matches it receives a
+ * {@code 304} without the list being generated.</p>
  */
 
 public final class MPrivStreamListHandler extends MPrivAuthenticatedHandler
 {
-  private static final Logger LOG =
-    LoggerFactory.getLogger(MPrivStreamListHandler.class);
-
-  private final MDatabase database;
-  private final ObjectMapper mapper;
+  private final MStreamCatalog catalog;
+  private final JsonFactory json;
 
   /**
    * Construct a handler.
    *
    * @param inConfiguration The configuration
-   * @param inDatabase      The database
+   * @param inCatalog       The stream catalog
    */
 
   public MPrivStreamListHandler(
     final MServerConfiguration inConfiguration,
-    final MDatabase inDatabase)
+    final MStreamCatalog inCatalog)
   {
     super(inConfiguration);
 
-    this.database =
-      Objects.requireNonNull(inDatabase, "inDatabase");
-
-    this.mapper =
-      MJson.createMapper(
-        Set.of(
-          String.class.getCanonicalName(),
-          URI.class.getCanonicalName(),
-          MStreamList.class.getCanonicalName(),
-          MStreamAddress.class.getCanonicalName()
-        )
-      );
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
+    this.json =
+      new JsonFactory();
+  }
+
+  private static int parameterInt(
+    final HttpServletRequest request,
+    final String name,
+    final int defaultValue)
+  {
+    final var text = request.getParameter(name);
+    if (text == null) {
+      return defaultValue;
+    }
+    return Integer.parseInt(text);
+  }
+
+  private static void writeStream(
+    final JsonGenerator generator,
+    final MCatalogStream stream)
+    throws IOException
+  {
+    generator.writeStartObject();
+    generator.writeNumberField("id", stream.id());
+    generator.writeStringField("name", stream.name());
+    generator.writeStringField("title", stream.title());
+    generator.writeArrayFieldStart("addresses");
+    for (final var address : stream.addresses()) {
+      generator.writeStartObject();
+      generator.writeNumberField("id", address.id());
+      generator.writeStringField("protocol", address.protocol());
+      generator.writeStringField("url", address.url().toString());
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
   }
 
   @Override
@@ -85,49 +110,56 @@ public final class MPrivStreamListHandler extends MPrivAuthenticatedHandler
     final HttpServletResponse response)
     throws IOException
   {
-    final var output = new MStreamList();
-
-    try (var connection = this.database.openConnection()) {
-      final var context =
-        DSL.using(connection, SQLDialect.DERBY);
-
-      final var streams =
-        context.fetch(STREAMS);
-
-      for (final var stream : streams) {
-        final var outputStream = new MStream();
-        outputStream.id = stream.getStreamId();
-        outputStream.name = stream.getStreamName();
-        outputStream.title = stream.getStreamTitle();
-
-        final var addresses =
-          context.fetch(
-            STREAM_ADDRESSES,
-            STREAM_ADDRESSES.STREAM_REFERENCE.eq(stream.getStreamId())
-          );
-
-        for (final var address : addresses) {
-          final var outputAddress = new MStreamAddress();
-          outputAddress.id = address.getStreamAddressId().intValue();
-          outputAddress.protocol = address.getStreamProtocol();
-          outputAddress.url = URI.create(address.getStreamUrl());
-          outputStream.addresses.add(outputAddress);
-        }
+    final int after;
+    final int limit;
+    try {
+      after = parameterInt(request, "after", Integer.MIN_VALUE);
+      limit = parameterInt(request, "limit", Integer.MAX_VALUE);
+    } catch (final NumberFormatException e) {
+      sendError(response, 400, "Invalid 'after' or 'limit' parameter.");
+      return;
+    }
 
-        output.streams.add(outputStream);
-      }
+    if (limit < 1) {
+      sendError(response, 400, "The 'limit' parameter must be positive.");
+      return;
+    }
+
+    final var snapshot =
+      this.catalog.snapshot();
+    final var tag =
+      MEntityTags.strong(
+        this.catalog.epoch(),
+        Long.toString(snapshot.version()));
 
-      connection.rollback();
-    } catch (final SQLException e) {
-      LOG.error("database error: ", e);
-      MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
+    if (MEntityTags.isNotModified(request, tag)) {
+      MEntityTags.sendNotModified(response, tag);
+      return;
     }
 
+    final List<MCatalogStream> streams =
+      snapshot.streamsAfter(after);
+    final var count =
+      Math.min(limit, streams.size());
+
     response.setContentType("text/json");
+    response.setHeader("ETag", tag);
+    response.setHeader("Cache-Control", "no-cache");
     response.setStatus(200);
     try (var outputStream = response.getOutputStream()) {
       try (var out = CloseShieldOutputStream.wrap(outputStream)) {
-        this.mapper.writeValue(out, output);
+        try (var generator = this.json.createGenerator(out)) {
+          generator.writeStartObject();
+          generator.writeArrayFieldStart("streams");
+          for (int index = 0; index < count; ++index) {
+            writeStream(generator, streams.get(index));
+          }
+          generator.writeEndArray();
+          if (count < streams.size()) {
+            generator.writeNumberField("next", streams.get(count - 1).id());
+          }
+          generator.writeEndObject();
+        }
       }
       outputStream.println();
     }
@@ -19,6 +19,7 @@ package com.io7m.mesquida.internal.private_api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
 import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
 import com.io7m.mesquida.internal.database.MDatabase;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -46,6 +47,7 @@ public final class MPrivStreamPutHandler extends MPrivAuthenticatedHandler
     LoggerFactory.getLogger(MPrivStreamPutHandler.class);
 
   private final MDatabase database;
+  private final MStreamCatalog catalog;
   private final ObjectMapper mapper;
 
   /**
@@ -53,16 +55,20 @@ public final class MPrivStreamPutHandler extends MPrivAuthenticatedHandler
    *
    * @param inConfiguration The configuration
    * @param inDatabase      The database
+   * @param inCatalog       The stream catalog
    */
 
   public MPrivStreamPutHandler(
     final MServerConfiguration inConfiguration,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog)
   {
     super(inConfiguration);
 
     this.database =
       Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
 
     this.mapper =
       MJson.createMapper(
@@ -105,6 +111,7 @@ public final class MPrivStreamPutHandler extends MPrivAuthenticatedHandler
       existing.store();
 
       connection.commit();
+      this.catalog.reload();
     } catch (final SQLException e) {
       LOG.error("database error: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
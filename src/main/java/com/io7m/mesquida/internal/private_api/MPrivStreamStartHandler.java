@@ -19,27 +19,21 @@ package com.io7m.mesquida.internal.private_api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
 import com.io7m.mesquida.internal.MServerConfiguration;
-import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
 import com.io7m.mesquida.internal.mq.MMessageService;
 import com.io7m.mesquida.internal.mq.MMessageStreamStarted;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.server.Request;
-import org.jooq.SQLDialect;
-import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URI;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Objects;
 import java.util.Set;
 
-import static com.io7m.mesquida.internal.database.Tables.STREAM_ADDRESSES;
-import static com.io7m.mesquida.internal.database.tables.Streams.STREAMS;
-
 /**
  * A server stream start handler.
  */
@@ -49,29 +43,34 @@ public final class MPrivStreamStartHandler extends MPrivAuthenticatedHandler
   private static final Logger LOG =
     LoggerFactory.getLogger(MPrivStreamStartHandler.class);
 
-  private final MDatabase database;
+  private final MStreamCatalog catalog;
   private final ObjectMapper mapper;
   private final MMessageService messageService;
+  private final MStreamLiveRegistry registry;
 
   /**
    * Construct a handler.
    *
    * @param inConfiguration  The configuration
-   * @param inDatabase       The database
    * @param inMessageService The message service
+   * @param inCatalog        The stream catalog
+   * @param inRegistry       The live stream registry
    */
 
   public MPrivStreamStartHandler(
     final MServerConfiguration inConfiguration,
     final MMessageService inMessageService,
-    final MDatabase inDatabase)
+    final MStreamCatalog inCatalog,
+    final MStreamLiveRegistry inRegistry)
   {
     super(inConfiguration);
 
-    this.database =
-      Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
     this.messageService =
       Objects.requireNonNull(inMessageService, "inMessageService");
+    this.registry =
+      Objects.requireNonNull(inRegistry, "inRegistry");
 
     this.mapper =
       MJson.createMapper(
@@ -94,51 +93,34 @@ public final class MPrivStreamStartHandler extends MPrivAuthenticatedHandler
       command = this.mapper.readValue(stream, MStreamStart.class);
     }
 
-    try (var connection = this.database.openConnection()) {
-      final var context =
-        DSL.using(connection, SQLDialect.DERBY);
-
-      final var stream =
-        context.fetchOne(STREAMS, STREAMS.STREAM_NAME.eq(command.name));
-
-      if (stream == null) {
-        response.setContentType("text/plain");
-        response.setStatus(404);
-        try (var outputStream = response.getOutputStream()) {
-          outputStream.println("Stream not found");
-          outputStream.flush();
-        }
-        connection.rollback();
-        return;
-      }
+    final var streamOpt =
+      this.catalog.snapshot().streamByName(command.name);
 
-      final var addresses =
-        context.fetch(
-          STREAM_ADDRESSES,
-          STREAM_ADDRESSES.STREAM_REFERENCE.eq(stream.getStreamId())
-        );
-
-      final var addressMap = new HashMap<String, URI>();
-      for (final var address : addresses) {
-        addressMap.put(
-          address.getStreamProtocol(),
-          URI.create(address.getStreamUrl())
-        );
+    if (streamOpt.isEmpty()) {
+      response.setContentType("text/plain");
+      response.setStatus(404);
+      try (var outputStream = response.getOutputStream()) {
+        outputStream.println("Stream not found");
+        outputStream.flush();
       }
+      return;
+    }
 
-      LOG.info("stream start: {}", stream.getStreamName());
+    final var stream = streamOpt.get();
+    LOG.info("stream start: {}", stream.name());
 
+    try {
       this.messageService.sendMessage(
         new MMessageStreamStarted(
-          stream.getStreamName(),
-          stream.getStreamTitle(),
-          addressMap)
+          stream.name(),
+          stream.title(),
+          stream.addressMap())
       );
-
-      connection.rollback();
+      this.registry.started(stream.name(), stream.addressMap());
     } catch (final SQLException e) {
       LOG.error("database error: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
+      return;
     }
 
     response.setContentType("text/plain");
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.private_api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
+import com.io7m.mesquida.internal.catalog.MStreamLiveState;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.eclipse.jetty.server.Request;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A server stream status handler.
+ *
+ * <p>Returns the set of streams that are currently live. The optional
+ * {@code name} parameter restricts the result to a single stream, and
+ * the handler returns a 404 if that stream is not live. The answer is
+ * served from the in-memory live registry and never touches the
+ * database.</p>
+ */
+
+public final class MPrivStreamStatusHandler extends MPrivAuthenticatedHandler
+{
+  private final MStreamLiveRegistry registry;
+  private final JsonFactory json;
+
+  /**
+   * Construct a handler.
+   *
+   * @param inConfiguration The configuration
+   * @param inRegistry      The live stream registry
+   */
+
+  public MPrivStreamStatusHandler(
+    final MServerConfiguration inConfiguration,
+    final MStreamLiveRegistry inRegistry)
+  {
+    super(inConfiguration);
+
+    this.registry =
+      Objects.requireNonNull(inRegistry, "inRegistry");
+    this.json =
+      new JsonFactory();
+  }
+
+  private static void writeState(
+    final JsonGenerator generator,
+    final MStreamLiveState state)
+    throws IOException
+  {
+    generator.writeStartObject();
+    generator.writeStringField("name", state.name());
+    generator.writeStringField("started", state.started().toString());
+    generator.writeStringField("heartbeat", state.heartbeat().toString());
+    generator.writeArrayFieldStart("addresses");
+    for (final var entry : state.addresses().entrySet()) {
+      generator.writeStartObject();
+      generator.writeStringField("protocol", entry.getKey());
+      generator.writeStringField("url", entry.getValue().toString());
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+  }
+
+  @Override
+  protected void handleAuthenticated(
+    final String target,
+    final Request baseRequest,
+    final HttpServletRequest request,
+    final HttpServletResponse response)
+    throws IOException
+  {
+    final var name = request.getParameter("name");
+
+    final List<MStreamLiveState> states;
+    if (name != null) {
+      final var stateOpt = this.registry.status(name);
+      if (stateOpt.isEmpty()) {
+        sendError(response, 404, "Stream not live");
+        return;
+      }
+      states = List.of(stateOpt.get());
+    } else {
+      states = this.registry.liveStreams();
+    }
+
+    response.setContentType("text/json");
+    response.setStatus(200);
+    try (var outputStream = response.getOutputStream()) {
+      try (var out = CloseShieldOutputStream.wrap(outputStream)) {
+        try (var generator = this.json.createGenerator(out)) {
+          generator.writeStartObject();
+          generator.writeArrayFieldStart("streams");
+          for (final var state : states) {
+            writeState(generator, state);
+          }
+          generator.writeEndArray();
+          generator.writeEndObject();
+        }
+      }
+      outputStream.println();
+    }
+  }
+}
@@ -19,14 +19,13 @@ package com.io7m.mesquida.internal.private_api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
 import com.io7m.mesquida.internal.MServerConfiguration;
-import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
 import com.io7m.mesquida.internal.mq.MMessageService;
 import com.io7m.mesquida.internal.mq.MMessageStreamEnded;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.server.Request;
-import org.jooq.SQLDialect;
-import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,8 +34,6 @@ import java.sql.SQLException;
 import java.util.Objects;
 import java.util.Set;
 
-import static com.io7m.mesquida.internal.database.tables.Streams.STREAMS;
-
 /**
  * A server stream stop handler.
  */
@@ -46,29 +43,34 @@ public final class MPrivStreamStopHandler extends MPrivAuthenticatedHandler
   private static final Logger LOG =
     LoggerFactory.getLogger(MPrivStreamStopHandler.class);
 
-  private final MDatabase database;
+  private final MStreamCatalog catalog;
   private final ObjectMapper mapper;
   private final MMessageService messageService;
+  private final MStreamLiveRegistry registry;
 
   /**
    * Construct a handler.
    *
    * @param inConfiguration  The configuration
-   * @param inDatabase       The database
    * @param inMessageService The message service
+   * @param inCatalog        The stream catalog
+   * @param inRegistry       The live stream registry
    */
 
   public MPrivStreamStopHandler(
     final MServerConfiguration inConfiguration,
     final MMessageService inMessageService,
-    final MDatabase inDatabase)
+    final MStreamCatalog inCatalog,
+    final MStreamLiveRegistry inRegistry)
   {
     super(inConfiguration);
 
-    this.database =
-      Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
     this.messageService =
       Objects.requireNonNull(inMessageService, "inMessageService");
+    this.registry =
+      Objects.requireNonNull(inRegistry, "inRegistry");
 
     this.mapper =
       MJson.createMapper(
@@ -91,36 +93,33 @@ public final class MPrivStreamStopHandler extends MPrivAuthenticatedHandler
       command = this.mapper.readValue(stream, MStreamStop.class);
     }
 
-    try (var connection = this.database.openConnection()) {
-      final var context =
-        DSL.using(connection, SQLDialect.DERBY);
-
-      final var stream =
-        context.fetchOne(STREAMS, STREAMS.STREAM_NAME.eq(command.name));
-
-      if (stream == null) {
-        response.setContentType("text/plain");
-        response.setStatus(404);
-        try (var outputStream = response.getOutputStream()) {
-          outputStream.println("Stream not found");
-          outputStream.flush();
-        }
-        connection.rollback();
-        return;
+    final var streamOpt =
+      this.catalog.snapshot().streamByName(command.name);
+
+    if (streamOpt.isEmpty()) {
+      response.setContentType("text/plain");
+      response.setStatus(404);
+      try (var outputStream = response.getOutputStream()) {
+        outputStream.println("Stream not found");
+        outputStream.flush();
       }
+      return;
+    }
 
-      LOG.info("stream stop: {}", stream.getStreamName());
+    final var stream = streamOpt.get();
+    LOG.info("stream stop: {}", stream.name());
 
+    try {
       this.messageService.sendMessage(
         new MMessageStreamEnded(
-          stream.getStreamName(),
-          stream.getStreamTitle())
+          stream.name(),
+          stream.title())
       );
-
-      connection.rollback();
+      this.registry.ended(stream.name());
     } catch (final SQLException e) {
       LOG.error("database error: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
+      return;
     }
 
     response.setContentType("text/plain");
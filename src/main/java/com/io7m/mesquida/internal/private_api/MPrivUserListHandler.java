@@ -18,7 +18,9 @@ package com.io7m.mesquida.internal.private_api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
+import com.io7m.mesquida.internal.MEntityTags;
 import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
 import com.io7m.mesquida.internal.database.MDatabase;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -38,6 +40,11 @@ import static com.io7m.mesquida.internal.database.tables.Users.USERS;
 
 /**
  * A server user list handler.
+ *
+ * <p>Every change to the users reloads the catalog, so responses carry an
+ * entity tag derived from the catalog version, and a request whose
+ * {@code If-None-Match} header matches it receives a {@code 304} without
+ * the database being queried.</p>
  */
 
 public final class MPrivUserListHandler extends MPrivAuthenticatedHandler
@@ -46,6 +53,7 @@ public final class MPrivUserListHandler extends MPrivAuthenticatedHandler
     LoggerFactory.getLogger(MPrivUserListHandler.class);
 
   private final MDatabase database;
+  private final MStreamCatalog catalog;
   private final ObjectMapper mapper;
 
   /**
@@ -53,16 +61,20 @@ public final class MPrivUserListHandler extends MPrivAuthenticatedHandler
    *
    * @param inConfiguration The configuration
    * @param inDatabase      The database
+   * @param inCatalog       The stream catalog
    */
 
   public MPrivUserListHandler(
     final MServerConfiguration inConfiguration,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog)
   {
     super(inConfiguration);
 
     this.database =
       Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
 
     this.mapper =
       MJson.createMapper(
@@ -80,6 +92,16 @@ public final class MPrivUserListHandler extends MPrivAuthenticatedHandler
     final HttpServletResponse response)
     throws IOException
   {
+    final var tag =
+      MEntityTags.strong(
+        this.catalog.epoch(),
+        Long.toString(this.catalog.snapshot().version()));
+
+    if (MEntityTags.isNotModified(request, tag)) {
+      MEntityTags.sendNotModified(response, tag);
+      return;
+    }
+
     final var output = new MUserList();
 
     try (var connection = this.database.openConnection()) {
@@ -104,6 +126,8 @@ public final class MPrivUserListHandler extends MPrivAuthenticatedHandler
     }
 
     response.setContentType("text/json");
+    response.setHeader("ETag", tag);
+    response.setHeader("Cache-Control", "no-cache");
     response.setStatus(200);
     try (var outputStream = response.getOutputStream()) {
       try (var out = CloseShieldOutputStream.wrap(outputStream)) {
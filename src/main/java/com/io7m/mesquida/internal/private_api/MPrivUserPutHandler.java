@@ -19,6 +19,7 @@ package com.io7m.mesquida.internal.private_api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MJson;
 import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
 import com.io7m.mesquida.internal.database.MDatabase;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -51,6 +52,7 @@ public final class MPrivUserPutHandler extends MPrivAuthenticatedHandler
     LoggerFactory.getLogger(MPrivUserPutHandler.class);
 
   private final MDatabase database;
+  private final MStreamCatalog catalog;
   private final ObjectMapper mapper;
 
   /**
@@ -58,16 +60,20 @@ public final class MPrivUserPutHandler extends MPrivAuthenticatedHandler
    *
    * @param inConfiguration The configuration
    * @param inDatabase      The database
+   * @param inCatalog       The stream catalog
    */
 
   public MPrivUserPutHandler(
     final MServerConfiguration inConfiguration,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog)
   {
     super(inConfiguration);
 
     this.database =
       Objects.requireNonNull(inDatabase, "inDatabase");
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "inCatalog");
 
     this.mapper =
       MJson.createMapper(
@@ -126,6 +132,7 @@ public final class MPrivUserPutHandler extends MPrivAuthenticatedHandler
       existing.store();
 
       connection.commit();
+      this.catalog.reload();
     } catch (final NoSuchAlgorithmException e) {
       LOG.error("no such algorithm: ", e);
       MPrivAuthenticatedHandler.sendError(response, 500, e.getMessage());
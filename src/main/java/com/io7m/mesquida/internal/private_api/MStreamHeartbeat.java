@@ -20,19 +20,16 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
-import java.util.LinkedList;
-import java.util.List;
-
 // CHECKSTYLE:OFF
 
 @JsonDeserialize
 @JsonSerialize
-final class MStreamList
+final class MStreamHeartbeat
 {
-  @JsonProperty(required = true, value = "streams")
-  public List<MStream> streams = new LinkedList<>();
+  @JsonProperty(required = true, value = "streamName")
+  public String name;
 
-  MStreamList()
+  MStreamHeartbeat()
   {
 
   }
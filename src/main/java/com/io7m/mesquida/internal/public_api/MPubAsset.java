@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A static asset, held in memory in each of the content codings in which
+ * it can be served.
+ *
+ * @param name              The asset name (such as {@code style.css})
+ * @param fingerprintedName The asset name with its content hash inserted
+ *                          before the extension
+ * @param contentType       The content type
+ * @param hash              The hex-encoded content hash
+ * @param encodings         The encoded content, keyed by content coding
+ *                          ({@code identity} is always present)
+ */
+
+public record MPubAsset(
+  String name,
+  String fingerprintedName,
+  String contentType,
+  String hash,
+  Map<String, ByteBuffer> encodings)
+{
+  /**
+   * A static asset, held in memory in each of the content codings in which
+   * it can be served.
+   *
+   * @param name              The asset name (such as {@code style.css})
+   * @param fingerprintedName The asset name with its content hash inserted
+   *                          before the extension
+   * @param contentType       The content type
+   * @param hash              The hex-encoded content hash
+   * @param encodings         The encoded content, keyed by content coding
+   *                          ({@code identity} is always present)
+   */
+
+  public MPubAsset
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(fingerprintedName, "fingerprintedName");
+    Objects.requireNonNull(contentType, "contentType");
+    Objects.requireNonNull(hash, "hash");
+    encodings = Map.copyOf(encodings);
+    if (!encodings.containsKey("identity")) {
+      throw new IllegalArgumentException("Missing identity encoding");
+    }
+  }
+
+  /**
+   * @param coding The content coding
+   *
+   * @return The content in the given coding, as a buffer that the caller
+   * may consume
+   */
+
+  public Optional<ByteBuffer> content(
+    final String coding)
+  {
+    return Optional.ofNullable(this.encodings.get(coding))
+      .map(ByteBuffer::asReadOnlyBuffer);
+  }
+
+  /**
+   * @param coding The content coding
+   *
+   * @return The strong entity tag of the asset in the given coding
+   */
+
+  public String entityTag(
+    final String coding)
+  {
+    if ("identity".equals(coding)) {
+      return "\"" + this.hash + "\"";
+    }
+    return "\"" + this.hash + "-" + coding + "\"";
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import com.io7m.mesquida.internal.MResources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The static assets served by the public server. Assets are read and
+ * compressed once when the registry is loaded, and each is available both
+ * under its plain name and under a fingerprinted name that contains a
+ * hash of its content. Fingerprinted names change whenever the content
+ * changes, and so can be cached forever.
+ */
+
+public final class MPubAssets
+{
+  /**
+   * The names of the static assets.
+   */
+
+  public static final List<String> ASSET_NAMES =
+    List.of("style.css", "dashboard.js");
+
+  private static final int HASH_CHARACTERS = 16;
+
+  private final Map<String, MPubAsset> byName;
+  private final Map<String, MPubAsset> byPath;
+
+  private MPubAssets(
+    final Map<String, MPubAsset> inByName)
+  {
+    this.byName = Map.copyOf(inByName);
+
+    final var paths = new HashMap<String, MPubAsset>();
+    for (final var asset : this.byName.values()) {
+      paths.put(asset.name(), asset);
+      paths.put(asset.fingerprintedName(), asset);
+    }
+    this.byPath = Map.copyOf(paths);
+  }
+
+  /**
+   * Load the static assets.
+   *
+   * @return An asset registry
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static MPubAssets load()
+    throws IOException
+  {
+    final var assets = new HashMap<String, MPubAsset>();
+    for (final var name : ASSET_NAMES) {
+      assets.put(name, loadAsset(name));
+    }
+    return new MPubAssets(assets);
+  }
+
+  private static MPubAsset loadAsset(
+    final String name)
+    throws IOException
+  {
+    final var data = MResources.read(name);
+    final var hash = hashOf(data);
+
+    final var encodings = new HashMap<String, ByteBuffer>();
+    encodings.put("identity", frozen(data));
+
+    /*
+     * Compressed variants are kept only if they are actually smaller.
+     */
+
+    final var gzip = compress(data, GZIPOutputStream::new);
+    if (gzip.length < data.length) {
+      encodings.put("gzip", frozen(gzip));
+    }
+    final var deflate = compress(data, DeflaterOutputStream::new);
+    if (deflate.length < data.length) {
+      encodings.put("deflate", frozen(deflate));
+    }
+
+    final var dot = name.lastIndexOf('.');
+    final var fingerprinted =
+      name.substring(0, dot) + "." + hash + name.substring(dot);
+
+    return new MPubAsset(
+      name,
+      fingerprinted,
+      contentTypeOf(name),
+      hash,
+      encodings
+    );
+  }
+
+  private interface CompressorType
+  {
+    OutputStream open(OutputStream output)
+      throws IOException;
+  }
+
+  private static byte[] compress(
+    final byte[] data,
+    final CompressorType compressor)
+    throws IOException
+  {
+    final var bytes = new ByteArrayOutputStream(data.length);
+    try (var output = compressor.open(bytes)) {
+      output.write(data);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static ByteBuffer frozen(
+    final byte[] data)
+  {
+    final var buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data);
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static String hashOf(
+    final byte[] data)
+  {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of()
+        .formatHex(digest.digest(data))
+        .substring(0, HASH_CHARACTERS);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String contentTypeOf(
+    final String name)
+  {
+    if (name.endsWith(".css")) {
+      return "text/css; charset=utf-8";
+    }
+    if (name.endsWith(".js")) {
+      return "text/javascript; charset=utf-8";
+    }
+    return "application/octet-stream";
+  }
+
+  /**
+   * @param path The path of the asset, relative to the static directory
+   *
+   * @return The asset at the given path, if any
+   */
+
+  public Optional<MPubAsset> find(
+    final String path)
+  {
+    return Optional.ofNullable(this.byPath.get(path));
+  }
+
+  /**
+   * @param name The asset name
+   *
+   * @return The fingerprinted URI of the named asset
+   */
+
+  public String uri(
+    final String name)
+  {
+    final var asset =
+      Objects.requireNonNull(this.byName.get(name), "asset");
+    return "/static/" + asset.fingerprintedName();
+  }
+}
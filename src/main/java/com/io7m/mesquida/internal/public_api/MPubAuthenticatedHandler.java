@@ -21,7 +21,6 @@ import com.io7m.mesquida.internal.database.MDatabase;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
@@ -47,9 +46,6 @@ public abstract class MPubAuthenticatedHandler extends HttpServlet
 {
   private final MPubPages pages;
   private final MDatabase database;
-  private URI clientURI;
-  private HttpServletResponse response;
-  private String userName;
 
   /**
    * Construct a handler.
@@ -95,19 +91,6 @@ public abstract class MPubAuthenticatedHandler extends HttpServlet
       .toString();
   }
 
-  private static URI makeClientURI(
-    final HttpServletRequest servletRequest)
-  {
-    return URI.create(
-      new StringBuilder(64)
-        .append("client:")
-        .append(servletRequest.getRemoteAddr())
-        .append(":")
-        .append(servletRequest.getRemotePort())
-        .toString()
-    );
-  }
-
   private static URI makeClientURI(
     final HttpServletRequest servletRequest,
     final String userName)
@@ -142,21 +125,10 @@ public abstract class MPubAuthenticatedHandler extends HttpServlet
     return this.database;
   }
 
-  /**
-   * @return The authenticated user
-   */
-
-  public final String userName()
-  {
-    return this.userName;
-  }
-
   protected abstract Logger logger();
 
   protected abstract void serviceAuthenticated(
-    HttpServletRequest request,
-    HttpServletResponse servletResponse,
-    HttpSession session)
+    MPubRequestContext context)
     throws Exception;
 
   @Override
@@ -166,17 +138,24 @@ public abstract class MPubAuthenticatedHandler extends HttpServlet
     throws IOException
   {
     MDC.put("client", clientOf(request));
-    this.clientURI = makeClientURI(request);
-    this.response = servletResponse;
 
     try {
       final var session = request.getSession(false);
       if (session != null) {
-        this.userName = (String) session.getAttribute("userName");
-        MDC.put("client", clientOf(request, this.userName));
-        this.clientURI = makeClientURI(request, this.userName);
-        this.serviceAuthenticated(request, servletResponse, session);
-        return;
+        final var userName = (String) session.getAttribute("userName");
+        if (userName != null) {
+          MDC.put("client", clientOf(request, userName));
+          this.serviceAuthenticated(
+            new MPubRequestContext(
+              request,
+              servletResponse,
+              session,
+              makeClientURI(request, userName),
+              userName
+            )
+          );
+          return;
+        }
       }
 
       final var tryUserName =
@@ -189,13 +168,13 @@ public abstract class MPubAuthenticatedHandler extends HttpServlet
           this.logger().info("login succeeded for '{}'", tryUserName);
           final var newSession = request.getSession();
           newSession.setAttribute("userName", tryUserName);
-          this.response.sendRedirect(request.getRequestURI());
+          servletResponse.sendRedirect(request.getRequestURI());
           return;
         }
 
         this.logger().info("login failed for '{}'", tryUserName);
         this.pages.sendPage(
-          this.response,
+          servletResponse,
           401,
           this.pages.loginPage("Mesquida")
         );
@@ -203,7 +182,7 @@ public abstract class MPubAuthenticatedHandler extends HttpServlet
       }
 
       this.pages.sendPage(
-        this.response,
+        servletResponse,
         200,
         this.pages.loginPage("Mesquida")
       );
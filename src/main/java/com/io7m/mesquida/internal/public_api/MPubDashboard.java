@@ -0,0 +1,367 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.io7m.mesquida.internal.MManagementBeans;
+import com.io7m.mesquida.internal.catalog.MCatalogSnapshot;
+import com.io7m.mesquida.internal.catalog.MCatalogStream;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
+import com.io7m.mesquida.internal.catalog.MStreamLiveState;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The live dashboard. Connected sockets are grouped by user; when a stream
+ * changes in the catalog, or starts or ends, the new state of that one
+ * stream is rendered once and sent to the sockets of its owner.
+ *
+ * Updates are always rendered from the current catalog snapshot and live
+ * state while holding the dashboard lock, so a socket never receives an
+ * older state of a stream after a newer one.
+ */
+
+public final class MPubDashboard
+  implements MPubDashboardStatisticsType, AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPubDashboard.class);
+
+  private final MStreamCatalog catalog;
+  private final MStreamLiveRegistry registry;
+  private final JsonFactory json;
+  private final Object lock;
+  private final Map<String, Set<MPubDashboardSocket>> sockets;
+  private final AutoCloseable registration;
+  private final AutoCloseable catalogObserver;
+  private final AutoCloseable registryObserver;
+  private long updatesRendered;
+  private long messagesSent;
+  private long socketsDropped;
+
+  private MPubDashboard(
+    final MStreamCatalog inCatalog,
+    final MStreamLiveRegistry inRegistry)
+  {
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "catalog");
+    this.registry =
+      Objects.requireNonNull(inRegistry, "registry");
+    this.json =
+      new JsonFactory();
+    this.lock =
+      new Object();
+    this.sockets =
+      new HashMap<>();
+    this.registration =
+      MManagementBeans.register("PublicDashboard", this);
+    this.catalogObserver =
+      inCatalog.observe(this::onCatalogChanged);
+    this.registryObserver =
+      inRegistry.observe((name, state) -> this.onLiveChanged(name));
+  }
+
+  /**
+   * Create a dashboard.
+   *
+   * @param catalog  The stream catalog
+   * @param registry The live stream registry
+   *
+   * @return A dashboard
+   */
+
+  public static MPubDashboard create(
+    final MStreamCatalog catalog,
+    final MStreamLiveRegistry registry)
+  {
+    return new MPubDashboard(catalog, registry);
+  }
+
+  void attach(
+    final MPubDashboardSocket socket)
+  {
+    synchronized (this.lock) {
+      this.sockets.computeIfAbsent(socket.userName(), k -> new HashSet<>())
+        .add(socket);
+
+      final var streams =
+        this.catalog.snapshot().streamsOwnedBy(socket.userName());
+      this.sendTo(socket, this.renderStreams(streams));
+    }
+  }
+
+  void detach(
+    final MPubDashboardSocket socket)
+  {
+    synchronized (this.lock) {
+      final var owned = this.sockets.get(socket.userName());
+      if (owned != null) {
+        owned.remove(socket);
+        if (owned.isEmpty()) {
+          this.sockets.remove(socket.userName());
+        }
+      }
+    }
+  }
+
+  private void onLiveChanged(
+    final String name)
+  {
+    synchronized (this.lock) {
+      final var stream = this.catalog.snapshot().streamByName(name);
+      if (stream.isPresent()) {
+        this.sendUpdated(stream.get());
+      }
+    }
+  }
+
+  private void onCatalogChanged(
+    final MCatalogSnapshot previous,
+    final MCatalogSnapshot current)
+  {
+    synchronized (this.lock) {
+      if (this.sockets.isEmpty()) {
+        return;
+      }
+
+      final var removed = new HashMap<Integer, MCatalogStream>();
+      for (final var stream : previous.streams()) {
+        removed.put(Integer.valueOf(stream.id()), stream);
+      }
+
+      for (final var stream : current.streams()) {
+        final var before = removed.remove(Integer.valueOf(stream.id()));
+        if (stream.equals(before)) {
+          continue;
+        }
+        if (before != null && !isSameOwnerAndName(before, stream)) {
+          this.sendRemoved(before);
+        }
+        this.sendUpdated(stream);
+      }
+
+      for (final var stream : removed.values()) {
+        this.sendRemoved(stream);
+      }
+    }
+  }
+
+  private static boolean isSameOwnerAndName(
+    final MCatalogStream before,
+    final MCatalogStream after)
+  {
+    return before.ownerName().equals(after.ownerName())
+           && before.name().equals(after.name());
+  }
+
+  private void sendUpdated(
+    final MCatalogStream stream)
+  {
+    final var owned = this.sockets.get(stream.ownerName());
+    if (owned == null) {
+      return;
+    }
+
+    final var text = this.renderUpdated(stream);
+    for (final var socket : List.copyOf(owned)) {
+      this.sendTo(socket, text);
+    }
+  }
+
+  private void sendRemoved(
+    final MCatalogStream stream)
+  {
+    final var owned = this.sockets.get(stream.ownerName());
+    if (owned == null) {
+      return;
+    }
+
+    final var text = this.renderRemoved(stream);
+    for (final var socket : List.copyOf(owned)) {
+      this.sendTo(socket, text);
+    }
+  }
+
+  private void sendTo(
+    final MPubDashboardSocket socket,
+    final String text)
+  {
+    if (socket.send(text)) {
+      ++this.messagesSent;
+    } else {
+      ++this.socketsDropped;
+    }
+  }
+
+  private String renderStreams(
+    final List<MCatalogStream> streams)
+  {
+    return this.render(generator -> {
+      generator.writeStringField("type", "streams");
+      generator.writeArrayFieldStart("streams");
+      for (final var stream : streams) {
+        this.writeStream(generator, stream);
+      }
+      generator.writeEndArray();
+    });
+  }
+
+  private String renderUpdated(
+    final MCatalogStream stream)
+  {
+    return this.render(generator -> {
+      generator.writeStringField("type", "stream");
+      generator.writeFieldName("stream");
+      this.writeStream(generator, stream);
+    });
+  }
+
+  private String renderRemoved(
+    final MCatalogStream stream)
+  {
+    return this.render(generator -> {
+      generator.writeStringField("type", "removed");
+      generator.writeStringField("name", stream.name());
+    });
+  }
+
+  private interface FieldsWriterType
+  {
+    void write(JsonGenerator generator)
+      throws IOException;
+  }
+
+  private String render(
+    final FieldsWriterType fields)
+  {
+    ++this.updatesRendered;
+
+    final var writer = new StringWriter(256);
+    try (var generator = this.json.createGenerator(writer)) {
+      generator.writeStartObject();
+      fields.write(generator);
+      generator.writeEndObject();
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
+
+  private void writeStream(
+    final JsonGenerator generator,
+    final MCatalogStream stream)
+    throws IOException
+  {
+    final Optional<MStreamLiveState> live =
+      this.registry.status(stream.name());
+
+    generator.writeStartObject();
+    generator.writeStringField("name", stream.name());
+    generator.writeStringField("title", stream.title());
+    generator.writeBooleanField("live", live.isPresent());
+    if (live.isPresent()) {
+      final var state = live.get();
+      generator.writeStringField("started", state.started().toString());
+      generator.writeStringField("heartbeat", state.heartbeat().toString());
+    }
+    generator.writeArrayFieldStart("addresses");
+    for (final var address : stream.addresses()) {
+      generator.writeString(address.url().toString());
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+  }
+
+  @Override
+  public int getSockets()
+  {
+    synchronized (this.lock) {
+      return this.sockets.values()
+        .stream()
+        .mapToInt(Set::size)
+        .sum();
+    }
+  }
+
+  @Override
+  public long getUpdatesRendered()
+  {
+    synchronized (this.lock) {
+      return this.updatesRendered;
+    }
+  }
+
+  @Override
+  public long getMessagesSent()
+  {
+    synchronized (this.lock) {
+      return this.messagesSent;
+    }
+  }
+
+  @Override
+  public long getSocketsDropped()
+  {
+    synchronized (this.lock) {
+      return this.socketsDropped;
+    }
+  }
+
+  /**
+   * Close the dashboard, disconnecting all sockets.
+   */
+
+  @Override
+  public void close()
+  {
+    final List<MPubDashboardSocket> all;
+    synchronized (this.lock) {
+      all = this.sockets.values()
+        .stream()
+        .flatMap(Set::stream)
+        .toList();
+      this.sockets.clear();
+    }
+
+    for (final var socket : all) {
+      socket.close(StatusCode.SHUTDOWN, "Server shutting down");
+    }
+
+    for (final var handle : List.of(
+      this.catalogObserver, this.registryObserver, this.registration)) {
+      try {
+        handle.close();
+      } catch (final Exception e) {
+        LOG.error("error closing dashboard: ", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeResponse;
+import org.eclipse.jetty.websocket.server.JettyWebSocketServlet;
+import org.eclipse.jetty.websocket.server.JettyWebSocketServletFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The live dashboard socket endpoint. Upgrades are only accepted for
+ * requests that belong to a logged-in session, and that come from pages
+ * served by this server. Browsers attach the session cookie to socket
+ * upgrades made by any site, so the {@code Origin} header is the only thing
+ * that distinguishes the dashboard from a third-party page opening a socket
+ * with the user's session.
+ */
+
+public final class MPubDashboardServlet extends JettyWebSocketServlet
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPubDashboardServlet.class);
+
+  /**
+   * Dashboards send a keepalive message every minute; a socket that stays
+   * silent for much longer than that has gone away.
+   */
+
+  private static final Duration IDLE_TIMEOUT =
+    Duration.ofMinutes(3L);
+
+  private static final long MAXIMUM_TEXT_MESSAGE = 1024L;
+
+  private final MPubDashboard dashboard;
+
+  /**
+   * Construct a servlet.
+   *
+   * @param inDashboard The dashboard
+   */
+
+  public MPubDashboardServlet(
+    final MPubDashboard inDashboard)
+  {
+    this.dashboard =
+      Objects.requireNonNull(inDashboard, "dashboard");
+  }
+
+  @Override
+  protected void configure(
+    final JettyWebSocketServletFactory factory)
+  {
+    factory.setIdleTimeout(IDLE_TIMEOUT);
+    factory.setMaxTextMessageSize(MAXIMUM_TEXT_MESSAGE);
+    factory.setCreator(this::create);
+  }
+
+  private Object create(
+    final JettyServerUpgradeRequest request,
+    final JettyServerUpgradeResponse response)
+  {
+    final var servletRequest =
+      request.getHttpServletRequest();
+
+    if (!isSameOrigin(servletRequest)) {
+      LOG.debug(
+        "rejected dashboard connection from origin {}",
+        servletRequest.getHeader("Origin"));
+      sendForbidden(response, "Cross-origin request");
+      return null;
+    }
+
+    final var session =
+      servletRequest.getSession(false);
+
+    if (session != null) {
+      final var userName = (String) session.getAttribute("userName");
+      if (userName != null) {
+        return new MPubDashboardSocket(this.dashboard, userName);
+      }
+    }
+
+    LOG.debug("rejected dashboard connection without a session");
+    sendForbidden(response, "Not logged in");
+    return null;
+  }
+
+  private static void sendForbidden(
+    final JettyServerUpgradeResponse response,
+    final String message)
+  {
+    try {
+      response.sendForbidden(message);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Check that the page that opened the socket was served by this server.
+   * The host and port of the {@code Origin} are compared with the
+   * {@code Host} header rather than with the connection's own scheme and
+   * port, because a reverse proxy that terminates TLS forwards the request
+   * over plain HTTP, often on another port, but passes the {@code Host}
+   * header through unchanged.
+   *
+   * @param request The upgrade request
+   *
+   * @return {@code true} if the request has an {@code Origin} whose host and
+   * port match the {@code Host} the client connected to
+   */
+
+  private static boolean isSameOrigin(
+    final HttpServletRequest request)
+  {
+    final var originText = request.getHeader("Origin");
+    final var hostText = request.getHeader("Host");
+    if (originText == null || hostText == null) {
+      return false;
+    }
+
+    final URI origin;
+    final URI host;
+    try {
+      origin = new URI(originText);
+      if (origin.getScheme() == null || origin.getHost() == null) {
+        return false;
+      }
+      host = new URI(origin.getScheme(), hostText, null, null, null)
+        .parseServerAuthority();
+    } catch (final URISyntaxException e) {
+      return false;
+    }
+
+    return origin.getHost().equalsIgnoreCase(host.getHost())
+           && portOf(origin) == portOf(host);
+  }
+
+  /**
+   * @return The port of the URI, or the default port of its scheme; the
+   * browser connected to the {@code Host} using the scheme of the
+   * {@code Origin}
+   */
+
+  private static int portOf(
+    final URI uri)
+  {
+    if (uri.getPort() != -1) {
+      return uri.getPort();
+    }
+    return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A dashboard socket for a single logged-in user. Messages are sent
+ * asynchronously; a client that lets too many messages pile up is
+ * disconnected rather than being allowed to consume server memory.
+ */
+
+public final class MPubDashboardSocket implements WebSocketListener
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MPubDashboardSocket.class);
+
+  private static final int MAXIMUM_PENDING = 32;
+
+  private final MPubDashboard dashboard;
+  private final String userName;
+  private final AtomicInteger pending;
+  private volatile Session session;
+
+  /**
+   * Construct a socket.
+   *
+   * @param inDashboard The dashboard
+   * @param inUserName  The name of the logged-in user
+   */
+
+  public MPubDashboardSocket(
+    final MPubDashboard inDashboard,
+    final String inUserName)
+  {
+    this.dashboard =
+      Objects.requireNonNull(inDashboard, "dashboard");
+    this.userName =
+      Objects.requireNonNull(inUserName, "userName");
+    this.pending =
+      new AtomicInteger(0);
+  }
+
+  /**
+   * @return The name of the logged-in user
+   */
+
+  public String userName()
+  {
+    return this.userName;
+  }
+
+  /**
+   * Send a message to the client.
+   *
+   * @param text The message
+   *
+   * @return {@code false} if the client was disconnected for not keeping up
+   */
+
+  boolean send(
+    final String text)
+  {
+    final var current = this.session;
+    if (current == null || !current.isOpen()) {
+      return true;
+    }
+
+    if (this.pending.incrementAndGet() > MAXIMUM_PENDING) {
+      this.pending.decrementAndGet();
+      LOG.debug("closing slow dashboard socket for {}", this.userName);
+      current.close(StatusCode.TRY_AGAIN_LATER, "Not keeping up");
+      return false;
+    }
+
+    current.getRemote().sendString(text, new WriteCallback()
+    {
+      @Override
+      public void writeFailed(
+        final Throwable x)
+      {
+        MPubDashboardSocket.this.pending.decrementAndGet();
+      }
+
+      @Override
+      public void writeSuccess()
+      {
+        MPubDashboardSocket.this.pending.decrementAndGet();
+      }
+    });
+    return true;
+  }
+
+  void close(
+    final int code,
+    final String reason)
+  {
+    final var current = this.session;
+    if (current != null) {
+      current.close(code, reason);
+    }
+  }
+
+  @Override
+  public void onWebSocketConnect(
+    final Session newSession)
+  {
+    this.session = newSession;
+    this.dashboard.attach(this);
+  }
+
+  @Override
+  public void onWebSocketClose(
+    final int statusCode,
+    final String reason)
+  {
+    this.session = null;
+    this.dashboard.detach(this);
+  }
+
+  @Override
+  public void onWebSocketError(
+    final Throwable cause)
+  {
+    LOG.debug("dashboard socket error: ", cause);
+  }
+
+  @Override
+  public void onWebSocketText(
+    final String message)
+  {
+    /*
+     * Clients send text only to keep the connection from idling out.
+     */
+  }
+}
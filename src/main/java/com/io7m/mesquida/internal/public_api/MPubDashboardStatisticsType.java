@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics for the live dashboard.
+ */
+
+@MXBean
+public interface MPubDashboardStatisticsType
+{
+  /**
+   * @return The number of connected dashboard sockets
+   */
+
+  int getSockets();
+
+  /**
+   * @return The number of stream updates rendered for dashboards
+   */
+
+  long getUpdatesRendered();
+
+  /**
+   * @return The number of messages sent to dashboard sockets
+   */
+
+  long getMessagesSent();
+
+  /**
+   * @return The number of sockets closed for failing to keep up
+   */
+
+  long getSocketsDropped();
+}
@@ -18,26 +18,41 @@ package com.io7m.mesquida.internal.public_api;
 
 import com.io7m.jxtrand.vanilla.JXTAbstractStrings;
 import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.text.StringEscapeUtils;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.Objects;
 
 /**
  * Functions to generate server pages.
+ *
+ * <p>The page templates are compiled once, when the page generator is
+ * created. Pages are returned as fragments that write directly to the
+ * response, so a page is never held in memory as a whole.</p>
  */
 
 public final class MPubPages extends JXTAbstractStrings
 {
+  private final MPubAssets assets;
+  private final MPubTemplate loginPage;
+  private final MPubTemplate mainPage;
+  private final MPubTemplate streamForm;
+  private final MPubFragmentType styleSheet;
+
   /**
    * A page generator.
    *
-   * @param locale The server locale
+   * @param locale   The server locale
+   * @param inAssets The static assets
    *
    * @throws IOException On errors
    */
 
   public MPubPages(
-    final Locale locale)
+    final Locale locale,
+    final MPubAssets inAssets)
     throws IOException
   {
     super(
@@ -46,6 +61,50 @@ public final class MPubPages extends JXTAbstractStrings
       "/com/io7m/mesquida/internal",
       "Pages"
     );
+
+    this.assets =
+      Objects.requireNonNull(inAssets, "inAssets");
+    this.loginPage =
+      this.template("loginPage", 2);
+    this.mainPage =
+      this.template("mainPage", 3);
+    this.streamForm =
+      this.template("streamForm", 2);
+    this.styleSheet =
+      escaped(this.assets.uri("style.css"));
+  }
+
+  private MPubTemplate template(
+    final String name,
+    final int arguments)
+  {
+    return MPubTemplate.compile(
+      name,
+      this.resources().getString(name),
+      arguments
+    );
+  }
+
+  /**
+   * @return The static assets
+   */
+
+  public MPubAssets assets()
+  {
+    return this.assets;
+  }
+
+  /**
+   * @param text The text
+   *
+   * @return A fragment that writes the given text, escaped for XML
+   */
+
+  public static MPubFragmentType escaped(
+    final String text)
+  {
+    Objects.requireNonNull(text, "text");
+    return writer -> StringEscapeUtils.ESCAPE_XML11.translate(text, writer);
   }
 
   /**
@@ -56,13 +115,13 @@ public final class MPubPages extends JXTAbstractStrings
    * @return A page
    */
 
-  public String loginPage(
+  public MPubFragmentType loginPage(
     final String title)
   {
-    return this.format(
-      "loginPage",
-      title
-    );
+    final var titleText = escaped(title);
+    return writer -> {
+      this.loginPage.render(writer, titleText, this.styleSheet);
+    };
   }
 
   /**
@@ -74,15 +133,16 @@ public final class MPubPages extends JXTAbstractStrings
    * @return A page
    */
 
-  public String mainPage(
+  public MPubFragmentType mainPage(
     final String title,
-    final String content)
+    final MPubFragmentType content)
   {
-    return this.format(
-      "mainPage",
-      title,
-      content
-    );
+    Objects.requireNonNull(content, "content");
+
+    final var titleText = escaped(title);
+    return writer -> {
+      this.mainPage.render(writer, titleText, content, this.styleSheet);
+    };
   }
 
   /**
@@ -91,26 +151,27 @@ public final class MPubPages extends JXTAbstractStrings
    * @param title The stream title
    * @param name  The stream name
    *
-   * @return A page
+   * @return A page fragment
    */
 
-  public String streamForm(
+  public MPubFragmentType streamForm(
     final String title,
     final String name)
   {
-    return this.format(
-      "streamForm",
-      name,
-      title
-    );
+    final var nameText = escaped(name);
+    final var titleText = escaped(title);
+    return writer -> {
+      this.streamForm.render(writer, nameText, titleText);
+    };
   }
 
   /**
-   * Send a page to a servlet response.
+   * Send a page to a servlet response. The page is encoded as UTF-8 and
+   * written directly to the response as it is generated.
    *
    * @param response   The servlet response
    * @param statusCode The status code
-   * @param text       The page text
+   * @param page       The page
    *
    * @throws IOException On I/O errors
    */
@@ -118,15 +179,19 @@ public final class MPubPages extends JXTAbstractStrings
   public void sendPage(
     final HttpServletResponse response,
     final int statusCode,
-    final String text)
+    final MPubFragmentType page)
     throws IOException
   {
     response.setContentType("application/xhtml+xml");
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
     response.setStatus(statusCode);
 
-    try (var outputStream = response.getOutputStream()) {
-      outputStream.println(text);
-      outputStream.flush();
+    try (var writer = response.getWriter()) {
+      page.writeTo(writer);
+      writer.println();
+      if (writer.checkError()) {
+        throw new IOException("Failed to write page");
+      }
     }
   }
 }
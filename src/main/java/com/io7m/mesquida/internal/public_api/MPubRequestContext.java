@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.internal.public_api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * The state of a single authenticated request. Servlet instances are shared
+ * between request threads, so any per-request state must live here rather
+ * than in servlet fields.
+ *
+ * @param request   The servlet request
+ * @param response  The servlet response
+ * @param session   The session
+ * @param clientURI The URI identifying the client
+ * @param userName  The authenticated user
+ */
+
+public record MPubRequestContext(
+  HttpServletRequest request,
+  HttpServletResponse response,
+  HttpSession session,
+  URI clientURI,
+  String userName)
+{
+  /**
+   * The state of a single authenticated request.
+   *
+   * @param request   The servlet request
+   * @param response  The servlet response
+   * @param session   The session
+   * @param clientURI The URI identifying the client
+   * @param userName  The authenticated user
+   */
+
+  public MPubRequestContext
+  {
+    Objects.requireNonNull(request, "request");
+    Objects.requireNonNull(response, "response");
+    Objects.requireNonNull(session, "session");
+    Objects.requireNonNull(clientURI, "clientURI");
+    Objects.requireNonNull(userName, "userName");
+  }
+}
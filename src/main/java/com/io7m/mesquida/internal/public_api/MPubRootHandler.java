@@ -16,22 +16,27 @@
 
 package com.io7m.mesquida.internal.public_api;
 
+import com.io7m.mesquida.internal.MEntityTags;
+import com.io7m.mesquida.internal.catalog.MCatalogStream;
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
 import com.io7m.mesquida.internal.database.MDatabase;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
-import org.apache.commons.text.StringEscapeUtils;
-import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.io7m.mesquida.internal.database.Tables.STREAMS;
-import static com.io7m.mesquida.internal.database.Tables.STREAM_ADDRESSES;
-import static com.io7m.mesquida.internal.database.Tables.USERS;
-import static org.jooq.SQLDialect.DERBY;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
 
 /**
  * A server root handler.
+ *
+ * <p>Pages carry an entity tag derived from the catalog version, the live
+ * registry version, and the user, and a request whose
+ * {@code If-None-Match} header matches it receives a {@code 304} without
+ * the page being generated.</p>
  */
 
 public final class MPubRootHandler extends MPubAuthenticatedHandler
@@ -39,18 +44,30 @@ public final class MPubRootHandler extends MPubAuthenticatedHandler
   private static final Logger LOG =
     LoggerFactory.getLogger(MPubRootHandler.class);
 
+  private final MStreamCatalog catalog;
+  private final MStreamLiveRegistry liveRegistry;
+
   /**
    * Construct a handler.
    *
    * @param inPages    The pages
    * @param inDatabase The database
+   * @param inCatalog  The stream catalog
+   * @param inRegistry The live stream registry
    */
 
   public MPubRootHandler(
     final MPubPages inPages,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog,
+    final MStreamLiveRegistry inRegistry)
   {
     super(inPages, inDatabase);
+
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "catalog");
+    this.liveRegistry =
+      Objects.requireNonNull(inRegistry, "registry");
   }
 
   @Override
@@ -61,77 +78,104 @@ public final class MPubRootHandler extends MPubAuthenticatedHandler
 
   @Override
   protected void serviceAuthenticated(
-    final HttpServletRequest request,
-    final HttpServletResponse servletResponse,
-    final HttpSession session)
+    final MPubRequestContext requestContext)
     throws Exception
   {
-    try (var connection = this.database().openConnection()) {
-      try {
-        final var context =
-          DSL.using(connection, DERBY);
-
-        final var streams =
-          context.select()
-            .from(STREAMS)
-            .join(USERS)
-            .on(STREAMS.STREAM_OWNER.eq(USERS.USER_ID))
-            .where(USERS.USER_NAME.eq(this.userName()))
-            .fetch();
-
-        final var content = new StringBuilder(256);
-        content.append("<h3>Streams</h3>");
-        content.append('\n');
-
-        for (final var record : streams) {
-          final var stream = record.into(STREAMS);
-          content.append("<div class=\"stream\">");
-
-          final var addresses =
-            context.select()
-              .from(STREAM_ADDRESSES)
-              .where(STREAM_ADDRESSES.STREAM_REFERENCE.eq(stream.getStreamId()))
-              .fetch();
-
-          content.append(
-            this.pages()
-              .streamForm(
-                StringEscapeUtils.escapeXml11(stream.getStreamTitle()),
-                StringEscapeUtils.escapeXml11(stream.getStreamName()))
-          );
-
-          if (addresses.isNotEmpty()) {
-            content.append("<div class=\"streamLinks\">");
-            content.append("Links");
-            content.append("<ul class=\"streamLinkList\">");
-            for (final var address : addresses) {
-              final var addressT = address.into(STREAM_ADDRESSES);
-              content.append("<li>");
-              content.append("<a href=\"");
-              content.append(addressT.getStreamUrl());
-              content.append("\">");
-              content.append(addressT.getStreamUrl());
-              content.append("</a>");
-              content.append("</li>");
-            }
-            content.append("</ul>");
-            content.append("</div>");
-          }
-
-          content.append("</div>");
-          content.append('\n');
+    final var userName =
+      requestContext.userName();
+    final var snapshot =
+      this.catalog.snapshot();
+
+    final var tag =
+      MEntityTags.strong(
+        this.catalog.epoch(),
+        Long.toString(snapshot.version()),
+        Long.toString(this.liveRegistry.version()),
+        Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(userName.getBytes(StandardCharsets.UTF_8))
+      );
+
+    final var request = requestContext.request();
+    final var response = requestContext.response();
+    response.setHeader("Cache-Control", "private, no-cache");
+
+    if (MEntityTags.isNotModified(request, tag)) {
+      MEntityTags.sendNotModified(response, tag);
+      return;
+    }
+
+    final var streams =
+      snapshot.streamsOwnedBy(userName);
+    final var pages =
+      this.pages();
+
+    response.setHeader("ETag", tag);
+    pages.sendPage(
+      response,
+      200,
+      pages.mainPage("Mesquida", writer -> {
+        writer.write("<h3>Streams</h3>");
+        writer.write('\n');
+
+        for (final var stream : streams) {
+          this.writeStream(writer, stream);
         }
 
-        this.pages()
-          .sendPage(
-            servletResponse,
-            200,
-            this.pages().mainPage("Mesquida", content.toString())
-          );
+        writer.write("<script type=\"text/javascript\" src=\"");
+        writer.write(pages.assets().uri("dashboard.js"));
+        writer.write("\"></script>");
+        writer.write('\n');
+      })
+    );
+  }
 
-      } finally {
-        connection.rollback();
+  private void writeStream(
+    final Writer writer,
+    final MCatalogStream stream)
+    throws IOException
+  {
+    final var pages = this.pages();
+
+    writer.write("<div class=\"stream\" data-stream=\"");
+    MPubPages.escaped(stream.name()).writeTo(writer);
+    writer.write("\">");
+
+    pages.streamForm(stream.title(), stream.name()).writeTo(writer);
+
+    final var live = this.liveRegistry.status(stream.name());
+    if (live.isPresent()) {
+      final var state = live.get();
+      writer.write("<div class=\"streamStatus streamLive\">");
+      writer.write("Live since ");
+      writer.write(state.started().toString());
+      writer.write(" (last heartbeat ");
+      writer.write(state.heartbeat().toString());
+      writer.write(")</div>");
+    } else {
+      writer.write("<div class=\"streamStatus\">Offline</div>");
+    }
+
+    final var addresses = stream.addresses();
+    if (!addresses.isEmpty()) {
+      writer.write("<div class=\"streamLinks\">");
+      writer.write("Links");
+      writer.write("<ul class=\"streamLinkList\">");
+      for (final var address : addresses) {
+        final var url = MPubPages.escaped(address.url().toString());
+        writer.write("<li>");
+        writer.write("<a href=\"");
+        url.writeTo(writer);
+        writer.write("\">");
+        url.writeTo(writer);
+        writer.write("</a>");
+        writer.write("</li>");
       }
+      writer.write("</ul>");
+      writer.write("</div>");
     }
+
+    writer.write("</div>");
+    writer.write('\n');
   }
 }
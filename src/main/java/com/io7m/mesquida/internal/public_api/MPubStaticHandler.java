@@ -16,26 +16,99 @@
 
 package com.io7m.mesquida.internal.public_api;
 
-import com.io7m.mesquida.internal.MResources;
+import com.io7m.mesquida.internal.MEntityTags;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpOutput;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Locale;
+import java.util.Objects;
 
 /**
  * A server static file handler.
+ *
+ * <p>Assets are served from memory. Requests for fingerprinted names are
+ * marked as immutable and can be cached forever; requests for plain names
+ * must be revalidated, and are answered with a {@code 304} when the
+ * client's copy is current. Precompressed content is served to clients
+ * that accept it.</p>
  */
 
 public final class MPubStaticHandler extends HttpServlet
 {
+  private static final String CACHE_IMMUTABLE =
+    "public, max-age=31536000, immutable";
+  private static final String CACHE_REVALIDATE =
+    "no-cache";
+
+  private final MPubAssets assets;
+
   /**
    * Construct a handler.
+   *
+   * @param inAssets The static assets
    */
 
-  public MPubStaticHandler()
+  public MPubStaticHandler(
+    final MPubAssets inAssets)
   {
+    this.assets =
+      Objects.requireNonNull(inAssets, "assets");
+  }
+
+  private static boolean accepts(
+    final String acceptEncoding,
+    final String coding)
+  {
+    for (final var element : acceptEncoding.split(",")) {
+      final var parts = element.split(";");
+      final var name = parts[0].trim().toLowerCase(Locale.ROOT);
+      if (!name.equals(coding) && !"*".equals(name)) {
+        continue;
+      }
+      for (int index = 1; index < parts.length; ++index) {
+        final var parameter = parts[index].trim().replace(" ", "");
+        if (parameter.matches("q=0(\\.0*)?")) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
 
+  private static String codingFor(
+    final HttpServletRequest request,
+    final MPubAsset asset)
+  {
+    final var acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding == null) {
+      return "identity";
+    }
+    for (final var coding : new String[]{"gzip", "deflate"}) {
+      if (asset.encodings().containsKey(coding)
+          && accepts(acceptEncoding, coding)) {
+        return coding;
+      }
+    }
+    return "identity";
+  }
+
+  private static void sendNotFound(
+    final HttpServletResponse response)
+    throws IOException
+  {
+    response.setContentType("text/plain");
+    response.setStatus(404);
+    try (var outputStream = response.getOutputStream()) {
+      outputStream.print(404);
+      outputStream.print(' ');
+      outputStream.println("Not found");
+      outputStream.flush();
+    }
   }
 
   @Override
@@ -44,22 +117,56 @@ public final class MPubStaticHandler extends HttpServlet
     final HttpServletResponse response)
     throws IOException
   {
-    switch (request.getPathInfo()) {
-      case "/style.css": {
-        response.setContentType("text/css");
-        response.setStatus(200);
-        MResources.copyOut(response.getOutputStream(), "style.css");
-        break;
-      }
-      default: {
-        response.setContentType("text/plain");
-        response.setStatus(404);
-        try (var outputStream = response.getOutputStream()) {
-          outputStream.print(404);
-          outputStream.print(' ');
-          outputStream.println("Not found");
-          outputStream.flush();
-        }
+    final var path = request.getPathInfo();
+    if (path == null) {
+      sendNotFound(response);
+      return;
+    }
+
+    final var name = path.substring(1);
+    final var assetOpt = this.assets.find(name);
+    if (assetOpt.isEmpty()) {
+      sendNotFound(response);
+      return;
+    }
+
+    final var asset = assetOpt.get();
+    final var coding = codingFor(request, asset);
+    final var tag = asset.entityTag(coding);
+
+    response.setHeader(
+      "Cache-Control",
+      name.equals(asset.fingerprintedName())
+        ? CACHE_IMMUTABLE
+        : CACHE_REVALIDATE
+    );
+    response.setHeader("Vary", "Accept-Encoding");
+
+    if (MEntityTags.isNotModified(request, tag)) {
+      MEntityTags.sendNotModified(response, tag);
+      return;
+    }
+
+    final var content = asset.content(coding).orElseThrow();
+    response.setContentType(asset.contentType());
+    response.setHeader("ETag", tag);
+    if (!"identity".equals(coding)) {
+      response.setHeader("Content-Encoding", coding);
+    }
+    response.setContentLength(content.remaining());
+    response.setStatus(200);
+
+    /*
+     * Jetty can write the direct buffer to the connection without copying
+     * it through the servlet output stream.
+     */
+
+    final var output = response.getOutputStream();
+    if (output instanceof HttpOutput httpOutput) {
+      httpOutput.sendContent(content);
+    } else {
+      try (var channel = Channels.newChannel(output)) {
+        channel.write(content);
       }
     }
   }
@@ -16,15 +16,15 @@
 
 package com.io7m.mesquida.internal.public_api;
 
+import com.io7m.mesquida.internal.catalog.MStreamCatalog;
 import com.io7m.mesquida.internal.database.MDatabase;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Objects;
 
 import static com.io7m.mesquida.internal.database.Tables.STREAMS;
 import static com.io7m.mesquida.internal.database.Tables.USERS;
@@ -39,18 +39,25 @@ public final class MPubStreamEditHandler extends MPubAuthenticatedHandler
   private static final Logger LOG =
     LoggerFactory.getLogger(MPubStreamEditHandler.class);
 
+  private final MStreamCatalog catalog;
+
   /**
    * Construct a handler.
    *
    * @param inPages    The pages
    * @param inDatabase The database
+   * @param inCatalog  The stream catalog
    */
 
   public MPubStreamEditHandler(
     final MPubPages inPages,
-    final MDatabase inDatabase)
+    final MDatabase inDatabase,
+    final MStreamCatalog inCatalog)
   {
     super(inPages, inDatabase);
+
+    this.catalog =
+      Objects.requireNonNull(inCatalog, "catalog");
   }
 
   @Override
@@ -61,11 +68,14 @@ public final class MPubStreamEditHandler extends MPubAuthenticatedHandler
 
   @Override
   protected void serviceAuthenticated(
-    final HttpServletRequest request,
-    final HttpServletResponse servletResponse,
-    final HttpSession session)
+    final MPubRequestContext requestContext)
     throws Exception
   {
+    final var request =
+      requestContext.request();
+    final var servletResponse =
+      requestContext.response();
+
     try (var connection = this.database().openConnection()) {
       try {
         final var streamName =
@@ -91,7 +101,7 @@ public final class MPubStreamEditHandler extends MPubAuthenticatedHandler
             .from(STREAMS)
             .join(USERS)
             .on(STREAMS.STREAM_OWNER.eq(USERS.USER_ID))
-            .where(USERS.USER_NAME.eq(this.userName()))
+            .where(USERS.USER_NAME.eq(requestContext.userName()))
             .and(STREAMS.STREAM_NAME.eq(streamName))
             .fetchOne();
 
@@ -99,6 +109,7 @@ public final class MPubStreamEditHandler extends MPubAuthenticatedHandler
         streamT.setStreamTitle(streamTitle);
         streamT.store();
         connection.commit();
+        this.catalog.reload();
 
         LOG.info("updated stream '{}' title to '{}'", streamName, streamTitle);
         servletResponse.sendRedirect("/");
@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.internal.public_api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Objects;
+
+/**
+ * A page template compiled into a list of literal segments separated by
+ * argument references.
+ *
+ * <p>Templates use the subset of {@link java.text.MessageFormat} syntax that
+ * the page templates need: {@code {n}} argument references, and apostrophe
+ * quoting. Rendering writes each literal and argument directly to the
+ * output, so no intermediate copy of the page is ever built.</p>
+ */
+
+public final class MPubTemplate
+{
+  private final String name;
+  private final String[] literals;
+  private final int[] references;
+  private final int arguments;
+
+  private MPubTemplate(
+    final String inName,
+    final String[] inLiterals,
+    final int[] inReferences,
+    final int inArguments)
+  {
+    this.name =
+      Objects.requireNonNull(inName, "inName");
+    this.literals =
+      Objects.requireNonNull(inLiterals, "inLiterals");
+    this.references =
+      Objects.requireNonNull(inReferences, "inReferences");
+    this.arguments = inArguments;
+  }
+
+  /**
+   * Compile a template.
+   *
+   * @param name      The template name
+   * @param pattern   The template text
+   * @param arguments The number of arguments the template accepts
+   *
+   * @return A compiled template
+   *
+   * @throws IllegalArgumentException If the template is malformed, or refers
+   *                                  to an argument outside of
+   *                                  {@code [0, arguments)}
+   */
+
+  public static MPubTemplate compile(
+    final String name,
+    final String pattern,
+    final int arguments)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(pattern, "pattern");
+
+    final var literals = new ArrayList<String>();
+    final var references = new ArrayList<Integer>();
+    final var literal = new StringBuilder(pattern.length());
+    var quoted = false;
+
+    var index = 0;
+    while (index < pattern.length()) {
+      final var c = pattern.charAt(index);
+
+      if (c == '\'') {
+        if (index + 1 < pattern.length() && pattern.charAt(index + 1) == '\'') {
+          literal.append('\'');
+          index += 2;
+        } else {
+          quoted = !quoted;
+          index += 1;
+        }
+        continue;
+      }
+
+      if (c == '{' && !quoted) {
+        final var end = pattern.indexOf('}', index);
+        if (end < 0) {
+          throw new IllegalArgumentException(
+            "Template %s: Unterminated argument at offset %d"
+              .formatted(name, Integer.valueOf(index)));
+        }
+
+        references.add(
+          Integer.valueOf(
+            parseReference(name, pattern.substring(index + 1, end), arguments)
+          )
+        );
+        literals.add(literal.toString());
+        literal.setLength(0);
+        index = end + 1;
+        continue;
+      }
+
+      literal.append(c);
+      index += 1;
+    }
+
+    literals.add(literal.toString());
+
+    return new MPubTemplate(
+      name,
+      literals.toArray(new String[0]),
+      references.stream().mapToInt(Integer::intValue).toArray(),
+      arguments
+    );
+  }
+
+  private static int parseReference(
+    final String name,
+    final String text,
+    final int arguments)
+  {
+    final int reference;
+    try {
+      reference = Integer.parseInt(text.trim());
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(
+        "Template %s: Unsupported argument {%s}".formatted(name, text), e);
+    }
+
+    if (reference < 0 || reference >= arguments) {
+      throw new IllegalArgumentException(
+        "Template %s: Argument {%d} out of range [0, %d)"
+          .formatted(
+            name,
+            Integer.valueOf(reference),
+            Integer.valueOf(arguments)));
+    }
+    return reference;
+  }
+
+  /**
+   * @return The template name
+   */
+
+  public String name()
+  {
+    return this.name;
+  }
+
+  /**
+   * Render the template.
+   *
+   * @param writer The output
+   * @param values The template arguments
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void render(
+    final Writer writer,
+    final MPubFragmentType... values)
+    throws IOException
+  {
+    Objects.requireNonNull(writer, "writer");
+    Objects.requireNonNull(values, "values");
+
+    if (values.length != this.arguments) {
+      throw new IllegalArgumentException(
+        "Template %s: Expected %d arguments, received %d"
+          .formatted(
+            this.name,
+            Integer.valueOf(this.arguments),
+            Integer.valueOf(values.length)));
+    }
+
+    for (int index = 0; index < this.references.length; ++index) {
+      writer.write(this.literals[index]);
+      values[this.references[index]].writeTo(writer);
+    }
+    writer.write(this.literals[this.references.length]);
+  }
+}
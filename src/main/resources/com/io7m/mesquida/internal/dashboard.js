@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/*
+ * The live dashboard. The server sends the state of each of the user's
+ * streams when it changes, and the page is updated in place.
+ */
+
+(function () {
+  "use strict";
+
+  var RECONNECT_MILLIS = 5000;
+  var KEEPALIVE_MILLIS = 60000;
+
+  function findStream(name) {
+    var nodes = document.querySelectorAll("div.stream");
+    for (var index = 0; index < nodes.length; ++index) {
+      if (nodes[index].getAttribute("data-stream") === name) {
+        return nodes[index];
+      }
+    }
+    return null;
+  }
+
+  function updateStatus(node, stream) {
+    var status = node.querySelector(".streamStatus");
+    if (status === null) {
+      return;
+    }
+    if (stream.live) {
+      status.className = "streamStatus streamLive";
+      status.textContent =
+        "Live since " + stream.started
+        + " (last heartbeat " + stream.heartbeat + ")";
+    } else {
+      status.className = "streamStatus";
+      status.textContent = "Offline";
+    }
+  }
+
+  function updateTitle(node, stream) {
+    var input = node.querySelector("input[name='streamTitle']");
+    if (input !== null && document.activeElement !== input) {
+      input.value = stream.title;
+    }
+  }
+
+  function updateLinks(node, stream) {
+    var existing = node.querySelector(".streamLinks");
+    if (existing !== null) {
+      existing.parentNode.removeChild(existing);
+    }
+    if (stream.addresses.length === 0) {
+      return;
+    }
+
+    var links = document.createElement("div");
+    links.className = "streamLinks";
+    links.appendChild(document.createTextNode("Links"));
+
+    var list = document.createElement("ul");
+    list.className = "streamLinkList";
+    for (var index = 0; index < stream.addresses.length; ++index) {
+      var item = document.createElement("li");
+      var anchor = document.createElement("a");
+      anchor.setAttribute("href", stream.addresses[index]);
+      anchor.textContent = stream.addresses[index];
+      item.appendChild(anchor);
+      list.appendChild(item);
+    }
+    links.appendChild(list);
+    node.appendChild(links);
+  }
+
+  /*
+   * Streams that are not on the page yet need the server-rendered form,
+   * so the page is reloaded; this only happens when a stream is created.
+   */
+
+  function updateStream(stream) {
+    var node = findStream(stream.name);
+    if (node === null) {
+      window.location.reload();
+      return;
+    }
+    updateTitle(node, stream);
+    updateStatus(node, stream);
+    updateLinks(node, stream);
+  }
+
+  function removeStream(name) {
+    var node = findStream(name);
+    if (node !== null) {
+      node.parentNode.removeChild(node);
+    }
+  }
+
+  function replaceStreams(streams) {
+    var names = {};
+    for (var index = 0; index < streams.length; ++index) {
+      names[streams[index].name] = true;
+      updateStream(streams[index]);
+    }
+    var nodes = document.querySelectorAll("div.stream");
+    for (var other = 0; other < nodes.length; ++other) {
+      var name = nodes[other].getAttribute("data-stream");
+      if (!names[name]) {
+        removeStream(name);
+      }
+    }
+  }
+
+  function receive(event) {
+    var message = JSON.parse(event.data);
+    switch (message.type) {
+      case "streams":
+        replaceStreams(message.streams);
+        break;
+      case "stream":
+        updateStream(message.stream);
+        break;
+      case "removed":
+        removeStream(message.name);
+        break;
+      default:
+        break;
+    }
+  }
+
+  function connect() {
+    var scheme = window.location.protocol === "https:" ? "wss:" : "ws:";
+    var socket =
+      new WebSocket(scheme + "//" + window.location.host + "/dashboard/");
+    var keepalive = null;
+
+    socket.onopen = function () {
+      keepalive = window.setInterval(function () {
+        socket.send("keepalive");
+      }, KEEPALIVE_MILLIS);
+    };
+    socket.onmessage = receive;
+    socket.onclose = function () {
+      if (keepalive !== null) {
+        window.clearInterval(keepalive);
+      }
+      window.setTimeout(connect, RECONNECT_MILLIS);
+    };
+  }
+
+  if ("WebSocket" in window) {
+    connect();
+  }
+}());
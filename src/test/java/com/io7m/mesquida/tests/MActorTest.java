@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.actor.MActor;
+import com.io7m.mesquida.internal.actor.MActorBackoff;
+import com.io7m.mesquida.internal.actor.MActorBehaviourType;
+import com.io7m.mesquida.internal.actor.MActorDirectiveKind;
+import com.io7m.mesquida.internal.actor.MActorHealthKind;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MActorTest
+{
+  private static void waitFor(
+    final MActor<?> actor,
+    final MActorHealthKind health)
+    throws InterruptedException
+  {
+    for (int index = 0; index < 100; ++index) {
+      if (actor.health() == health) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+    assertEquals(health, actor.health());
+  }
+
+  /**
+   * Backoff delays grow exponentially, are capped, and are jittered within
+   * the upper half of each interval.
+   */
+
+  @Test
+  public void testBackoffBounds()
+  {
+    final var backoff =
+      new MActorBackoff(
+        Duration.ofMillis(100L),
+        Duration.ofMillis(1_000L),
+        Duration.ofSeconds(1L)
+      );
+
+    final var random = new Random(1000L);
+    for (int index = 0; index < 1000; ++index) {
+      final var d1 = backoff.delayFor(1, random).toMillis();
+      assertTrue(d1 >= 50L && d1 <= 100L, "Delay " + d1);
+      final var d3 = backoff.delayFor(3, random).toMillis();
+      assertTrue(d3 >= 200L && d3 <= 400L, "Delay " + d3);
+      final var d20 = backoff.delayFor(20, random).toMillis();
+      assertTrue(d20 >= 500L && d20 <= 1_000L, "Delay " + d20);
+    }
+  }
+
+  /**
+   * Commands are delivered in order, and a failing command causes the actor
+   * to stop and start its behaviour again.
+   */
+
+  @Test
+  public void testRestartAfterFailure()
+    throws Exception
+  {
+    final var starts = new AtomicInteger();
+    final var stops = new AtomicInteger();
+    final var received = new StringBuilder();
+
+    final var behaviour = new MActorBehaviourType<String>()
+    {
+      @Override
+      public void onStart()
+      {
+        starts.incrementAndGet();
+      }
+
+      @Override
+      public MActorDirectiveKind onCommand(
+        final String command)
+        throws IOException
+      {
+        if ("fail".equals(command)) {
+          throw new IOException("Failed!");
+        }
+        received.append(command);
+        return MActorDirectiveKind.CONTINUE;
+      }
+
+      @Override
+      public void onStop()
+      {
+        stops.incrementAndGet();
+      }
+    };
+
+    final var backoff =
+      new MActorBackoff(
+        Duration.ofMillis(10L),
+        Duration.ofMillis(20L),
+        Duration.ofSeconds(10L)
+      );
+
+    try (var actor = MActor.create("test-restart", behaviour, backoff)) {
+      waitFor(actor, MActorHealthKind.RUNNING);
+      actor.send("a");
+      actor.send("fail");
+      actor.send("b");
+
+      for (int index = 0; index < 100; ++index) {
+        if (actor.getCommandsProcessed() == 3L) {
+          break;
+        }
+        Thread.sleep(50L);
+      }
+
+      waitFor(actor, MActorHealthKind.RUNNING);
+      assertEquals(3L, actor.getCommandsProcessed());
+      assertEquals(1L, actor.getFailures());
+      assertEquals(1L, actor.getRestarts());
+      assertEquals(2, starts.get());
+      assertEquals(1, stops.get());
+    }
+
+    assertEquals("ab", received.toString());
+    assertEquals(2, stops.get());
+  }
+
+  /**
+   * Closing an actor interrupts a blocked behaviour promptly.
+   */
+
+  @Test
+  public void testCloseInterrupts()
+    throws Exception
+  {
+    final var blocked = new CountDownLatch(1);
+    final var stopped = new CountDownLatch(1);
+
+    final var behaviour = new MActorBehaviourType<String>()
+    {
+      @Override
+      public void onStart()
+      {
+
+      }
+
+      @Override
+      public MActorDirectiveKind onCommand(
+        final String command)
+        throws InterruptedException
+      {
+        blocked.countDown();
+        Thread.sleep(60_000L);
+        return MActorDirectiveKind.CONTINUE;
+      }
+
+      @Override
+      public void onStop()
+      {
+        stopped.countDown();
+      }
+    };
+
+    final var actor = MActor.create("test-close", behaviour);
+    actor.send("x");
+    assertTrue(blocked.await(5L, TimeUnit.SECONDS));
+
+    final var timeThen = System.nanoTime();
+    actor.close();
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeThen);
+
+    assertTrue(stopped.await(1L, TimeUnit.SECONDS));
+    assertTrue(elapsed.toMillis() < 1_000L, "Elapsed " + elapsed);
+    assertEquals(MActorHealthKind.STOPPED, actor.health());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.cli.MBotSubscriptions;
+import com.io7m.mesquida.internal.irc.MIRCNetworkConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MBotSubscriptionsTest
+{
+  private static MIRCNetworkConfiguration network(
+    final String name,
+    final String host,
+    final List<String> channels)
+  {
+    return new MIRCNetworkConfiguration(
+      name, host, 6667, channels, "bot", "bot", false);
+  }
+
+  /**
+   * Replicas relaying to the same IRC channels share a subscription,
+   * whatever order the channels and networks are given in.
+   */
+
+  @Test
+  public void testIRCSameTarget()
+  {
+    final var a =
+      MBotSubscriptions.forIRC(List.of(
+        network("n0", "irc.example.com", List.of("#a", "#b")),
+        network("n1", "irc.example.org", List.of("#c"))
+      ));
+    final var b =
+      MBotSubscriptions.forIRC(List.of(
+        network("other", "irc.example.org", List.of("#C")),
+        network("n0", "IRC.example.com", List.of("#b", "#a"))
+      ));
+
+    assertEquals(a, b);
+    assertTrue(a.startsWith("mesquida-irc-"));
+  }
+
+  /**
+   * Bots relaying to different IRC channels or servers do not share a
+   * subscription.
+   */
+
+  @Test
+  public void testIRCDifferentTargets()
+  {
+    final var a =
+      MBotSubscriptions.forIRC(List.of(
+        network("n0", "irc.example.com", List.of("#a"))));
+    final var b =
+      MBotSubscriptions.forIRC(List.of(
+        network("n0", "irc.example.com", List.of("#b"))));
+    final var c =
+      MBotSubscriptions.forIRC(List.of(
+        network("n0", "irc.example.org", List.of("#a"))));
+
+    assertNotEquals(a, b);
+    assertNotEquals(a, c);
+    assertNotEquals(b, c);
+  }
+
+  /**
+   * Matrix bots share a subscription only when relaying to the same rooms
+   * on the same homeserver.
+   */
+
+  @Test
+  public void testMatrixTargets()
+  {
+    final var server0 = URI.create("https://matrix.example.com/");
+    final var server1 = URI.create("https://matrix.example.org/");
+
+    final var a =
+      MBotSubscriptions.forMatrix(server0, List.of("#a:x", "#b:x"));
+    final var b =
+      MBotSubscriptions.forMatrix(server0, List.of("#b:x", "#a:x"));
+    final var c =
+      MBotSubscriptions.forMatrix(server0, List.of("#a:x"));
+    final var d =
+      MBotSubscriptions.forMatrix(server1, List.of("#a:x", "#b:x"));
+
+    assertEquals(a, b);
+    assertNotEquals(a, c);
+    assertNotEquals(a, d);
+    assertTrue(a.startsWith("mesquida-matrix-"));
+  }
+}
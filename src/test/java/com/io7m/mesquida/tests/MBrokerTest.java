@@ -0,0 +1,379 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.MServerMain;
+import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.database.MDatabaseConfiguration;
+import com.io7m.mesquida.internal.mq.MBroker;
+import com.io7m.mesquida.internal.mq.MBrokerConfiguration;
+import com.io7m.mesquida.internal.mq.MMessageJMSSubscription;
+import com.io7m.mesquida.internal.mq.MMessageSourceJMS;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.TopicConnection;
+import javax.jms.TopicSubscriber;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that run the whole announcement pipeline against an embedded broker.
+ */
+
+public final class MBrokerTest
+{
+  private Path base;
+  private MBroker broker;
+  private MDatabase database;
+  private MServerMain server;
+  private HttpClient client;
+  private TopicConnection connection;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.client = HttpClient.newHttpClient();
+    this.base = MTestDirectories.createTempDirectory();
+
+    this.broker = MBroker.create(
+      new MBrokerConfiguration(
+        "mesquida",
+        "password",
+        Optional.empty(),
+        Optional.empty()
+      )
+    );
+
+    this.database = MDatabase.open(
+      new MDatabaseConfiguration(this.base.resolve("database"), true, true)
+    );
+
+    this.server = MServerMain.create(
+      new MServerConfiguration(
+        Locale.getDefault(),
+        InetAddress.getByName("localhost"),
+        9999,
+        InetAddress.getByName("localhost"),
+        9998,
+        "abcd",
+        this.base.resolve("sessions")
+      ),
+      this.database
+    );
+    this.server.start();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    if (this.connection != null) {
+      this.connection.close();
+    }
+    this.server.close();
+    this.database.close();
+    this.broker.close();
+    MTestDirectories.deleteDirectory(this.base);
+  }
+
+  private void privatePost(
+    final String path,
+    final String body)
+    throws Exception
+  {
+    final var response =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999" + path))
+          .header("mesquida-token", "abcd")
+          .POST(HttpRequest.BodyPublishers.ofString(body))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+    assertEquals(200, response.statusCode(), response.body());
+  }
+
+  private TopicSubscriber subscribe()
+    throws Exception
+  {
+    final var connections =
+      new ActiveMQConnectionFactory(MBroker.IN_VM_URL.toString());
+    this.connection =
+      connections.createTopicConnection("mesquida", "password");
+
+    final var session =
+      this.connection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
+    final var subscriber =
+      session.createSubscriber(session.createTopic("mesquida"));
+    this.connection.start();
+    return subscriber;
+  }
+
+  private static MMessageSourceJMS source(
+    final int maximumDeliveries)
+  {
+    return new MMessageSourceJMS(
+      MBroker.IN_VM_URL,
+      "mesquida",
+      "password",
+      "mesquida",
+      "bots",
+      maximumDeliveries
+    );
+  }
+
+  private static MMessageJMSSubscription openSubscription(
+    final MMessageSourceJMS source,
+    final LinkedBlockingQueue<Message> received)
+    throws Exception
+  {
+    return MMessageJMSSubscription.open(source, (s, m) -> received.add(m));
+  }
+
+  private void createStreams(
+    final int count)
+    throws Exception
+  {
+    this.privatePost("/user-put/", """
+      {
+        "user": "someone",
+        "password": "12345678"
+      }
+      """);
+
+    for (int index = 0; index < count; ++index) {
+      this.privatePost("/stream-put/", """
+        {
+          "streamName": "stream%d",
+          "streamTitle": "Stream %d",
+          "streamOwner": 1
+        }
+        """.formatted(Integer.valueOf(index), Integer.valueOf(index)));
+    }
+  }
+
+  private void configureQueue(
+    final int batchSize,
+    final int lingerMillis)
+    throws Exception
+  {
+    this.privatePost("/mq-put/", """
+      {
+        "brokerURL": "%s",
+        "brokerUser": "mesquida",
+        "brokerPassword": "password",
+        "brokerTopic": "mesquida",
+        "brokerEnabled": true,
+        "brokerBatchSize": %d,
+        "brokerBatchLingerMillis": %d
+      }
+      """.formatted(
+      MBroker.IN_VM_URL,
+      Integer.valueOf(batchSize),
+      Integer.valueOf(lingerMillis)));
+  }
+
+  private static ArrayList<String> receiveStatuses(
+    final TopicSubscriber subscriber,
+    final int count)
+    throws Exception
+  {
+    final var mapper = new ObjectMapper();
+    final var statuses = new ArrayList<String>();
+    for (int index = 0; index < count; ++index) {
+      final var message = (TextMessage) subscriber.receive(10_000L);
+      assertNotNull(message, "Message %d must arrive".formatted(index));
+      final var tree = mapper.readTree(message.getText());
+      statuses.add(tree.get("status").asText() + " " + tree.get("text").asText());
+    }
+    return statuses;
+  }
+
+  /**
+   * Starting and stopping a stream delivers announcements, in order, through
+   * the embedded broker.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testAnnouncementsDelivered()
+    throws Exception
+  {
+    this.createStreams(1);
+    final var subscriber = this.subscribe();
+    this.configureQueue(1, 0);
+
+    this.privatePost("/stream-start/", """
+      { "streamName": "stream0" }
+      """);
+    this.privatePost("/stream-stop/", """
+      { "streamName": "stream0" }
+      """);
+
+    final var statuses = receiveStatuses(subscriber, 2);
+    assertEquals("STREAM_STARTED", statuses.get(0).split(" ")[0]);
+    assertEquals("STREAM_ENDED", statuses.get(1).split(" ")[0]);
+  }
+
+  /**
+   * Announcements are delivered in order when batched, including a final
+   * partial batch that is published once the linger time expires.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testAnnouncementsDeliveredBatched()
+    throws Exception
+  {
+    this.createStreams(5);
+    final var subscriber = this.subscribe();
+    this.configureQueue(2, 100);
+
+    for (int index = 0; index < 5; ++index) {
+      this.privatePost("/stream-start/", """
+        { "streamName": "stream%d" }
+        """.formatted(Integer.valueOf(index)));
+    }
+
+    final var statuses = receiveStatuses(subscriber, 5);
+    for (int index = 0; index < 5; ++index) {
+      final var status = statuses.get(index);
+      assertTrue(
+        status.startsWith("STREAM_STARTED")
+          && status.contains("Stream %d".formatted(Integer.valueOf(index))),
+        status
+      );
+    }
+  }
+
+  /**
+   * Messages published whilst no bot is connected are kept in the shared
+   * durable subscription, and unacknowledged messages are delivered again
+   * until the delivery limit is exceeded.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testSubscriptionDurable()
+    throws Exception
+  {
+    this.createStreams(1);
+
+    final var source = source(2);
+    final var received = new LinkedBlockingQueue<Message>();
+    openSubscription(source, received).close();
+
+    this.configureQueue(1, 0);
+    this.privatePost("/stream-start/", """
+      { "streamName": "stream0" }
+      """);
+
+    try (var subscription = openSubscription(source, received)) {
+      final var message = received.poll(10L, TimeUnit.SECONDS);
+      assertNotNull(message);
+      assertFalse(subscription.isDeliveryLimitExceeded(message));
+    }
+
+    try (var subscription = openSubscription(source, received)) {
+      final var message = received.poll(10L, TimeUnit.SECONDS);
+      assertNotNull(message);
+      assertFalse(subscription.isDeliveryLimitExceeded(message));
+    }
+
+    try (var subscription = openSubscription(source, received)) {
+      final var message = received.poll(10L, TimeUnit.SECONDS);
+      assertNotNull(message);
+      assertTrue(subscription.isDeliveryLimitExceeded(message));
+      message.acknowledge();
+    }
+
+    try (var ignored = openSubscription(source, received)) {
+      assertEquals(null, received.poll(250L, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /**
+   * Subscriptions with the same name share messages; each message is
+   * delivered to exactly one of them.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testSubscriptionShared()
+    throws Exception
+  {
+    this.createStreams(6);
+
+    final var source = source(10);
+    final var received0 = new LinkedBlockingQueue<Message>();
+    final var received1 = new LinkedBlockingQueue<Message>();
+
+    try (var ignored0 = openSubscription(source, received0);
+         var ignored1 = openSubscription(source, received1)) {
+      this.configureQueue(1, 0);
+
+      for (int index = 0; index < 6; ++index) {
+        this.privatePost("/stream-start/", """
+          { "streamName": "stream%d" }
+          """.formatted(Integer.valueOf(index)));
+      }
+
+      final var texts = new HashSet<String>();
+      for (int index = 0; index < 6; ++index) {
+        var message = received0.poll(100L, TimeUnit.MILLISECONDS);
+        if (message == null) {
+          message = received1.poll(10L, TimeUnit.SECONDS);
+        }
+        assertNotNull(message, "Message %d must arrive".formatted(index));
+        assertTrue(texts.add(((TextMessage) message).getText()));
+        message.acknowledge();
+      }
+
+      Thread.sleep(250L);
+      assertEquals(0, received0.size());
+      assertEquals(0, received1.size());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.catalog.MCatalogSnapshot;
+import com.io7m.mesquida.internal.catalog.MCatalogStream;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class MCatalogSnapshotTest
+{
+  private static MCatalogStream stream(
+    final int id)
+  {
+    return new MCatalogStream(
+      id, "s" + id, "Stream " + id, 1, "someone", List.of());
+  }
+
+  @Test
+  public void testStreamByIdExtremes()
+  {
+    final var low = stream(Integer.MIN_VALUE);
+    final var middle = stream(0);
+    final var high = stream(Integer.MAX_VALUE);
+    final var snapshot =
+      new MCatalogSnapshot(List.of(low, middle, high), 1L);
+
+    assertEquals(Optional.of(low), snapshot.streamById(Integer.MIN_VALUE));
+    assertEquals(Optional.of(middle), snapshot.streamById(0));
+    assertEquals(Optional.of(high), snapshot.streamById(Integer.MAX_VALUE));
+    assertEquals(Optional.empty(), snapshot.streamById(1));
+    assertEquals(List.of(high), snapshot.streamsAfter(0));
+    assertEquals(List.of(), snapshot.streamsAfter(Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testStreamByIdMissingMinimum()
+  {
+    final var snapshot =
+      new MCatalogSnapshot(List.of(stream(Integer.MAX_VALUE)), 1L);
+
+    assertEquals(Optional.empty(), snapshot.streamById(Integer.MIN_VALUE));
+  }
+}
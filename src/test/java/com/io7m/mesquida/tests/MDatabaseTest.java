@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.database.MDatabaseConfiguration;
+import com.io7m.mesquida.internal.database.MDatabasePoolConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class MDatabaseTest
+{
+  private Path base;
+  private MDatabase database;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.base = MTestDirectories.createTempDirectory();
+    this.database = MDatabase.open(
+      new MDatabaseConfiguration(
+        this.base.resolve("database"),
+        true,
+        true,
+        new MDatabasePoolConfiguration(
+          1,
+          2,
+          Duration.ofMinutes(1L),
+          Duration.ofMillis(100L),
+          Duration.ofSeconds(1L)
+        )
+      )
+    );
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    this.database.close();
+    MTestDirectories.deleteDirectory(this.base);
+  }
+
+  @Test
+  public void testPoolBounded()
+    throws Exception
+  {
+    final var statistics = this.database.poolStatistics();
+    assertEquals(1, statistics.getIdleConnections());
+
+    final var c0 = this.database.openConnection();
+    final var c1 = this.database.openConnection();
+    assertEquals(2, statistics.getActiveConnections());
+
+    assertThrows(SQLTransientConnectionException.class, () -> {
+      this.database.openConnection();
+    });
+    assertEquals(1L, statistics.getAcquisitionTimeouts());
+
+    c0.rollback();
+    c0.close();
+    assertEquals(1, statistics.getActiveConnections());
+    assertEquals(1, statistics.getIdleConnections());
+
+    try (var c2 = this.database.openConnection()) {
+      assertEquals(2, statistics.getActiveConnections());
+      assertEquals(0, statistics.getIdleConnections());
+      c2.rollback();
+    }
+
+    c1.rollback();
+    c1.close();
+    assertEquals(0, statistics.getActiveConnections());
+    assertEquals(2, statistics.getIdleConnections());
+    assertEquals(3L, statistics.getAcquisitions());
+  }
+
+  @Test
+  public void testPoolReusesConnections()
+    throws Exception
+  {
+    final var statistics = this.database.poolStatistics();
+
+    for (int index = 0; index < 100; ++index) {
+      try (var connection = this.database.openConnection()) {
+        try (var statement = connection.prepareStatement(
+          "SELECT version_number FROM schema_version")) {
+          statement.executeQuery().close();
+        }
+        connection.rollback();
+      }
+    }
+
+    assertEquals(0, statistics.getActiveConnections());
+    assertEquals(1, statistics.getIdleConnections());
+    assertEquals(100L, statistics.getAcquisitions());
+  }
+}
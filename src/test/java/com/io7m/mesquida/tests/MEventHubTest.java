@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.events.MEvent;
+import com.io7m.mesquida.internal.events.MEventHub;
+import com.io7m.mesquida.internal.events.MEventSubscription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MEventHubTest
+{
+  private MEventHub hub;
+
+  private static List<MEvent> drain(
+    final MEventSubscription subscription)
+  {
+    final var events = new ArrayList<MEvent>();
+    while (true) {
+      final var event = subscription.take();
+      if (event.isEmpty()) {
+        return events;
+      }
+      events.add(event.get());
+    }
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.hub = MEventHub.create(4, 3);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    this.hub.close();
+  }
+
+  /**
+   * Subscribers receive events published after they subscribed, in order.
+   */
+
+  @Test
+  public void testPublishOrder()
+    throws Exception
+  {
+    this.hub.publish("before", "{}");
+
+    try (var subscription = this.hub.subscribe(Optional.empty())) {
+      this.hub.publish("a", "{}");
+      this.hub.publish("b", "{}");
+
+      final var events = drain(subscription);
+      assertEquals(
+        List.of("a", "b"),
+        events.stream().map(MEvent::name).toList()
+      );
+      assertEquals(1, this.hub.getSubscribers());
+    }
+    assertEquals(0, this.hub.getSubscribers());
+  }
+
+  /**
+   * A subscriber that lets its buffer fill is disconnected, and does not
+   * hold up other subscribers.
+   */
+
+  @Test
+  public void testSlowSubscriberDisconnected()
+    throws Exception
+  {
+    try (var slow = this.hub.subscribe(Optional.empty());
+         var fast = this.hub.subscribe(Optional.empty())) {
+      for (int index = 0; index < 3; ++index) {
+        this.hub.publish("e", "{}");
+        assertEquals(1, drain(fast).size());
+      }
+      assertFalse(slow.isTerminated());
+
+      this.hub.publish("e", "{}");
+      assertTrue(slow.isTerminated());
+      assertTrue(slow.isOverflowed());
+      assertTrue(slow.take().isEmpty());
+
+      assertFalse(fast.isTerminated());
+      assertEquals(1, drain(fast).size());
+      assertEquals(1L, this.hub.getSlowSubscribersDisconnected());
+      assertEquals(1, this.hub.getSubscribers());
+    }
+  }
+
+  /**
+   * A subscriber that reconnects with the ID of the last event it saw
+   * receives the events it missed.
+   */
+
+  @Test
+  public void testResume()
+    throws Exception
+  {
+    final String lastId;
+    try (var subscription = this.hub.subscribe(Optional.empty())) {
+      this.hub.publish("a", "{}");
+      lastId = drain(subscription).get(0).id();
+    }
+
+    this.hub.publish("b", "{}");
+    this.hub.publish("c", "{}");
+
+    try (var subscription = this.hub.subscribe(Optional.of(lastId))) {
+      assertEquals(
+        List.of("b", "c"),
+        drain(subscription).stream().map(MEvent::name).toList()
+      );
+    }
+    assertEquals(1L, this.hub.getSubscriptionsResumed());
+  }
+
+  /**
+   * A subscriber that reconnects after its last event has been discarded,
+   * or with an ID from another feed, is told to reset. The reset carries
+   * the ID of the newest event so that the subscriber can resume from it
+   * later.
+   */
+
+  @Test
+  public void testResumeReset()
+    throws Exception
+  {
+    this.hub.publish("a", "{}");
+    final String firstId;
+    try (var subscription = this.hub.subscribe(Optional.of("x-0"))) {
+      final var events = drain(subscription);
+      assertEquals(1, events.size());
+      assertEquals("reset", events.get(0).name());
+      firstId = events.get(0).id();
+    }
+
+    for (int index = 0; index < 5; ++index) {
+      this.hub.publish("e", "{}");
+    }
+    assertEquals(4, this.hub.getEventsRetained());
+
+    try (var subscription = this.hub.subscribe(Optional.of(firstId))) {
+      final var events = drain(subscription);
+      assertEquals(1, events.size());
+      assertEquals("reset", events.get(0).name());
+    }
+    assertEquals(2L, this.hub.getSubscriptionsReset());
+  }
+
+  /**
+   * Subscribers are told when events arrive and when the feed is closed.
+   */
+
+  @Test
+  public void testCloseTerminates()
+    throws Exception
+  {
+    final var subscription = this.hub.subscribe(Optional.empty());
+    final var notified = new Semaphore(0);
+    subscription.setListener(notified::release);
+
+    this.hub.publish("a", "{}");
+    assertTrue(notified.tryAcquire(30L, TimeUnit.SECONDS));
+    assertEquals(
+      List.of("a"),
+      drain(subscription).stream().map(MEvent::name).toList()
+    );
+
+    final var thread = new Thread(this.hub::close);
+    thread.start();
+
+    assertTrue(notified.tryAcquire(30L, TimeUnit.SECONDS));
+    assertTrue(subscription.isTerminated());
+    assertFalse(subscription.isOverflowed());
+    assertTrue(subscription.take().isEmpty());
+    thread.join();
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A tiny fake Matrix homeserver that records the messages sent to each room.
+ */
+
+public final class MFakeMatrixServer implements AutoCloseable
+{
+  private final HttpServer server;
+  private final ObjectMapper mapper;
+  private final Map<String, List<String>> messages;
+  private final List<String> transactions;
+  private final AtomicInteger inFlight;
+  private final AtomicInteger inFlightMaximum;
+  private final AtomicInteger logins;
+  private final AtomicInteger rateLimitedRemaining;
+  private final AtomicInteger failingRemaining;
+  private final AtomicInteger joins;
+  private volatile int failingStatus;
+  private volatile long sendDelayMillis;
+  private volatile long retryAfterMillis;
+
+  private MFakeMatrixServer(
+    final HttpServer inServer)
+  {
+    this.server = inServer;
+    this.mapper = new ObjectMapper();
+    this.messages = new ConcurrentHashMap<>();
+    this.transactions = new ArrayList<>();
+    this.inFlight = new AtomicInteger();
+    this.inFlightMaximum = new AtomicInteger();
+    this.logins = new AtomicInteger();
+    this.rateLimitedRemaining = new AtomicInteger();
+    this.failingRemaining = new AtomicInteger();
+    this.joins = new AtomicInteger();
+  }
+
+  public static MFakeMatrixServer create()
+    throws IOException
+  {
+    final var http =
+      HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    final var server = new MFakeMatrixServer(http);
+    http.setExecutor(Executors.newCachedThreadPool());
+    http.createContext("/", server::handle);
+    http.start();
+    return server;
+  }
+
+  public URI baseURI()
+  {
+    return URI.create(
+      "http://localhost:%d/".formatted(
+        Integer.valueOf(this.server.getAddress().getPort())));
+  }
+
+  public void setSendDelayMillis(
+    final long millis)
+  {
+    this.sendDelayMillis = millis;
+  }
+
+  public void setRateLimited(
+    final int requests,
+    final long inRetryAfterMillis)
+  {
+    this.retryAfterMillis = inRetryAfterMillis;
+    this.rateLimitedRemaining.set(requests);
+  }
+
+  public void setFailing(
+    final int requests,
+    final int status)
+  {
+    this.failingStatus = status;
+    this.failingRemaining.set(requests);
+  }
+
+  public List<String> messagesFor(
+    final String roomId)
+  {
+    synchronized (this.messages) {
+      return List.copyOf(this.messages.getOrDefault(roomId, List.of()));
+    }
+  }
+
+  public List<String> transactions()
+  {
+    synchronized (this.messages) {
+      return List.copyOf(this.transactions);
+    }
+  }
+
+  public int inFlightMaximum()
+  {
+    return this.inFlightMaximum.get();
+  }
+
+  public int logins()
+  {
+    return this.logins.get();
+  }
+
+  public int joins()
+  {
+    return this.joins.get();
+  }
+
+  private void handle(
+    final HttpExchange exchange)
+    throws IOException
+  {
+    try (exchange) {
+      final var path = exchange.getRequestURI().getRawPath();
+      final var segments = path.split("/");
+
+      if (path.endsWith("/login")) {
+        this.logins.incrementAndGet();
+        respond(exchange, 200, """
+          { "user_id": "@bot:example.com", "access_token": "TOKEN" }
+          """);
+        return;
+      }
+
+      if (path.contains("/directory/room/")) {
+        final var alias =
+          URLDecoder.decode(segments[segments.length - 1], UTF_8);
+        respond(exchange, 200, """
+          { "room_id": "!%s" }
+          """.formatted(alias.replace("#", "")));
+        return;
+      }
+
+      if (path.endsWith("/join")) {
+        this.joins.incrementAndGet();
+        respond(exchange, 200, "{}");
+        return;
+      }
+
+      if (path.contains("/send/m.room.message/")) {
+        this.handleSend(exchange, segments);
+        return;
+      }
+
+      respond(exchange, 404, """
+        { "errcode": "M_NOT_FOUND", "error": "Not found" }
+        """);
+    }
+  }
+
+  private void handleSend(
+    final HttpExchange exchange,
+    final String[] segments)
+    throws IOException
+  {
+    if (this.rateLimitedRemaining.getAndDecrement() > 0) {
+      respond(exchange, 429, """
+        {
+          "errcode": "M_LIMIT_EXCEEDED",
+          "error": "Too many requests",
+          "retry_after_ms": %d
+        }
+        """.formatted(Long.valueOf(this.retryAfterMillis)));
+      return;
+    }
+
+    if (this.failingRemaining.getAndDecrement() > 0) {
+      final var status = this.failingStatus;
+      respond(exchange, status, """
+        { "errcode": "%s", "error": "Failed" }
+        """.formatted(status == 403 ? "M_FORBIDDEN" : "M_UNKNOWN"));
+      return;
+    }
+
+    final var now = this.inFlight.incrementAndGet();
+    this.inFlightMaximum.accumulateAndGet(now, Math::max);
+    try {
+      final var room =
+        URLDecoder.decode(segments[segments.length - 4], UTF_8);
+      final var body =
+        this.mapper.readTree(exchange.getRequestBody());
+
+      Thread.sleep(this.sendDelayMillis);
+
+      synchronized (this.messages) {
+        this.messages.computeIfAbsent(room, k -> new ArrayList<>())
+          .add(body.get("body").asText());
+        this.transactions.add(segments[segments.length - 1]);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      this.inFlight.decrementAndGet();
+    }
+
+    respond(exchange, 200, """
+      { "event_id": "$event" }
+      """);
+  }
+
+  private static void respond(
+    final HttpExchange exchange,
+    final int status,
+    final String text)
+    throws IOException
+  {
+    final var data = text.getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, data.length);
+    exchange.getResponseBody().write(data);
+  }
+
+  @Override
+  public void close()
+  {
+    this.server.stop(0);
+  }
+}
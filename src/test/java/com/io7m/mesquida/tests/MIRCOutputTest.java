@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.irc.MIRCLines;
+import com.io7m.mesquida.internal.irc.MIRCOutputQueue;
+import com.io7m.mesquida.internal.irc.MIRCTokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MIRCOutputTest
+{
+  private static final long SECOND = Duration.ofSeconds(1L).toNanos();
+
+  /**
+   * The text limit leaves room for the command and the prefix the server
+   * adds when relaying the message.
+   */
+
+  @Test
+  public void testMaximumTextBytes()
+  {
+    final var limit =
+      MIRCLines.maximumTextBytes("#channel", "bot", "bot");
+    final var line =
+      ":bot!bot@%s PRIVMSG #channel :%s\r\n".formatted(
+        "h".repeat(MIRCLines.HOST_RESERVED_BYTES),
+        "x".repeat(limit)
+      );
+
+    assertEquals(
+      MIRCLines.PROTOCOL_LINE_BYTES,
+      line.getBytes(StandardCharsets.UTF_8).length
+    );
+  }
+
+  /**
+   * Long text is split at spaces, and every line fits the limit.
+   */
+
+  @Test
+  public void testSplitWords()
+  {
+    final var lines =
+      MIRCLines.split("aaaa bbbb cccc dddd", 10);
+
+    assertEquals(List.of("aaaa bbbb", "cccc dddd"), lines);
+  }
+
+  /**
+   * Multibyte characters are never split, and lines are measured in bytes
+   * rather than characters.
+   */
+
+  @Test
+  public void testSplitMultibyte()
+  {
+    final var text = "é".repeat(5) + "😀".repeat(3);
+    final var lines = MIRCLines.split(text, 7);
+
+    assertEquals(text, String.join("", lines));
+    for (final var line : lines) {
+      assertTrue(line.getBytes(StandardCharsets.UTF_8).length <= 7);
+    }
+    assertEquals(
+      List.of("ééé", "éé", "😀", "😀", "😀"),
+      lines
+    );
+  }
+
+  /**
+   * Line breaks start new lines rather than being sent to the server.
+   */
+
+  @Test
+  public void testSplitLineBreaks()
+  {
+    assertEquals(
+      List.of("a", "b", "c"),
+      MIRCLines.split("a\r\nb\n\nc\r", 10)
+    );
+  }
+
+  /**
+   * The token bucket allows a burst and then one token per interval.
+   */
+
+  @Test
+  public void testTokenBucket()
+  {
+    final var bucket =
+      new MIRCTokenBucket(2, Duration.ofSeconds(2L), 0L);
+
+    assertTrue(bucket.tryTake(0L));
+    assertTrue(bucket.tryTake(0L));
+    assertTrue(!bucket.tryTake(0L));
+    assertEquals(Duration.ofSeconds(1L), bucket.timeUntilAvailable(SECOND));
+    assertTrue(bucket.tryTake(2L * SECOND));
+    assertTrue(!bucket.tryTake(2L * SECOND));
+    assertEquals(2, bucket.available(100L * SECOND));
+  }
+
+  /**
+   * Lines are released at the rate the bucket allows, and tokens are
+   * returned only when every line of a message has been sent.
+   */
+
+  @Test
+  public void testQueuePaced()
+  {
+    final var clock = new AtomicLong();
+    final var queue =
+      new MIRCOutputQueue<String>(
+        new MIRCTokenBucket(2, Duration.ofSeconds(2L), 0L),
+        c -> 10,
+        clock::get
+      );
+
+    final var sent = new ArrayList<String>();
+    final var tokens = new ArrayList<String>();
+    queue.enqueue(
+      "#a", Optional.empty(), "aaaa bbbb cccc dddd", Optional.of("m0"));
+    queue.enqueue(
+      "#a", Optional.empty(), "eeee", Optional.of("m1"));
+
+    queue.drain(c -> true, (c, line) -> sent.add(line), tokens::add);
+    assertEquals(List.of("m0"), tokens);
+    assertEquals(List.of("aaaa bbbb", "cccc dddd"), sent);
+    assertEquals(1, queue.getQueuedLines());
+    assertEquals(
+      Optional.of(Duration.ofSeconds(2L)),
+      queue.timeUntilReady(c -> true)
+    );
+
+    clock.set(SECOND);
+    queue.drain(c -> true, (c, line) -> sent.add(line), tokens::add);
+    assertEquals(List.of("m0"), tokens);
+    assertEquals(1000L, queue.getQueueLagMillis());
+
+    clock.set(2L * SECOND);
+    queue.drain(c -> true, (c, line) -> sent.add(line), tokens::add);
+    assertEquals(List.of("m0", "m1"), tokens);
+    assertEquals(Optional.empty(), queue.timeUntilReady(c -> true));
+    assertEquals(3L, queue.getLinesSent());
+    assertEquals(2L, queue.getMessagesSent());
+  }
+
+  /**
+   * Messages for channels that are not ready keep their place while
+   * messages for other channels are sent.
+   */
+
+  @Test
+  public void testQueueChannelNotReady()
+  {
+    final var queue =
+      new MIRCOutputQueue<String>(
+        new MIRCTokenBucket(4, Duration.ofSeconds(2L), 0L),
+        c -> 100,
+        () -> 0L
+      );
+
+    final var sent = new ArrayList<String>();
+    final var tokens = new ArrayList<String>();
+    queue.enqueue("#a", Optional.empty(), "x", Optional.of("m0"));
+    queue.enqueue("#b", Optional.empty(), "y", Optional.of("m1"));
+
+    final var ready = Set.of("#b");
+    queue.drain(ready::contains, (c, line) -> sent.add(c), tokens::add);
+    assertEquals(List.of("#b"), sent);
+    assertEquals(List.of("m1"), tokens);
+    assertEquals(Optional.empty(), queue.timeUntilReady(ready::contains));
+
+    queue.drain(c -> true, (c, line) -> sent.add(c), tokens::add);
+    assertEquals(List.of("#b", "#a"), sent);
+    assertEquals(List.of("m1", "m0"), tokens);
+  }
+
+  /**
+   * Waiting messages for the same stream and channel are coalesced into
+   * the latest message, in the position of the earliest, and all of their
+   * tokens are returned when it is sent.
+   */
+
+  @Test
+  public void testQueueCoalesced()
+  {
+    final var clock = new AtomicLong();
+    final var queue =
+      new MIRCOutputQueue<String>(
+        new MIRCTokenBucket(1, Duration.ofSeconds(2L), 0L),
+        c -> 100,
+        clock::get
+      );
+
+    final var sent = new ArrayList<String>();
+    final var tokens = new ArrayList<String>();
+    queue.enqueue("#x", Optional.of("a"), "a started", Optional.of("m0"));
+    queue.drain(c -> true, (c, line) -> sent.add(line), tokens::add);
+
+    queue.enqueue("#x", Optional.of("a"), "a ended", Optional.of("m1"));
+    queue.enqueue("#x", Optional.of("b"), "b started", Optional.of("m2"));
+    queue.enqueue("#x", Optional.of("a"), "a started", Optional.of("m3"));
+    queue.enqueue("#y", Optional.of("a"), "a started", Optional.of("m5"));
+    queue.enqueue("#x", Optional.of("a"), "a ended", Optional.of("m4"));
+    queue.enqueue("#x", Optional.empty(), "other", Optional.empty());
+
+    assertEquals(4, queue.getQueuedMessages());
+    assertEquals(2L, queue.getMessagesCoalesced());
+
+    for (int index = 1; index <= 4; ++index) {
+      clock.set(index * 2L * SECOND);
+      queue.drain(c -> true, (c, line) -> sent.add(line), tokens::add);
+    }
+
+    assertEquals(
+      List.of("a started", "a ended", "b started", "a started", "other"),
+      sent
+    );
+    assertEquals(List.of("m0", "m1", "m3", "m4", "m2", "m5"), tokens);
+  }
+}
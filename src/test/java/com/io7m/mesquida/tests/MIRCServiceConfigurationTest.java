@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.jproperties.JPropertyException;
+import com.io7m.mesquida.internal.irc.MIRCNetworkConfiguration;
+import com.io7m.mesquida.internal.irc.MIRCServiceConfiguration;
+import com.io7m.mesquida.internal.mq.MMessageBus;
+import com.io7m.mesquida.internal.mq.MMessageSourceBus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class MIRCServiceConfigurationTest
+{
+  private Path directory;
+  private MMessageSourceBus source;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.directory = MTestDirectories.createTempDirectory();
+    this.source = new MMessageSourceBus(MMessageBus.create());
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    MTestDirectories.deleteDirectory(this.directory);
+  }
+
+  /**
+   * Several networks, each with several channels, can be configured.
+   */
+
+  @Test
+  public void testNetworks()
+    throws Exception
+  {
+    final var file = this.directory.resolve("irc.properties");
+    Files.writeString(file, """
+      irc.libera.host = irc.libera.chat
+      irc.libera.port = 6697
+      irc.libera.channels = #a #b,#c
+      irc.libera.user = mesquida
+      irc.libera.unsafeTrust = true
+
+      irc.example.host = irc.example.com
+      irc.example.channels = #x
+      irc.example.user = bot
+      irc.example.nick = botnick
+      """);
+
+    final var configuration =
+      MIRCServiceConfiguration.open(this.source, file);
+
+    assertEquals(
+      List.of(
+        new MIRCNetworkConfiguration(
+          "example",
+          "irc.example.com",
+          6667,
+          List.of("#x"),
+          "bot",
+          "botnick",
+          false
+        ),
+        new MIRCNetworkConfiguration(
+          "libera",
+          "irc.libera.chat",
+          6697,
+          List.of("#a", "#b", "#c"),
+          "mesquida",
+          "mesquida",
+          true
+        )
+      ),
+      configuration.networks()
+    );
+  }
+
+  /**
+   * A network without a host is rejected.
+   */
+
+  @Test
+  public void testMissingHost()
+    throws Exception
+  {
+    final var file = this.directory.resolve("irc.properties");
+    Files.writeString(file, """
+      irc.libera.channels = #a
+      irc.libera.user = mesquida
+      """);
+
+    assertThrows(
+      JPropertyException.class,
+      () -> MIRCServiceConfiguration.open(this.source, file)
+    );
+  }
+
+  /**
+   * A file without networks is rejected.
+   */
+
+  @Test
+  public void testNoNetworks()
+    throws Exception
+  {
+    final var file = this.directory.resolve("irc.properties");
+    Files.writeString(file, "");
+
+    assertThrows(
+      JPropertyException.class,
+      () -> MIRCServiceConfiguration.open(this.source, file)
+    );
+  }
+
+  /**
+   * Networks can be listed alongside other configuration, and a file that
+   * lists none yields no networks rather than an error.
+   */
+
+  @Test
+  public void testNetworksIfAny()
+    throws Exception
+  {
+    final var file = this.directory.resolve("server.properties");
+    Files.writeString(file, """
+      server.privatePort = 9999
+
+      irc.libera.host = irc.libera.chat
+      irc.libera.channels = #a
+      irc.libera.user = mesquida
+      """);
+
+    assertEquals(
+      List.of("libera"),
+      MIRCServiceConfiguration.openNetworksIfAny(file)
+        .stream()
+        .map(MIRCNetworkConfiguration::name)
+        .toList()
+    );
+
+    Files.writeString(file, "server.privatePort = 9999\n");
+    assertEquals(List.of(), MIRCServiceConfiguration.openNetworksIfAny(file));
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.matrix.MMatrixService;
+import com.io7m.mesquida.internal.matrix.MMatrixServiceConfiguration;
+import com.io7m.mesquida.internal.mq.MMessageBus;
+import com.io7m.mesquida.internal.mq.MMessageFormatted;
+import com.io7m.mesquida.internal.mq.MMessageSourceBus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MMatrixServiceTest
+{
+  private MFakeMatrixServer server;
+  private MMessageBus bus;
+  private Path base;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.server = MFakeMatrixServer.create();
+    this.bus = MMessageBus.create();
+    this.base = MTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    this.server.close();
+    MTestDirectories.deleteDirectory(this.base);
+  }
+
+  private static MMessageFormatted message(
+    final int index)
+  {
+    final var message = new MMessageFormatted();
+    message.status = "STREAM_STARTED";
+    message.text = "Message " + index;
+    message.html = "<p>Message " + index + "</p>";
+    return message;
+  }
+
+  private MMatrixService createService(
+    final List<String> channels,
+    final int inFlight)
+    throws InterruptedException
+  {
+    return this.createService(channels, inFlight, Optional.empty());
+  }
+
+  private MMatrixService createService(
+    final List<String> channels,
+    final int inFlight,
+    final Optional<Path> stateFile)
+    throws InterruptedException
+  {
+    final var service =
+      MMatrixService.create(
+        new MMatrixServiceConfiguration(
+          new MMessageSourceBus(this.bus),
+          this.server.baseURI(),
+          "bot",
+          "password",
+          channels,
+          inFlight,
+          stateFile
+        )
+      );
+
+    for (int index = 0; index < 100; ++index) {
+      if (this.bus.subscriberCount() > 0) {
+        break;
+      }
+      Thread.sleep(50L);
+    }
+    return service;
+  }
+
+  private void waitForMessages(
+    final String room,
+    final int count)
+    throws InterruptedException
+  {
+    for (int index = 0; index < 200; ++index) {
+      if (this.server.messagesFor(room).size() >= count) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+  }
+
+  /**
+   * The fake server records a message before it responds, so the sender
+   * counts it slightly later.
+   */
+
+  private static void waitForSent(
+    final MMatrixService service,
+    final long count)
+    throws InterruptedException
+  {
+    for (int index = 0; index < 200; ++index) {
+      if (service.sendStatistics().getSent() >= count) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+  }
+
+  private void waitForJoins(
+    final int count)
+    throws InterruptedException
+  {
+    for (int index = 0; index < 200; ++index) {
+      if (this.server.joins() >= count) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+  }
+
+  /**
+   * Messages to several rooms are sent concurrently, within the in-flight
+   * limit, and each room receives its messages in order.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testSendsPipelinedInOrder()
+    throws Exception
+  {
+    this.server.setSendDelayMillis(50L);
+
+    final var rooms = List.of("#a", "#b", "#c");
+    try (var ignored = this.createService(rooms, 2)) {
+      final var expected = new ArrayList<String>();
+      for (int index = 0; index < 10; ++index) {
+        this.bus.publish(message(index));
+        expected.add("Message " + index);
+      }
+
+      for (final var room : rooms) {
+        this.waitForMessages(room.replace("#", "!"), 10);
+      }
+
+      for (final var room : rooms) {
+        assertEquals(expected, this.server.messagesFor(room.replace("#", "!")));
+      }
+    }
+
+    final var maximum = this.server.inFlightMaximum();
+    assertTrue(maximum == 2, "Maximum in flight " + maximum);
+  }
+
+  /**
+   * Rate limited messages are retried after the time the server asks for,
+   * and still arrive in order.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRateLimitedRetried()
+    throws Exception
+  {
+    this.server.setRateLimited(3, 100L);
+
+    try (var service = this.createService(List.of("#a"), 2)) {
+      final var expected = new ArrayList<String>();
+      final var timeThen = System.nanoTime();
+      for (int index = 0; index < 5; ++index) {
+        this.bus.publish(message(index));
+        expected.add("Message " + index);
+      }
+
+      this.waitForMessages("!a", 5);
+      final var elapsed =
+        Duration.ofNanos(System.nanoTime() - timeThen);
+      waitForSent(service, 5L);
+
+      assertEquals(expected, this.server.messagesFor("!a"));
+      assertTrue(elapsed.toMillis() >= 300L, "Elapsed " + elapsed);
+
+      final var statistics = service.sendStatistics();
+      assertEquals(3L, statistics.getRateLimited());
+      assertEquals(5L, statistics.getSent());
+      assertEquals(0L, statistics.getFailed());
+      assertTrue(statistics.getThrottledTimeMillis() >= 300L);
+    }
+  }
+
+  /**
+   * Server errors are retried with the same transaction ID, and don't fail
+   * the messages queued behind them.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testServerErrorRetried()
+    throws Exception
+  {
+    this.server.setFailing(1, 500);
+
+    try (var service = this.createService(List.of("#a"), 1)) {
+      final var expected = new ArrayList<String>();
+      for (int index = 0; index < 3; ++index) {
+        this.bus.publish(message(index));
+        expected.add("Message " + index);
+      }
+
+      this.waitForMessages("!a", 3);
+      waitForSent(service, 3L);
+      assertEquals(expected, this.server.messagesFor("!a"));
+
+      final var statistics = service.sendStatistics();
+      assertEquals(1L, statistics.getRetried());
+      assertEquals(3L, statistics.getSent());
+      assertEquals(0L, statistics.getFailed());
+    }
+
+    final var transactions = this.server.transactions();
+    assertEquals(3, Set.copyOf(transactions).size(), transactions.toString());
+  }
+
+  /**
+   * A saved session is reused after a restart, without logging in again,
+   * and transaction IDs are not reused.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testSessionPersisted()
+    throws Exception
+  {
+    final var stateFile =
+      Optional.of(this.base.resolve("matrix.properties"));
+
+    try (var ignored = this.createService(List.of("#a"), 1, stateFile)) {
+      this.bus.publish(message(0));
+      this.bus.publish(message(1));
+      this.waitForMessages("!a", 2);
+    }
+
+    assertTrue(Files.isRegularFile(stateFile.get()));
+
+    try (var ignored = this.createService(List.of("#a"), 1, stateFile)) {
+      this.bus.publish(message(2));
+      this.bus.publish(message(3));
+      this.waitForMessages("!a", 4);
+    }
+
+    assertEquals(
+      List.of("Message 0", "Message 1", "Message 2", "Message 3"),
+      this.server.messagesFor("!a")
+    );
+    assertEquals(1, this.server.logins());
+
+    final var transactions = this.server.transactions();
+    assertEquals(4, Set.copyOf(transactions).size(), transactions.toString());
+  }
+
+  /**
+   * If the server refuses to send to a room, the saved room ID is forgotten
+   * and the room is resolved and joined again.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testForbiddenRoomJoinedAgain()
+    throws Exception
+  {
+    final var stateFile =
+      Optional.of(this.base.resolve("matrix.properties"));
+
+    this.server.setFailing(1, 403);
+
+    try (var ignored = this.createService(List.of("#a"), 1, stateFile)) {
+      this.waitForJoins(1);
+      assertEquals(1, this.server.joins());
+      this.bus.publish(message(0));
+
+      this.waitForJoins(2);
+      assertEquals(2, this.server.joins());
+
+      this.bus.publish(message(1));
+      this.waitForMessages("!a", 1);
+    }
+
+    assertEquals(List.of("Message 1"), this.server.messagesFor("!a"));
+    assertEquals(1, this.server.logins());
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.database.MDatabaseConfiguration;
+import com.io7m.mesquida.internal.mq.MMessageBus;
+import com.io7m.mesquida.internal.mq.MMessageDebounceStatisticsType;
+import com.io7m.mesquida.internal.mq.MMessageFormatted;
+import com.io7m.mesquida.internal.mq.MMessageOutboxStatisticsType;
+import com.io7m.mesquida.internal.mq.MMessageService;
+import com.io7m.mesquida.internal.mq.MMessageStreamEnded;
+import com.io7m.mesquida.internal.mq.MMessageStreamStarted;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.io7m.mesquida.internal.database.Tables.MESSAGE_OUTBOX;
+import static com.io7m.mesquida.internal.database.Tables.MESSAGE_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class MMessageServiceTest
+{
+  private Path base;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.base = MTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    MTestDirectories.deleteDirectory(this.base);
+  }
+
+  private MDatabase openDatabase()
+    throws Exception
+  {
+    return MDatabase.open(
+      new MDatabaseConfiguration(this.base.resolve("database"), true, true)
+    );
+  }
+
+  private static void waitForDepth(
+    final MMessageOutboxStatisticsType statistics,
+    final long depth)
+    throws InterruptedException
+  {
+    for (int index = 0; index < 100; ++index) {
+      if (statistics.getDepth() == depth) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+    assertEquals(depth, statistics.getDepth());
+  }
+
+  /**
+   * Messages sent whilst no broker is configured are kept in the outbox,
+   * and are still there after a restart.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testOutboxSurvivesRestart()
+    throws Exception
+  {
+    try (var database = this.openDatabase()) {
+      try (var service = MMessageService.create(database)) {
+        service.sendMessage(
+          new MMessageStreamStarted(
+            "stream0",
+            "Stream 0",
+            Map.of("http", URI.create("http://example.com/stream0"))
+          )
+        );
+        service.sendMessage(new MMessageStreamEnded("stream0", "Stream 0"));
+        waitForDepth(service.outboxStatistics(), 2L);
+      }
+    }
+
+    try (var database = this.openDatabase()) {
+      try (var service = MMessageService.create(database)) {
+        final var statistics = service.outboxStatistics();
+        waitForDepth(statistics, 2L);
+        assertEquals(0L, statistics.getPublished());
+        assertEquals(0L, statistics.getExpired());
+      }
+    }
+  }
+
+  /**
+   * Messages sent with an in-process bus are delivered to the bus
+   * directly, and are not written to the outbox when the message queue is
+   * disabled.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBusDeliversDirectly()
+    throws Exception
+  {
+    final var bus = MMessageBus.create();
+    final var received = new ArrayList<MMessageFormatted>();
+
+    try (var database = this.openDatabase()) {
+      try (var service = MMessageService.create(database, bus)) {
+        try (var ignored = bus.subscribe(received::add)) {
+          service.sendMessage(new MMessageStreamEnded("stream0", "Stream 0"));
+        }
+        service.sendMessage(new MMessageStreamEnded("stream1", "Stream 1"));
+
+        assertEquals(1, received.size());
+        assertEquals("STREAM_ENDED", received.get(0).status);
+        assertEquals(0, bus.subscriberCount());
+        waitForDepth(service.outboxStatistics(), 0L);
+      }
+    }
+  }
+
+  private static void enableUnreachableBroker(
+    final MDatabase database,
+    final int debounceMillis)
+    throws Exception
+  {
+    try (var connection = database.openConnection()) {
+      DSL.using(connection, SQLDialect.DERBY)
+        .update(MESSAGE_QUEUE)
+        .set(MESSAGE_QUEUE.MQ_ENABLED, Boolean.TRUE)
+        .set(MESSAGE_QUEUE.MQ_URL, "tcp://127.0.0.1:1")
+        .set(MESSAGE_QUEUE.MQ_DEBOUNCE, Integer.valueOf(debounceMillis))
+        .execute();
+      connection.commit();
+    }
+  }
+
+  private static int outboxRows(
+    final MDatabase database)
+    throws Exception
+  {
+    try (var connection = database.openConnection()) {
+      final var count =
+        DSL.using(connection, SQLDialect.DERBY)
+          .fetchCount(MESSAGE_OUTBOX);
+      connection.rollback();
+      return count;
+    }
+  }
+
+  /**
+   * With an in-process bus and the message queue enabled, messages are
+   * delivered to the bus and also written to the outbox, even whilst the
+   * broker cannot be reached.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBusBridgesToOutbox()
+    throws Exception
+  {
+    final var bus = MMessageBus.create();
+    final var received = new CopyOnWriteArrayList<MMessageFormatted>();
+
+    try (var database = this.openDatabase()) {
+      enableUnreachableBroker(database, 0);
+
+      try (var service = MMessageService.create(database, bus)) {
+        try (var ignored = bus.subscribe(received::add)) {
+          service.sendMessage(new MMessageStreamEnded("stream0", "Stream 0"));
+          assertEquals(1, received.size());
+          assertEquals(1, outboxRows(database));
+        }
+      }
+    }
+  }
+
+  private static void waitForWindow(
+    final MMessageDebounceStatisticsType statistics,
+    final long windowMillis)
+    throws InterruptedException
+  {
+    for (int index = 0; index < 100; ++index) {
+      if (statistics.getWindowMillis() == windowMillis) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+    assertEquals(windowMillis, statistics.getWindowMillis());
+  }
+
+  /**
+   * Debounced announcements are released when their windows elapse even
+   * whilst the broker cannot be reached, and are durably written to the
+   * outbox.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testDebounceReleasedWithBrokerUnreachable()
+    throws Exception
+  {
+    final var bus = MMessageBus.create();
+    final var received = new CopyOnWriteArrayList<MMessageFormatted>();
+
+    try (var database = this.openDatabase()) {
+      enableUnreachableBroker(database, 200);
+
+      try (var service = MMessageService.create(database, bus)) {
+        try (var ignored = bus.subscribe(received::add)) {
+          waitForWindow(service.debounceStatistics(), 200L);
+
+          service.sendMessage(started("stream0", "Stream 0"));
+          assertEquals(0, received.size());
+          assertEquals(0, outboxRows(database));
+
+          for (int index = 0; index < 100; ++index) {
+            if (received.size() == 1 && outboxRows(database) == 1) {
+              break;
+            }
+            Thread.sleep(50L);
+          }
+
+          assertEquals(1, received.size());
+          assertEquals(1, outboxRows(database));
+          assertEquals(0, service.debounceStatistics().getPending());
+        }
+      }
+    }
+  }
+
+  private static MMessageStreamStarted started(
+    final String name,
+    final String title)
+  {
+    return new MMessageStreamStarted(
+      name,
+      title,
+      Map.of("http", URI.create("http://example.com/" + name))
+    );
+  }
+
+  /**
+   * Within the debounce window, a start and a stop for the same stream
+   * cancel each other out, and a repeated announcement replaces the
+   * earlier one.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testDebounceCancelsFlaps()
+    throws Exception
+  {
+    final var bus = MMessageBus.create();
+    final var received = new CopyOnWriteArrayList<MMessageFormatted>();
+
+    try (var database = this.openDatabase()) {
+      try (var connection = database.openConnection()) {
+        DSL.using(connection, SQLDialect.DERBY)
+          .update(MESSAGE_QUEUE)
+          .set(MESSAGE_QUEUE.MQ_DEBOUNCE, Integer.valueOf(500))
+          .execute();
+        connection.commit();
+      }
+
+      try (var service = MMessageService.create(database, bus)) {
+        try (var ignored = bus.subscribe(received::add)) {
+          final var statistics = service.debounceStatistics();
+          waitForWindow(statistics, 500L);
+
+          service.sendMessage(started("stream0", "Stream 0"));
+          service.sendMessage(new MMessageStreamEnded("stream0", "Stream 0"));
+          service.sendMessage(started("stream1", "Stream 1"));
+          service.sendMessage(started("stream1", "Stream 1 (again)"));
+          service.sendMessage(new MMessageStreamEnded("stream2", "Stream 2"));
+
+          assertEquals(0, received.size());
+          assertEquals(2, statistics.getPending());
+
+          for (int index = 0; index < 100; ++index) {
+            if (received.size() == 2) {
+              break;
+            }
+            Thread.sleep(50L);
+          }
+
+          assertEquals(2, received.size());
+          assertEquals("stream1", received.get(0).stream);
+          assertEquals("STREAM_STARTED", received.get(0).status);
+          assertEquals(
+            "Stream starting: \"Stream 1 (again)\" "
+            + "(http://example.com/stream1)",
+            received.get(0).text
+          );
+          assertEquals("stream2", received.get(1).stream);
+          assertEquals("STREAM_ENDED", received.get(1).status);
+
+          assertEquals(1L, statistics.getCancelledPairs());
+          assertEquals(1L, statistics.getSuperseded());
+          assertEquals(2L, statistics.getReleased());
+          assertEquals(0, statistics.getPending());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.public_api.MPubAssets;
+import com.io7m.mesquida.internal.public_api.MPubFragmentType;
+import com.io7m.mesquida.internal.public_api.MPubPages;
+import com.io7m.mesquida.internal.public_api.MPubTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MPubTemplateTest
+{
+  private static String render(
+    final MPubTemplate template,
+    final String... values)
+    throws Exception
+  {
+    final var fragments =
+      Arrays.stream(values)
+        .map(value -> (MPubFragmentType) writer -> writer.write(value))
+        .toArray(MPubFragmentType[]::new);
+
+    final var writer = new StringWriter();
+    template.render(writer, fragments);
+    return writer.toString();
+  }
+
+  private static void checkMatchesMessageFormat(
+    final String pattern,
+    final String... values)
+    throws Exception
+  {
+    final var template =
+      MPubTemplate.compile("test", pattern, values.length);
+
+    assertEquals(
+      new MessageFormat(pattern, Locale.ROOT).format(values),
+      render(template, values)
+    );
+  }
+
+  @Test
+  public void testPagesMatchMessageFormat()
+    throws Exception
+  {
+    final var pages =
+      new MPubPages(Locale.getDefault(), MPubAssets.load());
+    final var resources =
+      pages.resources();
+
+    checkMatchesMessageFormat(
+      resources.getString("mainPage"), "Title", "<p>Content</p>", "/s.css");
+    checkMatchesMessageFormat(
+      resources.getString("loginPage"), "Title", "/s.css");
+    checkMatchesMessageFormat(
+      resources.getString("streamForm"), "name", "A title");
+    checkMatchesMessageFormat(
+      resources.getString("errorPage"), "Title", "500", "Message");
+  }
+
+  @Test
+  public void testQuoting()
+    throws Exception
+  {
+    checkMatchesMessageFormat("It''s {0}", "x");
+    checkMatchesMessageFormat("'{0}' is {0}", "x");
+    checkMatchesMessageFormat("{1}{0}{1}", "a", "b");
+    checkMatchesMessageFormat("", new String[0]);
+  }
+
+  @Test
+  public void testMalformed()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      MPubTemplate.compile("test", "{0", 1);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      MPubTemplate.compile("test", "{0,number}", 1);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      MPubTemplate.compile("test", "{1}", 1);
+    });
+  }
+
+  @Test
+  public void testArgumentCount()
+  {
+    final var template =
+      MPubTemplate.compile("test", "{0}", 1);
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      render(template);
+    });
+  }
+
+  @Test
+  public void testMainPageEscapes()
+    throws Exception
+  {
+    final var pages =
+      new MPubPages(Locale.getDefault(), MPubAssets.load());
+
+    final var writer = new StringWriter();
+    pages.mainPage("A & B", pages.streamForm("<title>", "name"))
+      .writeTo(writer);
+
+    final var text = writer.toString();
+    assertTrue(text.contains("<title>A &amp; B</title>"));
+    assertTrue(text.contains("value=\"&lt;title&gt;\""));
+    assertTrue(text.contains(pages.assets().uri("style.css")));
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.MServerAdmissionConfiguration;
+import com.io7m.mesquida.internal.MServerAdmissionLimit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the private API admission control.
+ */
+
+public final class MServerAdmissionTest
+{
+  private static final int EVENT_SUBSCRIBERS = 12;
+
+  private MServerFixture fixture;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.fixture =
+      MServerFixture.builder()
+        .setAdmission(
+          new MServerAdmissionConfiguration(
+            MServerAdmissionLimit.defaults(),
+            Map.of(
+              "stream-put",
+              new MServerAdmissionLimit(
+                1,
+                0,
+                Duration.ZERO,
+                Duration.ofSeconds(2L))
+            ),
+            EVENT_SUBSCRIBERS
+          ))
+        .start();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    this.fixture.close();
+  }
+
+  private void waitForInFlight(
+    final int count)
+    throws InterruptedException
+  {
+    final var stats = this.fixture.server().privateAdmission();
+    for (int index = 0; index < 500; ++index) {
+      if (stats.getRequestsInFlight() == count) {
+        return;
+      }
+      Thread.sleep(10L);
+    }
+    assertEquals(count, stats.getRequestsInFlight());
+  }
+
+  /**
+   * A request that arrives whilst an endpoint is saturated is rejected
+   * immediately, and other endpoints are unaffected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testEndpointSaturatedRejected()
+    throws Exception
+  {
+    final var streamPut = """
+      {
+        "streamName": "stream0",
+        "streamTitle": "Title",
+        "streamOwner": 1
+      }
+      """;
+
+    assertEquals(200, this.fixture.privatePost("/user-put/", """
+      {
+        "user": "someone",
+        "password": "12345678"
+      }
+      """).statusCode());
+
+    /*
+     * Hold the only /stream-put slot by sending the request headers and
+     * then stalling before the body arrives.
+     */
+
+    try (var socket = new Socket("localhost", 9999)) {
+      final var output = socket.getOutputStream();
+      output.write((
+        "POST /stream-put/ HTTP/1.1\r\n"
+        + "Host: localhost:9999\r\n"
+        + "Mesquida-Token: abcd\r\n"
+        + "Content-Type: application/json\r\n"
+        + "Content-Length: 1000\r\n"
+        + "\r\n"
+        + "{").getBytes(StandardCharsets.UTF_8));
+      output.flush();
+
+      this.waitForInFlight(1);
+
+      final var rejected =
+        this.fixture.privatePost("/stream-put/", streamPut);
+      assertEquals(503, rejected.statusCode());
+      assertEquals(
+        Optional.of("2"),
+        rejected.headers().firstValue("Retry-After"));
+
+      assertEquals(
+        200,
+        this.fixture.privatePost("/user-list/", "").statusCode());
+    }
+
+    this.waitForInFlight(0);
+
+    final var stats = this.fixture.server().privateAdmission();
+    assertEquals(1L, stats.getRequestsRejected());
+    assertEquals(
+      Long.valueOf(1L),
+      stats.getRequestsRejectedByEndpoint().get("stream-put"));
+
+    assertEquals(
+      200,
+      this.fixture.privatePost("/stream-put/", streamPut).statusCode());
+  }
+
+  /**
+   * Event feed clients don't occupy admission slots, so more clients than
+   * the default concurrency limit can be connected whilst other endpoints
+   * keep working. Clients beyond the event feed's own limit are rejected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @Timeout(60L)
+  public void testEventSubscribersNotGated()
+    throws Exception
+  {
+    assertTrue(
+      EVENT_SUBSCRIBERS > MServerAdmissionLimit.defaults().concurrency());
+
+    assertEquals(200, this.fixture.privatePost("/user-put/", """
+      {
+        "user": "someone",
+        "password": "12345678"
+      }
+      """).statusCode());
+    assertEquals(200, this.fixture.privatePost("/stream-put/", """
+      {
+        "streamName": "live",
+        "streamTitle": "Title",
+        "streamOwner": 1
+      }
+      """).statusCode());
+
+    final var client = HttpClient.newHttpClient();
+    final var request =
+      HttpRequest.newBuilder(MServerFixture.privateURI("/events/"))
+        .header("mesquida-token", MServerFixture.TOKEN)
+        .GET()
+        .build();
+
+    final var streams = new ArrayList<Stream<String>>();
+    try {
+      for (int index = 0; index < EVENT_SUBSCRIBERS; ++index) {
+        final var response =
+          client.send(request, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        streams.add(response.body());
+      }
+
+      final var rejected =
+        client.send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(503, rejected.statusCode());
+      assertEquals(
+        EVENT_SUBSCRIBERS,
+        this.fixture.server().eventFeed().getSubscribers());
+
+      assertEquals(200, this.fixture.privatePost("/stream-start/", """
+        {
+          "streamName": "live"
+        }
+        """).statusCode());
+
+      for (final var stream : streams) {
+        final var lines = stream.iterator();
+        assertEquals("retry: 2000", lines.next());
+        while (!lines.next().equals("event: stream-started")) {
+          continue;
+        }
+      }
+    } finally {
+      for (final var stream : streams) {
+        stream.close();
+      }
+    }
+  }
+}
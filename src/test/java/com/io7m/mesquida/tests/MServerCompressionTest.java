@@ -0,0 +1,318 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.MServerCompressionConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check response compression on both servers, and that compression
+ * shrinks large stream lists.
+ *
+ * The latency benchmark is timing-sensitive, so it only runs when the
+ * {@code mesquida.benchmarks} system property is {@code true}, for example
+ * with {@code mvn test -Dmesquida.benchmarks=true}.
+ */
+
+public final class MServerCompressionTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MServerCompressionTest.class);
+
+  private static final int STREAMS = 200;
+  private static final int ITERATIONS = 50;
+  private static final URI STREAM_LIST =
+    MServerFixture.privateURI("/stream-list/");
+  private static final URI STYLE =
+    MServerFixture.publicURI("/static/style.css");
+
+  private MServerFixture fixture;
+  private HttpClient client;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.client = HttpClient.newHttpClient();
+  }
+
+  private void startServer(
+    final MServerCompressionConfiguration compression)
+    throws Exception
+  {
+    this.fixture =
+      MServerFixture.builder()
+        .setCompression(compression)
+        .start();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    if (this.fixture != null) {
+      this.fixture.close();
+    }
+  }
+
+  private void privatePost(
+    final String path,
+    final String body)
+    throws Exception
+  {
+    assertEquals(200, this.fixture.privatePost(path, body).statusCode());
+  }
+
+  private void createStreams()
+    throws Exception
+  {
+    this.privatePost(
+      "/user-put/",
+      """
+        {
+          "user": "someone",
+          "password": "12345678"
+        }
+        """
+    );
+
+    for (int index = 0; index < STREAMS; ++index) {
+      this.privatePost(
+        "/stream-put/",
+        """
+          {
+            "streamName": "stream_%03d",
+            "streamTitle": "The title of stream number %d.",
+            "streamOwner": 1
+          }
+          """.formatted(Integer.valueOf(index), Integer.valueOf(index))
+      );
+    }
+  }
+
+  private HttpResponse<byte[]> get(
+    final URI uri,
+    final String acceptEncoding)
+    throws Exception
+  {
+    final var builder =
+      HttpRequest.newBuilder(uri)
+        .header("mesquida-token", MServerFixture.TOKEN)
+        .GET();
+
+    if (acceptEncoding != null) {
+      builder.header("Accept-Encoding", acceptEncoding);
+    }
+    return this.client.send(
+      builder.build(),
+      HttpResponse.BodyHandlers.ofByteArray()
+    );
+  }
+
+  private static byte[] gunzip(
+    final byte[] data)
+    throws IOException
+  {
+    try (var input = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      return input.readAllBytes();
+    }
+  }
+
+  /**
+   * Fetch the stream list repeatedly, and return the mean latency in
+   * microseconds.
+   */
+
+  private long measure(
+    final String acceptEncoding)
+    throws Exception
+  {
+    for (int index = 0; index < ITERATIONS; ++index) {
+      assertEquals(200, this.get(STREAM_LIST, acceptEncoding).statusCode());
+    }
+
+    final var timeThen = System.nanoTime();
+    for (int index = 0; index < ITERATIONS; ++index) {
+      assertEquals(200, this.get(STREAM_LIST, acceptEncoding).statusCode());
+    }
+    final var timeNow = System.nanoTime();
+    return (timeNow - timeThen) / ITERATIONS / 1000L;
+  }
+
+  @Test
+  public void testStreamListCompressed()
+    throws Exception
+  {
+    this.startServer(MServerCompressionConfiguration.defaults());
+    this.createStreams();
+
+    final var plain =
+      this.get(STREAM_LIST, null);
+    assertEquals(200, plain.statusCode());
+    assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+
+    final var compressed =
+      this.get(STREAM_LIST, "gzip");
+    assertEquals(200, compressed.statusCode());
+    assertEquals(
+      "gzip",
+      compressed.headers().firstValue("Content-Encoding").orElseThrow()
+    );
+    assertTrue(
+      compressed.headers()
+        .allValues("Vary")
+        .stream()
+        .anyMatch(v -> v.contains("Accept-Encoding"))
+    );
+
+    assertEquals(
+      new String(plain.body(), StandardCharsets.UTF_8),
+      new String(gunzip(compressed.body()), StandardCharsets.UTF_8)
+    );
+    assertTrue(compressed.body().length * 4 < plain.body().length);
+
+    LOG.debug(
+      "stream-list ({} streams): identity {} octets, gzip {} octets",
+      Integer.valueOf(STREAMS),
+      Integer.valueOf(plain.body().length),
+      Integer.valueOf(compressed.body().length)
+    );
+  }
+
+  /**
+   * Measure the bandwidth and latency of a large stream list with and
+   * without compression.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledIfSystemProperty(named = "mesquida.benchmarks", matches = "true")
+  public void benchmarkStreamListLatency()
+    throws Exception
+  {
+    this.startServer(MServerCompressionConfiguration.defaults());
+    this.createStreams();
+
+    final var plain = this.get(STREAM_LIST, null);
+    final var compressed = this.get(STREAM_LIST, "gzip");
+    final var plainMicros = this.measure(null);
+    final var compressedMicros = this.measure("gzip");
+
+    LOG.info(
+      "stream-list ({} streams): identity {} octets {}us, gzip {} octets {}us",
+      Integer.valueOf(STREAMS),
+      Integer.valueOf(plain.body().length),
+      Long.valueOf(plainMicros),
+      Integer.valueOf(compressed.body().length),
+      Long.valueOf(compressedMicros)
+    );
+  }
+
+  @Test
+  public void testCompressionDisabled()
+    throws Exception
+  {
+    this.startServer(
+      new MServerCompressionConfiguration(
+        false,
+        0,
+        List.of("text/json"),
+        1
+      )
+    );
+    this.createStreams();
+
+    final var response =
+      this.get(STREAM_LIST, "gzip");
+    assertEquals(200, response.statusCode());
+    assertFalse(
+      response.headers().firstValue("Content-Encoding").isPresent());
+  }
+
+  @Test
+  public void testMinimumSize()
+    throws Exception
+  {
+    this.startServer(MServerCompressionConfiguration.defaults());
+
+    final var response =
+      this.get(STREAM_LIST, "gzip");
+    assertEquals(200, response.statusCode());
+    assertFalse(
+      response.headers().firstValue("Content-Encoding").isPresent());
+  }
+
+  @Test
+  public void testStaticAssetsNotRecompressed()
+    throws Exception
+  {
+    this.startServer(
+      new MServerCompressionConfiguration(
+        true,
+        0,
+        List.of("text/css"),
+        9
+      )
+    );
+
+    final var plain =
+      this.get(STYLE, null);
+    assertEquals(200, plain.statusCode());
+
+    final var compressed =
+      this.get(STYLE, "gzip");
+    assertEquals(200, compressed.statusCode());
+    assertEquals(
+      List.of("gzip"),
+      compressed.headers().allValues("Content-Encoding")
+    );
+    assertEquals(
+      new String(plain.body(), StandardCharsets.UTF_8),
+      new String(gunzip(compressed.body()), StandardCharsets.UTF_8)
+    );
+  }
+
+  @Test
+  public void testInvalidLevel()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new MServerCompressionConfiguration(true, 0, List.of(), -2);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new MServerCompressionConfiguration(true, 0, List.of(), 10);
+    });
+  }
+}
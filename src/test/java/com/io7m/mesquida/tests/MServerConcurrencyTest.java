@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.MServerThreadPoolConfiguration;
+import com.io7m.mesquida.internal.MServerThreadPoolKind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.CookieManager;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drive many logged-in sessions against the public server at once, and
+ * check that no session ever sees another session's streams.
+ */
+
+public final class MServerConcurrencyTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MServerConcurrencyTest.class);
+
+  private static final int USERS = 16;
+  private static final int ITERATIONS = 25;
+
+  private MServerFixture fixture;
+
+  private void startServer(
+    final MServerThreadPoolConfiguration threadPool)
+    throws Exception
+  {
+    this.fixture =
+      MServerFixture.builder()
+        .setThreadPool(threadPool)
+        .start();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    if (this.fixture != null) {
+      this.fixture.close();
+    }
+  }
+
+  private void privatePost(
+    final String path,
+    final String body)
+    throws Exception
+  {
+    assertEquals(200, this.fixture.privatePost(path, body).statusCode());
+  }
+
+  private static String userName(
+    final int index)
+  {
+    return String.format("user_%02d", Integer.valueOf(index));
+  }
+
+  private static String streamName(
+    final int index)
+  {
+    return String.format("stream_%02d", Integer.valueOf(index));
+  }
+
+  @Test
+  public void testConcurrentSessionsIsolated()
+    throws Exception
+  {
+    this.startServer(MServerThreadPoolConfiguration.defaults());
+    this.runSessions();
+  }
+
+  /**
+   * Run the same sessions on virtual threads, with fewer platform threads
+   * than there are concurrent clients.
+   */
+
+  @Test
+  public void testConcurrentSessionsIsolatedVirtual()
+    throws Exception
+  {
+    this.startServer(
+      new MServerThreadPoolConfiguration(
+        MServerThreadPoolKind.VIRTUAL,
+        1,
+        8,
+        Duration.ofSeconds(30L),
+        64
+      )
+    );
+    this.runSessions();
+  }
+
+  private void runSessions()
+    throws Exception
+  {
+    for (int index = 0; index < USERS; ++index) {
+      this.privatePost(
+        "/user-put/",
+        """
+          {
+            "user": "%s",
+            "password": "12345678"
+          }
+          """.formatted(userName(index))
+      );
+      this.privatePost(
+        "/stream-put/",
+        """
+          {
+            "streamName": "%s",
+            "streamTitle": "Title %d",
+            "streamOwner": %d
+          }
+          """.formatted(
+          streamName(index),
+          Integer.valueOf(index),
+          Integer.valueOf(index + 1))
+      );
+    }
+
+    final var clients = new ArrayList<HttpClient>(USERS);
+    for (int index = 0; index < USERS; ++index) {
+      final var client =
+        HttpClient.newBuilder()
+          .followRedirects(HttpClient.Redirect.ALWAYS)
+          .cookieHandler(new CookieManager())
+          .build();
+
+      final var response =
+        client.send(
+          HttpRequest.newBuilder(MServerFixture.publicURI("/login/"))
+            .headers("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              "user=%s&password=12345678".formatted(userName(index))))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      clients.add(client);
+    }
+
+    final var start = new CountDownLatch(1);
+    final var futures = new ArrayList<Future<?>>(USERS);
+
+    try (var executor = Executors.newFixedThreadPool(USERS)) {
+      for (int index = 0; index < USERS; ++index) {
+        final var user = index;
+        final var client = clients.get(index);
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+            final var response =
+              client.send(
+                HttpRequest.newBuilder(MServerFixture.publicURI("/"))
+                  .build(),
+                HttpResponse.BodyHandlers.ofString()
+              );
+
+            assertEquals(200, response.statusCode());
+            final var body = response.body();
+            assertTrue(
+              body.contains(streamName(user)),
+              "Page for %s must show its own stream".formatted(userName(user))
+            );
+            for (int other = 0; other < USERS; ++other) {
+              if (other != user) {
+                assertFalse(
+                  body.contains(streamName(other)),
+                  "Page for %s must not show %s".formatted(
+                    userName(user), streamName(other))
+                );
+              }
+            }
+          }
+          return null;
+        }));
+      }
+
+      start.countDown();
+      for (final var future : futures) {
+        future.get();
+      }
+    }
+
+    LOG.debug(
+      "{} sessions x {} requests completed",
+      Integer.valueOf(USERS),
+      Integer.valueOf(ITERATIONS));
+  }
+}
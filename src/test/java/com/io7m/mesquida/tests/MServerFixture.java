@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.mesquida.tests;
+
+import com.io7m.mesquida.internal.MConfiguration;
+import com.io7m.mesquida.internal.MServerAdmissionConfiguration;
+import com.io7m.mesquida.internal.MServerCompressionConfiguration;
+import com.io7m.mesquida.internal.MServerConfiguration;
+import com.io7m.mesquida.internal.MServerMain;
+import com.io7m.mesquida.internal.MServerThreadPoolConfiguration;
+import com.io7m.mesquida.internal.database.MDatabase;
+import com.io7m.mesquida.internal.database.MDatabaseConfiguration;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A server running against a fresh database in a temporary directory.
+ * The private API listens on {@link #PRIVATE_PORT} and the public server
+ * on {@link #PUBLIC_PORT}.
+ */
+
+public final class MServerFixture implements AutoCloseable
+{
+  public static final int PRIVATE_PORT = 9999;
+  public static final int PUBLIC_PORT = 9998;
+  public static final String TOKEN = "abcd";
+
+  private final Path base;
+  private final MDatabase database;
+  private final MServerMain server;
+  private final HttpClient client;
+
+  private MServerFixture(
+    final Path inBase,
+    final MDatabase inDatabase,
+    final MServerMain inServer)
+  {
+    this.base =
+      Objects.requireNonNull(inBase, "base");
+    this.database =
+      Objects.requireNonNull(inDatabase, "database");
+    this.server =
+      Objects.requireNonNull(inServer, "server");
+    this.client =
+      HttpClient.newHttpClient();
+  }
+
+  /**
+   * @return A builder for a server with the default configuration
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * Start a server with the default configuration.
+   *
+   * @return The running server
+   *
+   * @throws Exception On errors
+   */
+
+  public static MServerFixture start()
+    throws Exception
+  {
+    return builder().start();
+  }
+
+  public MDatabase database()
+  {
+    return this.database;
+  }
+
+  public MServerMain server()
+  {
+    return this.server;
+  }
+
+  public static URI privateURI(
+    final String path)
+  {
+    return URI.create("http://localhost:%d%s".formatted(
+      Integer.valueOf(PRIVATE_PORT), path));
+  }
+
+  public static URI publicURI(
+    final String path)
+  {
+    return URI.create("http://localhost:%d%s".formatted(
+      Integer.valueOf(PUBLIC_PORT), path));
+  }
+
+  /**
+   * Post a request to the private API with the server token.
+   *
+   * @param path The path
+   * @param body The request body
+   *
+   * @return The response
+   *
+   * @throws IOException          On errors
+   * @throws InterruptedException On interruption
+   */
+
+  public HttpResponse<String> privatePost(
+    final String path,
+    final String body)
+    throws IOException, InterruptedException
+  {
+    return this.client.send(
+      HttpRequest.newBuilder(privateURI(path))
+        .header("mesquida-token", TOKEN)
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build(),
+      HttpResponse.BodyHandlers.ofString()
+    );
+  }
+
+  @Override
+  public void close()
+    throws Exception
+  {
+    try {
+      this.server.close();
+      this.database.close();
+    } finally {
+      MTestDirectories.deleteDirectory(this.base);
+    }
+  }
+
+  /**
+   * A builder for servers. Anything not set uses the server defaults.
+   */
+
+  public static final class Builder
+  {
+    private MServerThreadPoolConfiguration threadPool;
+    private MServerAdmissionConfiguration admission;
+    private MServerCompressionConfiguration compression;
+
+    private Builder()
+    {
+      this.threadPool = MServerThreadPoolConfiguration.defaults();
+      this.admission = MServerAdmissionConfiguration.defaults();
+      this.compression = MServerCompressionConfiguration.defaults();
+    }
+
+    public Builder setThreadPool(
+      final MServerThreadPoolConfiguration inThreadPool)
+    {
+      this.threadPool = Objects.requireNonNull(inThreadPool, "threadPool");
+      return this;
+    }
+
+    public Builder setAdmission(
+      final MServerAdmissionConfiguration inAdmission)
+    {
+      this.admission = Objects.requireNonNull(inAdmission, "admission");
+      return this;
+    }
+
+    public Builder setCompression(
+      final MServerCompressionConfiguration inCompression)
+    {
+      this.compression = Objects.requireNonNull(inCompression, "compression");
+      return this;
+    }
+
+    /**
+     * Open a database in a new temporary directory and start a server.
+     *
+     * @return The running server
+     *
+     * @throws Exception On errors
+     */
+
+    public MServerFixture start()
+      throws Exception
+    {
+      final var base = MTestDirectories.createTempDirectory();
+      final var configuration =
+        new MConfiguration(
+          new MServerConfiguration(
+            Locale.getDefault(),
+            InetAddress.getByName("localhost"),
+            PRIVATE_PORT,
+            InetAddress.getByName("localhost"),
+            PUBLIC_PORT,
+            TOKEN,
+            base.resolve("sessions"),
+            this.threadPool,
+            this.threadPool,
+            this.admission,
+            this.compression,
+            this.compression
+          ),
+          new MDatabaseConfiguration(
+            base.resolve("database"),
+            true,
+            true
+          )
+        );
+
+      final var database = MDatabase.open(configuration.database());
+      MServerMain server = null;
+      try {
+        server = MServerMain.create(configuration.http(), database);
+        server.start();
+        return new MServerFixture(base, database, server);
+      } catch (final Exception e) {
+        if (server != null) {
+          server.close();
+        }
+        database.close();
+        MTestDirectories.deleteDirectory(base);
+        throw e;
+      }
+    }
+  }
+}
@@ -16,31 +16,57 @@
 
 package com.io7m.mesquida.tests;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.mesquida.internal.MConfiguration;
 import com.io7m.mesquida.internal.database.MDatabase;
 import com.io7m.mesquida.internal.database.MDatabaseConfiguration;
 import com.io7m.mesquida.internal.MServerConfiguration;
 import com.io7m.mesquida.internal.MServerMain;
+import com.io7m.mesquida.internal.catalog.MStreamLiveRegistry;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.CookieManager;
+import java.net.HttpCookie;
 import java.net.InetAddress;
+import java.net.Socket;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import static com.io7m.mesquida.internal.database.Tables.STREAMS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class MServerTest
 {
@@ -326,122 +352,1252 @@ public final class MServerTest
     }
   }
 
+  @Test
+  public void testStreamListPaginated()
+    throws Exception
+  {
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    for (final var name : List.of("s0", "s1", "s2")) {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamName": "%s",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
+                  }
+                """.formatted(name)))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    final var mapper = new ObjectMapper();
+
+    final JsonNode page0;
+    {
+      final var getResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-list/?limit=2"))
+            .header("mesquida-token", "abcd")
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, getResponse.statusCode());
+      LOG.debug("{}", getResponse.body());
+      page0 = mapper.readTree(getResponse.body());
+    }
+
+    assertEquals(2, page0.get("streams").size());
+    assertEquals("s0", page0.get("streams").get(0).get("name").asText());
+    assertEquals("s1", page0.get("streams").get(1).get("name").asText());
+
+    final JsonNode page1;
+    {
+      final var getResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-list/?limit=2&after="
+              + page0.get("next").asInt()))
+            .header("mesquida-token", "abcd")
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, getResponse.statusCode());
+      LOG.debug("{}", getResponse.body());
+      page1 = mapper.readTree(getResponse.body());
+    }
+
+    assertEquals(1, page1.get("streams").size());
+    assertEquals("s2", page1.get("streams").get(0).get("name").asText());
+    assertFalse(page1.has("next"));
+
+    {
+      final var getResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-list/?limit=0"))
+            .header("mesquida-token", "abcd")
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(400, getResponse.statusCode());
+      LOG.debug("{}", getResponse.body());
+    }
+  }
+
   @Test
   public void testStreamPutAddressList()
     throws Exception
   {
     {
-      final var putResponse =
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamName": "live",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-address-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamId": 1,
+                  "protocol": "rtmp",
+                  "url": "rtmp://wwww.example.com/stream"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    {
+      final var getResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-list/"))
+            .header("mesquida-token", "abcd")
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, getResponse.statusCode());
+      LOG.debug("{}", getResponse.body());
+    }
+
+    {
+      final var deleteResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-delete/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamId": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, deleteResponse.statusCode());
+      LOG.debug("{}", deleteResponse.body());
+    }
+
+    {
+      final var getResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-list/"))
+            .header("mesquida-token", "abcd")
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, getResponse.statusCode());
+      LOG.debug("{}", getResponse.body());
+    }
+  }
+
+  @Test
+  public void testStreamStartStop()
+    throws Exception
+  {
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamName": "live",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-start/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+
+    {
+      final var putResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-stop/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, putResponse.statusCode());
+      LOG.debug("{}", putResponse.body());
+    }
+  }
+
+  @Test
+  public void testStreamLiveStatus()
+    throws Exception
+  {
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamName": "live",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-status/?name=live"))
+            .header("mesquida-token", "abcd")
+            .GET()
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(404, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-heartbeat/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(404, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-start/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-status/?name=live"))
+            .header("mesquida-token", "abcd")
+            .GET()
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      LOG.debug("{}", response.body());
+      assertTrue(response.body().contains("\"name\":\"live\""));
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-heartbeat/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    final var started =
+      this.server.liveRegistry()
+        .status("live")
+        .orElseThrow()
+        .started();
+
+    assertEquals(
+      started,
+      MStreamLiveRegistry.create(this.database)
+        .status("live")
+        .orElseThrow()
+        .started()
+    );
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-stop/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-status/?name=live"))
+            .header("mesquida-token", "abcd")
+            .GET()
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(404, response.statusCode());
+      LOG.debug("{}", response.body());
+    }
+
+    assertTrue(
+      MStreamLiveRegistry.create(this.database)
+        .liveStreams()
+        .isEmpty()
+    );
+  }
+
+  /**
+   * Read server-sent events until an event with the given name arrives.
+   *
+   * @return The IDs and names of the events read, in order
+   */
+
+  private static List<String> readEventsUntil(
+    final Iterator<String> lines,
+    final String name)
+  {
+    final var events = new ArrayList<String>();
+    String id = null;
+    while (lines.hasNext()) {
+      final var line = lines.next();
+      if (line.startsWith("id: ")) {
+        id = line.substring(4);
+      }
+      if (line.startsWith("event: ")) {
+        final var event = line.substring(7);
+        events.add(id);
+        events.add(event);
+        if (event.equals(name)) {
+          break;
+        }
+      }
+    }
+    return events;
+  }
+
+  @Test
+  @Timeout(60L)
+  public void testEvents()
+    throws Exception
+  {
+    final var first =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/events/"))
+          .header("mesquida-token", "abcd")
+          .GET()
+          .build(),
+        HttpResponse.BodyHandlers.ofLines()
+      );
+
+    assertEquals(200, first.statusCode());
+    assertEquals(
+      "text/event-stream;charset=utf-8",
+      first.headers().firstValue("content-type").orElseThrow()
+        .toLowerCase(Locale.ROOT)
+        .replace(" ", "")
+    );
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamName": "live",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-start/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    final List<String> firstEvents;
+    try (var lines = first.body()) {
+      firstEvents = readEventsUntil(lines.iterator(), "stream-started");
+    }
+
+    assertEquals(4, firstEvents.size());
+    assertEquals("stream-updated", firstEvents.get(1));
+    assertEquals("stream-started", firstEvents.get(3));
+
+    /*
+     * Resuming after the catalog change delivers the announcement again.
+     */
+
+    final var second =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/events/"))
+          .header("mesquida-token", "abcd")
+          .header("Last-Event-ID", firstEvents.get(0))
+          .GET()
+          .build(),
+        HttpResponse.BodyHandlers.ofLines()
+      );
+
+    assertEquals(200, second.statusCode());
+    try (var lines = second.body()) {
+      assertEquals(
+        firstEvents.subList(2, 4),
+        readEventsUntil(lines.iterator(), "stream-started")
+      );
+    }
+
+    /*
+     * An unknown event ID results in a reset.
+     */
+
+    final var third =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/events/"))
+          .header("mesquida-token", "abcd")
+          .header("Last-Event-ID", "unknown-1")
+          .GET()
+          .build(),
+        HttpResponse.BodyHandlers.ofLines()
+      );
+
+    assertEquals(200, third.statusCode());
+    try (var lines = third.body()) {
+      assertEquals(
+        List.of(firstEvents.get(2), "reset"),
+        readEventsUntil(lines.iterator(), "reset")
+      );
+    }
+    assertEquals(1L, this.server.eventFeed().getSubscriptionsReset());
+  }
+
+  /**
+   * Send a dashboard upgrade request the way a TLS-terminating reverse
+   * proxy would forward it: over plain HTTP, with the browser's
+   * {@code Host} and {@code Origin} headers passed through.
+   *
+   * @return The status line of the response
+   */
+
+  private String proxiedDashboardUpgrade(
+    final String host,
+    final String origin)
+    throws IOException
+  {
+    final var cookie =
+      this.cookies.getCookieStore()
+        .getCookies()
+        .stream()
+        .map(HttpCookie::toString)
+        .reduce((x, y) -> x + "; " + y)
+        .orElseThrow();
+
+    try (var socket = new Socket("localhost", 9998)) {
+      final var output = socket.getOutputStream();
+      output.write((
+        "GET /dashboard/ HTTP/1.1\r\n"
+        + "Host: " + host + "\r\n"
+        + "Origin: " + origin + "\r\n"
+        + "X-Forwarded-Proto: https\r\n"
+        + "Cookie: " + cookie + "\r\n"
+        + "Upgrade: websocket\r\n"
+        + "Connection: Upgrade\r\n"
+        + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+        + "Sec-WebSocket-Version: 13\r\n"
+        + "\r\n").getBytes(StandardCharsets.UTF_8));
+      output.flush();
+
+      final var input =
+        new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      return input.readLine();
+    }
+  }
+
+  @Test
+  @Timeout(60L)
+  public void testDashboardBehindProxy()
+    throws Exception
+  {
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9998/login/"))
+            .headers("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              "user=someone&password=12345678"))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    assertTrue(
+      this.proxiedDashboardUpgrade(
+        "mesquida.example.com",
+        "https://mesquida.example.com"
+      ).startsWith("HTTP/1.1 101 ")
+    );
+    assertTrue(
+      this.proxiedDashboardUpgrade(
+        "mesquida.example.com:8443",
+        "https://mesquida.example.com:8443"
+      ).startsWith("HTTP/1.1 101 ")
+    );
+    assertTrue(
+      this.proxiedDashboardUpgrade(
+        "mesquida.example.com",
+        "https://example.com"
+      ).startsWith("HTTP/1.1 403 ")
+    );
+    assertTrue(
+      this.proxiedDashboardUpgrade(
+        "mesquida.example.com",
+        "https://mesquida.example.com:8443"
+      ).startsWith("HTTP/1.1 403 ")
+    );
+  }
+
+  @Test
+  @Timeout(60L)
+  public void testDashboard()
+    throws Exception
+  {
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/user-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-put/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamName": "live",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    /*
+     * Sockets are refused without a session.
+     */
+
+    final var anonymous = HttpClient.newHttpClient();
+    final var refused =
+      assertThrows(ExecutionException.class, () -> {
+        anonymous.newWebSocketBuilder()
+          .header("Origin", "http://localhost:9998")
+          .buildAsync(
+            URI.create("ws://localhost:9998/dashboard/"),
+            new WebSocket.Listener()
+            {
+            })
+          .get();
+      });
+    assertInstanceOf(WebSocketHandshakeException.class, refused.getCause());
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9998/login/"))
+            .headers("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              "user=someone&password=12345678"))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    for (final var origin : List.of("http://example.com", "null", "")) {
+      final var builder = this.client.newWebSocketBuilder();
+      if (!origin.isEmpty()) {
+        builder.header("Origin", origin);
+      }
+
+      final var crossOrigin =
+        assertThrows(ExecutionException.class, () -> {
+          builder.buildAsync(
+              URI.create("ws://localhost:9998/dashboard/"),
+              new WebSocket.Listener()
+              {
+              })
+            .get();
+        });
+      assertInstanceOf(
+        WebSocketHandshakeException.class,
+        crossOrigin.getCause()
+      );
+      assertEquals(
+        403,
+        ((WebSocketHandshakeException) crossOrigin.getCause())
+          .getResponse()
+          .statusCode()
+      );
+    }
+
+    final var messages = new LinkedBlockingQueue<JsonNode>();
+    final var mapper = new ObjectMapper();
+    final var socket =
+      this.client.newWebSocketBuilder()
+        .header("Origin", "http://localhost:9998")
+        .buildAsync(
+          URI.create("ws://localhost:9998/dashboard/"),
+          new WebSocket.Listener()
+          {
+            private final StringBuilder text = new StringBuilder();
+
+            @Override
+            public CompletionStage<?> onText(
+              final WebSocket webSocket,
+              final CharSequence data,
+              final boolean last)
+            {
+              this.text.append(data);
+              if (last) {
+                try {
+                  messages.add(mapper.readTree(this.text.toString()));
+                } catch (final IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+                this.text.setLength(0);
+              }
+              webSocket.request(1L);
+              return null;
+            }
+          })
+        .get();
+
+    {
+      final var message = messages.take();
+      LOG.debug("{}", message);
+      assertEquals("streams", message.get("type").asText());
+      assertEquals(1, message.get("streams").size());
+      final var stream = message.get("streams").get(0);
+      assertEquals("live", stream.get("name").asText());
+      assertFalse(stream.get("live").asBoolean());
+    }
+
+    {
+      final var response =
         this.client.send(
-          HttpRequest.newBuilder(URI.create("http://localhost:9999/user-put/"))
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-start/"))
             .header("mesquida-token", "abcd")
             .POST(HttpRequest.BodyPublishers.ofString(
               """
-                  {
-                    "user": "someone",
-                    "password": "12345678"
-                  }
+                {
+                  "streamName": "live"
+                }
                 """))
             .build(),
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, putResponse.statusCode());
-      LOG.debug("{}", putResponse.body());
+      assertEquals(200, response.statusCode());
     }
 
     {
-      final var putResponse =
+      final var message = messages.take();
+      LOG.debug("{}", message);
+      assertEquals("stream", message.get("type").asText());
+      assertTrue(message.get("stream").get("live").asBoolean());
+    }
+
+    {
+      final var response =
         this.client.send(
-          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-put/"))
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-stop/"))
             .header("mesquida-token", "abcd")
             .POST(HttpRequest.BodyPublishers.ofString(
               """
-                  {
-                    "streamName": "live",
-                    "streamTitle": "The current stream title.",
-                    "streamOwner": 1
-                  }
+                {
+                  "streamName": "live"
+                }
                 """))
             .build(),
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, putResponse.statusCode());
-      LOG.debug("{}", putResponse.body());
+      assertEquals(200, response.statusCode());
     }
 
     {
-      final var putResponse =
+      final var message = messages.take();
+      LOG.debug("{}", message);
+      assertEquals("stream", message.get("type").asText());
+      assertFalse(message.get("stream").get("live").asBoolean());
+    }
+
+    {
+      final var response =
         this.client.send(
           HttpRequest.newBuilder(URI.create(
-              "http://localhost:9999/stream-address-put/"))
+              "http://localhost:9999/stream-delete/"))
             .header("mesquida-token", "abcd")
             .POST(HttpRequest.BodyPublishers.ofString(
               """
                 {
-                  "streamId": 1,
-                  "protocol": "rtmp",
-                  "url": "rtmp://wwww.example.com/stream"
+                  "streamId": 1
                 }
                 """))
             .build(),
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, putResponse.statusCode());
-      LOG.debug("{}", putResponse.body());
+      assertEquals(200, response.statusCode());
     }
 
     {
-      final var getResponse =
+      final var message = messages.take();
+      LOG.debug("{}", message);
+      assertEquals("removed", message.get("type").asText());
+      assertEquals("live", message.get("name").asText());
+    }
+
+    assertEquals(1, this.server.dashboard().getSockets());
+    socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get();
+  }
+
+  private HttpResponse<String> getConditional(
+    final String uri,
+    final String tag)
+    throws Exception
+  {
+    final var builder =
+      HttpRequest.newBuilder(URI.create(uri))
+        .header("mesquida-token", "abcd")
+        .GET();
+
+    if (tag != null) {
+      builder.header("If-None-Match", tag);
+    }
+    return this.client.send(
+      builder.build(),
+      HttpResponse.BodyHandlers.ofString()
+    );
+  }
+
+  @Test
+  public void testConditionalGet()
+    throws Exception
+  {
+    {
+      final var response =
         this.client.send(
-          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-list/"))
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/user-put/"))
             .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
             .build(),
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, getResponse.statusCode());
-      LOG.debug("{}", getResponse.body());
+      assertEquals(200, response.statusCode());
     }
 
+    final var users0 =
+      this.getConditional("http://localhost:9999/user-list/", null);
+    assertEquals(200, users0.statusCode());
+    final var usersTag0 =
+      users0.headers().firstValue("ETag").orElseThrow();
+
+    final var users1 =
+      this.getConditional("http://localhost:9999/user-list/", usersTag0);
+    assertEquals(304, users1.statusCode());
+    assertEquals("", users1.body());
+
+    final var streams0 =
+      this.getConditional("http://localhost:9999/stream-list/", null);
+    assertEquals(200, streams0.statusCode());
+    final var streamsTag0 =
+      streams0.headers().firstValue("ETag").orElseThrow();
+
+    final var streams1 =
+      this.getConditional(
+        "http://localhost:9999/stream-list/",
+        "\"other\", W/" + streamsTag0);
+    assertEquals(304, streams1.statusCode());
+
     {
-      final var deleteResponse =
+      final var response =
         this.client.send(
           HttpRequest.newBuilder(URI.create(
-              "http://localhost:9999/stream-delete/"))
+              "http://localhost:9999/stream-put/"))
             .header("mesquida-token", "abcd")
             .POST(HttpRequest.BodyPublishers.ofString(
               """
                   {
-                    "streamId": 1
+                    "streamName": "live",
+                    "streamTitle": "The current stream title.",
+                    "streamOwner": 1
                   }
                 """))
             .build(),
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, deleteResponse.statusCode());
-      LOG.debug("{}", deleteResponse.body());
+      assertEquals(200, response.statusCode());
     }
 
+    final var streams2 =
+      this.getConditional("http://localhost:9999/stream-list/", streamsTag0);
+    assertEquals(200, streams2.statusCode());
+    assertNotEquals(
+      streamsTag0,
+      streams2.headers().firstValue("ETag").orElseThrow()
+    );
+
     {
-      final var getResponse =
+      final var response =
         this.client.send(
-          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-list/"))
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/user-put/"))
             .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "user": "someone",
+                    "password": "12345678"
+                  }
+                """))
             .build(),
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, getResponse.statusCode());
-      LOG.debug("{}", getResponse.body());
+      assertEquals(200, response.statusCode());
+    }
+
+    final var users2 =
+      this.getConditional("http://localhost:9999/user-list/", usersTag0);
+    assertEquals(200, users2.statusCode());
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:9998/login/"))
+            .headers("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              "user=someone&password=12345678"))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
+    }
+
+    final var root0 =
+      this.getConditional("http://localhost:9998/", null);
+    assertEquals(200, root0.statusCode());
+    final var rootTag0 =
+      root0.headers().firstValue("ETag").orElseThrow();
+
+    final var root1 =
+      this.getConditional("http://localhost:9998/", rootTag0);
+    assertEquals(304, root1.statusCode());
+
+    {
+      final var response =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-start/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                {
+                  "streamName": "live"
+                }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, response.statusCode());
     }
+
+    final var root2 =
+      this.getConditional("http://localhost:9998/", rootTag0);
+    assertEquals(200, root2.statusCode());
+    assertTrue(root2.body().contains("Live since"));
   }
 
   @Test
-  public void testStreamStartStop()
+  public void testStaticAssets()
+    throws Exception
+  {
+    final var plain0 =
+      this.getConditional("http://localhost:9998/static/style.css", null);
+    assertEquals(200, plain0.statusCode());
+    assertEquals(
+      "no-cache",
+      plain0.headers().firstValue("Cache-Control").orElseThrow()
+    );
+    assertFalse(plain0.headers().firstValue("Content-Encoding").isPresent());
+    final var plainTag =
+      plain0.headers().firstValue("ETag").orElseThrow();
+
+    final var plain1 =
+      this.getConditional("http://localhost:9998/static/style.css", plainTag);
+    assertEquals(304, plain1.statusCode());
+    assertEquals("", plain1.body());
+
+    final var login =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9998/login/"))
+          .GET()
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+    assertEquals(200, login.statusCode());
+
+    final var matcher =
+      Pattern.compile("href=\"(/static/style\\.[0-9a-f]+\\.css)\"")
+        .matcher(login.body());
+    assertTrue(matcher.find());
+
+    final var fingerprinted =
+      this.getConditional("http://localhost:9998" + matcher.group(1), null);
+    assertEquals(200, fingerprinted.statusCode());
+    assertEquals(plain0.body(), fingerprinted.body());
+    assertTrue(
+      fingerprinted.headers()
+        .firstValue("Cache-Control")
+        .orElseThrow()
+        .contains("immutable")
+    );
+
+    final var compressed =
+      this.client.send(
+        HttpRequest.newBuilder(
+            URI.create("http://localhost:9998" + matcher.group(1)))
+          .header("Accept-Encoding", "br;q=1.0, gzip;q=0.5")
+          .GET()
+          .build(),
+        HttpResponse.BodyHandlers.ofByteArray()
+      );
+    assertEquals(200, compressed.statusCode());
+    assertEquals(
+      "gzip",
+      compressed.headers().firstValue("Content-Encoding").orElseThrow()
+    );
+    assertNotEquals(
+      plainTag,
+      compressed.headers().firstValue("ETag").orElseThrow()
+    );
+
+    try (var input = new GZIPInputStream(
+      new ByteArrayInputStream(compressed.body()))) {
+      assertEquals(
+        plain0.body(),
+        new String(input.readAllBytes(), StandardCharsets.UTF_8)
+      );
+    }
+
+    final var missing =
+      this.getConditional("http://localhost:9998/static/nonexistent.css", null);
+    assertEquals(404, missing.statusCode());
+  }
+
+  @Test
+  public void testStreamStartDeleted()
     throws Exception
   {
     {
@@ -505,10 +1661,33 @@ public final class MServerTest
       LOG.debug("{}", putResponse.body());
     }
 
+    {
+      final var deleteResponse =
+        this.client.send(
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-delete/"))
+            .header("mesquida-token", "abcd")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              """
+                  {
+                    "streamId": 1
+                  }
+                """))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+
+      assertEquals(200, deleteResponse.statusCode());
+      LOG.debug("{}", deleteResponse.body());
+    }
+
+    assertEquals(0, this.server.catalog().snapshot().streams().size());
+
     {
       final var putResponse =
         this.client.send(
-          HttpRequest.newBuilder(URI.create("http://localhost:9999/stream-stop/"))
+          HttpRequest.newBuilder(URI.create(
+              "http://localhost:9999/stream-start/"))
             .header("mesquida-token", "abcd")
             .POST(HttpRequest.BodyPublishers.ofString(
               """
@@ -520,7 +1699,7 @@ public final class MServerTest
           HttpResponse.BodyHandlers.ofString()
         );
 
-      assertEquals(200, putResponse.statusCode());
+      assertEquals(404, putResponse.statusCode());
       LOG.debug("{}", putResponse.body());
     }
   }
@@ -853,4 +2032,113 @@ public final class MServerTest
       LOG.debug("{}", putResponse.body());
     }
   }
+
+  @Test
+  public void testMessageQueuePutBatchInvalid()
+    throws Exception
+  {
+    final var putResponse =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/mq-put/"))
+          .header("mesquida-token", "abcd")
+          .POST(HttpRequest.BodyPublishers.ofString(
+            """
+                {
+                  "brokerURL": "tcp://localhost:61616",
+                  "brokerUser": "user",
+                  "brokerPassword": "password",
+                  "brokerTopic": "mesquida",
+                  "brokerEnabled": false,
+                  "brokerBatchSize": 0
+                }
+              """))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+    assertEquals(400, putResponse.statusCode());
+    LOG.debug("{}", putResponse.body());
+  }
+
+  @Test
+  public void testMessageQueuePutBatch()
+    throws Exception
+  {
+    final var putResponse =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/mq-put/"))
+          .header("mesquida-token", "abcd")
+          .POST(HttpRequest.BodyPublishers.ofString(
+            """
+                {
+                  "brokerURL": "tcp://localhost:61616",
+                  "brokerUser": "user",
+                  "brokerPassword": "password",
+                  "brokerTopic": "mesquida",
+                  "brokerEnabled": false,
+                  "brokerBatchSize": 20,
+                  "brokerBatchLingerMillis": 250
+                }
+              """))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+    assertEquals(200, putResponse.statusCode());
+    LOG.debug("{}", putResponse.body());
+  }
+
+  @Test
+  public void testMessageQueuePutDebounceInvalid()
+    throws Exception
+  {
+    final var putResponse =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/mq-put/"))
+          .header("mesquida-token", "abcd")
+          .POST(HttpRequest.BodyPublishers.ofString(
+            """
+                {
+                  "brokerURL": "tcp://localhost:61616",
+                  "brokerUser": "user",
+                  "brokerPassword": "password",
+                  "brokerTopic": "mesquida",
+                  "brokerEnabled": false,
+                  "brokerDebounceMillis": -1
+                }
+              """))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+    assertEquals(400, putResponse.statusCode());
+    LOG.debug("{}", putResponse.body());
+  }
+
+  @Test
+  public void testMessageQueuePutDebounce()
+    throws Exception
+  {
+    final var putResponse =
+      this.client.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:9999/mq-put/"))
+          .header("mesquida-token", "abcd")
+          .POST(HttpRequest.BodyPublishers.ofString(
+            """
+                {
+                  "brokerURL": "tcp://localhost:61616",
+                  "brokerUser": "user",
+                  "brokerPassword": "password",
+                  "brokerTopic": "mesquida",
+                  "brokerEnabled": false,
+                  "brokerDebounceMillis": 5000
+                }
+              """))
+          .build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+
+    assertEquals(200, putResponse.statusCode());
+    LOG.debug("{}", putResponse.body());
+  }
 }